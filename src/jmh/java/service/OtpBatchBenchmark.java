@@ -0,0 +1,63 @@
+package service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares generating the current codes of many two-factor seeds in one batch, which re-keys one {@code Mac}
+ * per algorithm, with generating them one by one, which creates a {@code Mac} per code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OtpBatchBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int seedCount;
+
+    private List<OtpSeed> seeds;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        seeds = new ArrayList<>(seedCount);
+        for (int i = 0; i < seedCount; i++) {
+            byte[] secret = new byte[20];
+            random.nextBytes(secret);
+            seeds.add(new OtpSeed(OtpSeed.Type.TOTP, secret, "HmacSHA1", 6, 30, 0, "Service" + i, "user" + i));
+        }
+        now = 1_700_000_000L;
+    }
+
+    @Benchmark
+    public List<String> batch() throws Exception {
+        return TOTPService.generateCodes(seeds, now);
+    }
+
+    @Benchmark
+    public List<String> oneByOne() throws Exception {
+        List<String> codes = new ArrayList<>(seeds.size());
+        for (OtpSeed seed : seeds) {
+            codes.add(TOTPService.generateCodes(List.of(seed), now).getFirst());
+        }
+        return codes;
+    }
+}
@@ -0,0 +1,74 @@
+package service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up a suffix in a padded range response of 1,000 lines by scanning its bytes
+ * with reading it line by line into Strings, as the breach checks used to. The suffix looked up
+ * is not listed, so both read the whole response, as they do for most passwords.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeResponseBenchmark {
+
+    private byte[] body;
+    private String suffix;
+    private byte[] suffixBytes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        HexFormat hex = HexFormat.of().withUpperCase();
+        StringBuilder response = new StringBuilder();
+        byte[] hash = new byte[18];
+        for (int i = 0; i < 1_000; i++) {
+            random.nextBytes(hash);
+            response.append(hex.formatHex(hash), 1, 36).append(':').append(random.nextInt(5_000)).append("\r\n");
+        }
+        body = response.toString().getBytes(StandardCharsets.US_ASCII);
+        random.nextBytes(hash);
+        suffix = hex.formatHex(hash).substring(1);
+        suffixBytes = RangeResponse.suffixOf(suffix);
+    }
+
+    @Benchmark
+    public int byteScan() {
+        return RangeResponse.count(body, suffixBytes);
+    }
+
+    @Benchmark
+    public int lineByLineStrings() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(":");
+                if (parts[0].equalsIgnoreCase(suffix)) {
+                    return Integer.parseInt(parts[1].trim());
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,79 @@
+package service;
+
+import model.Credential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.WordList;
+
+import javax.crypto.SecretKey;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares saving (encode and encrypt) and loading (decrypt and decode) one vault record with and without
+ * compression, by the length of its notes, to find the record size from which compression pays off.
+ * The notes are words drawn from 256 words of the diceware list, about as repetitive as written notes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecordCompressionBenchmark {
+
+    @Param({"0", "128", "256", "512", "1024", "4096"})
+    public int notesLength;
+
+    private SecretKey key;
+    private Credential credential;
+    private String plainLine;
+    private String compressedLine;
+
+    @Setup
+    public void setUp() throws Exception {
+        EncryptionService.setSessionKeyAndSalt("benchmarkPassword", "benchmarkSalt");
+        key = EncryptionService.getSessionSecretKey();
+        WordList words = WordList.getDefault();
+        Random random = new Random(7);
+        StringBuilder notes = new StringBuilder();
+        while (notes.length() < notesLength) {
+            notes.append(words.get(random.nextInt(256))).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        credential = Credential.create("service.example.com", "someone@example.com", EncryptionService.encrypt("password"),
+                "https://service.example.com/login", notes.substring(0, notesLength), List.of("prod", "web"), Map.of());
+        plainLine = EncryptionService.encryptBytes(CredentialCodec.encode(credential, Integer.MAX_VALUE), key);
+        compressedLine = EncryptionService.encryptBytes(CredentialCodec.encode(credential, 0), key);
+    }
+
+    @Benchmark
+    public String saveUncompressed() throws Exception {
+        return EncryptionService.encryptBytes(CredentialCodec.encode(credential, Integer.MAX_VALUE), key);
+    }
+
+    @Benchmark
+    public String saveCompressed() throws Exception {
+        return EncryptionService.encryptBytes(CredentialCodec.encode(credential, 0), key);
+    }
+
+    @Benchmark
+    public Credential loadUncompressed() throws Exception {
+        return CredentialCodec.decode(EncryptionService.decryptBytes(plainLine, key));
+    }
+
+    @Benchmark
+    public Credential loadCompressed() throws Exception {
+        return CredentialCodec.decode(EncryptionService.decryptBytes(compressedLine, key));
+    }
+}
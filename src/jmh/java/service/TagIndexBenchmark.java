@@ -0,0 +1,71 @@
+package service;
+
+import model.Credential;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares answering "prod AND aws NOT deprecated" from the tag index with a linear scan
+ * over 100k credentials. Each credential carries an environment,
+ * a cloud and a team or {@code deprecated} tag, so about 8% of them match.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagIndexBenchmark {
+
+    private static final String FILTER = "prod AND aws NOT deprecated";
+
+    private List<Credential> credentials;
+    private TagIndex index;
+
+    @Setup
+    public void setUp() {
+        String[] environments = {"prod", "staging", "dev"};
+        String[] clouds = {"aws", "gcp", "azure", "onprem"};
+        String[] others = {"deprecated", "team-a", "team-b", "team-c", "team-d", "team-e", "team-f",
+                "team-g", "team-h", "team-i", "team-j", "team-k", "team-l"};
+        Random random = new Random(7);
+        credentials = new ArrayList<>(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            List<String> chosen = List.of(environments[random.nextInt(environments.length)],
+                    clouds[random.nextInt(clouds.length)], others[random.nextInt(others.length)]);
+            credentials.add(Credential.create("service" + i, "user", "enc", "", "", chosen, Map.of()));
+        }
+        index = new TagIndex(credentials);
+    }
+
+    @Benchmark
+    public int bitmapIndex() {
+        return index.query(FILTER).cardinality();
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int count = 0;
+        for (Credential credential : credentials) {
+            List<String> tags = credential.tags();
+            if (tags.contains("prod") && tags.contains("aws") && !tags.contains("deprecated")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
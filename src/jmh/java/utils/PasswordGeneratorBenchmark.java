@@ -0,0 +1,53 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures password generation without breach checks.
+ * Policy generation should cost the same for a loose and a very restrictive policy,
+ * since the constraints are resolved when the policy is built, not by regenerating.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PasswordGeneratorBenchmark {
+
+    @Param({"loose", "restrictive"})
+    private String policyName;
+
+    private PasswordPolicy policy;
+    private PasswordGenerator.ByteSampler sampler;
+
+    @Setup
+    public void setUp() {
+        policy = switch (policyName) {
+            case "loose" -> PasswordPolicy.builder().length(16).lowercase(0, 16).uppercase(0, 16)
+                    .digits(0, 16).symbols(0, 16).build();
+            default -> PasswordPolicy.builder().length(12, 16).uppercase(1, 16).lowercase(1, 16)
+                    .digits(0, 16).symbols("!#$", 2, 2).noRepeats().excludeLookAlikes()
+                    .requireAt(0, "upper", "lower").requireAt(-1, "digit").build();
+        };
+        sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+    }
+
+    @Benchmark
+    public String policyPassword() {
+        return PasswordGenerator.generateRandomPassword(policy, sampler);
+    }
+}
@@ -1,18 +1,22 @@
 import model.Credential;
 import service.AuthService;
+import service.BreachRangeClient;
+import service.CredentialListWriter;
 import service.CredentialStorage;
 import service.CredentialManager;
+import service.ListCommand;
+import service.VaultRekeyService;
+import utils.FlightRecording;
 import utils.InputSanitizer;
+import utils.StartupTimer;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.util.concurrent.CompletionException;
 
 public class App {
 
@@ -20,13 +24,64 @@ public class App {
      * Main entry point of the Secure Password Manager.
      * Handles authentication and interacts with the user via the command-line interface.
      *
-     * @param args Command-line arguments (currently unused).
+     * With {@code list [options]} as arguments, prints one page of credentials after authentication
+     * and exits instead of showing the menu; see {@link ListCommand} for the options.
+     * With {@code -Dstartup.timing=true}, reports how long each startup phase took; see {@link StartupTimer}.
+     * With {@code --record <file>} before any command, records the run with JDK Flight Recorder into that file;
+     * see {@link FlightRecording}.
+     *
+     * @param args Command-line arguments.
      */
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         Scanner scanner = new Scanner(System.in);
 
+        if (args.length > 0 && args[0].equals(FlightRecording.OPTION)) {
+            if (args.length == 1) {
+                System.err.println("Missing value for " + FlightRecording.OPTION);
+                return;
+            }
+            try {
+                FlightRecording.start(Path.of(args[1]));
+            } catch (Exception e) {
+                System.err.println("Failed to start the recording: " + e.getMessage());
+                return;
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        ListCommand listCommand = null;
+        if (args.length > 0) {
+            if (!args[0].equals(ListCommand.NAME)) {
+                System.err.println("Unknown command: " + args[0]);
+                return;
+            }
+            try {
+                listCommand = ListCommand.parse(List.of(args).subList(1, args.length));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+
+        // Keep standard output clean for scripts: prompts and messages go to standard error
+        PrintStream standardOutput = System.out;
+        if (listCommand != null) {
+            System.setOut(System.err);
+        }
+
+        try {
+            if (VaultRekeyService.recoverInterruptedRekey()) {
+                System.out.println("Recovered from an interrupted master password change.");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to recover interrupted master password change: " + e.getMessage());
+            return;
+        }
+
         try {
             new AuthService(scanner);
+            StartupTimer.mark("unlocked");
         } catch (Exception e) {
             System.err.println("Authentication failed: " + e.getMessage());
             return;
@@ -35,9 +90,22 @@ public class App {
         List<Credential> credentials;
         try {
             credentials = CredentialStorage.loadCredentials();
+            StartupTimer.mark("loaded");
         } catch (Exception e) {
             System.err.println("Failed to load credentials: " + e.getMessage());
             return;
+        } finally {
+            System.setOut(standardOutput);
+        }
+
+        if (listCommand != null) {
+            try {
+                listCommand.run(credentials, CredentialListWriter.toStandardOutput(listCommand.format()));
+                StartupTimer.mark("output");
+            } catch (IllegalArgumentException | IOException e) {
+                System.err.println("Failed to list credentials: " + e.getMessage());
+            }
+            return;
         }
 
         CredentialManager manager = new CredentialManager(credentials);
@@ -63,46 +131,10 @@ public class App {
             throw new IllegalArgumentException("Input validation failed: " + e.getMessage());
         }
 
-        HttpURLConnection conn = getHttpURLConnection(prefix, suffix);
-
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = in.readLine()) != null) {
-                String[] parts = line.split(":");
-                if (parts.length > 0 && parts[0].equalsIgnoreCase(suffix)) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Configures an HTTP connection to query the HIBP API for password breach information.
-     *
-     * @param prefix The first 5 characters of the SHA-1 hash of the password.
-     * @param suffix The remaining characters of the SHA-1 hash (used for validation only).
-     * @return A configured {@link HttpURLConnection} object ready for querying the API.
-     * @throws URISyntaxException If the constructed URI is invalid.
-     * @throws IOException If the connection fails.
-     */
-    private static HttpURLConnection getHttpURLConnection(String prefix, String suffix)
-            throws URISyntaxException, IOException {
-
-        if (!prefix.matches("[A-Fa-f0-9]{5}")) {
-            throw new IllegalArgumentException("Prefix must contain exactly 5 hexadecimal characters.");
-        }
-        if (!suffix.matches("[A-Fa-f0-9]+")) {
-            throw new IllegalArgumentException("Suffix must contain only hexadecimal characters.");
+        try {
+            return BreachRangeClient.shared().count(prefix, suffix).join() > 0;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
         }
-
-        URI uri = new URI("https", "api.pwnedpasswords.com", "/range/" + prefix, null);
-        URL url = uri.toURL();
-
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
-        return conn;
     }
 }
\ No newline at end of file
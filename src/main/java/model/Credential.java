@@ -1,19 +1,121 @@
 package model;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
 /**
  * Represents a saved user credential for a specific service.
+ *
+ * @param id                stable identifier of the credential
+ * @param serviceName       the name of the service (e.g., "Gmail")
+ * @param username          the username associated with the service
+ * @param encryptedPassword the password, already encrypted
+ * @param url               the login URL, or an empty string
+ * @param notes             free-form notes, or an empty string
+ * @param tags              tags used to organize credentials
+ * @param customFields      additional named fields, in insertion order
+ * @param createdAt         when the credential was created ({@link Instant#EPOCH} if unknown)
+ * @param modifiedAt        when the credential was last modified ({@link Instant#EPOCH} if unknown)
  */
-public record Credential(String serviceName, String username, String encryptedPassword) {
+public record Credential(UUID id, String serviceName, String username, String encryptedPassword,
+						 String url, String notes, List<String> tags, Map<String, String> customFields,
+						 Instant createdAt, Instant modifiedAt) {
 	/**
-	 * Constructs a new Credential.
+	 * Constructs a new Credential, normalizing missing optional fields to empty values.
+	 */
+	public Credential {
+		Objects.requireNonNull(id, "id");
+		url = url == null ? "" : url;
+		notes = notes == null ? "" : notes;
+		tags = tags == null ? List.of() : List.copyOf(tags);
+		customFields = customFields == null || customFields.isEmpty()
+				? Map.of()
+				: Collections.unmodifiableMap(new LinkedHashMap<>(customFields));
+		createdAt = createdAt == null ? Instant.EPOCH : createdAt;
+		modifiedAt = modifiedAt == null ? createdAt : modifiedAt;
+	}
+
+	/**
+	 * Constructs a Credential with only the fields of the original three-field format.
+	 * Used for records migrated from that format: the id is derived from the service name
+	 * and username, so migrating the same record twice yields the same id, and the
+	 * timestamps are unknown.
 	 *
 	 * @param serviceName       the name of the service (e.g., "Gmail")
 	 * @param username          the username associated with the service
 	 * @param encryptedPassword the password, already encrypted
 	 */
-	public Credential {
+	public Credential(String serviceName, String username, String encryptedPassword) {
+		this(legacyId(serviceName, username), serviceName, username, encryptedPassword,
+				"", "", List.of(), Map.of(), Instant.EPOCH, Instant.EPOCH);
+	}
+
+	/**
+	 * Creates a new credential with a random id, created and modified now.
+	 *
+	 * @param serviceName       the name of the service (e.g., "Gmail")
+	 * @param username          the username associated with the service
+	 * @param encryptedPassword the password, already encrypted
+	 * @return the new credential
+	 */
+	public static Credential create(String serviceName, String username, String encryptedPassword) {
+		return create(serviceName, username, encryptedPassword, "", "", List.of(), Map.of());
+	}
+
+	/**
+	 * Creates a new credential with optional details, a random id, created and modified now.
+	 *
+	 * @param serviceName       the name of the service (e.g., "Gmail")
+	 * @param username          the username associated with the service
+	 * @param encryptedPassword the password, already encrypted
+	 * @param url               the login URL, or an empty string
+	 * @param notes             free-form notes, or an empty string
+	 * @param tags              tags used to organize credentials
+	 * @param customFields      additional named fields
+	 * @return the new credential
+	 */
+	public static Credential create(String serviceName, String username, String encryptedPassword,
+									String url, String notes, List<String> tags, Map<String, String> customFields) {
+		Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+		return new Credential(UUID.randomUUID(), serviceName, username, encryptedPassword,
+				url, notes, tags, customFields, now, now);
+	}
+
+	/**
+	 * Returns a copy with a different encrypted password, e.g. after re-encryption under a new key.
+	 * The modification time is kept, since the password itself did not change.
+	 */
+	public Credential withEncryptedPassword(String encryptedPassword) {
+		return new Credential(id, serviceName, username, encryptedPassword, url, notes, tags, customFields,
+				createdAt, modifiedAt);
 	}
 
+	/**
+	 * Returns a copy with new optional details, marked as modified now.
+	 */
+	public Credential withDetails(String url, String notes, List<String> tags, Map<String, String> customFields) {
+		return new Credential(id, serviceName, username, encryptedPassword, url, notes, tags, customFields,
+				createdAt, Instant.now().truncatedTo(ChronoUnit.MILLIS));
+	}
+
+	/**
+	 * Returns a copy with a different id, used when migrated records would otherwise collide.
+	 */
+	public Credential withId(UUID id) {
+		return new Credential(id, serviceName, username, encryptedPassword, url, notes, tags, customFields,
+				createdAt, modifiedAt);
+	}
+
+	private static UUID legacyId(String serviceName, String username) {
+		return UUID.nameUUIDFromBytes((serviceName + '\0' + username).getBytes(StandardCharsets.UTF_8));
+	}
 
 	@Override
 	public String toString() {
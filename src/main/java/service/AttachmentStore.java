@@ -0,0 +1,470 @@
+package service;
+
+import model.Credential;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Stores files attached to credentials, such as SSH keys, certificates or recovery codes, encrypted
+ * in fixed-size chunks so that files of any size are streamed with constant memory.
+ * <p>
+ * A credential refers to an attachment through a custom field named {@value #FIELD_PREFIX} and the file
+ * name, whose value is the attachment id. The id is an HMAC of the file content, so a file attached twice,
+ * to the same or another credential, is stored once, and the id reveals nothing about the content to
+ * anyone without the vault key. Each attachment is one file:
+ * <pre>
+ * attachments/store.key      the store key, encrypted under the vault key
+ * attachments/3f/3fa4….att   "#attach1", cipher suite, chunk size, plaintext length,
+ *                            then per chunk: nonce, ciphertext, tag
+ * </pre>
+ * Chunks are encrypted under the store key with the preferred {@link CipherSuite}, each with its own random
+ * nonce. The header, the id and the chunk index are authenticated with every chunk, so chunks cannot be
+ * reordered, truncated or moved between attachments. All chunks but the last have the same length, so any
+ * range of the file is read by decrypting only the chunks that cover it, see {@link #read}.
+ * <p>
+ * The store key is random and only encrypted under the vault key, so a new master password re-encrypts
+ * just that key rather than every attachment, see {@link #rewrapKey}. Attachments are not part of backup
+ * generations or sync.
+ */
+public class AttachmentStore {
+
+    /** The prefix of the custom fields that refer to attachments. */
+    public static final String FIELD_PREFIX = "attachment:";
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final byte[] MAGIC = "#attach1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + Integer.BYTES + Long.BYTES;
+    private static final int CHUNK_OVERHEAD = CipherSuite.NONCE_LENGTH + CipherSuite.TAG_LENGTH;
+    private static final int KEY_LENGTH = 32;
+    private static final byte[] ID_LABEL = "SecurePasswordManager attachment id v1".getBytes(StandardCharsets.UTF_8);
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String SUFFIX = ".att";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path directory;
+    private final Path keyFile;
+    private final int chunkSize;
+
+    // The store key, and the vault key it was decrypted with
+    private SecretKey unlockedWith;
+    private SecretKey storeKey;
+
+    /**
+     * Creates a store in a directory; nothing is written until the first file is attached.
+     *
+     * @param directory The directory holding the attachments.
+     */
+    public AttachmentStore(Path directory) {
+        this(directory, DEFAULT_CHUNK_SIZE);
+    }
+
+    AttachmentStore(Path directory, int chunkSize) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.directory = directory;
+        this.keyFile = directory.resolve("store.key");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return The file holding the store key, which a re-key replaces.
+     */
+    public Path keyFile() {
+        return keyFile;
+    }
+
+    /**
+     * Lists the attachments of a credential.
+     *
+     * @param credential The credential.
+     * @return The attachment ids by file name, in the order they were attached.
+     */
+    public static Map<String, String> attachments(Credential credential) {
+        Map<String, String> attachments = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : credential.customFields().entrySet()) {
+            if (field.getKey().startsWith(FIELD_PREFIX)) {
+                attachments.put(field.getKey().substring(FIELD_PREFIX.length()), field.getValue());
+            }
+        }
+        return attachments;
+    }
+
+    /**
+     * Encrypts a file into the store, unless the same content is stored already.
+     * The file is read twice, once to compute its id and once to encrypt it, one chunk at a time.
+     *
+     * @param source   The file to attach.
+     * @param vaultKey The vault key.
+     * @return The attachment id.
+     * @throws IOException If the file cannot be read, changes while it is read, or cannot be stored.
+     * @throws Exception   If the store key cannot be read or created.
+     */
+    public synchronized String put(Path source, SecretKey vaultKey) throws Exception {
+        SecretKey key = storeKey(vaultKey, true);
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long length = in.size();
+            Mac mac = idMac(key);
+            ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+            for (long position = 0; position < length; position += buffer.limit()) {
+                buffer.clear().limit((int) Math.min(chunkSize, length - position));
+                readFully(in, buffer, position);
+                mac.update(buffer.flip());
+            }
+            byte[] id = mac.doFinal();
+            String name = HEX.formatHex(id);
+            Path target = path(name);
+            if (Files.exists(target)) {
+                return name;
+            }
+            Files.createDirectories(target.getParent());
+            Path temp = target.resolveSibling(name + ".tmp");
+            try {
+                encrypt(in, length, id, key, temp);
+            } catch (Exception e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            move(temp, target);
+            return name;
+        }
+    }
+
+    /**
+     * @param id The attachment id.
+     * @return The length of the attached file in bytes.
+     * @throws IOException If the attachment does not exist or is damaged.
+     */
+    public synchronized long length(String id) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(id), StandardOpenOption.READ)) {
+            return readHeader(channel).length();
+        }
+    }
+
+    /**
+     * Reads a range of an attached file, decrypting only the chunks that cover it.
+     *
+     * @param id       The attachment id.
+     * @param offset   The offset of the range in the file.
+     * @param length   The length of the range; it ends early at the end of the file.
+     * @param vaultKey The vault key.
+     * @return The bytes of the range.
+     * @throws IOException If the attachment does not exist, is damaged or does not authenticate.
+     * @throws Exception   If the store key cannot be read.
+     */
+    public synchronized byte[] read(String id, long offset, int length, SecretKey vaultKey) throws Exception {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range.");
+        }
+        SecretKey key = storeKey(vaultKey, false);
+        try (FileChannel channel = FileChannel.open(path(id), StandardOpenOption.READ)) {
+            Header header = readHeader(channel);
+            long end = Math.min(header.length(), offset + length);
+            if (offset >= end) {
+                return new byte[0];
+            }
+            byte[] range = new byte[(int) (end - offset)];
+            ByteBuffer sealed = ByteBuffer.allocate(header.chunkSize() + CHUNK_OVERHEAD);
+            ByteBuffer plain = ByteBuffer.allocate(header.chunkSize());
+            for (long index = offset / header.chunkSize(); index * header.chunkSize() < end; index++) {
+                decryptChunk(channel, header, HEX.parseHex(id), index, key, sealed, plain);
+                long chunkStart = index * header.chunkSize();
+                int from = (int) Math.max(0, offset - chunkStart);
+                int to = (int) Math.min(plain.limit(), end - chunkStart);
+                plain.get(from, range, (int) (chunkStart + from - offset), to - from);
+            }
+            return range;
+        }
+    }
+
+    /**
+     * Decrypts an attached file to a file, one chunk at a time, and checks its content against its id.
+     * The target is only replaced once it is complete.
+     *
+     * @param id       The attachment id.
+     * @param target   The file to write.
+     * @param vaultKey The vault key.
+     * @return The number of bytes written.
+     * @throws IOException If the attachment does not exist, is damaged or does not authenticate.
+     * @throws Exception   If the store key cannot be read.
+     */
+    public synchronized long export(String id, Path target, SecretKey vaultKey) throws Exception {
+        SecretKey key = storeKey(vaultKey, false);
+        byte[] expected = HEX.parseHex(id);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long written;
+        try (FileChannel channel = FileChannel.open(path(id), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            Header header = readHeader(channel);
+            Mac mac = idMac(key);
+            ByteBuffer sealed = ByteBuffer.allocate(header.chunkSize() + CHUNK_OVERHEAD);
+            ByteBuffer plain = ByteBuffer.allocate(header.chunkSize());
+            for (long index = 0; index < header.chunkCount(); index++) {
+                decryptChunk(channel, header, expected, index, key, sealed, plain);
+                mac.update(plain.duplicate());
+                while (plain.hasRemaining()) {
+                    out.write(plain);
+                }
+            }
+            if (!MessageDigest.isEqual(mac.doFinal(), expected)) {
+                throw new IOException("Attachment " + id + " does not match its id.");
+            }
+            out.force(true);
+            written = header.length();
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        move(temp, target);
+        return written;
+    }
+
+    /**
+     * Deletes an attachment, e.g. once no credential refers to it any more.
+     *
+     * @param id The attachment id.
+     * @throws IOException If the file cannot be deleted.
+     */
+    public synchronized void delete(String id) throws IOException {
+        Files.deleteIfExists(path(id));
+    }
+
+    /**
+     * Deletes every attachment and the store key.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    public synchronized void deleteAll() throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        unlockedWith = null;
+        storeKey = null;
+    }
+
+    /**
+     * Encrypts the store key under a new vault key, for a re-key to stage in place of {@link #keyFile()}.
+     * The attachments themselves stay as they are.
+     *
+     * @param oldKey The current vault key.
+     * @param newKey The new vault key.
+     * @return The new content of the key file, or null if nothing has been attached yet.
+     * @throws Exception If the store key cannot be decrypted with the current key.
+     */
+    public synchronized String rewrapKey(SecretKey oldKey, SecretKey newKey) throws Exception {
+        if (!Files.exists(keyFile)) {
+            return null;
+        }
+        byte[] raw = storeKey(oldKey, false).getEncoded();
+        try {
+            return EncryptionService.encryptBytes(raw, newKey);
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    private void encrypt(FileChannel in, long length, byte[] id, SecretKey key, Path temp) throws Exception {
+        CipherSuite suite = CipherSuite.preferred();
+        Header header = new Header(suite, chunkSize, length);
+        Mac mac = idMac(key);
+        ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+        ByteBuffer sealed = ByteBuffer.allocate(chunkSize + CHUNK_OVERHEAD);
+        byte[] nonce = new byte[CipherSuite.NONCE_LENGTH];
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.wrap(header.bytes()));
+            for (long index = 0; index < header.chunkCount(); index++) {
+                plain.clear().limit(header.chunkLength(index));
+                readFully(in, plain, index * chunkSize);
+                plain.flip();
+                mac.update(plain.duplicate());
+
+                RandomHolder.RANDOM.nextBytes(nonce);
+                Cipher cipher = suite.init(Cipher.ENCRYPT_MODE, key, nonce, 0);
+                cipher.updateAAD(associatedData(header, id, index));
+                sealed.clear().put(nonce);
+                cipher.doFinal(plain, sealed);
+                writeFully(out, sealed.flip());
+            }
+            // The id was computed in the first pass; a file that changed since would be stored under a wrong id
+            if (in.size() != length || !MessageDigest.isEqual(mac.doFinal(), id)) {
+                throw new IOException("The file changed while it was being attached.");
+            }
+            out.force(true);
+        }
+    }
+
+    // Leaves the plaintext of the chunk between position 0 and the limit of plain
+    private static void decryptChunk(FileChannel channel, Header header, byte[] id, long index, SecretKey key,
+                                     ByteBuffer sealed, ByteBuffer plain) throws Exception {
+        sealed.clear().limit(header.chunkLength(index) + CHUNK_OVERHEAD);
+        readFully(channel, sealed, HEADER_LENGTH + index * (header.chunkSize() + (long) CHUNK_OVERHEAD));
+        sealed.flip();
+        Cipher cipher = header.suite().init(Cipher.DECRYPT_MODE, key, sealed.array(), 0);
+        cipher.updateAAD(associatedData(header, id, index));
+        sealed.position(CipherSuite.NONCE_LENGTH);
+        plain.clear();
+        try {
+            cipher.doFinal(sealed, plain);
+        } catch (javax.crypto.AEADBadTagException e) {
+            throw new IOException("Attachment " + HEX.formatHex(id) + " is damaged: chunk " + index + " does not authenticate.");
+        }
+        plain.flip();
+    }
+
+    private static byte[] associatedData(Header header, byte[] id, long index) {
+        return ByteBuffer.allocate(HEADER_LENGTH + id.length + Long.BYTES)
+                .put(header.bytes()).put(id).putLong(index).array();
+    }
+
+    private static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(channel, bytes, 0);
+        bytes.flip();
+        byte[] magic = new byte[MAGIC.length];
+        bytes.get(magic);
+        Header header;
+        try {
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IllegalArgumentException("Not an attachment.");
+            }
+            header = new Header(CipherSuite.forCode(bytes.get()), bytes.getInt(), bytes.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Damaged attachment: " + e.getMessage());
+        }
+        if (channel.size() != header.fileLength()) {
+            throw new IOException("Damaged attachment: it does not have the length its header declares.");
+        }
+        return header;
+    }
+
+    private SecretKey storeKey(SecretKey vaultKey, boolean create) throws Exception {
+        if (vaultKey == unlockedWith && storeKey != null) {
+            return storeKey;
+        }
+        byte[] raw;
+        if (Files.exists(keyFile)) {
+            raw = EncryptionService.decryptBytes(Files.readString(keyFile, StandardCharsets.US_ASCII).trim(), vaultKey);
+            if (raw.length != KEY_LENGTH) {
+                throw new IOException("Damaged attachment store key.");
+            }
+        } else if (create) {
+            raw = new byte[KEY_LENGTH];
+            RandomHolder.RANDOM.nextBytes(raw);
+            Files.createDirectories(directory);
+            Path temp = keyFile.resolveSibling(keyFile.getFileName() + ".tmp");
+            Files.writeString(temp, EncryptionService.encryptBytes(raw, vaultKey), StandardCharsets.US_ASCII);
+            move(temp, keyFile);
+        } else {
+            throw new NoSuchFileException(keyFile.toString(), null, "Nothing has been attached yet.");
+        }
+        storeKey = new SecretKeySpec(raw, "AES");
+        Arrays.fill(raw, (byte) 0);
+        unlockedWith = vaultKey;
+        return storeKey;
+    }
+
+    private static Mac idMac(SecretKey key) throws Exception {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(key);
+        // Derive the id key from the store key, so ids and chunk encryption never share a key
+        byte[] idKey = mac.doFinal(ID_LABEL);
+        mac.init(new SecretKeySpec(idKey, HMAC_ALGORITHM));
+        Arrays.fill(idKey, (byte) 0);
+        return mac;
+    }
+
+    private Path path(String id) {
+        if (id.length() != 64 || !id.chars().allMatch(c -> Character.digit(c, 16) >= 0 && !Character.isUpperCase(c))) {
+            throw new IllegalArgumentException("Invalid attachment id: " + id);
+        }
+        return directory.resolve(id.substring(0, 2)).resolve(id + SUFFIX);
+    }
+
+    // Fills the buffer, from position 0, with the bytes of the file from a position on
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The fixed-length header of an attachment file.
+     *
+     * @param suite     The cipher suite of the chunks.
+     * @param chunkSize The plaintext length of every chunk but the last.
+     * @param length    The plaintext length of the file.
+     */
+    private record Header(CipherSuite suite, int chunkSize, long length) {
+        Header {
+            if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE || length < 0) {
+                throw new IllegalArgumentException("Invalid chunk size or length.");
+            }
+        }
+
+        // An empty file still has one, empty, chunk, so that its header is authenticated too
+        long chunkCount() {
+            return Math.max(1, (length + chunkSize - 1) / chunkSize);
+        }
+
+        int chunkLength(long index) {
+            return (int) Math.min(chunkSize, length - index * chunkSize);
+        }
+
+        long fileLength() {
+            return HEADER_LENGTH + chunkCount() * CHUNK_OVERHEAD + length;
+        }
+
+        byte[] bytes() {
+            return ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).put((byte) suite.code()).putInt(chunkSize).putLong(length).array();
+        }
+    }
+
+    // Seeded on first use, like the one of EncryptionService
+    private static final class RandomHolder {
+        static final SecureRandom RANDOM = new SecureRandom();
+    }
+}
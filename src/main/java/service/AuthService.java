@@ -1,10 +1,17 @@
 package service;
 
 import utils.InputSanitizer;
+import utils.InputSanitizer.CharPolicy;
+import utils.SecretBuffer;
+import utils.StartupTimer;
 
+import javax.crypto.SecretKey;
+import java.io.Console;
+import java.nio.charset.CharacterCodingException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import org.mindrot.jbcrypt.BCrypt;
@@ -15,7 +22,7 @@ import org.mindrot.jbcrypt.BCrypt;
  */
 public class AuthService {
 
-    private static final String PASSWORD_FILE = "master_password.dat";
+    static final String PASSWORD_FILE = "master_password.dat";
     private static final int MAX_ATTEMPTS = 3;
     private static final int MAX_PASSWORD_LENGTH = 64;
     private static final int MAX_TOTP_LENGTH = 6;
@@ -42,14 +49,21 @@ public class AuthService {
         System.out.println("Alternatively, scan a QR code using this URL:");
         System.out.println(TOTPService.getOtpAuthUrl(totpSecret, "user@example.com", "SecurePasswordManager"));
 
-        String sessionPassword = null;
+        String salt = EncryptionService.getOrCreatePersistentSalt();
+        boolean authenticated = false;
 
         for (int attempts = 1; attempts <= MAX_ATTEMPTS; attempts++) {
-            try {
-                System.out.print("\nEnter master password: ");
-                String inputPassword = InputSanitizer.sanitize(scanner.nextLine(), MAX_PASSWORD_LENGTH, false);
-
-                if (!BCrypt.checkpw(inputPassword, masterPasswordHash)) {
+            System.out.print("\nEnter master password: ");
+            StartupTimer.mark("prompt");
+            try (SecretBuffer inputPassword = readSecret(scanner, MAX_PASSWORD_LENGTH)) {
+                // A single PBKDF2 run yields the encryption key and verifies the password
+                VaultEvents.PasswordCheck passwordCheck = new VaultEvents.PasswordCheck();
+                passwordCheck.begin();
+                SecretKey key = EncryptionService.getSecretKey(inputPassword, salt);
+                passwordCheck.matched = verifyMasterKey(inputPassword, key, masterPasswordHash, passwordCheck);
+                passwordCheck.attempt = attempts;
+                passwordCheck.commit();
+                if (!passwordCheck.matched) {
                     System.out.println("Incorrect password.");
                     continue;
                 }
@@ -61,9 +75,15 @@ public class AuthService {
                     throw new IllegalArgumentException("Only numbers are allowed for this field.");
                 }
 
-                if (TOTPService.validateCode(totpSecret, inputCode)) {
+                VaultEvents.TotpCheck totpCheck = new VaultEvents.TotpCheck();
+                totpCheck.begin();
+                totpCheck.valid = TOTPService.validateCode(totpSecret, inputCode);
+                totpCheck.attempt = attempts;
+                totpCheck.commit();
+                if (totpCheck.valid) {
                     System.out.println("Authentication successful.");
-                    sessionPassword = inputPassword;
+                    EncryptionService.openSession(inputPassword, key);
+                    authenticated = true;
                     break;
                 }
             } catch (IllegalArgumentException ex) {
@@ -71,12 +91,35 @@ public class AuthService {
             }
         }
 
-        if (sessionPassword == null) {
+        if (!authenticated) {
             throw new SecurityException("Authentication failed after maximum attempts.");
         }
+    }
 
-        String salt = EncryptionService.getOrCreatePersistentSalt();
-        EncryptionService.setSessionKeyAndSalt(sessionPassword, salt);
+    /**
+     * Verifies a derived key against the stored key-check value.
+     * Vaults created before the key-check value existed are verified once with BCrypt,
+     * after which the key-check value is stored so later unlocks skip BCrypt entirely.
+     *
+     * @param password           The password entered by the user
+     * @param key                The key derived from the password and the persistent salt
+     * @param masterPasswordHash The stored BCrypt hash, used only for legacy vaults
+     * @param event              The event tracing the check, told whether BCrypt was used
+     * @return true if the password is the master password
+     * @throws Exception if the key-check value cannot be read, computed or stored
+     */
+    private boolean verifyMasterKey(SecretBuffer password, SecretKey key, String masterPasswordHash,
+                                    VaultEvents.PasswordCheck event) throws Exception {
+        String keyCheck = EncryptionService.loadKeyCheck();
+        if (keyCheck != null) {
+            return EncryptionService.matchesKeyCheck(key, keyCheck);
+        }
+        event.bcrypt = true;
+        if (!bcryptMatches(password, masterPasswordHash)) {
+            return false;
+        }
+        EncryptionService.storeKeyCheck(EncryptionService.computeKeyCheck(key));
+        return true;
     }
 
     /**
@@ -95,13 +138,11 @@ public class AuthService {
 
         System.out.println("No master password found. Please create one now.");
 
-        String newPassword;
-
-        while (true) {
-            try {
-                System.out.print("New password: ");
-                newPassword = InputSanitizer.sanitize(scanner.nextLine(), MAX_PASSWORD_LENGTH, false);
-
+        String hash = null;
+        while (hash == null) {
+            System.out.print("New password: ");
+            StartupTimer.mark("prompt");
+            try (SecretBuffer newPassword = readSecret(scanner, MAX_PASSWORD_LENGTH)) {
                 int breachCount = PasswordBreachChecker.checkPassword(newPassword);
                 if (breachCount < 0) {
                     System.out.println("Error checking the password against known breaches. Please try again.");
@@ -114,28 +155,83 @@ public class AuthService {
                     continue;
                 }
 
-                if (newPassword.length() < 8) {
+                if (characterCount(newPassword) < 8) {
                     System.out.println("Password must be at least 8 characters long. Please try again.");
                     continue;
                 }
 
                 System.out.print("Re-enter master password to confirm: ");
-                String inputPassword = InputSanitizer.sanitize(scanner.nextLine(), MAX_PASSWORD_LENGTH, false);
-
-                if (!newPassword.equals(inputPassword)) {
-                    System.out.println("Passwords do not match. Please try again.");
-                    continue;
+                try (SecretBuffer inputPassword = readSecret(scanner, MAX_PASSWORD_LENGTH)) {
+                    if (!newPassword.contentEquals(inputPassword)) {
+                        System.out.println("Passwords do not match. Please try again.");
+                        continue;
+                    }
                 }
 
-                break;
+                hash = bcryptHash(newPassword);
             } catch (IllegalArgumentException ex) {
                 System.out.println("Invalid input. " + InputSanitizer.escapeForLog(ex.getMessage()));
             }
         }
 
-        String hash = BCrypt.hashpw(newPassword, BCrypt.gensalt());
         Files.writeString(path, hash);
+        // A key-check value left over from a previous master password would lock the user out
+        EncryptionService.deleteKeyCheck();
         System.out.println("Master password saved.");
         return hash;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a secret into off-heap memory. With a console attached it is read without echo
+     * as a {@code char[]} that is wiped at once, so it never becomes a String; without one,
+     * e.g. when input is piped, it falls back to the scanner.
+     *
+     * @param scanner   The scanner to read from when there is no console.
+     * @param maxLength The maximum allowed length.
+     * @return The sanitized secret, to be closed by the caller.
+     * @throws IllegalArgumentException If the input is empty, too long or unsafe.
+     */
+    static SecretBuffer readSecret(Scanner scanner, int maxLength) {
+        Console console = System.console();
+        char[] input = console != null ? console.readPassword() : scanner.nextLine().toCharArray();
+        return InputSanitizer.sanitizeSecret(input, maxLength, CharPolicy.SAFE_TEXT);
+    }
+
+    /**
+     * Hashes a master password with BCrypt for {@link #PASSWORD_FILE}.
+     * jBCrypt only takes Strings, so the password becomes one for this call and nowhere else.
+     *
+     * @param password The master password.
+     * @return The BCrypt hash.
+     * @throws CharacterCodingException If the password is not valid UTF-8.
+     */
+    static String bcryptHash(SecretBuffer password) throws CharacterCodingException {
+        char[] chars = password.toChars();
+        try {
+            return BCrypt.hashpw(new String(chars), BCrypt.gensalt());
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    // Checks a password against the BCrypt hash of a vault that predates the key-check value
+    private static boolean bcryptMatches(SecretBuffer password, String hash) throws CharacterCodingException {
+        char[] chars = password.toChars();
+        try {
+            return BCrypt.checkpw(new String(chars), hash);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * @param password A password.
+     * @return Its length in characters, as a String would count them.
+     * @throws CharacterCodingException If the password is not valid UTF-8.
+     */
+    static int characterCount(SecretBuffer password) throws CharacterCodingException {
+        char[] chars = password.toChars();
+        Arrays.fill(chars, '\0');
+        return chars.length;
+    }
+}
@@ -0,0 +1,343 @@
+package service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Queries the range API of Have I Been Pwned with k-anonymity: only the first five hex characters of
+ * a password's SHA-1 hash are sent, and the matching suffixes are looked up locally.
+ * <p>
+ * One {@link HttpClient} is shared by all queries, so connections are kept alive and, over HTTP/2,
+ * concurrent queries are multiplexed on one connection. Every request asks for padded responses, so
+ * their size does not reveal the prefix. Queries are asynchronous; failed attempts are retried a
+ * bounded number of times with jittered exponential backoff, and a {@link CircuitBreaker} makes
+ * queries fail at once while the API is down instead of waiting for every timeout. A {@code Retry-After}
+ * that the API sends with a failure is honoured: the retry waits at least that long, and if it asks for
+ * longer than the longest backoff the query fails rather than retrying early.
+ */
+public class BreachRangeClient {
+
+    /** The range endpoint of the Pwned Passwords API; the prefix is appended to it. */
+    public static final URI DEFAULT_BASE_URI = URI.create("https://api.pwnedpasswords.com/range/");
+
+    private static final int PREFIX_LENGTH = 5;
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    /**
+     * Timeouts, retries and circuit breaking.
+     *
+     * @param requestTimeout   How long to wait for a connection, and then for a response.
+     * @param maxAttempts      How many times a query is tried before it fails.
+     * @param initialBackoff   The longest wait before the first retry; it doubles with every further retry.
+     * @param maxBackoff       The longest wait before any retry.
+     * @param failureThreshold How many consecutive failed attempts open the circuit.
+     * @param openFor          How long the circuit stays open before a trial query is let through.
+     */
+    public record Settings(Duration requestTimeout, int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+                           int failureThreshold, Duration openFor) {
+        /** 5 second timeouts, 3 attempts, backoff from 200 ms up to 2 s, and 30 s open after 5 failures. */
+        public static final Settings DEFAULT = new Settings(Duration.ofSeconds(5), 3, Duration.ofMillis(200),
+                Duration.ofSeconds(2), 5, Duration.ofSeconds(30));
+
+        public Settings {
+            if (maxAttempts < 1 || failureThreshold < 1) {
+                throw new IllegalArgumentException("Attempts and failure threshold must be at least 1.");
+            }
+        }
+    }
+
+    /**
+     * Thrown, as the cause of a failed query, when the circuit is open.
+     */
+    public static final class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("The breach API failed repeatedly; not trying again for now.");
+        }
+    }
+
+    /**
+     * Stops requests to a failing service for a while.
+     * <p>
+     * The circuit is closed while requests succeed. After a number of consecutive failures it opens,
+     * and requests are refused. Once the open period has passed, one trial request is let through:
+     * if it succeeds the circuit closes, otherwise it opens again.
+     */
+    public static final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openForNanos;
+        private final LongSupplier nanoClock;
+
+        private int failures;
+        private long openedAt;
+        private boolean open;
+        private boolean trialInFlight;
+
+        /**
+         * @param failureThreshold How many consecutive failures open the circuit.
+         * @param openFor          How long it stays open before a trial request.
+         * @param nanoClock        A monotonic clock in nanoseconds, such as {@link System#nanoTime()}.
+         */
+        public CircuitBreaker(int failureThreshold, Duration openFor, LongSupplier nanoClock) {
+            this.failureThreshold = failureThreshold;
+            this.openForNanos = openFor.toNanos();
+            this.nanoClock = nanoClock;
+        }
+
+        /**
+         * @return true if a request may be sent now.
+         */
+        public synchronized boolean allowRequest() {
+            if (!open) {
+                return true;
+            }
+            if (trialInFlight || nanoClock.getAsLong() - openedAt < openForNanos) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        /**
+         * Records a successful request, closing the circuit.
+         */
+        public synchronized void onSuccess() {
+            failures = 0;
+            open = false;
+            trialInFlight = false;
+        }
+
+        /**
+         * Records a failed request, opening the circuit after too many in a row or a failed trial.
+         */
+        public synchronized void onFailure() {
+            failures++;
+            if (trialInFlight || failures >= failureThreshold) {
+                open = true;
+                openedAt = nanoClock.getAsLong();
+                trialInFlight = false;
+            }
+        }
+
+        /**
+         * @return true if requests are currently refused or limited to a trial.
+         */
+        public synchronized boolean isOpen() {
+            return open;
+        }
+    }
+
+    private static final class Shared {
+        static final BreachRangeClient INSTANCE = new BreachRangeClient(DEFAULT_BASE_URI, Settings.DEFAULT);
+    }
+
+    private final URI baseUri;
+    private final Settings settings;
+    private final HttpClient client;
+    private final CircuitBreaker breaker;
+
+    /**
+     * Creates a client with its own connection pool.
+     *
+     * @param baseUri  The range endpoint, ending with a slash; the prefix is appended to it.
+     * @param settings Timeouts, retries and circuit breaking.
+     */
+    public BreachRangeClient(URI baseUri, Settings settings) {
+        this(baseUri, settings, new CircuitBreaker(settings.failureThreshold(), settings.openFor(), System::nanoTime));
+    }
+
+    BreachRangeClient(URI baseUri, Settings settings, CircuitBreaker breaker) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+        this.breaker = breaker;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(settings.requestTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * @return The client shared by the application, created on first use.
+     */
+    public static BreachRangeClient shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * @return The circuit breaker guarding the API.
+     */
+    public CircuitBreaker circuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Looks up how often a password appears in breaches, by its SHA-1 hash.
+     *
+     * @param sha1 The SHA-1 hash of the UTF-8 encoded password.
+     * @return The number of breaches, 0 if none; fails if the API cannot be queried.
+     */
+    public CompletableFuture<Integer> count(byte[] sha1) {
+        String prefix = HEX.formatHex(sha1, 0, 3).substring(0, PREFIX_LENGTH);
+        return count(prefix, RangeResponse.suffixOf(sha1));
+    }
+
+    /**
+     * Looks up how often a password appears in breaches, by the two parts of its SHA-1 hash in hex.
+     *
+     * @param prefix The first five hex characters, which are sent.
+     * @param suffix The remaining hex characters, which are not.
+     * @return The number of breaches, 0 if none; fails if the API cannot be queried.
+     */
+    public CompletableFuture<Integer> count(String prefix, String suffix) {
+        try {
+            return count(prefix, RangeResponse.suffixOf(suffix));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Integer> count(String prefix, byte[] suffix) {
+        return range(prefix).thenApply(body -> RangeResponse.count(body, suffix));
+    }
+
+    /**
+     * Fetches the suffixes and counts for one prefix.
+     *
+     * @param prefix Five hex characters.
+     * @return The response body, one {@code SUFFIX:COUNT} per line, with padding lines whose count is 0,
+     *         for {@link RangeResponse#count}.
+     */
+    public CompletableFuture<ByteBuffer> range(String prefix) {
+        if (prefix == null || prefix.length() != PREFIX_LENGTH || !isHex(prefix)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Prefix must contain exactly 5 hexadecimal characters."));
+        }
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(prefix.toUpperCase()))
+                .timeout(settings.requestTimeout())
+                .header("Add-Padding", "true")
+                .header("User-Agent", "SecurePasswordManager")
+                .GET()
+                .build();
+        return attempt(request, 1);
+    }
+
+    private CompletableFuture<ByteBuffer> attempt(HttpRequest request, int attempt) {
+        VaultEvents.BreachRequest event = new VaultEvents.BreachRequest();
+        event.attempt = attempt;
+        if (!breaker.allowRequest()) {
+            event.circuitOpen = true;
+            event.commit();
+            return CompletableFuture.failedFuture(new CircuitOpenException());
+        }
+        event.begin();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, error) -> {
+                    Throwable failure = error instanceof CompletionException ? error.getCause() : error;
+                    record(event, response, failure);
+                    Optional<Long> retryAfter = Optional.empty();
+                    if (response != null) {
+                        int status = response.statusCode();
+                        if (status == 200) {
+                            breaker.onSuccess();
+                            return CompletableFuture.completedFuture(ByteBuffer.wrap(response.body()).asReadOnlyBuffer());
+                        }
+                        failure = new IOException("The breach API answered with HTTP " + status + ".");
+                        if (status != 429 && status < 500) {
+                            // The API is up but rejects the request; retrying or opening the circuit would not help
+                            breaker.onSuccess();
+                            return CompletableFuture.<ByteBuffer>failedFuture(failure);
+                        }
+                        retryAfter = retryAfterMillis(response.headers(), Instant.now());
+                    }
+                    breaker.onFailure();
+                    if (attempt >= settings.maxAttempts() || !(failure instanceof IOException)) {
+                        return CompletableFuture.<ByteBuffer>failedFuture(failure);
+                    }
+                    long retryAfterMillis = retryAfter.orElse(0L);
+                    if (retryAfterMillis > settings.maxBackoff().toMillis()) {
+                        return CompletableFuture.<ByteBuffer>failedFuture(new IOException("The breach API answered with HTTP "
+                                + response.statusCode() + " and asked to wait " + (retryAfterMillis + 999) / 1000 + " s before retrying."));
+                    }
+                    long delay = Math.max(backoffMillis(attempt), retryAfterMillis);
+                    return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> attempt(request, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    // Completes the event of one request; it is committed on the thread that handles the response
+    private static void record(VaultEvents.BreachRequest event, HttpResponse<byte[]> response, Throwable failure) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        if (response != null) {
+            event.status = response.statusCode();
+            event.cacheStatus = response.headers().firstValue("CF-Cache-Status").orElse(null);
+            event.bytes = response.body() == null ? 0 : response.body().length;
+        } else if (failure != null) {
+            event.error = failure.getClass().getSimpleName();
+        }
+        event.commit();
+    }
+
+    /**
+     * Reads how long a response asks to wait before the next request, from its {@code Retry-After} header:
+     * either a number of seconds or an HTTP date (RFC 9110, section 10.2.3).
+     *
+     * @param headers The response headers.
+     * @param now     The current time, for a header holding a date.
+     * @return The wait in milliseconds, 0 if the date has passed, or empty if there is no header or it cannot be read.
+     */
+    static Optional<Long> retryAfterMillis(HttpHeaders headers, Instant now) {
+        Optional<String> header = headers.firstValue("Retry-After").map(String::trim);
+        if (header.isEmpty() || header.get().isEmpty()) {
+            return Optional.empty();
+        }
+        String value = header.get();
+        if (value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            // Absurdly long waits are only compared with the longest backoff, so saturating is enough
+            return Optional.of(value.length() > 12 ? Long.MAX_VALUE : Long.parseLong(value) * 1000);
+        }
+        try {
+            Instant until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Optional.of(Math.max(0, Duration.between(now, until).toMillis()));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns a random wait before retrying, up to an exponentially growing bound ("full jitter"),
+     * so that clients that failed together do not retry together.
+     */
+    private long backoffMillis(int attempt) {
+        long bound = Math.min(settings.initialBackoff().toMillis() << (attempt - 1), settings.maxBackoff().toMillis());
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    private static boolean isHex(String text) {
+        return !text.isEmpty() && text.chars().allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'));
+    }
+}
@@ -0,0 +1,281 @@
+package service;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The authenticated ciphers that envelopes from {@link EncryptionService} can be encrypted with.
+ * <p>
+ * Every suite takes the 256-bit vault key, a random 12-byte nonce and appends a 16-byte tag, so an envelope
+ * is always the Base64 encoding of nonce, ciphertext and tag. The suite is recorded in front of it:
+ * AES-GCM envelopes have no prefix, as all envelopes written before suites existed, and the others start
+ * with a short tag ending in a colon, which Base64 never contains. Envelopes of all suites are read side by side,
+ * so a vault can mix them.
+ * <p>
+ * New envelopes use the {@link #preferred() preferred} suite: the one named by {@code -Dcipher.suite}, else
+ * the one the vault index was encrypted with when the vault was last saved, see {@link #adopt(CipherSuite)},
+ * else AES-GCM if the JVM compiles it to the processor's AES instructions, else the one that encrypted fastest
+ * in a short benchmark run on the first write of the process. The index records the choice, so only the first
+ * save of a vault pays for probing the JVM; later processes read it back when they open the vault.
+ */
+public enum CipherSuite {
+
+    /** AES-256 in Galois/Counter Mode, fastest where the processor has AES instructions. */
+    AES_GCM(1, "aes-gcm", "", "AES/GCM/NoPadding") {
+        @Override
+        AlgorithmParameterSpec parameters(byte[] nonce, int offset) {
+            return new GCMParameterSpec(TAG_LENGTH * 8, nonce, offset, NONCE_LENGTH);
+        }
+    },
+
+    /** ChaCha20 with a Poly1305 tag, fastest in software where the processor has no AES instructions. */
+    CHACHA20_POLY1305(2, "chacha20-poly1305", "2:", "ChaCha20-Poly1305") {
+        @Override
+        AlgorithmParameterSpec parameters(byte[] nonce, int offset) {
+            return new IvParameterSpec(nonce, offset, NONCE_LENGTH);
+        }
+    };
+
+    /** The system property that pins the suite for new envelopes instead of running the benchmark. */
+    public static final String PROPERTY = "cipher.suite";
+
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+
+    private static final String[] AES_FLAGS = {"UseAESIntrinsics", "UseAES"};
+    private static final int WARMUP_ROUNDS = 32;
+    private static final int BENCHMARK_ROUNDS = 8;
+    private static final int BENCHMARK_MESSAGES = 4;
+    private static final int BENCHMARK_MESSAGE_LENGTH = 4 * 1024;
+
+    // The suite for new envelopes, once chosen or adopted
+    private static volatile CipherSuite chosen;
+
+    private final int code;
+    private final String id;
+    private final String prefix;
+    private final String transformation;
+
+    CipherSuite(int code, String id, String prefix, String transformation) {
+        this.code = code;
+        this.id = id;
+        this.prefix = prefix;
+        this.transformation = transformation;
+    }
+
+    /**
+     * @return The name of the suite, as given to {@code -Dcipher.suite}.
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return The number identifying the suite in binary formats.
+     */
+    int code() {
+        return code;
+    }
+
+    /**
+     * @return What envelopes of this suite start with.
+     */
+    String prefix() {
+        return prefix;
+    }
+
+    abstract AlgorithmParameterSpec parameters(byte[] nonce, int offset);
+
+    /**
+     * Creates a cipher of this suite.
+     *
+     * @param mode   {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param key    The 256-bit key.
+     * @param nonce  An array holding the nonce.
+     * @param offset Where the nonce starts in it.
+     * @return The initialized cipher.
+     * @throws GeneralSecurityException If the suite is not available or the key does not fit it.
+     */
+    Cipher init(int mode, SecretKey key, byte[] nonce, int offset) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(transformation);
+        cipher.init(mode, key, parameters(nonce, offset));
+        return cipher;
+    }
+
+    /**
+     * @param envelope An encrypted envelope.
+     * @return The suite it was encrypted with.
+     */
+    static CipherSuite of(String envelope) {
+        for (CipherSuite suite : values()) {
+            if (!suite.prefix.isEmpty() && envelope.startsWith(suite.prefix)) {
+                return suite;
+            }
+        }
+        return AES_GCM;
+    }
+
+    /**
+     * @param code The number identifying a suite in binary formats.
+     * @return The suite.
+     * @throws IllegalArgumentException If there is no suite with that number.
+     */
+    static CipherSuite forCode(int code) {
+        for (CipherSuite suite : values()) {
+            if (suite.code == code) {
+                return suite;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cipher suite: " + code);
+    }
+
+    /**
+     * @param id The name of a suite, e.g. {@code chacha20-poly1305}.
+     * @return The suite.
+     * @throws IllegalArgumentException If there is no suite of that name.
+     */
+    public static CipherSuite forId(String id) {
+        for (CipherSuite suite : values()) {
+            if (suite.id.equals(id.trim().toLowerCase(Locale.ROOT))) {
+                return suite;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cipher suite: " + id);
+    }
+
+    /**
+     * The suite for new envelopes, chosen once per process on first use, which is the first write unless
+     * an opened vault told it first.
+     *
+     * @return The suite named by {@code -Dcipher.suite}, else the one adopted from the vault, else AES-GCM
+     *         where it runs on AES instructions, else the one that encrypted fastest.
+     */
+    public static CipherSuite preferred() {
+        CipherSuite suite = chosen;
+        return suite != null ? suite : choose(null);
+    }
+
+    /**
+     * Takes over the suite that an earlier process chose for this vault, as recorded by the envelope of its
+     * index, so that this process does not probe the JVM again. Nothing changes if the suite is already
+     * chosen; {@code -Dcipher.suite} still wins.
+     *
+     * @param recorded The suite the vault index was encrypted with.
+     * @return The suite for new envelopes.
+     */
+    static CipherSuite adopt(CipherSuite recorded) {
+        CipherSuite suite = chosen;
+        return suite != null ? suite : choose(recorded);
+    }
+
+    private static synchronized CipherSuite choose(CipherSuite recorded) {
+        if (chosen == null) {
+            chosen = select(recorded);
+        }
+        return chosen;
+    }
+
+    /**
+     * Chooses the suite for new envelopes, reading the cheap sources first: the system property, then the
+     * suite recorded by the vault, and only then the JVM's flags or the benchmark.
+     *
+     * @param recorded The suite the vault was last saved with, or null if none is known.
+     * @return The suite.
+     */
+    static CipherSuite select(CipherSuite recorded) {
+        String pinned = System.getProperty(PROPERTY);
+        if (pinned != null) {
+            try {
+                return forId(pinned);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring -D" + PROPERTY + ": " + e.getMessage());
+            }
+        }
+        if (recorded != null) {
+            return recorded;
+        }
+        return hasAesIntrinsics() ? AES_GCM : fastest();
+    }
+
+    /**
+     * Asks HotSpot whether it uses the processor's AES instructions, with which AES-GCM beats ChaCha20 once
+     * compiled. Reading the flag is cheaper and steadier than timing both suites while the JIT compiler
+     * is still at work. {@code UseAESIntrinsics} is a diagnostic flag, only visible with
+     * {@code -XX:+UnlockDiagnosticVMOptions}; otherwise {@code UseAES} is read, which HotSpot turns off
+     * on processors without AES instructions.
+     *
+     * @return true if the flag is on; false if it is off or the JVM has neither flag.
+     */
+    static boolean hasAesIntrinsics() {
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            if (hotSpot == null) {
+                return false;
+            }
+            for (String flag : AES_FLAGS) {
+                try {
+                    return Boolean.parseBoolean(hotSpot.getVMOption(flag).getValue());
+                } catch (IllegalArgumentException e) {
+                    // Not visible in this JVM; try the next one
+                }
+            }
+            return false;
+        } catch (LinkageError e) {
+            // Not HotSpot
+            return false;
+        }
+    }
+
+    /**
+     * Encrypts a few record-sized messages with each available suite, alternating between them so that
+     * both see the same state of the JIT compiler, and returns the one with the fastest round.
+     * Both are run a number of times first, so that the rounds measure compiled code rather than which
+     * suite the JIT compiler happened to reach first.
+     *
+     * @return The fastest suite, or AES-GCM if no other suite is available.
+     */
+    static CipherSuite fastest() {
+        SecretKey key = new SecretKeySpec(new byte[32], "AES");
+        byte[] message = new byte[BENCHMARK_MESSAGE_LENGTH];
+        byte[] nonce = new byte[NONCE_LENGTH];
+        long[] best = new long[values().length];
+        Arrays.fill(best, Long.MAX_VALUE);
+        for (int round = -WARMUP_ROUNDS; round < BENCHMARK_ROUNDS; round++) {
+            for (CipherSuite suite : values()) {
+                long start = System.nanoTime();
+                try {
+                    for (int i = 0; i < BENCHMARK_MESSAGES; i++) {
+                        // A fresh nonce per message: ChaCha20 refuses to encrypt twice under one key and nonce
+                        nonce[0] = (byte) round;
+                        nonce[1] = (byte) (round >> 8);
+                        nonce[2] = (byte) i;
+                        suite.init(Cipher.ENCRYPT_MODE, key, nonce, 0).doFinal(message);
+                    }
+                } catch (GeneralSecurityException e) {
+                    // Not available from the installed providers; never preferred
+                    continue;
+                }
+                if (round >= 0) {
+                    best[suite.ordinal()] = Math.min(best[suite.ordinal()], System.nanoTime() - start);
+                }
+            }
+        }
+        CipherSuite fastest = AES_GCM;
+        for (CipherSuite suite : values()) {
+            if (best[suite.ordinal()] < best[fastest.ordinal()]) {
+                fastest = suite;
+            }
+        }
+        return fastest;
+    }
+}
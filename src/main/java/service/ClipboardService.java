@@ -0,0 +1,347 @@
+package service;
+
+import utils.SecretBuffer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.Transferable;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies secrets to a clipboard and clears them again after a timeout.
+ * <p>
+ * The backend is chosen and initialized once: the system clipboard through AWT when a display is
+ * available, otherwise an OSC 52 escape sequence that asks the terminal to set its clipboard, which
+ * also works over SSH. Each copy schedules a clear on a virtual-thread scheduler. The clear only
+ * happens if the clipboard still holds what was copied, so text the user copied since is left alone;
+ * to check that without keeping the secret, only a keyed hash of it is remembered. Backends that
+ * cannot read the clipboard are cleared if no other copy was made through this service since.
+ */
+public class ClipboardService implements AutoCloseable {
+
+    /** How long a copied secret stays on the clipboard by default. */
+    public static final Duration DEFAULT_CLEAR_AFTER = Duration.ofSeconds(30);
+
+    /** System property overriding {@link #DEFAULT_CLEAR_AFTER}, in seconds. */
+    public static final String CLEAR_AFTER_PROPERTY = "clipboard.clearSeconds";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * A clipboard the service can write to.
+     */
+    public interface Backend {
+        /**
+         * @return A short description for messages, e.g. "system clipboard".
+         */
+        String name();
+
+        /**
+         * Puts a secret on the clipboard.
+         *
+         * @param secret The secret.
+         * @throws Exception If the clipboard cannot be written.
+         */
+        void write(SecretBuffer secret) throws Exception;
+
+        /**
+         * Reads the current text on the clipboard.
+         *
+         * @return The text, an empty string if it holds no text, or null if this backend cannot read it.
+         * @throws Exception If the clipboard cannot be read.
+         */
+        String read() throws Exception;
+
+        /**
+         * Empties the clipboard.
+         *
+         * @throws Exception If the clipboard cannot be written.
+         */
+        void clear() throws Exception;
+    }
+
+    private final Backend backend;
+    private final Duration clearAfter;
+    private final ScheduledExecutorService scheduler;
+    private final SecretKeySpec digestKey;
+
+    private long generation;
+    private byte[] lastDigest;
+    private ScheduledFuture<?> pendingClear;
+    private boolean closed;
+
+    /**
+     * Creates a clipboard service over a backend.
+     *
+     * @param backend    The clipboard to use.
+     * @param clearAfter How long a copied secret stays on the clipboard.
+     * @throws IllegalArgumentException If the timeout is not positive.
+     */
+    public ClipboardService(Backend backend, Duration clearAfter) {
+        if (clearAfter.isNegative() || clearAfter.isZero()) {
+            throw new IllegalArgumentException("Clipboard timeout must be positive.");
+        }
+        this.backend = backend;
+        this.clearAfter = clearAfter;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("clipboard-clear").factory());
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.digestKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        Arrays.fill(keyBytes, (byte) 0);
+    }
+
+    /**
+     * Creates a clipboard service over the best available backend, with the timeout from the
+     * {@value #CLEAR_AFTER_PROPERTY} system property or {@link #DEFAULT_CLEAR_AFTER}.
+     *
+     * @return The clipboard service.
+     * @throws IllegalStateException If there is neither a display nor a terminal.
+     */
+    public static ClipboardService createDefault() {
+        Backend backend = detectBackend();
+        if (backend == null) {
+            throw new IllegalStateException("No clipboard available: no display and no terminal.");
+        }
+        return new ClipboardService(backend,
+                Duration.ofSeconds(Long.getLong(CLEAR_AFTER_PROPERTY, DEFAULT_CLEAR_AFTER.toSeconds())));
+    }
+
+    /**
+     * Chooses a backend: the system clipboard if a display is available, otherwise the terminal.
+     *
+     * @return The backend, or null if there is neither a display nor a terminal.
+     */
+    static Backend detectBackend() {
+        if (!GraphicsEnvironment.isHeadless()) {
+            try {
+                return new AwtBackend();
+            } catch (Exception | Error e) {
+                // No usable display after all, e.g. a DISPLAY that cannot be reached
+            }
+        }
+        if (System.console() != null) {
+            return new Osc52Backend(System.out);
+        }
+        return null;
+    }
+
+    /**
+     * @return The backend in use.
+     */
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * @return How long a copied secret stays on the clipboard.
+     */
+    public Duration clearAfter() {
+        return clearAfter;
+    }
+
+    /**
+     * Copies a secret to the clipboard and schedules it to be cleared.
+     * A clear scheduled by an earlier copy is cancelled.
+     *
+     * @param secret The secret; it can be closed as soon as this returns.
+     * @throws Exception If the clipboard cannot be written.
+     * @throws IllegalStateException If the service is closed.
+     */
+    public synchronized void copy(SecretBuffer secret) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Clipboard service is closed.");
+        }
+        backend.write(secret);
+        lastDigest = digest(secret.view());
+        long scheduled = ++generation;
+        if (pendingClear != null) {
+            pendingClear.cancel(false);
+        }
+        pendingClear = scheduler.schedule(() -> clearQuietly(scheduled), clearAfter.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Clears the clipboard now if it still holds the last secret copied, and cancels the scheduled clear.
+     *
+     * @return true if the clipboard was cleared.
+     * @throws Exception If the clipboard cannot be read or written.
+     */
+    public synchronized boolean clearNow() throws Exception {
+        if (pendingClear != null) {
+            pendingClear.cancel(false);
+        }
+        return clearIfUnchanged(generation);
+    }
+
+    /**
+     * Clears a pending secret, as {@link #clearNow()}, and stops the scheduler.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            clearNow();
+        } catch (Exception e) {
+            System.err.println("Could not clear clipboard: " + e.getMessage());
+        }
+        closed = true;
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void clearQuietly(long scheduled) {
+        try {
+            clearIfUnchanged(scheduled);
+        } catch (Exception e) {
+            System.err.println("Could not clear clipboard: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Clears the clipboard if the given copy is still the latest one and the clipboard still holds it.
+     */
+    private boolean clearIfUnchanged(long scheduled) throws Exception {
+        if (scheduled != generation || lastDigest == null) {
+            return false;
+        }
+        byte[] expected = lastDigest;
+        lastDigest = null;
+        pendingClear = null;
+
+        String current = backend.read();
+        if (current != null) {
+            byte[] bytes = current.getBytes(StandardCharsets.UTF_8);
+            try {
+                if (!MessageDigest.isEqual(digest(ByteBuffer.wrap(bytes)), expected)) {
+                    return false;
+                }
+            } finally {
+                Arrays.fill(bytes, (byte) 0);
+            }
+        }
+        backend.clear();
+        return true;
+    }
+
+    private byte[] digest(ByteBuffer content) throws Exception {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(digestKey);
+        mac.update(content);
+        return mac.doFinal();
+    }
+
+    /**
+     * The system clipboard through AWT. The toolkit is loaded once, when the backend is created.
+     */
+    public static final class AwtBackend implements Backend {
+        private final Clipboard clipboard;
+
+        /**
+         * @throws java.awt.HeadlessException If there is no display.
+         */
+        public AwtBackend() {
+            this.clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+        }
+
+        @Override
+        public String name() {
+            return "system clipboard";
+        }
+
+        /**
+         * AWT only transfers Strings, so this is the one place a copied secret becomes one.
+         */
+        @Override
+        public void write(SecretBuffer secret) throws Exception {
+            char[] chars = secret.toChars();
+            try {
+                clipboard.setContents(new StringSelection(new String(chars)), null);
+            } finally {
+                Arrays.fill(chars, '\0');
+            }
+        }
+
+        @Override
+        public String read() throws Exception {
+            Transferable contents = clipboard.getContents(null);
+            if (contents == null || !contents.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+                return "";
+            }
+            return (String) contents.getTransferData(DataFlavor.stringFlavor);
+        }
+
+        @Override
+        public void clear() {
+            clipboard.setContents(new StringSelection(""), null);
+        }
+    }
+
+    /**
+     * The terminal's clipboard, set with the OSC 52 escape sequence. Works over SSH in terminals
+     * that support it; the clipboard cannot be read back.
+     */
+    public static final class Osc52Backend implements Backend {
+        private static final byte[] START = "\u001b]52;c;".getBytes(StandardCharsets.US_ASCII);
+        private static final byte BELL = 0x07;
+
+        private final PrintStream terminal;
+
+        /**
+         * @param terminal The stream connected to the terminal.
+         */
+        public Osc52Backend(PrintStream terminal) {
+            this.terminal = terminal;
+        }
+
+        @Override
+        public String name() {
+            return "terminal clipboard (OSC 52)";
+        }
+
+        @Override
+        public void write(SecretBuffer secret) {
+            ByteBuffer encoded = Base64.getEncoder().encode(secret.view());
+            try {
+                send(encoded.array(), encoded.remaining());
+            } finally {
+                Arrays.fill(encoded.array(), (byte) 0);
+            }
+        }
+
+        @Override
+        public String read() {
+            return null;
+        }
+
+        @Override
+        public void clear() {
+            send(new byte[0], 0);
+        }
+
+        private void send(byte[] payload, int length) {
+            synchronized (terminal) {
+                terminal.write(START, 0, START.length);
+                terminal.write(payload, 0, length);
+                terminal.write(BELL);
+                terminal.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package service;
+
+import model.Credential;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Serializes credentials into the compact binary plaintext of a vault record.
+ * <p>
+ * Layout: a NUL marker byte (text records of the original format never start with one),
+ * a version byte, the 128-bit id, created and modified times as varint epoch milliseconds,
+ * then service name, username, encrypted password, URL and notes as varint-length UTF-8
+ * strings, followed by the tags and the custom fields, each prefixed by a varint count.
+ * Strings are never escaped, so any character survives a round trip.
+ * <p>
+ * A record of at least {@link #COMPRESSION_THRESHOLD} bytes, typically one with long notes, is compressed
+ * before it is encrypted: the version byte is replaced by {@link #DEFLATED}, followed by the varint length
+ * of the fields after the version byte and those fields compressed with raw Deflate. Smaller records, and
+ * records that would not shrink, are stored as they are, so they read the same as before compression existed.
+ */
+public final class CredentialCodec {
+
+    static final byte MARKER = 0x00;
+    static final byte VERSION = 1;
+    static final byte DEFLATED = 2;
+    /** Records shorter than this are not compressed; below it Deflate saves too little to pay for itself. */
+    static final int COMPRESSION_THRESHOLD = 512;
+    // Far above the largest record the field limits of CredentialStorage allow
+    private static final int MAX_RECORD_LENGTH = 4 * 1024 * 1024;
+
+    // One native zlib stream per thread, reset between records instead of allocated and ended for each
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private CredentialCodec() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Encodes a credential.
+     *
+     * @param credential The credential to encode.
+     * @return The record plaintext.
+     */
+    public static byte[] encode(Credential credential) {
+        return encode(credential, COMPRESSION_THRESHOLD);
+    }
+
+    /**
+     * Encodes a credential, compressing it from a given size on.
+     *
+     * @param credential The credential to encode.
+     * @param threshold  The smallest record to compress.
+     * @return The record plaintext.
+     */
+    static byte[] encode(Credential credential, int threshold) {
+        Writer out = new Writer();
+        out.write(MARKER);
+        out.write(VERSION);
+        out.writeLong(credential.id().getMostSignificantBits());
+        out.writeLong(credential.id().getLeastSignificantBits());
+        out.writeVarLong(credential.createdAt().toEpochMilli());
+        out.writeVarLong(credential.modifiedAt().toEpochMilli());
+        out.writeString(credential.serviceName());
+        out.writeString(credential.username());
+        out.writeString(credential.encryptedPassword());
+        out.writeString(credential.url());
+        out.writeString(credential.notes());
+        out.writeVarLong(credential.tags().size());
+        for (String tag : credential.tags()) {
+            out.writeString(tag);
+        }
+        out.writeVarLong(credential.customFields().size());
+        for (Map.Entry<String, String> field : credential.customFields().entrySet()) {
+            out.writeString(field.getKey());
+            out.writeString(field.getValue());
+        }
+        if (out.size() >= threshold) {
+            byte[] compressed = compress(out);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Compresses the fields after the version byte, or returns null if the record would not get shorter
+    private static byte[] compress(Writer record) {
+        int length = record.size() - 2;
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(record.buffer(), 2, length);
+        deflater.finish();
+        byte[] compressed = new byte[length];
+        int size = 0;
+        while (!deflater.finished() && size < compressed.length) {
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        Writer out = new Writer();
+        out.write(MARKER);
+        out.write(DEFLATED);
+        out.writeVarLong(length);
+        out.write(compressed, 0, size);
+        return out.size() < record.size() ? out.toByteArray() : null;
+    }
+
+    private static byte[] decompress(Reader in) {
+        long length = in.readVarLong();
+        if (length < 0 || length > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Invalid length in credential record.");
+        }
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        in.remainingInto(inflater);
+        // One spare byte, so that a stream longer than announced is noticed
+        byte[] fields = new byte[(int) length + 1];
+        int size = 0;
+        try {
+            while (!inflater.finished() && size < fields.length) {
+                int inflated = inflater.inflate(fields, size, fields.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed credential record.", e);
+        }
+        if (!inflater.finished() || size != length || inflater.getRemaining() != 0) {
+            throw new IllegalArgumentException("Corrupt compressed credential record.");
+        }
+        return Arrays.copyOf(fields, size);
+    }
+
+    /**
+     * Checks whether a record plaintext is in this binary format rather than the original text format.
+     *
+     * @param record The record plaintext.
+     * @return true if {@link #decode(byte[])} should be used.
+     */
+    public static boolean isBinary(byte[] record) {
+        return record.length > 0 && record[0] == MARKER;
+    }
+
+    /**
+     * Decodes a credential.
+     *
+     * @param record The record plaintext.
+     * @return The credential.
+     * @throws IllegalArgumentException If the record is truncated or has an unknown version.
+     */
+    public static Credential decode(byte[] record) {
+        Reader in = new Reader(record);
+        if (in.read() != MARKER) {
+            throw new IllegalArgumentException("Not a binary credential record.");
+        }
+        int version = in.read();
+        if (version == DEFLATED) {
+            in = new Reader(decompress(in));
+        } else if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported credential record version: " + version);
+        }
+        UUID id = new UUID(in.readLong(), in.readLong());
+        Instant createdAt = Instant.ofEpochMilli(in.readVarLong());
+        Instant modifiedAt = Instant.ofEpochMilli(in.readVarLong());
+        String serviceName = in.readString();
+        String username = in.readString();
+        String encryptedPassword = in.readString();
+        String url = in.readString();
+        String notes = in.readString();
+
+        int tagCount = in.readCount();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add(in.readString());
+        }
+        int fieldCount = in.readCount();
+        Map<String, String> customFields = new LinkedHashMap<>();
+        for (int i = 0; i < fieldCount; i++) {
+            customFields.put(in.readString(), in.readString());
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes in credential record.");
+        }
+        return new Credential(id, serviceName, username, encryptedPassword, url, notes, tags, customFields,
+                createdAt, modifiedAt);
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+        Writer() {
+            super(128);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int read() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Truncated credential record.");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in credential record.");
+        }
+
+        int readCount() {
+            long count = readVarLong();
+            if (count < 0 || count > data.length - position) {
+                throw new IllegalArgumentException("Invalid length in credential record.");
+            }
+            return (int) count;
+        }
+
+        String readString() {
+            int length = readCount();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void remainingInto(Inflater inflater) {
+            inflater.setInput(data, position, data.length - position);
+            position = data.length;
+        }
+
+        boolean hasRemaining() {
+            return position < data.length;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package service;
+
+import model.Credential;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes credential listings as text lines or as JSON, without passwords or notes.
+ * <p>
+ * Output is assembled with plain appends into a reusable line buffer and handed to a large
+ * buffered writer, so a page reaches the terminal in a few writes instead of one formatted,
+ * flushed write per line. Call {@link #flush()} once a page is complete.
+ */
+public class CredentialListWriter implements Flushable {
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+        /** One human-readable line per credential. */
+        TEXT,
+        /** One JSON object per page: {@code {"items":[...],"nextCursor":...}}. */
+        JSON;
+
+        /**
+         * Parses a format name such as {@code json}, ignoring case.
+         *
+         * @param name The format name.
+         * @return The format.
+         * @throws IllegalArgumentException If the name is unknown.
+         */
+        public static Format parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format: " + name + " (expected text or json).");
+            }
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final Format format;
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Creates a writer over any character stream.
+     *
+     * @param out    The destination.
+     * @param format The output format.
+     */
+    public CredentialListWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Creates a writer over {@code System.out} with a 64 KiB buffer.
+     * Only {@link #flush()} it; closing it would close standard output.
+     *
+     * @param format The output format.
+     * @return The writer.
+     */
+    public static CredentialListWriter toStandardOutput(Format format) {
+        return new CredentialListWriter(
+                new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE), format);
+    }
+
+    /**
+     * Writes a page of a sorted listing.
+     * Text output ends with a hint for the next page if there is one.
+     *
+     * @param page The page.
+     * @throws IOException If writing fails.
+     */
+    public void writePage(CredentialListing.Page page) throws IOException {
+        if (format == Format.JSON) {
+            out.write("{\"items\":[");
+            for (int i = 0; i < page.items().size(); i++) {
+                line.setLength(0);
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendJson(page.items().get(i));
+                out.append(line);
+            }
+            out.write("],\"nextCursor\":");
+            line.setLength(0);
+            appendJsonString(page.nextCursor());
+            line.append("}\n");
+            out.append(line);
+            return;
+        }
+        for (Credential credential : page.items()) {
+            writeTextLine("-", credential);
+        }
+        if (page.nextCursor() != null) {
+            out.write("More results: --cursor " + page.nextCursor() + "\n");
+        }
+    }
+
+    /**
+     * Writes credentials as numbered text lines, e.g. for choosing one by number.
+     *
+     * @param items       The credentials.
+     * @param firstNumber The number of the first credential.
+     * @throws IOException If writing fails.
+     */
+    public void writeNumbered(List<Credential> items, int firstNumber) throws IOException {
+        for (int i = 0; i < items.size(); i++) {
+            writeTextLine((firstNumber + i) + ".", items.get(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeTextLine(String label, Credential c) throws IOException {
+        line.setLength(0);
+        line.append(label).append(" Service: ").append(c.serviceName())
+                .append(" | Username: ").append(c.username());
+        if (!c.url().isEmpty()) {
+            line.append(" | URL: ").append(c.url());
+        }
+        if (!c.tags().isEmpty()) {
+            line.append(" | Tags: ");
+            for (int i = 0; i < c.tags().size(); i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(c.tags().get(i));
+            }
+        }
+        line.append('\n');
+        out.append(line);
+    }
+
+    private void appendJson(Credential c) {
+        line.append("{\"id\":\"").append(c.id()).append('"');
+        line.append(",\"service\":");
+        appendJsonString(c.serviceName());
+        line.append(",\"username\":");
+        appendJsonString(c.username());
+        line.append(",\"url\":");
+        appendJsonString(c.url());
+        line.append(",\"tags\":[");
+        for (int i = 0; i < c.tags().size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendJsonString(c.tags().get(i));
+        }
+        line.append("],\"created\":\"").append(c.createdAt())
+                .append("\",\"modified\":\"").append(c.modifiedAt()).append("\"}");
+    }
+
+    private void appendJsonString(String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
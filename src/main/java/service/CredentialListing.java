@@ -0,0 +1,185 @@
+package service;
+
+import model.Credential;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Keeps credentials pre-sorted in every {@link SortOrder} so that a page of a listing can be
+ * produced without sorting or scanning the whole vault.
+ * <p>
+ * Each order is a balanced tree updated in O(log n) on add and remove. A page starts after a cursor,
+ * the id of the last credential of the previous page, so fetching a page costs O(log n + page size)
+ * no matter how deep into the listing it is. With a filter, non-matching entries are skipped while
+ * walking the tree.
+ */
+public final class CredentialListing {
+
+    /**
+     * The orders a listing can be sorted in. Ties are broken by id, so every order is total.
+     */
+    public enum SortOrder {
+        /** By service name, then username, ignoring case. */
+        SERVICE(Comparator.comparing(Credential::serviceName, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Credential::username, String.CASE_INSENSITIVE_ORDER)),
+        /** By username, then service name, ignoring case. */
+        USERNAME(Comparator.comparing(Credential::username, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Credential::serviceName, String.CASE_INSENSITIVE_ORDER)),
+        /** Most recently modified first. */
+        MODIFIED(Comparator.comparing(Credential::modifiedAt).reversed());
+
+        private final Comparator<Credential> comparator;
+
+        SortOrder(Comparator<Credential> comparator) {
+            this.comparator = comparator.thenComparing(Credential::id);
+        }
+
+        /**
+         * Parses an order name such as {@code modified}, ignoring case.
+         *
+         * @param name The order name.
+         * @return The sort order.
+         * @throws IllegalArgumentException If the name is unknown.
+         */
+        public static SortOrder parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown sort order: " + name
+                        + " (expected service, username or modified).");
+            }
+        }
+    }
+
+    /**
+     * One page of a listing.
+     *
+     * @param items      The credentials on this page.
+     * @param nextCursor The cursor for the next page, or null if this is the last page.
+     */
+    public record Page(List<Credential> items, String nextCursor) {
+    }
+
+    private final Map<SortOrder, NavigableSet<Credential>> orders = new EnumMap<>(SortOrder.class);
+    private final Map<UUID, Credential> byId = new HashMap<>();
+
+    /**
+     * Creates a listing over the given credentials.
+     *
+     * @param credentials The credentials to list.
+     */
+    public CredentialListing(Collection<Credential> credentials) {
+        for (SortOrder order : SortOrder.values()) {
+            orders.put(order, new TreeSet<>(order.comparator));
+        }
+        credentials.forEach(this::add);
+    }
+
+    /**
+     * Adds a credential, or replaces the listed version of a credential with the same id.
+     *
+     * @param credential The credential.
+     */
+    public void add(Credential credential) {
+        remove(credential);
+        byId.put(credential.id(), credential);
+        for (NavigableSet<Credential> sorted : orders.values()) {
+            sorted.add(credential);
+        }
+    }
+
+    /**
+     * Removes a credential by id. Does nothing if it is not listed.
+     *
+     * @param credential The credential.
+     */
+    public void remove(Credential credential) {
+        Credential existing = byId.remove(credential.id());
+        if (existing != null) {
+            for (NavigableSet<Credential> sorted : orders.values()) {
+                sorted.remove(existing);
+            }
+        }
+    }
+
+    /**
+     * Replaces every listed credential, e.g. after the vault was reloaded.
+     *
+     * @param credentials The credentials to list.
+     */
+    public void rebuild(Collection<Credential> credentials) {
+        byId.clear();
+        orders.values().forEach(NavigableSet::clear);
+        credentials.forEach(this::add);
+    }
+
+    /**
+     * @return The number of listed credentials.
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Returns one page of the listing.
+     *
+     * @param order    The sort order.
+     * @param cursor   The cursor returned with the previous page, or null for the first page.
+     * @param pageSize The maximum number of credentials on the page.
+     * @param filter   Which credentials to include.
+     * @return The page.
+     * @throws IllegalArgumentException If the page size is not positive or the cursor is unknown,
+     *                                  e.g. because that credential has been deleted since.
+     */
+    public Page page(SortOrder order, String cursor, int pageSize, Predicate<Credential> filter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        NavigableSet<Credential> sorted = orders.get(order);
+        if (cursor != null && !cursor.isEmpty()) {
+            Credential last = resolveCursor(cursor);
+            sorted = sorted.tailSet(last, false);
+        }
+
+        List<Credential> items = new ArrayList<>(Math.min(pageSize, byId.size()));
+        Iterator<Credential> iterator = sorted.iterator();
+        while (iterator.hasNext() && items.size() < pageSize) {
+            Credential credential = iterator.next();
+            if (filter.test(credential)) {
+                items.add(credential);
+            }
+        }
+
+        boolean more = false;
+        while (iterator.hasNext() && !more) {
+            more = filter.test(iterator.next());
+        }
+        String nextCursor = more ? items.getLast().id().toString() : null;
+        return new Page(items, nextCursor);
+    }
+
+    private Credential resolveCursor(String cursor) {
+        Credential last;
+        try {
+            last = byId.get(UUID.fromString(cursor));
+        } catch (IllegalArgumentException e) {
+            last = null;
+        }
+        if (last == null) {
+            throw new IllegalArgumentException("Unknown cursor: " + cursor);
+        }
+        return last;
+    }
+}
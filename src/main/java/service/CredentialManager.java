@@ -2,23 +2,46 @@ package service;
 
 import model.Credential;
 import utils.InputSanitizer;
+import utils.InputSanitizer.CharPolicy;
+import utils.Passphrase;
 import utils.PasswordGenerator;
-import org.mindrot.jbcrypt.BCrypt;
+import utils.SecretBuffer;
+import utils.StartupTimer;
 
-import java.awt.datatransfer.Clipboard;
-import java.awt.datatransfer.StringSelection;
-import java.awt.Toolkit;
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Predicate;
 
 /**
  * Handles user interaction for managing credentials, including
  * listing, adding, removing, searching, decrypting, and copying passwords.
  */
 public class CredentialManager {
+	private static final int PAGE_SIZE = 20;
+	private static final int MAX_PATH_LENGTH = 4096;
+
 	private final List<Credential> credentials;
+	private final TagIndex tagIndex;
+	private final CredentialListing listing;
 	private final Scanner scanner = new Scanner(System.in);
+	private ClipboardService clipboard;
+	// Codes of the two-factor seeds, and the encrypted seeds they were computed from
+	private OtpCodeCache otpCodes;
+	private Map<UUID, String> otpFields = Map.of();
 
 	/**
 	 * Initializes the credential manager with a list of credentials.
@@ -27,6 +50,8 @@ public class CredentialManager {
 	 */
 	public CredentialManager(List<Credential> credentials) {
 		this.credentials = credentials;
+		this.tagIndex = new TagIndex(credentials);
+		this.listing = new CredentialListing(credentials);
 	}
 
 	/**
@@ -35,23 +60,42 @@ public class CredentialManager {
 	public void showMenu() {
 		while (true) {
 			System.out.println("\n=== Credential Manager ===");
-			System.out.println("1. List all credentials");
+			System.out.println("1. List credentials (sorted, paged, optionally filtered by tags)");
 			System.out.println("2. Add new credential");
 			System.out.println("3. Delete a credential");
 			System.out.println("4. Copy password to clipboard");
 			System.out.println("5. Check if any password has been compromised");
-			System.out.println("6. Exit");
+			System.out.println("6. Change master password");
+			System.out.println("7. Vault health report");
+			System.out.println("8. Restore a backup generation");
+			System.out.println("9. Sync with another device");
+			System.out.println("10. Attachments");
+			System.out.println("11. Split the vault into shards");
+			System.out.println("12. Two-factor codes");
+			System.out.println("13. Exit");
 			System.out.print("Choose an option: ");
+			StartupTimer.mark("menu");
 			String option = scanner.nextLine();
 
 			// Menu options handled using a switch expression
 			switch (option) {
-				case "1" -> listCredentials();
+				case "1" -> {
+					System.out.print("Filter by tags (e.g. prod AND aws NOT deprecated), or press Enter for all: ");
+					String filter = scanner.nextLine();
+					listCredentials(filter, askSortOrder());
+				}
 				case "2" -> addCredential();
 				case "3" -> removeCredential();
 				case "4" -> copyPasswordToClipboard();
 				case "5" -> checkCompromisedPasswords();
-				case "6" -> {
+				case "6" -> changeMasterPassword();
+				case "7" -> showHealthReport();
+				case "8" -> restoreBackup();
+				case "9" -> syncWithReplica();
+				case "10" -> manageAttachments();
+				case "11" -> reshardVault();
+				case "12" -> showOtpCodes();
+				case "13" -> {
 					saveAndExit();
 					return;
 				}
@@ -61,7 +105,8 @@ public class CredentialManager {
 	}
 
 	/**
-	 * Lists all stored credentials with index, service name, and username.
+	 * Lists stored credentials with index, service name, and username, one page at a time.
+	 * The numbers are positions in the vault, as used to choose a credential to delete or copy.
 	 */
 	private void listCredentials() {
 		if (credentials.isEmpty()) {
@@ -69,10 +114,88 @@ public class CredentialManager {
 			return;
 		}
 		System.out.println("Stored Credentials:");
-		for (int i = 0; i < credentials.size(); i++) {
-			Credential c = credentials.get(i);
-			System.out.printf("%d. Service: %s | Username: %s%n", i + 1, c.serviceName(), c.username());
+		CredentialListWriter out = CredentialListWriter.toStandardOutput(CredentialListWriter.Format.TEXT);
+		try {
+			for (int start = 0; start < credentials.size(); start += PAGE_SIZE) {
+				int end = Math.min(start + PAGE_SIZE, credentials.size());
+				out.writeNumbered(credentials.subList(start, end), start + 1);
+				out.flush();
+				if (end < credentials.size() && !askNextPage(end)) {
+					return;
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Error writing credentials: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Lists the credentials whose tags match a filter expression such as
+	 * {@code prod AND aws NOT deprecated}, sorted by service name; see {@link TagIndex} for the syntax.
+	 *
+	 * @param filter The filter expression.
+	 * @return The credentials shown, or an empty list if the filter is invalid.
+	 */
+	List<Credential> listCredentials(String filter) {
+		return listCredentials(filter, CredentialListing.SortOrder.SERVICE);
+	}
+
+	/**
+	 * Lists the credentials matching a tag filter in the given order, one page at a time.
+	 * Each page is taken from the pre-sorted listing, so its cost depends on the page size
+	 * rather than the size of the vault.
+	 *
+	 * @param filter The filter expression; blank lists every credential.
+	 * @param order  The sort order.
+	 * @return The credentials shown, or an empty list if the filter is invalid.
+	 */
+	List<Credential> listCredentials(String filter, CredentialListing.SortOrder order) {
+		List<Credential> shown = new ArrayList<>();
+		CredentialListWriter out = CredentialListWriter.toStandardOutput(CredentialListWriter.Format.TEXT);
+		try {
+			Predicate<Credential> matcher = tagIndex.matcher(filter);
+			String cursor = null;
+			do {
+				CredentialListing.Page page = listing.page(order, cursor, PAGE_SIZE, matcher);
+				if (shown.isEmpty() && page.items().isEmpty()) {
+					System.out.println("No credentials match the filter.");
+					break;
+				}
+				// The cursor hint is for the list command; here the next page is offered interactively
+				out.writePage(new CredentialListing.Page(page.items(), null));
+				out.flush();
+				shown.addAll(page.items());
+				cursor = page.nextCursor();
+			} while (cursor != null && askNextPage(shown.size()));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		} catch (IOException e) {
+			System.err.println("Error writing credentials: " + e.getMessage());
 		}
+		return shown;
+	}
+
+	/**
+	 * Asks whether to show the next page. Stops at the end of input.
+	 *
+	 * @param shown The number of credentials shown so far.
+	 * @return true to continue.
+	 */
+	private boolean askNextPage(int shown) {
+		System.out.printf("-- %d shown; press Enter for more or 'q' to stop: ", shown);
+		return scanner.hasNextLine() && !scanner.nextLine().trim().equalsIgnoreCase("q");
+	}
+
+	/**
+	 * Asks for the sort order of a listing, defaulting to the service name.
+	 */
+	private CredentialListing.SortOrder askSortOrder() {
+		System.out.print("Sort by (s)ervice, (u)sername or (m)odified [s]: ");
+		return switch (scanner.nextLine().trim().toLowerCase()) {
+			case "u", "username" -> CredentialListing.SortOrder.USERNAME;
+			case "m", "modified" -> CredentialListing.SortOrder.MODIFIED;
+			default -> CredentialListing.SortOrder.SERVICE;
+		};
 	}
 
 	/**
@@ -81,21 +204,33 @@ public class CredentialManager {
 	void addCredential() {
     String service;
     String username;
+    String url;
+    String notes;
+    List<String> tags;
     String choice;
 
     try {
         System.out.print("Enter service name: ");
-        service = InputSanitizer.sanitize(scanner.nextLine(), 50, false);
+        service = InputSanitizer.sanitize(scanner.nextLine(), CredentialStorage.MAX_NAME_LENGTH, CharPolicy.PRINTABLE);
 
         System.out.print("Enter username: ");
-        username = InputSanitizer.sanitize(scanner.nextLine(), 50, false);
+        username = InputSanitizer.sanitize(scanner.nextLine(), CredentialStorage.MAX_NAME_LENGTH, CharPolicy.PRINTABLE);
 
-        System.out.print("Generate strong password? (y/n): ");
+        System.out.print("Enter URL (optional): ");
+        url = optionalInput(CredentialStorage.MAX_URL_LENGTH);
+
+        System.out.print("Enter notes (optional): ");
+        notes = optionalInput(CredentialStorage.MAX_NOTES_LENGTH);
+
+        System.out.print("Enter tags, separated by commas (optional): ");
+        tags = parseTags(optionalInput(CredentialStorage.MAX_NOTES_LENGTH));
+
+        System.out.print("Generate strong password? (y/n, or p for a passphrase): ");
         choice = InputSanitizer.sanitize(scanner.nextLine().toLowerCase(), 1, false);
 
         // Input validation for user choice
-        while (!choice.equals("y") && !choice.equals("n")) {
-            System.out.print("Invalid input. Please enter 'y' for yes or 'n' for no: ");
+        while (!choice.equals("y") && !choice.equals("n") && !choice.equals("p")) {
+            System.out.print("Invalid input. Please enter 'y' for yes, 'n' for no or 'p' for a passphrase: ");
             choice = InputSanitizer.sanitize(scanner.nextLine().toLowerCase(), 1, false);
         }
     } catch (IllegalArgumentException ex) {
@@ -104,7 +239,7 @@ public class CredentialManager {
     }
 
     // Define password based on user choice
-    String password;
+    SecretBuffer password;
     if (choice.equals("y")) {
         // Allow the user to define the password length and characteristics
         int passwordLength = askPasswordLength();
@@ -119,40 +254,77 @@ public class CredentialManager {
             return;
         }
 
-        password = PasswordGenerator.generate(passwordLength, includeUppercase, includeLowercase, includeNumbers, includeSymbols);
+        password = SecretBuffer.of(PasswordGenerator.generate(passwordLength, includeUppercase, includeLowercase, includeNumbers, includeSymbols));
+
+    } else if (choice.equals("p")) {
+        Passphrase passphrase = askPassphrase();
+        password = SecretBuffer.of(passphrase.value());
+        System.out.printf("Generated a %d-character passphrase with %.1f bits of entropy.%n",
+                passphrase.value().length(), passphrase.entropyBits());
 
     } else {
     System.out.print("Enter password: ");
     try {
-        password = InputSanitizer.sanitize(scanner.nextLine(), 64, false);
-        
-        // Check if the password has been compromised
-        int breachCount = PasswordBreachChecker.checkPassword(password);
-        if (breachCount > 0) {
-            System.out.printf("WARNING: This password has been found in %d data breaches!%n", breachCount);
-            System.out.print("Do you still want to use this password? (y/n): ");
-            String confirm = scanner.nextLine().toLowerCase();
-            if (!confirm.equals("y")) {
-                System.out.println("Password not saved. Please try again with a different password.");
-                return;
-            }
-        }
+        password = readSecret(64);
     } catch (IllegalArgumentException ex) {
         System.out.println("Invalid password. " + ex.getMessage());
         return;
     }
+
+    // Check if the password has been compromised
+    int breachCount = PasswordBreachChecker.checkPassword(password);
+    if (breachCount > 0) {
+        System.out.printf("WARNING: This password has been found in %d data breaches!%n", breachCount);
+        System.out.print("Do you still want to use this password? (y/n): ");
+        String confirm = scanner.nextLine().toLowerCase();
+        if (!confirm.equals("y")) {
+            password.close();
+            System.out.println("Password not saved. Please try again with a different password.");
+            return;
+        }
+    }
 }
 
     // Encrypt password and store new credential
-    try {
-        String encryptedPassword = EncryptionService.encrypt(password);
-        credentials.add(new Credential(service, username, encryptedPassword));
+    try (password) {
+        String encryptedPassword = EncryptionService.encryptSecret(password);
+        Credential credential = Credential.create(service, username, encryptedPassword, url, notes, tags, Map.of());
+        credentials.add(credential);
+        tagIndex.add(credential);
+        listing.add(credential);
         System.out.println("Credential added successfully.");
     } catch (Exception e) {
         System.err.println("Error encrypting password: " + e.getMessage());
     }
 }
 
+/**
+ * Reads an optional line of input; a blank line means the field is left empty.
+ *
+ * @param maxLength the maximum allowed length
+ * @return the sanitized input, or an empty string
+ */
+private String optionalInput(int maxLength) {
+    String input = scanner.nextLine();
+    return input.isBlank() ? "" : InputSanitizer.sanitize(input, maxLength, CharPolicy.PRINTABLE);
+}
+
+/**
+ * Splits a comma-separated tag list, dropping blanks and duplicates.
+ *
+ * @param input the raw tag list
+ * @return the tags, in the order given
+ */
+static List<String> parseTags(String input) {
+    Set<String> tags = new LinkedHashSet<>();
+    for (String tag : input.split(",")) {
+        if (!tag.isBlank()) {
+            tags.add(InputSanitizer.sanitize(tag, CredentialStorage.MAX_NAME_LENGTH, CharPolicy.PRINTABLE));
+        }
+    }
+    return List.copyOf(tags);
+}
+
 /**
  * Asks the user for the password length and validates the input.
  *
@@ -175,6 +347,42 @@ private int askPasswordLength() {
     return length;
 }
 
+/**
+ * Asks the user for the passphrase options and generates the passphrase.
+ *
+ * @return The generated passphrase.
+ */
+private Passphrase askPassphrase() {
+    int wordCount = 0;
+    while (wordCount <= 0) {
+        try {
+            System.out.print("Enter number of words (minimum 4): ");
+            wordCount = Integer.parseInt(scanner.nextLine().trim());
+            if (wordCount < 4 || wordCount > 12) {
+                System.out.println("Number of words must be between 4 and 12.");
+                wordCount = 0;
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input. Please enter a valid number.");
+        }
+    }
+
+    System.out.print("Enter word separator (default '-'): ");
+    String separator = scanner.nextLine();
+    if (separator.isEmpty()) {
+        separator = "-";
+    } else if (separator.length() > 1) {
+        System.out.println("Using the first character as separator.");
+        separator = separator.substring(0, 1);
+    }
+
+    PasswordGenerator.Capitalization capitalization = askIncludeOption("Capitalize words?")
+            ? PasswordGenerator.Capitalization.FIRST_LETTER
+            : PasswordGenerator.Capitalization.NONE;
+
+    return PasswordGenerator.generatePassphrase(wordCount, separator, capitalization);
+}
+
 /**
  * Asks the user whether to include a specific character set in the password.
  *
@@ -207,6 +415,8 @@ private boolean askIncludeOption(String message) {
 
 		if (index >= 0 && index < credentials.size()) {
 			Credential removed = credentials.remove(index);
+			tagIndex.remove(removed);
+			listing.remove(removed);
 			System.out.println("Removed: " + removed.serviceName());
 		} else {
 			System.out.println("Invalid index.");
@@ -214,7 +424,8 @@ private boolean askIncludeOption(String message) {
 	}
 
 	/**
-	 * Copies a decrypted password to the clipboard after verifying the master password.
+	 * Copies a decrypted password to the clipboard after verifying the master password
+	 * against the verifier cached for the session.
 	 */
 	private void copyPasswordToClipboard() {
 		if (credentials.isEmpty()) {
@@ -232,51 +443,49 @@ private boolean askIncludeOption(String message) {
 		}
 
 		System.out.print("Re-enter master password to confirm: ");
-		String inputPassword = scanner.nextLine().trim();
+		if (!confirmMasterPassword()) {
+			System.out.println("Incorrect master password. Access denied.");
+			return;
+		}
 
+		Credential selected = credentials.get(index);
+		String encryptedPassword;
 		try {
-			// Load stored hash from a file
-			java.nio.file.Path passwordPath = java.nio.file.Paths.get("master_password.dat");
-			if (!java.nio.file.Files.exists(passwordPath)) {
-				System.out.println("master_password.txt file not found. Please set up your master password again.");
-				return;
-			}
-
-			String storedHash = java.nio.file.Files.readAllLines(passwordPath).getFirst();
-			if (!BCrypt.checkpw(inputPassword, storedHash)) {
-				System.out.println("Incorrect master password. Access denied.");
-				return;
-			}
-
-			// Decrypt and copy password
-			Credential selected = credentials.get(index);
-			String decrypted = EncryptionService.decrypt(selected.encryptedPassword());
-			copyToClipboard(decrypted);
-			System.out.printf("Password for %s copied to clipboard.%n", selected.serviceName());
-		} catch (IOException e) {
-			System.err.println("Error reading master_password.dat: " + e.getMessage());
+			encryptedPassword = CredentialStorage.encryptedPassword(selected);
 		} catch (Exception e) {
+			System.err.println("Error reading password: " + e.getMessage());
+			return;
+		}
+		try (SecretBuffer decrypted = EncryptionService.decryptSecret(encryptedPassword)) {
+			ClipboardService service = clipboard();
+			service.copy(decrypted);
+			System.out.printf("Password for %s copied to the %s; it will be cleared in %d seconds.%n",
+					selected.serviceName(), service.backend().name(), service.clearAfter().toSeconds());
+		} catch (javax.crypto.BadPaddingException e) {
 			System.err.println("Error decrypting password: " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Clipboard operation not supported: " + e.getMessage());
 		}
 	}
 
 	/**
-	 * Copies a string to the system clipboard.
+	 * Returns the clipboard service, choosing and initializing its backend on first use
+	 * so that AWT is only loaded when a password is actually copied.
 	 *
-	 * @param text The text to copy.
+	 * @return The clipboard service.
+	 * @throws IllegalStateException If no clipboard is available.
 	 */
-	private void copyToClipboard(String text) {
-		try {
-			StringSelection selection = new StringSelection(text);
-			Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-			clipboard.setContents(selection, null);
-		} catch (Exception e) {
-			System.err.println("Clipboard operation not supported: " + e.getMessage());
+	private ClipboardService clipboard() {
+		if (clipboard == null) {
+			clipboard = ClipboardService.createDefault();
 		}
+		return clipboard;
 	}
 
 	/**
 	 * Checks all stored passwords against breach data via API.
+	 * Each password is decrypted only long enough to hash it; the queries then run concurrently
+	 * over the shared connection.
 	 */
 	private void checkCompromisedPasswords() {
 		if (credentials.isEmpty()) {
@@ -284,12 +493,20 @@ private boolean askIncludeOption(String message) {
 			return;
 		}
 		System.out.println("Checking all stored passwords for breaches...");
-		boolean anyCompromised = false;
-
+		Map<Credential, CompletableFuture<Integer>> checks = new LinkedHashMap<>();
 		for (Credential c : credentials) {
+			try (SecretBuffer decrypted = EncryptionService.decryptSecret(CredentialStorage.encryptedPassword(c))) {
+				checks.put(c, PasswordBreachChecker.checkHashAsync(PasswordBreachChecker.sha1(decrypted)));
+			} catch (Exception e) {
+				System.err.println("Error checking password for service '" + c.serviceName() + "': " + e.getMessage());
+			}
+		}
+
+		boolean anyCompromised = false;
+		for (Map.Entry<Credential, CompletableFuture<Integer>> check : checks.entrySet()) {
+			Credential c = check.getKey();
 			try {
-				String decrypted = EncryptionService.decrypt(c.encryptedPassword());
-				int count = PasswordBreachChecker.checkPassword(decrypted);
+				int count = check.getValue().join();
 				if (count > 0) {
 					System.out.printf(
 							"WARNING: Password for service '%s' (username: %s) was found %d times in breaches!%n",
@@ -297,8 +514,8 @@ private boolean askIncludeOption(String message) {
 					);
 					anyCompromised = true;
 				}
-			} catch (Exception e) {
-				System.err.println("Error checking password for service '" + c.serviceName() + "': " + e.getMessage());
+			} catch (CompletionException e) {
+				System.err.println("Error checking password for service '" + c.serviceName() + "': " + e.getCause().getMessage());
 			}
 		}
 
@@ -307,10 +524,442 @@ private boolean askIncludeOption(String message) {
 		}
 	}
 
+	/**
+	 * Prints the vault health report: reused, weak and old passwords, and optionally breached ones.
+	 */
+	private void showHealthReport() {
+		if (credentials.isEmpty()) {
+			System.out.println("No credentials stored.");
+			return;
+		}
+		boolean checkBreaches = askIncludeOption("Also check for breaches (contacts HaveIBeenPwned)?");
+		VaultHealthService.Report report = VaultHealthService.analyze(credentials, VaultHealthService.DEFAULT_MAX_AGE,
+				checkBreaches ? PasswordBreachChecker::checkHash : null, Instant.now());
+
+		System.out.printf("%nVault health: %d credential(s) analyzed.%n", report.entries().size());
+		System.out.printf("Reused passwords: %d group(s)%n", report.reuseGroups().size());
+		for (List<Credential> group : report.reuseGroups()) {
+			System.out.print("  - Same password for:");
+			for (Credential c : group) {
+				System.out.printf(" [%s / %s]", c.serviceName(), c.username());
+			}
+			System.out.println();
+		}
+
+		List<VaultHealthService.Entry> weak = report.weak();
+		System.out.printf("Weak passwords: %d%n", weak.size());
+		for (VaultHealthService.Entry entry : weak) {
+			System.out.printf("  - %s / %s: about %.0f bits%n",
+					entry.credential().serviceName(), entry.credential().username(), entry.entropyBits());
+		}
+
+		List<VaultHealthService.Entry> old = report.old();
+		System.out.printf("Passwords older than %d days: %d%n", report.maxAge().toDays(), old.size());
+		for (VaultHealthService.Entry entry : old) {
+			System.out.printf("  - %s / %s: %d days%n",
+					entry.credential().serviceName(), entry.credential().username(), entry.age().toDays());
+		}
+		if (!report.ageUnknown().isEmpty()) {
+			System.out.printf("Passwords of unknown age (from the previous vault format): %d%n", report.ageUnknown().size());
+		}
+
+		if (report.breachChecked()) {
+			List<VaultHealthService.Entry> breached = report.breached();
+			System.out.printf("Breached passwords: %d%n", breached.size());
+			for (VaultHealthService.Entry entry : breached) {
+				System.out.printf("  - %s / %s: found %d times%n",
+						entry.credential().serviceName(), entry.credential().username(), entry.breachCount());
+			}
+		}
+		for (Credential c : report.failed()) {
+			System.err.println("Could not analyze password for service '" + c.serviceName() + "'.");
+		}
+	}
+
+	/**
+	 * Changes the master password and rotates the salt.
+	 * Pending changes are saved first, then the vault is re-encrypted on disk
+	 * and the in-memory credentials are reloaded under the new key.
+	 */
+	private void changeMasterPassword() {
+		System.out.print("Enter current master password: ");
+		if (!confirmMasterPassword()) {
+			System.out.println("Incorrect master password. Access denied.");
+			return;
+		}
+
+		System.out.print("New master password: ");
+		try (SecretBuffer newPassword = readSecret(64)) {
+			if (AuthService.characterCount(newPassword) < 8) {
+				System.out.println("Password must be at least 8 characters long.");
+				return;
+			}
+			System.out.print("Re-enter new master password to confirm: ");
+			try (SecretBuffer confirmation = readSecret(64)) {
+				if (!newPassword.contentEquals(confirmation)) {
+					System.out.println("Passwords do not match.");
+					return;
+				}
+			}
+
+			int breachCount = PasswordBreachChecker.checkPassword(newPassword);
+			if (breachCount > 0) {
+				System.out.printf("This password has appeared in %d breach(es). Please choose a stronger password.%n", breachCount);
+				return;
+			}
+
+			CredentialStorage.saveCredentials(credentials);
+			int records = VaultRekeyService.rekey(newPassword);
+			List<Credential> reloaded = CredentialStorage.loadCredentials();
+			credentials.clear();
+			credentials.addAll(reloaded);
+			tagIndex.rebuild(credentials);
+			listing.rebuild(credentials);
+			System.out.printf("Master password changed. %d record(s) re-encrypted.%n", records);
+		} catch (IllegalArgumentException ex) {
+			System.out.println("Invalid input. " + ex.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error changing master password: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Lists the backup generations and restores one of them.
+	 * The current credentials are saved first, so the restore itself can be undone
+	 * by restoring the generation it created.
+	 */
+	private void restoreBackup() {
+		try {
+			CredentialStorage.saveCredentials(credentials);
+			List<SnapshotStore.Snapshot> snapshots = CredentialStorage.SNAPSHOTS.list();
+			System.out.println("Backup generations:");
+			for (SnapshotStore.Snapshot snapshot : snapshots) {
+				System.out.printf("%4d. %s (%d record(s))%n", snapshot.generation(), snapshot.createdAt(), snapshot.recordCount());
+			}
+			System.out.print("Generation to restore, or press Enter to cancel: ");
+			String input = scanner.nextLine().trim();
+			if (input.isEmpty()) {
+				return;
+			}
+			long generation = Long.parseLong(InputSanitizer.sanitize(input, 10, true));
+			long current = snapshots.getLast().generation();
+			int changed = CredentialStorage.SNAPSHOTS.tree(current).diff(CredentialStorage.SNAPSHOTS.tree(generation)).size();
+
+			int records = CredentialStorage.restoreGeneration(generation);
+			List<Credential> reloaded = CredentialStorage.loadCredentials();
+			credentials.clear();
+			credentials.addAll(reloaded);
+			tagIndex.rebuild(credentials);
+			listing.rebuild(credentials);
+			System.out.printf("Restored generation %d: %d record(s), %d position(s) differ from before.%n", generation, records, changed);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid input. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error restoring backup: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Syncs the vault with a replica on another device, through a shared directory or directly over TCP.
+	 * Only records changed since the last sync are exchanged; concurrent edits of the same record are
+	 * resolved in favour of the latest one and logged, see {@link SyncEngine}.
+	 */
+	private void syncWithReplica() {
+		System.out.print("Shared directory, host:port to connect to, or a port to listen on: ");
+		String target = scanner.nextLine().trim();
+		if (target.isEmpty()) {
+			return;
+		}
+		ServerSocket server = null;
+		try {
+			CredentialStorage.saveCredentials(credentials);
+			SyncEngine engine = SyncEngine.open(SyncEngine.STATE_PATH, SyncEngine.CONFLICT_LOG_PATH,
+					EncryptionService.getSessionSecretKey());
+			SyncEngine.Transport transport;
+			int colon = target.lastIndexOf(':');
+			if (target.chars().allMatch(Character::isDigit)) {
+				server = new ServerSocket(Integer.parseInt(target));
+				System.out.println("Waiting for the other device to connect on port " + server.getLocalPort() + "...");
+				transport = TcpSyncTransport.accept(server);
+			} else if (colon > 0 && colon < target.length() - 1 && target.substring(colon + 1).chars().allMatch(Character::isDigit)) {
+				transport = TcpSyncTransport.connect(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+			} else {
+				transport = new DirectorySyncTransport(Paths.get(target));
+			}
+
+			SyncEngine.Result result = engine.sync(CredentialStorage.savedRecords(), transport);
+			// The sync state is only saved once the vault holds the changes, so a failure here leaves
+			// both as they were and the next sync receives the changes again
+			List<Credential> merged = new ArrayList<>(credentials);
+			for (String line : result.updated().values()) {
+				Credential received = CredentialStorage.adopt(line);
+				int index = indexOf(merged, received.id());
+				if (index < 0) {
+					merged.add(received);
+				} else {
+					merged.set(index, received);
+				}
+			}
+			merged.removeIf(credential -> result.deleted().contains(credential.id()));
+			CredentialStorage.saveCredentials(merged);
+			engine.commit(result);
+			credentials.clear();
+			credentials.addAll(merged);
+			tagIndex.rebuild(credentials);
+			listing.rebuild(credentials);
+			System.out.printf("Sync complete: %d change(s) sent, %d received, %d record(s) updated, %d deleted.%n",
+					result.sent(), result.received(), result.updated().size(), result.deleted().size());
+			if (!result.conflicts().isEmpty()) {
+				System.out.printf("%d record(s) were edited on both devices; the latest edit was kept and the other logged to %s.%n",
+						result.conflicts().size(), SyncEngine.CONFLICT_LOG_PATH);
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid input. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error syncing: " + e.getMessage());
+		} finally {
+			if (server != null) {
+				try {
+					server.close();
+				} catch (IOException e) {
+					// Nothing left to sync through it
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the files attached to a credential, and attaches, exports or removes one.
+	 * The files are stored encrypted in {@link CredentialStorage#ATTACHMENTS}, and the vault is saved
+	 * after every change, so that it never refers to an attachment that is gone. An attachment that
+	 * no other credential refers to is deleted when it is removed.
+	 */
+	private void manageAttachments() {
+		listCredentials();
+		if (credentials.isEmpty()) return;
+
+		System.out.print("Enter number of the credential: ");
+		int index = getIntInput() - 1;
+		if (index < 0 || index >= credentials.size()) {
+			System.out.println("Invalid index.");
+			return;
+		}
+		Credential selected = credentials.get(index);
+		AttachmentStore store = CredentialStorage.ATTACHMENTS;
+		try {
+			Map<String, String> attachments = AttachmentStore.attachments(selected);
+			for (Map.Entry<String, String> attachment : attachments.entrySet()) {
+				System.out.printf("  %s (%d bytes)%n", attachment.getKey(), store.length(attachment.getValue()));
+			}
+			System.out.print("(a)ttach a file, (e)xport or (r)emove an attachment, or press Enter to go back: ");
+			String action = scanner.nextLine().trim().toLowerCase();
+			Map<String, String> fields = new LinkedHashMap<>(selected.customFields());
+			switch (action) {
+				case "a" -> {
+					System.out.print("File to attach: ");
+					Path file = Paths.get(InputSanitizer.sanitize(scanner.nextLine(), MAX_PATH_LENGTH, CharPolicy.PRINTABLE));
+					String name = InputSanitizer.sanitize(file.getFileName().toString(),
+							CredentialStorage.MAX_NAME_LENGTH - AttachmentStore.FIELD_PREFIX.length(), CharPolicy.PRINTABLE);
+					String id = store.put(file, EncryptionService.getSessionSecretKey());
+					fields.put(AttachmentStore.FIELD_PREFIX + name, id);
+					replaceCredential(index, selected.withDetails(selected.url(), selected.notes(), selected.tags(), fields));
+					System.out.printf("Attached %s (%d bytes).%n", name, store.length(id));
+				}
+				case "e", "r" -> {
+					System.out.print("Attachment name: ");
+					String name = scanner.nextLine().trim();
+					String id = attachments.get(name);
+					if (id == null) {
+						System.out.println("No such attachment.");
+						return;
+					}
+					if (action.equals("e")) {
+						System.out.print("Export to file: ");
+						Path target = Paths.get(InputSanitizer.sanitize(scanner.nextLine(), MAX_PATH_LENGTH, CharPolicy.PRINTABLE));
+						long written = store.export(id, target, EncryptionService.getSessionSecretKey());
+						System.out.printf("Exported %s to %s (%d bytes).%n", name, target, written);
+						return;
+					}
+					fields.remove(AttachmentStore.FIELD_PREFIX + name);
+					replaceCredential(index, selected.withDetails(selected.url(), selected.notes(), selected.tags(), fields));
+					if (credentials.stream().noneMatch(credential -> AttachmentStore.attachments(credential).containsValue(id))) {
+						store.delete(id);
+					}
+					System.out.println("Removed " + name + ".");
+				}
+				default -> {
+					// Back to the menu
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid input. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error with attachments: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Splits the vault into a chosen number of shard files, or joins it back into one, while it stays open.
+	 * Records are moved without being re-encrypted; later saves only rewrite the shards that changed.
+	 */
+	private void reshardVault() {
+		System.out.printf("The vault is in %d shard(s). New number of shards (1 for a single file), or press Enter to cancel: ",
+				CredentialStorage.shardCount());
+		String input = scanner.nextLine().trim();
+		if (input.isEmpty()) {
+			return;
+		}
+		try {
+			int count = Integer.parseInt(InputSanitizer.sanitize(input, 3, true));
+			CredentialStorage.reshard(credentials, count);
+			System.out.printf("The vault is now in %d shard(s).%n", CredentialStorage.shardCount());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid input. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error splitting the vault: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Shows the current two-factor codes of every credential holding a seed, and adds, removes or advances seeds.
+	 * Time-based codes are computed together and kept until the end of their period, see {@link OtpCodeCache};
+	 * a counter-based seed has its counter advanced and saved before its code is shown, so no code is shown twice.
+	 */
+	private void showOtpCodes() {
+		try {
+			Map<UUID, String> fields = new LinkedHashMap<>();
+			for (Credential credential : credentials) {
+				String field = credential.customFields().get(OtpSeed.FIELD);
+				if (field != null) {
+					fields.put(credential.id(), field);
+				}
+			}
+			if (otpCodes == null || !fields.equals(otpFields)) {
+				Map<UUID, OtpSeed> seeds = new LinkedHashMap<>();
+				for (Credential credential : credentials) {
+					OtpSeed seed = OtpSeed.of(credential);
+					if (seed != null) {
+						seeds.put(credential.id(), seed);
+					}
+				}
+				if (otpCodes != null) {
+					otpCodes.close();
+				}
+				otpCodes = new OtpCodeCache(seeds, Clock.systemUTC());
+				otpFields = fields;
+			}
+			Map<UUID, OtpCodeCache.Code> codes = otpCodes.codes();
+			long now = Instant.now().getEpochSecond();
+			for (int i = 0; i < credentials.size(); i++) {
+				Credential credential = credentials.get(i);
+				OtpCodeCache.Code code = codes.get(credential.id());
+				if (code != null) {
+					System.out.printf("%d. %s (%s): %s, %ds left%n", i + 1, credential.serviceName(), credential.username(),
+							code.code(), code.validUntil() - now);
+				} else if (otpFields.containsKey(credential.id())) {
+					System.out.printf("%d. %s (%s): counter-based%n", i + 1, credential.serviceName(), credential.username());
+				}
+			}
+			if (otpFields.isEmpty()) {
+				System.out.println("No credential holds a two-factor seed.");
+			}
+
+			System.out.print("(a)dd a seed from an otpauth:// URI, (r)emove one, (n)ext counter-based code, or press Enter to go back: ");
+			String action = scanner.nextLine().trim().toLowerCase();
+			if (!List.of("a", "r", "n").contains(action)) {
+				return;
+			}
+			System.out.print("Enter number of the credential: ");
+			int index = getIntInput() - 1;
+			if (index < 0 || index >= credentials.size()) {
+				System.out.println("Invalid index.");
+				return;
+			}
+			Credential selected = credentials.get(index);
+			switch (action) {
+				case "a" -> {
+					System.out.print("otpauth:// URI: ");
+					OtpSeed seed = OtpSeed.parse(InputSanitizer.sanitize(scanner.nextLine(), CredentialStorage.MAX_URL_LENGTH, CharPolicy.PRINTABLE));
+					replaceCredential(index, OtpSeed.store(selected, seed));
+					System.out.println("Added the " + seed + ".");
+				}
+				case "r" -> {
+					replaceCredential(index, OtpSeed.store(selected, null));
+					System.out.println("Removed the two-factor seed.");
+				}
+				default -> {
+					OtpSeed seed = OtpSeed.of(selected);
+					if (seed == null || seed.type() != OtpSeed.Type.HOTP) {
+						System.out.println("This credential has no counter-based seed.");
+						return;
+					}
+					String code = TOTPService.generateCodes(List.of(seed), now).getFirst();
+					replaceCredential(index, OtpSeed.store(selected, seed.next()));
+					System.out.println("Code: " + code);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid input. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("Error with two-factor codes: " + e.getMessage());
+		}
+	}
+
+	private void replaceCredential(int index, Credential updated) throws Exception {
+		Credential previous = credentials.set(index, updated);
+		tagIndex.remove(previous);
+		listing.remove(previous);
+		tagIndex.add(updated);
+		listing.add(updated);
+		CredentialStorage.saveCredentials(credentials);
+	}
+
+	private static int indexOf(List<Credential> list, UUID id) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i).id().equals(id)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the master password and checks it against the session verifier.
+	 *
+	 * @return true if it matches the master password the session was opened with.
+	 */
+	private boolean confirmMasterPassword() {
+		try (SecretBuffer password = readSecret(64)) {
+			return EncryptionService.verifySessionSecret(password);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a secret into off-heap memory. With a console attached it is read without echo
+	 * as a {@code char[]} that is wiped at once, so it never becomes a String; without one,
+	 * e.g. when input is piped, it falls back to the scanner.
+	 *
+	 * @param maxLength The maximum allowed length.
+	 * @return The sanitized secret, to be closed by the caller.
+	 * @throws IllegalArgumentException If the input is empty, too long or unsafe.
+	 */
+	private SecretBuffer readSecret(int maxLength) {
+		return AuthService.readSecret(scanner, maxLength);
+	}
+
 	/**
 	 * Saves credentials and exits the application.
 	 */
 	private void saveAndExit() {
+		if (clipboard != null) {
+			// Clear a copied password now; the scheduled clear would not outlive the application
+			clipboard.close();
+		}
+		if (otpCodes != null) {
+			otpCodes.close();
+		}
 		try {
 			CredentialStorage.saveCredentials(credentials);
 			System.out.println("Credentials saved. Exiting...");
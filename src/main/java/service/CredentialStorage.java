@@ -2,105 +2,801 @@ package service;
 
 import model.Credential;
 import utils.InputSanitizer;
+import utils.InputSanitizer.CharPolicy;
+import utils.MerkleTree;
 
-import java.io.BufferedReader;
+import javax.crypto.SecretKey;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Responsible for saving and loading credentials to and from an encrypted file.
+ * The file starts with a header authenticating all records together, see {@link VaultIntegrity},
+ * followed by an index that lets the vault be opened with a single decryption, see {@link VaultIndex}.
+ * Every save also keeps a generation of the vault in {@link #SNAPSHOTS}.
+ * A large vault can be split into shards, each a file of that form, see {@link VaultShards} and {@link #reshard}.
  */
 public class CredentialStorage {
-    private static final Path FILE_PATH = Paths.get("credentials.dat");
+    static final Path FILE_PATH = Paths.get("credentials.dat");
+    static final int MAX_NAME_LENGTH = 128;
+    static final int MAX_URL_LENGTH = 2048;
+    static final int MAX_NOTES_LENGTH = 8192;
+    static final int MAX_TAGS = 64;
+    static final int MAX_CUSTOM_FIELDS = 64;
+    // Base64 of IV + ciphertext + tag; leaves room for long passphrases
+    private static final int MAX_ENCRYPTED_PASSWORD_LENGTH = 256;
+    // The encrypted password of a credential opened through the vault index; never valid in a record
+    private static final String NO_PASSWORD = "";
+
+    /** Earlier generations of the vault: the last 10 saves, at most 90 days old. */
+    static final SnapshotStore SNAPSHOTS = new SnapshotStore(Paths.get("backups"),
+            new SnapshotStore.Retention(10, Duration.ofDays(90)));
+
+    /** Files attached to credentials, see {@link AttachmentStore}. */
+    static final AttachmentStore ATTACHMENTS = new AttachmentStore(Paths.get("attachments"));
+
+    // The encrypted lines of the records last loaded or saved, and the key they were encrypted with.
+    // Unchanged credentials keep their ciphertext, so a save only encrypts what changed and two
+    // versions of the vault can be diffed record by record, see VaultIntegrity#diff.
+    // Lines are held in memory when they were decrypted one by one or received from a replica;
+    // lines of a vault opened through its index, or just saved, stay in the file until needed.
+    // Credentials opened through the index hold no password, see #encryptedPassword; it is read
+    // from the line of the same id when it is used.
+    private static SecretKey cachedKey;
+    private static Map<Credential, String> cachedLines = Map.of();
+    private static Map<Credential, VaultIndex.Location> indexedLines = Map.of();
+    private static Map<UUID, VaultIndex.Location> indexedIds = Map.of();
+
+    // The layout of the vault as last loaded or saved: 1 for a single file, otherwise the shards named
+    // by its manifest and the credentials each holds, or null for a shard that must be rewritten, see VaultShards
+    private static int shardCount = 1;
+    private static List<VaultShards.Shard> shards = List.of();
+    private static List<List<Credential>> shardContents = List.of();
+
+    // One credential to write: its encrypted line in memory, or where it is on disk, or both
+    private record Pending(Credential credential, String line, VaultIndex.Location location) {
+    }
+
+    // A vault file as written: its header, and the credentials with their lines and where they now are
+    private record Written(String header, List<Pending> entries) {
+    }
+
+    // The credentials read from one vault file, with their lines in memory or their locations in the file;
+    // complete is false if a record was skipped
+    private record Loaded(List<Credential> credentials, Map<Credential, String> lines,
+                          Map<Credential, VaultIndex.Location> locations, boolean complete) {
+    }
+
+    // The record lines of a vault file read without its index, and whether a header authenticated them
+    private record Verified(List<String> records, boolean authenticated) {
+    }
 
     /**
      * Save a list of credentials to an encrypted file.
+     * If the vault is split into shards, only the shards whose credentials changed are written.
      *
      * @param credentials The list of credentials to save.
      * @throws Exception If an error occurs during encryption or file writing.
      */
     public static void saveCredentials(List<Credential> credentials) throws Exception {
-        List<String> encryptedLines = new ArrayList<>();
+        VaultEvents.VaultSave event = new VaultEvents.VaultSave();
+        event.begin();
+        SecretKey key = EncryptionService.getSessionSecretKey();
+        Map<Credential, String> reusable = key == cachedKey ? cachedLines : Map.of();
+        Map<Credential, VaultIndex.Location> onDisk = key == cachedKey ? indexedLines : Map.of();
+        List<Pending> pending = new ArrayList<>();
 
+        VaultEvents.CryptoBatch batch = new VaultEvents.CryptoBatch();
+        batch.begin();
         for (Credential cred : credentials) {
-            String serviceName;
-            String username;
-            String encryptedPassword;
-
             try {
-                // Ensure all fields are sanitized
-                serviceName = InputSanitizer.sanitize(cred.serviceName(), 50, false);
-                username = InputSanitizer.sanitize(cred.username(), 50, false);
-                encryptedPassword = InputSanitizer.sanitize(cred.encryptedPassword(), 128, false);
-
-                String line = String.format("%s,%s,%s", serviceName, username, encryptedPassword);
-                encryptedLines.add(EncryptionService.encrypt(line));
+                // Unchanged credentials were checked when they were read; their records are formatted only if rewritten
+                String line = reusable.get(cred);
+                VaultIndex.Location location = line == null ? onDisk.get(cred) : null;
+                if (line == null && location == null) {
+                    byte[] record = formatRecord(cred.withEncryptedPassword(encryptedPassword(cred)));
+                    line = EncryptionService.encryptBytes(record, key);
+                    batch.ciphertexts++;
+                    batch.bytes += record.length;
+                }
+                pending.add(new Pending(cred, line, location));
             } catch (IllegalArgumentException e) {
                 System.err.println("Skipping invalid credential: " + e.getMessage());
             }
         }
+        if (batch.ciphertexts > 0) {
+            batch.operation = "encrypt";
+            batch.records = batch.ciphertexts;
+            batch.commit();
+        }
+
+        // Vaults saved before snapshots existed get their current version kept once before it is overwritten
+        if (Files.exists(FILE_PATH) && SNAPSHOTS.isEmpty() && !VaultShards.isManifest(FILE_PATH)) {
+            snapshotFile();
+        }
+
+        List<Pending> saved;
+        String header;
+        if (shardCount == 1) {
+            Written written = writeVaultFile(FILE_PATH, pending, key, event);
+            saved = written.entries();
+            header = written.header();
+            shards = List.of();
+            shardContents = List.of();
+            // Shards of a vault that was just joined back into one file
+            VaultShards.sweep(FILE_PATH);
+        } else {
+            saved = writeShards(pending, key == cachedKey, key, event);
+            header = VaultIntegrity.formatHeader(tree(saved), key);
+        }
+        Map<Credential, VaultIndex.Location> locations = new HashMap<>();
+        for (Pending entry : saved) {
+            locations.put(entry.credential(), entry.location());
+        }
+        cachedKey = key;
+        cachedLines = Map.of();
+        setIndexedLines(locations);
+
+        try (VaultIndex.Reader reader = new VaultIndex.Reader()) {
+            List<byte[]> leaves = new ArrayList<>(saved.size());
+            for (Pending entry : saved) {
+                leaves.add(entry.location().leafHash());
+            }
+            SNAPSHOTS.snapshot(header, leaves, i -> saved.get(i).line() != null ? saved.get(i).line()
+                    : reader.read(saved.get(i).location()), Instant.now());
+            SNAPSHOTS.pruneInBackground();
+        } catch (IOException e) {
+            System.err.println("Credentials saved, but the backup could not be written: " + e.getMessage());
+        }
+        event.credentials = saved.size();
+        event.encrypted = batch.ciphertexts;
+        event.commit();
+    }
 
-        // Create a backup of the current file if it exists
-        if (Files.exists(FILE_PATH)) {
-            Files.copy(FILE_PATH, Paths.get("credentials_backup.dat"), StandardCopyOption.REPLACE_EXISTING);
+    /**
+     * Splits the vault into shards, or joins it back into a single file, and saves it.
+     * Records keep their ciphertext: they are moved between files without being decrypted.
+     * The new layout is used by every later save.
+     *
+     * @param credentials The credentials to save.
+     * @param count       The number of shards, or 1 for a single file.
+     * @throws IllegalArgumentException If the count is out of range.
+     * @throws Exception If an error occurs during encryption or file writing; the vault keeps its layout then.
+     */
+    public static void reshard(List<Credential> credentials, int count) throws Exception {
+        if (count < 1 || count > VaultShards.MAX_SHARDS) {
+            throw new IllegalArgumentException("The number of shards must be between 1 and " + VaultShards.MAX_SHARDS + ".");
         }
+        int previous = shardCount;
+        shardCount = count;
+        try {
+            saveCredentials(credentials);
+        } catch (Exception e) {
+            shardCount = previous;
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of shards the vault is split into, or 1 if it is a single file.
+     */
+    public static int shardCount() {
+        return shardCount;
+    }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(FILE_PATH)) {
-            for (String line : encryptedLines) {
+    // Writes a vault file with a header, an index and the record lines, copying unchanged lines from the
+    // files they are in, and counts it in the event of the save. The file is written next to its target,
+    // forced to disk and moved into place, so a crash leaves either the previous file or the new one
+    private static Written writeVaultFile(Path file, List<Pending> pending, SecretKey key, VaultEvents.VaultSave event)
+            throws Exception {
+        List<byte[]> metadata = new ArrayList<>(pending.size());
+        List<String> encryptedLines = new ArrayList<>(pending.size());
+        List<Integer> unread = new ArrayList<>();
+        List<VaultIndex.Location> unreadLocations = new ArrayList<>();
+        for (Pending entry : pending) {
+            if (entry.line() == null) {
+                unread.add(encryptedLines.size());
+                unreadLocations.add(entry.location());
+            }
+            metadata.add(formatMetadata(entry.credential()));
+            encryptedLines.add(entry.line());
+        }
+        // Unchanged records opened from the index are copied from the current file as they are
+        List<String> read = VaultIndex.readLines(unreadLocations);
+        for (int i = 0; i < unread.size(); i++) {
+            encryptedLines.set(unread.get(i), read.get(i));
+        }
+        List<byte[]> leaves = new ArrayList<>(encryptedLines.size());
+        for (String line : encryptedLines) {
+            leaves.add(VaultIntegrity.leafHash(line));
+        }
+        String header = VaultIntegrity.formatHeader(MerkleTree.fromLeafHashes(leaves), key);
+        String index = VaultIndex.format(metadata, encryptedLines, key);
+
+        List<Pending> saved = new ArrayList<>(pending.size());
+        Path temp = Paths.get(file + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.US_ASCII))) {
+            writer.write(header);
+            writer.write('\n');
+            writer.write(index);
+            writer.write('\n');
+            long offset = header.length() + 1L + index.length() + 1L;
+            for (int i = 0; i < encryptedLines.size(); i++) {
+                String line = encryptedLines.get(i);
                 writer.write(line);
-                writer.newLine();
+                writer.write('\n');
+                saved.add(new Pending(pending.get(i).credential(), line,
+                        new VaultIndex.Location(file, offset, line.length(), leaves.get(i))));
+                offset += line.length() + 1L;
             }
+            writer.flush();
+            channel.force(true);
+            event.files++;
+            event.bytes += offset;
         } catch (IOException e) {
+            Files.deleteIfExists(temp);
             throw new IOException("Error writing to credentials file: " + e.getMessage(), e);
         }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new Written(header, saved);
+    }
+
+    // Writes the shards whose credentials changed to new files, then the manifest naming them and the
+    // unchanged ones, and returns the credentials in the order of the shards
+    private static List<Pending> writeShards(List<Pending> pending, boolean sameKey, SecretKey key,
+                                             VaultEvents.VaultSave event) throws Exception {
+        List<List<Pending>> members = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            members.add(new ArrayList<>());
+        }
+        for (Pending entry : pending) {
+            members.get(VaultShards.shardOf(entry.credential().id(), shardCount)).add(entry);
+        }
+        boolean sameLayout = sameKey && shards.size() == shardCount;
+        Path directory = VaultShards.directory(FILE_PATH);
+        Files.createDirectories(directory);
+
+        List<Pending> saved = new ArrayList<>(pending.size());
+        List<VaultShards.Shard> written = new ArrayList<>(shardCount);
+        List<List<Credential>> contents = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<Pending> entries = members.get(shard);
+            List<Credential> held = new ArrayList<>(entries.size());
+            for (Pending entry : entries) {
+                held.add(entry.credential());
+            }
+            if (sameLayout && held.equals(shardContents.get(shard))
+                    && inFile(entries, directory.resolve(shards.get(shard).file()))) {
+                written.add(shards.get(shard));
+                saved.addAll(entries);
+            } else {
+                String file = VaultShards.newFileName(shard);
+                Written rewritten = writeVaultFile(directory.resolve(file), entries, key, event);
+                written.add(new VaultShards.Shard(file, rewritten.header()));
+                saved.addAll(rewritten.entries());
+            }
+            contents.add(held);
+        }
+        String manifest = VaultShards.format(written, key);
+        VaultShards.write(FILE_PATH, manifest);
+        event.files++;
+        event.bytes += manifest.length();
+        shards = written;
+        shardContents = contents;
+        VaultShards.sweep(FILE_PATH);
+        return saved;
+    }
+
+    private static boolean inFile(List<Pending> entries, Path file) {
+        for (Pending entry : entries) {
+            if (entry.location() == null || !entry.location().file().equals(file)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static MerkleTree tree(List<Pending> entries) {
+        List<byte[]> leaves = new ArrayList<>(entries.size());
+        for (Pending entry : entries) {
+            leaves.add(entry.location().leafHash());
+        }
+        return MerkleTree.fromLeafHashes(leaves);
+    }
+
+    /**
+     * Returns the encrypted password of a credential. Credentials opened through the index of the vault
+     * hold none, see {@link #loadCredentials()}: their password is read from their record line, which is
+     * checked against the index and decrypted. Other credentials hold theirs.
+     *
+     * @param credential A credential last loaded or saved, or one holding its password.
+     * @return The encrypted password.
+     * @throws IOException If the record line no longer matches the index or holds another credential.
+     * @throws IllegalStateException If the credential holds no password and its record line is not known.
+     * @throws Exception If the record line cannot be decrypted.
+     */
+    public static String encryptedPassword(Credential credential) throws Exception {
+        if (!NO_PASSWORD.equals(credential.encryptedPassword())) {
+            return credential.encryptedPassword();
+        }
+        VaultIndex.Location location = indexedIds.get(credential.id());
+        if (location == null) {
+            throw new IllegalStateException("No record line holds the password of " + credential + ".");
+        }
+        String line;
+        try (VaultIndex.Reader reader = new VaultIndex.Reader()) {
+            line = reader.read(location);
+        }
+        Credential stored = parseRecord(EncryptionService.decryptBytes(line, cachedKey));
+        if (stored == null || !stored.id().equals(credential.id())) {
+            throw new IOException("Vault integrity check failed: the record of " + credential + " holds another credential.");
+        }
+        return stored.encryptedPassword();
+    }
+
+    /**
+     * Returns the encrypted lines written by the last save, or read by the last load, by credential id.
+     * These are exactly the lines in the vault file, for {@link SyncEngine#recordLocal}.
+     *
+     * @return The encrypted lines by id.
+     * @throws IOException If lines cannot be read back from the vault file.
+     */
+    static Map<UUID, String> savedRecords() throws IOException {
+        Map<UUID, String> records = new LinkedHashMap<>();
+        for (Map.Entry<Credential, String> line : cachedLines.entrySet()) {
+            records.put(line.getKey().id(), line.getValue());
+        }
+        List<Credential> indexed = new ArrayList<>(indexedLines.keySet());
+        List<VaultIndex.Location> locations = new ArrayList<>(indexed.size());
+        for (Credential credential : indexed) {
+            locations.add(indexedLines.get(credential));
+        }
+        List<String> lines = VaultIndex.readLines(locations);
+        for (int i = 0; i < indexed.size(); i++) {
+            records.putIfAbsent(indexed.get(i).id(), lines.get(i));
+        }
+        return records;
+    }
+
+    /**
+     * Decrypts an encrypted line received from another replica, and keeps the line so that the next
+     * save writes it unchanged instead of encrypting the credential again.
+     *
+     * @param line The encrypted vault line.
+     * @return The credential.
+     * @throws IllegalArgumentException If the record is not a valid credential in the current format.
+     * @throws Exception If it cannot be decrypted with the current key.
+     */
+    static Credential adopt(String line) throws Exception {
+        byte[] decrypted = EncryptionService.decryptBytes(line);
+        if (!CredentialCodec.isBinary(decrypted)) {
+            throw new IllegalArgumentException("Received record is not in the current format.");
+        }
+        Credential credential = parseRecord(decrypted);
+        SecretKey key = EncryptionService.getSessionSecretKey();
+        Map<Credential, String> lines = key == cachedKey ? new HashMap<>(cachedLines) : new HashMap<>();
+        lines.put(credential, line);
+        if (key != cachedKey) {
+            setIndexedLines(Map.of());
+        }
+        cachedKey = key;
+        cachedLines = lines;
+        return credential;
+    }
+
+    /**
+     * Restores an earlier generation of the vault from {@link #SNAPSHOTS}, replacing the vault file.
+     * The generation must have been saved under the current master password: its records are
+     * checked against its integrity header with the current key before anything is written.
+     * A vault split into shards keeps its layout, and the restore is saved as a new generation.
+     *
+     * @param generation The generation to restore.
+     * @return The number of records restored.
+     * @throws IOException If the generation does not exist, is damaged, or belongs to another master password.
+     * @throws Exception If the integrity check cannot be computed.
+     */
+    public static int restoreGeneration(long generation) throws Exception {
+        SecretKey key = EncryptionService.getSessionSecretKey();
+        String header = SNAPSHOTS.header(generation);
+        if (header != null) {
+            try {
+                VaultIntegrity.verify(VaultIntegrity.parseHeader(header), SNAPSHOTS.tree(generation), key);
+            } catch (IOException e) {
+                throw new IOException("Backup generation " + generation
+                        + " was not saved under the current master password, or is damaged.", e);
+            }
+        }
+        if (shardCount == 1) {
+            int restored = SNAPSHOTS.restore(generation, FILE_PATH);
+            cachedKey = null;
+            cachedLines = Map.of();
+            setIndexedLines(Map.of());
+            return restored;
+        }
+        // Restored as a single file first, then saved into the shards the credentials belong to
+        Path restoredFile = Paths.get(FILE_PATH + ".restore");
+        try {
+            int restored = SNAPSHOTS.restore(generation, restoredFile);
+            Loaded loaded = loadFile(restoredFile, key);
+            cachedKey = key;
+            cachedLines = loaded.lines();
+            setIndexedLines(loaded.locations());
+            saveCredentials(loaded.credentials());
+            return restored;
+        } finally {
+            Files.deleteIfExists(restoredFile);
+        }
+    }
+
+    private static void snapshotFile() throws IOException {
+        String header = null;
+        List<String> records = new ArrayList<>();
+        for (String line : Files.readAllLines(FILE_PATH)) {
+            if (VaultIntegrity.isHeader(line)) {
+                header = line;
+            } else if (!line.isBlank() && !VaultIndex.isIndex(line)) {
+                records.add(line);
+            }
+        }
+        SNAPSHOTS.snapshot(header, records, Instant.now());
     }
 
     /**
      * Load and decrypt credentials from the file.
+     * If the file has an integrity header, the records are checked against it before any is decrypted.
+     * Only a vault whose records are all in the original text form may lack one.
+     * If it also has an index, see {@link VaultIndex}, the credentials are read from the index with a single
+     * decryption and without their passwords, which {@link #encryptedPassword(Credential)} reads on demand.
+     * A vault split into shards has its manifest checked, and its shards are opened in parallel.
      *
      * @return A list of decrypted credentials.
+     * @throws IOException If the records do not match the integrity header, or it is missing.
      * @throws Exception If an error occurs during decryption or file reading.
      */
     public static List<Credential> loadCredentials() throws Exception {
-        List<Credential> credentials = new ArrayList<>();
+        VaultEvents.VaultLoad event = new VaultEvents.VaultLoad();
+        event.begin();
+        List<Credential> credentials = load(EncryptionService.getSessionSecretKey());
+        event.end();
+        if (event.shouldCommit()) {
+            event.credentials = credentials.size();
+            event.files = shards.isEmpty() ? (Files.exists(FILE_PATH) ? 1 : 0) : shards.size() + 1;
+            event.bytes = vaultSize();
+            event.commit();
+        }
+        return credentials;
+    }
 
+    private static List<Credential> load(SecretKey key) throws Exception {
         if (!Files.exists(FILE_PATH)) {
-            return credentials;
-        }
-
-        try (BufferedReader reader = Files.newBufferedReader(FILE_PATH)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    String decrypted = EncryptionService.decrypt(line);
-                    String[] parts = decrypted.split(",", 3);
-
-                    if (parts.length == 3) {
-                        // Sanitize and validate the decrypted parts
-                        String serviceName = InputSanitizer.sanitize(parts[0], 50, false);
-                        String username = InputSanitizer.sanitize(parts[1], 50, false);
-                        String encryptedPassword = InputSanitizer.sanitize(parts[2], 128, false);
-
-                        credentials.add(new Credential(serviceName, username, encryptedPassword));
-                    } else {
-                        System.err.println("Invalid line format: " + decrypted);
-                    }
-                } catch (IllegalArgumentException ex) {
-                    System.err.println("Invalid credential format: " + ex.getMessage());
-                } catch (Exception ex) {
-                    System.err.println("Error decrypting line: " + ex.getMessage());
-                }
+            shardCount = 1;
+            shards = List.of();
+            shardContents = List.of();
+            return new ArrayList<>();
+        }
+        if (VaultShards.isManifest(FILE_PATH)) {
+            return loadShards(key);
+        }
+        Loaded loaded = loadFile(FILE_PATH, key);
+        cachedKey = key;
+        cachedLines = loaded.lines();
+        setIndexedLines(loaded.locations());
+        shardCount = 1;
+        shards = List.of();
+        shardContents = List.of();
+        return loaded.credentials();
+    }
+
+    private static List<Credential> loadShards(SecretKey key) throws Exception {
+        List<VaultShards.Shard> manifest = VaultShards.read(FILE_PATH, key);
+        Path directory = VaultShards.directory(FILE_PATH);
+        List<Loaded> loaded;
+        try {
+            loaded = manifest.parallelStream()
+                    .map(shard -> loadShard(directory.resolve(shard.file()), shard, key))
+                    .toList();
+        } catch (IllegalStateException e) {
+            // A worker's exception can reach this thread wrapped once more
+            Throwable cause = e;
+            while (cause instanceof IllegalStateException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof Exception exception) {
+                throw exception;
             }
+            throw e;
+        }
+
+        List<Credential> credentials = new ArrayList<>();
+        Map<Credential, String> lines = new HashMap<>();
+        Map<Credential, VaultIndex.Location> locations = new HashMap<>();
+        List<List<Credential>> contents = new ArrayList<>(loaded.size());
+        for (Loaded shard : loaded) {
+            credentials.addAll(shard.credentials());
+            lines.putAll(shard.lines());
+            locations.putAll(shard.locations());
+            contents.add(shard.complete() ? shard.credentials() : null);
+        }
+        cachedKey = key;
+        cachedLines = lines;
+        setIndexedLines(locations);
+        shardCount = manifest.size();
+        shards = manifest;
+        shardContents = contents;
+        return credentials;
+    }
+
+    // The size of the vault file, and of its shards if it is their manifest
+    private static long vaultSize() throws IOException {
+        long size = Files.exists(FILE_PATH) ? Files.size(FILE_PATH) : 0;
+        Path directory = VaultShards.directory(FILE_PATH);
+        for (VaultShards.Shard shard : shards) {
+            size += Files.size(directory.resolve(shard.file()));
+        }
+        return size;
+    }
+
+    private static Loaded loadShard(Path file, VaultShards.Shard shard, SecretKey key) {
+        try {
+            VaultShards.checkHeader(file, shard);
+            return loadFile(file, key);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Reads one vault file through its index, or record by record if it has none
+    private static Loaded loadFile(Path file, SecretKey key) throws Exception {
+        List<VaultIndex.Entry> entries = VaultIndex.open(file, key);
+        if (entries != null) {
+            return loadIndexed(entries);
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file);
         } catch (IOException e) {
             throw new IOException("Error reading credentials file: " + e.getMessage(), e);
         }
+        Verified verified = verifyIntegrity(lines, key);
+        List<String> records = verified.records();
 
-        return credentials;
+        List<Credential> credentials = new ArrayList<>();
+        Map<Credential, String> loaded = new HashMap<>();
+        Set<UUID> ids = new HashSet<>();
+        int migrated = 0;
+        int binary = 0;
+        VaultEvents.CryptoBatch batch = new VaultEvents.CryptoBatch();
+        batch.begin();
+        for (String line : records) {
+            try {
+                byte[] decrypted = EncryptionService.decryptBytes(line, key);
+                batch.bytes += decrypted.length;
+                Credential credential = parseRecord(decrypted);
+
+                if (credential == null) {
+                    System.err.println("Invalid line format: skipping record.");
+                    continue;
+                }
+                boolean upToDate = CredentialCodec.isBinary(decrypted);
+                if (upToDate) {
+                    binary++;
+                } else {
+                    migrated++;
+                }
+                // Derived ids of migrated records collide when a service and username repeat
+                if (!ids.add(credential.id())) {
+                    credential = credential.withId(UUID.randomUUID());
+                    ids.add(credential.id());
+                    upToDate = false;
+                }
+                if (upToDate) {
+                    loaded.put(credential, line);
+                }
+                credentials.add(credential);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Invalid credential format: " + ex.getMessage());
+            } catch (Exception ex) {
+                System.err.println("Error decrypting line: " + ex.getMessage());
+            }
+        }
+        batch.operation = "decrypt";
+        batch.ciphertexts = records.size();
+        batch.records = credentials.size();
+        batch.commit();
+        // Every save since records became binary has written a header, so a binary record without one
+        // means the header was stripped, e.g. to hide dropped or reordered records
+        if (!verified.authenticated() && binary > 0) {
+            throw new IOException("Vault integrity check failed: the integrity header is missing.");
+        }
+        if (!verified.authenticated() && !records.isEmpty()) {
+            System.out.println("The vault has no integrity header yet; it will be added on the next save.");
+        }
+        if (migrated > 0) {
+            System.out.println("Migrated " + migrated + " credential(s) from the previous format; they will be upgraded on the next save.");
+        }
+        return new Loaded(credentials, loaded, Map.of(), credentials.size() == records.size());
+    }
+
+    private static Loaded loadIndexed(List<VaultIndex.Entry> entries) {
+        List<Credential> credentials = new ArrayList<>(entries.size());
+        Map<Credential, VaultIndex.Location> locations = new HashMap<>();
+        for (VaultIndex.Entry entry : entries) {
+            try {
+                Credential credential = parseMetadata(entry.metadata());
+                credentials.add(credential);
+                locations.put(credential, entry.location());
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Invalid credential format: " + ex.getMessage());
+            }
+        }
+        return new Loaded(credentials, Map.of(), locations, credentials.size() == entries.size());
+    }
+
+    /**
+     * Checks the record lines against the integrity header on the first line, if there is one.
+     * A vault without a header is only accepted by the caller if all its records are in the original
+     * text form, as written before the header existed; it gets one on the next save.
+     * An index, which may only follow the header, is skipped.
+     *
+     * @param lines The lines of the vault file.
+     * @param key   The vault key.
+     * @return The record lines, and whether a header authenticated them.
+     * @throws IOException If the records do not match the header.
+     */
+    private static Verified verifyIntegrity(List<String> lines, SecretKey key) throws Exception {
+        VaultIntegrity.Header header = null;
+        boolean indexed = false;
+        List<String> records = new ArrayList<>(lines.size());
+        List<byte[]> leaves = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (VaultIntegrity.isHeader(line)) {
+                if (header != null || !records.isEmpty()) {
+                    throw new IOException("Vault integrity check failed: unexpected header inside the vault.");
+                }
+                header = VaultIntegrity.parseHeader(line);
+                continue;
+            }
+            if (VaultIndex.isIndex(line)) {
+                if (header == null || indexed || !records.isEmpty()) {
+                    throw new IOException("Vault integrity check failed: unexpected index inside the vault.");
+                }
+                indexed = true;
+                continue;
+            }
+            records.add(line);
+            leaves.add(VaultIntegrity.leafHash(line));
+        }
+        if (header != null) {
+            VaultIntegrity.verify(header, MerkleTree.fromLeafHashes(leaves), key);
+        }
+        return new Verified(records, header != null);
+    }
+
+    /**
+     * Formats a credential as the plaintext of one vault record, in the binary form of {@link CredentialCodec}.
+     * All fields are sanitized before they are written.
+     *
+     * @param cred The credential to format.
+     * @return The record plaintext.
+     * @throws IllegalArgumentException If a field is invalid or unsafe.
+     */
+    static byte[] formatRecord(Credential cred) {
+        return CredentialCodec.encode(sanitized(cred, false));
+    }
+
+    /**
+     * Formats the metadata of a credential for the vault index: its record without the encrypted password,
+     * which stays in the record line only. The credential may or may not hold its password.
+     *
+     * @param cred The credential to format.
+     * @return The metadata plaintext.
+     * @throws IllegalArgumentException If a field is invalid or unsafe.
+     */
+    static byte[] formatMetadata(Credential cred) {
+        return CredentialCodec.encode(sanitized(cred, true));
+    }
+
+    /**
+     * Parses the metadata of a credential read from the vault index.
+     *
+     * @param metadata The metadata plaintext.
+     * @return The credential, holding no password.
+     * @throws IllegalArgumentException If a field is invalid or unsafe, or the metadata is malformed.
+     */
+    static Credential parseMetadata(byte[] metadata) {
+        Credential credential = CredentialCodec.decode(metadata);
+        if (!NO_PASSWORD.equals(credential.encryptedPassword())) {
+            throw new IllegalArgumentException("Vault index holds a password.");
+        }
+        return sanitized(credential, true);
+    }
+
+    /**
+     * Parses the plaintext of one vault record.
+     * Records in the original {@code service,username,password} text form are migrated to a
+     * {@link Credential} with a derived id; they are written back in binary form on the next save.
+     * The decrypted fields are sanitized and validated.
+     *
+     * @param decrypted The record plaintext.
+     * @return The credential, or null if a text record does not have three fields.
+     * @throws IllegalArgumentException If a field is invalid or unsafe, or a binary record is malformed.
+     */
+    static Credential parseRecord(byte[] decrypted) {
+        if (CredentialCodec.isBinary(decrypted)) {
+            return sanitized(CredentialCodec.decode(decrypted), false);
+        }
+        String[] parts = new String(decrypted, StandardCharsets.UTF_8).split(",", 3);
+        if (parts.length != 3) {
+            return null;
+        }
+        return sanitized(new Credential(parts[0], parts[1], parts[2]), false);
+    }
+
+    // Sanitizes every field; metadata for the index holds no password
+    private static Credential sanitized(Credential cred, boolean metadata) {
+        String serviceName = InputSanitizer.sanitize(cred.serviceName(), MAX_NAME_LENGTH, CharPolicy.PRINTABLE);
+        String username = InputSanitizer.sanitize(cred.username(), MAX_NAME_LENGTH, CharPolicy.PRINTABLE);
+        String encryptedPassword = metadata
+                ? NO_PASSWORD
+                : InputSanitizer.sanitize(cred.encryptedPassword(), MAX_ENCRYPTED_PASSWORD_LENGTH, false);
+        String url = sanitizeOptional(cred.url(), MAX_URL_LENGTH, CharPolicy.PRINTABLE);
+        String notes = sanitizeOptional(cred.notes(), MAX_NOTES_LENGTH, CharPolicy.MULTILINE);
+
+        if (cred.tags().size() > MAX_TAGS || cred.customFields().size() > MAX_CUSTOM_FIELDS) {
+            throw new IllegalArgumentException("Too many tags or custom fields.");
+        }
+        List<String> tags = new ArrayList<>(cred.tags().size());
+        for (String tag : cred.tags()) {
+            tags.add(InputSanitizer.sanitize(tag, MAX_NAME_LENGTH, CharPolicy.PRINTABLE));
+        }
+        Map<String, String> customFields = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : cred.customFields().entrySet()) {
+            customFields.put(InputSanitizer.sanitize(field.getKey(), MAX_NAME_LENGTH, CharPolicy.PRINTABLE),
+                    sanitizeOptional(field.getValue(), MAX_NOTES_LENGTH, CharPolicy.MULTILINE));
+        }
+        return new Credential(cred.id(), serviceName, username, encryptedPassword, url, notes, tags, customFields,
+                cred.createdAt(), cred.modifiedAt());
+    }
+
+    private static void setIndexedLines(Map<Credential, VaultIndex.Location> locations) {
+        Map<UUID, VaultIndex.Location> ids = new HashMap<>();
+        for (Map.Entry<Credential, VaultIndex.Location> location : locations.entrySet()) {
+            ids.put(location.getKey().id(), location.getValue());
+        }
+        indexedLines = locations;
+        indexedIds = ids;
+    }
+
+    private static String sanitizeOptional(String input, int maxLength, CharPolicy policy) {
+        return input == null || input.isBlank() ? "" : InputSanitizer.sanitize(input, maxLength, policy);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Syncs through a directory shared by all replicas, such as a network drive or a synced folder.
+ * <p>
+ * Every replica publishes its changes into its own subdirectory, one file per sync holding only what
+ * it stored since its previous file, named after the sequence number it is complete up to:
+ * <pre>
+ * shared/1b4e28ba-…/00000000000000000042.chg
+ * </pre>
+ * A replica reads the files of the others that are newer than what it has received from them.
+ * Replicas do not need to be online at the same time, and never write to the same file.
+ */
+public final class DirectorySyncTransport implements SyncEngine.Transport {
+
+    private static final String SUFFIX = ".chg";
+
+    private final Path directory;
+
+    /**
+     * @param directory The shared directory.
+     */
+    public DirectorySyncTransport(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public List<SyncEngine.Changeset> exchange(SyncEngine local) throws IOException {
+        Path own = directory.resolve(local.replicaId().toString());
+        Files.createDirectories(own);
+
+        TreeMap<Long, Path> published = changesetFiles(own);
+        long after = published.isEmpty() ? 0 : published.lastKey();
+        SyncEngine.Changeset outgoing = local.changesSince(after, null);
+        if (!outgoing.changes().isEmpty()) {
+            Path file = own.resolve(String.format("%020d", outgoing.upTo()) + SUFFIX);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.US_ASCII)) {
+                local.write(outgoing, writer);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        List<SyncEngine.Changeset> incoming = new ArrayList<>();
+        try (DirectoryStream<Path> replicas = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path replica : replicas) {
+                UUID peer = replicaId(replica);
+                if (peer == null || peer.equals(local.replicaId())) {
+                    continue;
+                }
+                long seen = local.receivedUpTo().getOrDefault(peer, 0L);
+                for (Path file : changesetFiles(replica).tailMap(seen, false).values()) {
+                    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+                        SyncEngine.Changeset changeset = local.read(reader);
+                        if (!changeset.sender().equals(peer)) {
+                            throw new IOException("Sync file " + file + " was published by another replica.");
+                        }
+                        incoming.add(changeset);
+                    }
+                }
+            }
+        }
+        return incoming;
+    }
+
+    private static TreeMap<Long, Path> changesetFiles(Path replica) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(replica, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a changeset of this transport
+                }
+            }
+        }
+        return files;
+    }
+
+    private static UUID replicaId(Path replica) {
+        try {
+            return UUID.fromString(replica.getFileName().toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,53 +1,300 @@
 package service;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import utils.SecretBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
-import java.security.spec.KeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
- * EncryptionService provides secure encryption and decryption of sensitive data using AES-GCM.
+ * EncryptionService provides secure encryption and decryption of sensitive data using AES-GCM
+ * or ChaCha20-Poly1305, see {@link CipherSuite}.
  * The encryption key is derived from the user's master password and a persistent salt using PBKDF2.
- * The key and salt are only kept in memory for the session and cleared on JVM shutdown.
+ * The key is derived once per session, kept in memory only and cleared on JVM shutdown.
  * Usage:
- * - After authentication, call setSessionKeyAndSalt(masterPassword, salt) to initialize the session key.
+ * - After authentication, call openSession(masterPassword, key) with the key derived during unlock,
+ *   or setSessionKeyAndSalt(masterPassword, salt) to derive it, to initialize the session key.
  *   Note: `setSessionKeyAndSalt` must be called before encrypt() or decrypt() to avoid errors.
- * - Use encrypt() and decrypt() for secure data operations.
+ * - Use encrypt() and decrypt() for secure data operations, or encryptSecret() and
+ *   decryptSecret() to keep passwords out of the heap (see {@link SecretBuffer}).
  * - The persistent salt is managed in encryption_salt.dat.
+ * - A key-check value in key_check.dat lets one PBKDF2 run verify the master password and yield the key.
  * Security Notes:
- * - Keys and salts are cleared from memory at JVM shutdown via a shutdown hook.
- * - AES/GCM/NoPadding is used for encryption, ensuring authenticated encryption.
+ * - Keys and salts are cleared from memory at JVM shutdown via a shutdown hook, registered when the first session opens.
+ * - Only authenticated encryption is used. New data is encrypted with {@link CipherSuite#preferred()};
+ *   data encrypted with any suite can be decrypted.
  */
 public class EncryptionService {
 
-	private static String sessionKey = null;
-	private static String sessionSalt = null;
+	static final String SALT_FILE = "encryption_salt.dat";
+	static final String KEY_CHECK_FILE = "key_check.dat";
+	private static final byte[] KEY_CHECK_LABEL = "SecurePasswordManager key check v1".getBytes(StandardCharsets.UTF_8);
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final String KDF_ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int KDF_ITERATIONS = 65536;
+	private static final int IV_LENGTH = CipherSuite.NONCE_LENGTH;
+
+	private static SecretKey sessionSecretKey = null;
+	private static SecretKey verifierKey = null;
+	private static SecretKey fingerprintKey = null;
+	private static byte[] sessionVerifier = null;
 
+	/**
+	 * Derives the session key from the master password and salt and opens the session.
+	 * The key is derived once here; encrypt() and decrypt() reuse it for the rest of the session.
+	 *
+	 * @param key  the master password
+	 * @param salt the persistent salt
+	 */
 	public static void setSessionKeyAndSalt(String key, String salt) {
-		sessionKey = key;
-		sessionSalt = salt;
+		try {
+			openSession(key, getSecretKey(key, salt));
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to derive session key: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Opens a session with an already derived key, so that unlocking runs PBKDF2 only once.
+	 * A verifier of the password, keyed with a random per-session key, is cached for
+	 * cheap re-authentication through {@link #verifySessionPassword(String)}.
+	 *
+	 * @param password the master password the key was derived from
+	 * @param key      the key derived with {@link #getSecretKey(String, String)}
+	 * @throws Exception if the verifier cannot be computed
+	 */
+	public static void openSession(String password, SecretKey key) throws Exception {
+		openSession(ByteBuffer.wrap(password.getBytes(StandardCharsets.UTF_8)), key);
+	}
+
+	/**
+	 * Opens a session with an already derived key and a master password held in a {@link SecretBuffer},
+	 * which is only read, never copied to the heap.
+	 *
+	 * @param password the master password the key was derived from
+	 * @param key      the key derived with {@link #getSecretKey(SecretBuffer, String)}
+	 * @throws Exception if the verifier cannot be computed
+	 */
+	public static void openSession(SecretBuffer password, SecretKey key) throws Exception {
+		openSession(password.view(), key);
+	}
+
+	private static void openSession(ByteBuffer password, SecretKey key) throws Exception {
+		byte[] verifierKeyBytes = new byte[32];
+		RandomHolder.RANDOM.nextBytes(verifierKeyBytes);
+		SecretKey newVerifierKey = new SecretKeySpec(verifierKeyBytes, HMAC_ALGORITHM);
+		RandomHolder.RANDOM.nextBytes(verifierKeyBytes);
+		SecretKey newFingerprintKey = new SecretKeySpec(verifierKeyBytes, HMAC_ALGORITHM);
+		Arrays.fill(verifierKeyBytes, (byte) 0);
+
+		ShutdownHook.register();
+		sessionSecretKey = key;
+		verifierKey = newVerifierKey;
+		fingerprintKey = newFingerprintKey;
+		Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+		mac.init(newVerifierKey);
+		mac.update(password);
+		sessionVerifier = mac.doFinal();
 	}
 
-	private static SecretKey getSessionSecretKey() throws Exception {
-		if (sessionKey == null || sessionSalt == null) {
+	static SecretKey getSessionSecretKey() {
+		if (sessionSecretKey == null) {
 			throw new IllegalStateException("Session key and salt must be set before encryption/decryption.");
 		}
-		return getSecretKey(sessionKey, sessionSalt);
+		return sessionSecretKey;
 	}
 
 	public static void clearSessionKeyAndSalt() {
-		sessionKey = null;
-		sessionSalt = null;
+		sessionSecretKey = null;
+		verifierKey = null;
+		fingerprintKey = null;
+		if (sessionVerifier != null) {
+			Arrays.fill(sessionVerifier, (byte) 0);
+			sessionVerifier = null;
+		}
+	}
+
+	// Seeded on first use rather than when the class loads, which is before the first prompt
+	private static final class RandomHolder {
+		static final SecureRandom RANDOM = new SecureRandom();
+	}
+
+	// Registers the hook that clears the session at JVM shutdown once the first session opens,
+	// so runs that never unlock the vault do not pay for it
+	private static final class ShutdownHook {
+		static {
+			Runtime.getRuntime().addShutdownHook(new Thread(EncryptionService::clearSessionKeyAndSalt));
+		}
+
+		static void register() {
+			// Loading the class registers the hook
+		}
+	}
+
+	/**
+	 * Re-authenticates the user inside an open session.
+	 * Compares against the cached verifier in constant time instead of re-running BCrypt or PBKDF2.
+	 *
+	 * @param password the password entered by the user
+	 * @return true if it matches the master password the session was opened with
+	 */
+	public static boolean verifySessionPassword(String password) {
+		if (password == null || verifierKey == null || sessionVerifier == null) {
+			return false;
+		}
+		try {
+			byte[] candidate = hmac(verifierKey, password.getBytes(StandardCharsets.UTF_8));
+			return MessageDigest.isEqual(candidate, sessionVerifier);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Re-authenticates the user inside an open session with a password held in a {@link SecretBuffer}.
+	 *
+	 * @param password the password entered by the user
+	 * @return true if it matches the master password the session was opened with
+	 */
+	public static boolean verifySessionSecret(SecretBuffer password) {
+		if (password == null || verifierKey == null || sessionVerifier == null) {
+			return false;
+		}
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(new SecretKeySpec(verifierKey.getEncoded(), HMAC_ALGORITHM));
+			mac.update(password.view());
+			return MessageDigest.isEqual(mac.doFinal(), sessionVerifier);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Computes a fingerprint of secret data, keyed with a random key that exists only for this session.
+	 * Equal inputs have equal fingerprints within a session, so secrets can be compared without
+	 * keeping them, while a fingerprint that leaks cannot be brute-forced offline.
+	 *
+	 * @param secret the secret bytes
+	 * @return the 32-byte fingerprint
+	 * @throws IllegalStateException if no session is open
+	 */
+	public static byte[] sessionFingerprint(byte[] secret) {
+		SecretKey key = fingerprintKey;
+		if (key == null) {
+			throw new IllegalStateException("A session must be open to compute fingerprints.");
+		}
+		try {
+			return hmac(key, secret);
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to compute fingerprint: " + e.getMessage(), e);
+		}
 	}
 
-	// Call this method at JVM shutdown to clear sensitive data from memory
-	static {
-		Runtime.getRuntime().addShutdownHook(new Thread(EncryptionService::clearSessionKeyAndSalt));
+	/**
+	 * Computes the session fingerprint of a secret held in a {@link SecretBuffer}, without copying it to the heap.
+	 *
+	 * @param secret the secret
+	 * @return the 32-byte fingerprint
+	 * @throws IllegalStateException if no session is open
+	 */
+	public static byte[] sessionFingerprint(SecretBuffer secret) {
+		SecretKey key = fingerprintKey;
+		if (key == null) {
+			throw new IllegalStateException("A session must be open to compute fingerprints.");
+		}
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(new SecretKeySpec(key.getEncoded(), HMAC_ALGORITHM));
+			mac.update(secret.view());
+			return mac.doFinal();
+		} catch (Exception e) {
+			throw new IllegalStateException("Failed to compute fingerprint: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Computes the key-check value of a derived key.
+	 * The value is stored next to the vault so that a single PBKDF2 run both verifies the
+	 * master password and yields the encryption key. It reveals nothing about the key itself.
+	 *
+	 * @param key the derived encryption key
+	 * @return the Base64 encoded key-check value
+	 * @throws Exception if the HMAC cannot be computed
+	 */
+	public static String computeKeyCheck(SecretKey key) throws Exception {
+		return Base64.getEncoder().encodeToString(hmac(key, KEY_CHECK_LABEL));
+	}
+
+	/**
+	 * Checks a derived key against a stored key-check value in constant time.
+	 *
+	 * @param key        the derived encryption key
+	 * @param storedCheck the Base64 encoded key-check value
+	 * @return true if the key matches
+	 * @throws Exception if the HMAC cannot be computed
+	 */
+	public static boolean matchesKeyCheck(SecretKey key, String storedCheck) throws Exception {
+		byte[] expected;
+		try {
+			expected = Base64.getDecoder().decode(storedCheck);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return MessageDigest.isEqual(hmac(key, KEY_CHECK_LABEL), expected);
+	}
+
+	/**
+	 * Loads the stored key-check value.
+	 *
+	 * @return the key-check value, or null if none has been stored yet
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String loadKeyCheck() throws IOException {
+		Path path = Paths.get(KEY_CHECK_FILE);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		String check = Files.readString(path).trim();
+		return check.isEmpty() ? null : check;
+	}
+
+	/**
+	 * Stores the key-check value, replacing any previous one.
+	 *
+	 * @param keyCheck the value produced by {@link #computeKeyCheck(SecretKey)}
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void storeKeyCheck(String keyCheck) throws IOException {
+		Files.writeString(Paths.get(KEY_CHECK_FILE), keyCheck);
+	}
+
+	/**
+	 * Removes the stored key-check value, e.g. when a new master password is created.
+	 *
+	 * @throws IOException if the file cannot be deleted
+	 */
+	public static void deleteKeyCheck() throws IOException {
+		Files.deleteIfExists(Paths.get(KEY_CHECK_FILE));
+	}
+
+	private static byte[] hmac(SecretKey key, byte[] data) throws Exception {
+		Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+		mac.init(new SecretKeySpec(key.getEncoded(), HMAC_ALGORITHM));
+		return mac.doFinal(data);
 	}
 
 	/**
@@ -59,10 +306,48 @@ public class EncryptionService {
 	 * @throws Exception if key generation fails
 	 */
 	public static SecretKey getSecretKey(String password, String salt) throws Exception {
+		char[] chars = password.toCharArray();
+		try {
+			return deriveKey(chars, salt);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	/**
+	 * Generates a SecretKey from a password held in a {@link SecretBuffer}, as {@link #getSecretKey(String, String)}
+	 * does. The password is decoded into a {@code char[]} for PBKDF2, which is wiped as soon as the key is derived.
+	 *
+	 * @param password the password to derive the key from
+	 * @param salt     the salt bytes as string
+	 * @return a SecretKey suitable for AES encryption
+	 * @throws Exception if key generation fails
+	 */
+	public static SecretKey getSecretKey(SecretBuffer password, String salt) throws Exception {
+		char[] chars = password.toChars();
+		try {
+			return deriveKey(chars, salt);
+		} finally {
+			Arrays.fill(chars, '\0');
+		}
+	}
+
+	private static SecretKey deriveKey(char[] password, String salt) throws Exception {
+		VaultEvents.KeyDerivation event = new VaultEvents.KeyDerivation();
+		event.begin();
 		byte[] saltBytes = salt.getBytes();
-		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-		KeySpec spec = new PBEKeySpec(password.toCharArray(), saltBytes, 65536, 256);
-		SecretKey tmp = factory.generateSecret(spec);
+		SecretKeyFactory factory = SecretKeyFactory.getInstance(KDF_ALGORITHM);
+		PBEKeySpec spec = new PBEKeySpec(password, saltBytes, KDF_ITERATIONS, 256);
+		SecretKey tmp;
+		try {
+			tmp = factory.generateSecret(spec);
+		} finally {
+			// The spec keeps its own copy of the password
+			spec.clearPassword();
+		}
+		event.algorithm = KDF_ALGORITHM;
+		event.iterations = KDF_ITERATIONS;
+		event.commit();
 		return new SecretKeySpec(tmp.getEncoded(), "AES");
 	}
 
@@ -79,18 +364,105 @@ public class EncryptionService {
 		if (strToEncrypt == null) {
 			throw new IllegalArgumentException("Input to encrypt cannot be null");
 		}
-		SecretKey key = getSessionSecretKey();
-		Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-		byte[] iv = new byte[12];
-		SecureRandom sr = new SecureRandom();
-		sr.nextBytes(iv);
-		GCMParameterSpec gcmSpec = new GCMParameterSpec(128, iv);
-		cipher.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
-		byte[] encrypted = cipher.doFinal(strToEncrypt.getBytes());
-		byte[] encryptedWithIv = new byte[iv.length + encrypted.length];
-		System.arraycopy(iv, 0, encryptedWithIv, 0, iv.length);
-		System.arraycopy(encrypted, 0, encryptedWithIv, iv.length, encrypted.length);
-		return Base64.getEncoder().encodeToString(encryptedWithIv);
+		return encrypt(strToEncrypt, getSessionSecretKey());
+	}
+
+	/**
+	 * Encrypts a plaintext string with an explicit key instead of the session key.
+	 * Used when records are moved from one key to another, e.g. during a re-key.
+	 *
+	 * @param strToEncrypt plaintext string to encrypt
+	 * @param key          the AES key to encrypt with
+	 * @return Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	public static String encrypt(String strToEncrypt, SecretKey key) throws Exception {
+		if (strToEncrypt == null) {
+			throw new IllegalArgumentException("Input to encrypt cannot be null");
+		}
+		return encryptBytes(strToEncrypt.getBytes(), key);
+	}
+
+	/**
+	 * Encrypts raw bytes with the session key, e.g. a binary vault record.
+	 *
+	 * @param plaintext bytes to encrypt
+	 * @return Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	public static String encryptBytes(byte[] plaintext) throws Exception {
+		return encryptBytes(plaintext, getSessionSecretKey());
+	}
+
+	/**
+	 * Encrypts raw bytes with an explicit key.
+	 *
+	 * @param plaintext bytes to encrypt
+	 * @param key       the AES key to encrypt with
+	 * @return Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	public static String encryptBytes(byte[] plaintext, SecretKey key) throws Exception {
+		if (plaintext == null) {
+			throw new IllegalArgumentException("Input to encrypt cannot be null");
+		}
+		return encrypt(ByteBuffer.wrap(plaintext), key, CipherSuite.preferred());
+	}
+
+	/**
+	 * Encrypts raw bytes with an explicit key and cipher suite instead of the preferred one.
+	 *
+	 * @param plaintext bytes to encrypt
+	 * @param key       the key to encrypt with
+	 * @param suite     the cipher suite to encrypt with
+	 * @return the suite's prefix and the Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	static String encryptBytes(byte[] plaintext, SecretKey key, CipherSuite suite) throws Exception {
+		if (plaintext == null) {
+			throw new IllegalArgumentException("Input to encrypt cannot be null");
+		}
+		return encrypt(ByteBuffer.wrap(plaintext), key, suite);
+	}
+
+	/**
+	 * Encrypts a secret with the session key, reading it straight from its off-heap memory.
+	 *
+	 * @param secret the secret to encrypt
+	 * @return Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	public static String encryptSecret(SecretBuffer secret) throws Exception {
+		return encryptSecret(secret, getSessionSecretKey());
+	}
+
+	/**
+	 * Encrypts a secret with an explicit key, reading it straight from its off-heap memory.
+	 *
+	 * @param secret the secret to encrypt
+	 * @param key    the AES key to encrypt with
+	 * @return Base64 encoded string of IV + encrypted data
+	 * @throws Exception if encryption fails
+	 */
+	public static String encryptSecret(SecretBuffer secret, SecretKey key) throws Exception {
+		if (secret == null) {
+			throw new IllegalArgumentException("Input to encrypt cannot be null");
+		}
+		return encrypt(secret.view(), key, CipherSuite.preferred());
+	}
+
+	/**
+	 * Encrypts into a single array holding the IV followed by the ciphertext and tag,
+	 * so no intermediate arrays are allocated and copied.
+	 */
+	private static String encrypt(ByteBuffer plaintext, SecretKey key, CipherSuite suite) throws Exception {
+		byte[] encryptedWithIv = new byte[IV_LENGTH + plaintext.remaining() + CipherSuite.TAG_LENGTH];
+		byte[] iv = new byte[IV_LENGTH];
+		RandomHolder.RANDOM.nextBytes(iv);
+		System.arraycopy(iv, 0, encryptedWithIv, 0, IV_LENGTH);
+		Cipher cipher = suite.init(Cipher.ENCRYPT_MODE, key, iv, 0);
+		cipher.doFinal(plaintext, ByteBuffer.wrap(encryptedWithIv, IV_LENGTH, encryptedWithIv.length - IV_LENGTH));
+		return suite.prefix() + Base64.getEncoder().encodeToString(encryptedWithIv);
 	}
 
 	/**
@@ -101,38 +473,127 @@ public class EncryptionService {
 	 * @throws Exception if decryption fails
 	 */
 	public static String decrypt(String strToDecrypt) throws Exception {
+		SecretKey key;
 		try {
-			SecretKey key = getSessionSecretKey();
-			byte[] encryptedIvTextBytes = Base64.getDecoder().decode(strToDecrypt);
-			if (encryptedIvTextBytes.length < 13) {
-				throw new IllegalArgumentException("Invalid encrypted input length");
-			}
-			byte[] iv = new byte[12];
-			System.arraycopy(encryptedIvTextBytes, 0, iv, 0, iv.length);
-			byte[] encryptedBytes = new byte[encryptedIvTextBytes.length - iv.length];
-			System.arraycopy(encryptedIvTextBytes, iv.length, encryptedBytes, 0, encryptedBytes.length);
-			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-			GCMParameterSpec gcmSpec = new GCMParameterSpec(128, iv);
-			cipher.init(Cipher.DECRYPT_MODE, key, gcmSpec);
-			byte[] decrypted = cipher.doFinal(encryptedBytes);
-			return new String(decrypted);
+			key = getSessionSecretKey();
+		} catch (IllegalStateException e) {
+			throw new javax.crypto.BadPaddingException("Decryption failed: " + e.getMessage());
+		}
+		return decrypt(strToDecrypt, key);
+	}
+
+	/**
+	 * Decrypts a Base64 encoded IV + encrypted data string with an explicit key.
+	 *
+	 * @param strToDecrypt Base64 encoded string containing IV + encrypted data
+	 * @param key          the AES key to decrypt with
+	 * @return the decrypted plaintext string
+	 * @throws Exception if decryption fails
+	 */
+	public static String decrypt(String strToDecrypt, SecretKey key) throws Exception {
+		return new String(decryptBytes(strToDecrypt, key));
+	}
+
+	/**
+	 * Decrypts a Base64 encoded IV + encrypted data string with the session key, returning raw bytes.
+	 *
+	 * @param strToDecrypt Base64 encoded string containing IV + encrypted data
+	 * @return the decrypted bytes
+	 * @throws Exception if decryption fails
+	 */
+	public static byte[] decryptBytes(String strToDecrypt) throws Exception {
+		SecretKey key;
+		try {
+			key = getSessionSecretKey();
+		} catch (IllegalStateException e) {
+			throw new javax.crypto.BadPaddingException("Decryption failed: " + e.getMessage());
+		}
+		return decryptBytes(strToDecrypt, key);
+	}
+
+	/**
+	 * Decrypts a Base64 encoded IV + encrypted data string with an explicit key, returning raw bytes.
+	 *
+	 * @param strToDecrypt Base64 encoded string containing IV + encrypted data
+	 * @param key          the AES key to decrypt with
+	 * @return the decrypted bytes
+	 * @throws Exception if decryption fails
+	 */
+	public static byte[] decryptBytes(String strToDecrypt, SecretKey key) throws Exception {
+		try {
+			CipherSuite suite = CipherSuite.of(strToDecrypt);
+			byte[] encryptedIvTextBytes = Base64.getDecoder().decode(strToDecrypt.substring(suite.prefix().length()));
+			return initDecrypt(suite, encryptedIvTextBytes, key)
+					.doFinal(encryptedIvTextBytes, IV_LENGTH, encryptedIvTextBytes.length - IV_LENGTH);
 		} catch (Exception e) {
 			throw new javax.crypto.BadPaddingException("Decryption failed: " + e.getMessage());
 		}
 	}
 
+	/**
+	 * Decrypts a Base64 encoded IV + encrypted data string with the session key straight into
+	 * off-heap memory, so the plaintext never exists as a String or heap array.
+	 *
+	 * @param strToDecrypt Base64 encoded string containing IV + encrypted data
+	 * @return the decrypted secret, to be closed by the caller
+	 * @throws Exception if decryption fails
+	 */
+	public static SecretBuffer decryptSecret(String strToDecrypt) throws Exception {
+		SecretKey key;
+		try {
+			key = getSessionSecretKey();
+		} catch (IllegalStateException e) {
+			throw new javax.crypto.BadPaddingException("Decryption failed: " + e.getMessage());
+		}
+		return decryptSecret(strToDecrypt, key);
+	}
+
+	/**
+	 * Decrypts a Base64 encoded IV + encrypted data string with an explicit key straight into off-heap memory.
+	 *
+	 * @param strToDecrypt Base64 encoded string containing IV + encrypted data
+	 * @param key          the AES key to decrypt with
+	 * @return the decrypted secret, to be closed by the caller
+	 * @throws Exception if decryption fails
+	 */
+	public static SecretBuffer decryptSecret(String strToDecrypt, SecretKey key) throws Exception {
+		try {
+			CipherSuite suite = CipherSuite.of(strToDecrypt);
+			byte[] encryptedIvTextBytes = Base64.getDecoder().decode(strToDecrypt.substring(suite.prefix().length()));
+			Cipher cipher = initDecrypt(suite, encryptedIvTextBytes, key);
+			ByteBuffer encrypted = ByteBuffer.wrap(encryptedIvTextBytes, IV_LENGTH, encryptedIvTextBytes.length - IV_LENGTH);
+			return SecretBuffer.fill(cipher.getOutputSize(encrypted.remaining()), target -> cipher.doFinal(encrypted, target));
+		} catch (Exception e) {
+			throw new javax.crypto.BadPaddingException("Decryption failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Initializes a cipher of the envelope's suite for decryption with the IV at the start of the input, read in place.
+	 */
+	private static Cipher initDecrypt(CipherSuite suite, byte[] encryptedIvTextBytes, SecretKey key) throws Exception {
+		if (encryptedIvTextBytes.length < IV_LENGTH + 1) {
+			throw new IllegalArgumentException("Invalid encrypted input length");
+		}
+		return suite.init(Cipher.DECRYPT_MODE, key, encryptedIvTextBytes, 0);
+	}
+
 	// Utility to generate or load a persistent salt for PBKDF2
 	public static String getOrCreatePersistentSalt() throws Exception {
-		java.nio.file.Path saltPath = java.nio.file.Paths.get("encryption_salt.dat"); // Alterado para .dat
+		java.nio.file.Path saltPath = java.nio.file.Paths.get(SALT_FILE); // Alterado para .dat
 		if (java.nio.file.Files.exists(saltPath)) {
 			return java.nio.file.Files.readString(saltPath).trim();
 		}
-		// Generate a new random salt (16 bytes, base64 encoded)
-		byte[] saltBytes = new byte[16];
-		new SecureRandom().nextBytes(saltBytes);
-		String salt = Base64.getEncoder().encodeToString(saltBytes);
+		String salt = generateSalt();
 		java.nio.file.Files.writeString(saltPath, salt);
 		return salt;
 	}
 
+	// Generate a new random salt (16 bytes, base64 encoded)
+	static String generateSalt() {
+		byte[] saltBytes = new byte[16];
+		RandomHolder.RANDOM.nextBytes(saltBytes);
+		return Base64.getEncoder().encodeToString(saltBytes);
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package service;
+
+import model.Credential;
+import service.CredentialListWriter.Format;
+import service.CredentialListing.SortOrder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The non-interactive {@code list} command, for scripting:
+ * <pre>
+ * list [--format text|json] [--sort service|username|modified] [--page-size N] [--cursor C] [--filter EXPR]
+ * </pre>
+ * It prints one page and, if there are more, the cursor to pass for the next one.
+ *
+ * @param format   The output format.
+ * @param sort     The sort order.
+ * @param pageSize The number of credentials per page.
+ * @param cursor   The cursor from the previous page, or null.
+ * @param filter   A tag filter (see {@link TagIndex}), or null.
+ */
+public record ListCommand(Format format, SortOrder sort, int pageSize, String cursor, String filter) {
+    /** The command name, i.e. the first program argument. */
+    public static final String NAME = "list";
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Parses the arguments that follow the command name.
+     *
+     * @param args The arguments.
+     * @return The command.
+     * @throws IllegalArgumentException If an option is unknown, lacks a value or has an invalid value.
+     */
+    public static ListCommand parse(List<String> args) {
+        Format format = Format.TEXT;
+        SortOrder sort = SortOrder.SERVICE;
+        int pageSize = DEFAULT_PAGE_SIZE;
+        String cursor = null;
+        String filter = null;
+
+        for (int i = 0; i < args.size(); i++) {
+            String option = args.get(i);
+            if (i + 1 == args.size()) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args.get(++i);
+            switch (option) {
+                case "--format" -> format = Format.parse(value);
+                case "--sort" -> sort = SortOrder.parse(value);
+                case "--page-size" -> pageSize = parsePageSize(value);
+                case "--cursor" -> cursor = value;
+                case "--filter" -> filter = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        return new ListCommand(format, sort, pageSize, cursor, filter);
+    }
+
+    /**
+     * Writes the requested page of the credentials.
+     *
+     * @param credentials The credentials to list.
+     * @param out         The writer; it is flushed but not closed.
+     * @throws IOException If writing fails.
+     * @throws IllegalArgumentException If the filter or cursor is invalid.
+     */
+    public void run(List<Credential> credentials, CredentialListWriter out) throws IOException {
+        Predicate<Credential> matcher = filter == null || filter.isBlank()
+                ? credential -> true
+                : new TagIndex(credentials).matcher(filter);
+        CredentialListing listing = new CredentialListing(credentials);
+        out.writePage(listing.page(sort, cursor, pageSize, matcher));
+        out.flush();
+    }
+
+    private static int parsePageSize(String value) {
+        int pageSize;
+        try {
+            pageSize = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Page size must be a number: " + value);
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        return pageSize;
+    }
+}
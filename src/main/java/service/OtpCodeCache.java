@@ -0,0 +1,133 @@
+package service;
+
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The current time-based codes of many credentials, computed together once per period rather than every time
+ * they are shown.
+ * <p>
+ * All codes are generated in one pass by {@link TOTPService#generateCodes} and kept until the first period
+ * boundary among the seeds, usually the next multiple of 30 seconds. A virtual-thread scheduler recomputes them
+ * at that boundary, so codes are ready when the list is shown again; if it runs late, the first read after
+ * the boundary recomputes them itself, so an expired code is never returned.
+ * Counter-based seeds are left out: their codes change when one is used, not with time.
+ */
+public class OtpCodeCache implements AutoCloseable {
+
+    /**
+     * A code and how long it stays valid.
+     *
+     * @param code       The code.
+     * @param validUntil When the code expires, in seconds since the epoch.
+     */
+    public record Code(String code, long validUntil) {
+    }
+
+    private final Map<UUID, OtpSeed> seeds;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+
+    private Map<UUID, Code> codes = Map.of();
+    private long validUntil = Long.MIN_VALUE;
+    private ScheduledFuture<?> pendingRefresh;
+    private long generation;
+
+    /**
+     * Creates a cache of the codes of some seeds and computes them.
+     *
+     * @param seeds The seeds by credential id; counter-based ones are ignored.
+     * @param clock The clock giving the current time.
+     * @throws GeneralSecurityException If an algorithm of a seed is not available.
+     */
+    public OtpCodeCache(Map<UUID, OtpSeed> seeds, Clock clock) throws GeneralSecurityException {
+        Map<UUID, OtpSeed> timeBased = new LinkedHashMap<>();
+        for (Map.Entry<UUID, OtpSeed> seed : seeds.entrySet()) {
+            if (seed.getValue().type() == OtpSeed.Type.TOTP) {
+                timeBased.put(seed.getKey(), seed.getValue());
+            }
+        }
+        this.seeds = timeBased;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("otp-refresh").factory());
+        refresh();
+    }
+
+    /**
+     * @return The current codes by credential id, in the order of the seeds.
+     * @throws GeneralSecurityException If the codes had to be recomputed and an algorithm is not available.
+     */
+    public synchronized Map<UUID, Code> codes() throws GeneralSecurityException {
+        if (clock.millis() / 1000 >= validUntil) {
+            refresh();
+        }
+        return codes;
+    }
+
+    /**
+     * Stops the scheduler.
+     */
+    @Override
+    public synchronized void close() {
+        if (pendingRefresh != null) {
+            pendingRefresh.cancel(false);
+        }
+        scheduler.shutdownNow();
+        codes = Map.of();
+    }
+
+    private synchronized void refresh() throws GeneralSecurityException {
+        long now = clock.millis() / 1000;
+        List<OtpSeed> list = new ArrayList<>(seeds.values());
+        List<String> generated = TOTPService.generateCodes(list, now);
+        Map<UUID, Code> refreshed = new LinkedHashMap<>();
+        long next = Long.MAX_VALUE;
+        int i = 0;
+        for (UUID id : seeds.keySet()) {
+            int period = list.get(i).period();
+            long expires = (Math.floorDiv(now, period) + 1) * period;
+            refreshed.put(id, new Code(generated.get(i++), expires));
+            next = Math.min(next, expires);
+        }
+        codes = Collections.unmodifiableMap(refreshed);
+        validUntil = next;
+        schedule(++generation);
+    }
+
+    private void schedule(long scheduled) {
+        if (pendingRefresh != null) {
+            pendingRefresh.cancel(false);
+        }
+        if (validUntil != Long.MAX_VALUE && !scheduler.isShutdown()) {
+            pendingRefresh = scheduler.schedule(() -> refreshQuietly(scheduled),
+                    validUntil * 1000 - clock.millis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void refreshQuietly(long scheduled) {
+        if (scheduled != generation) {
+            // Already refreshed by a read, which scheduled the next refresh
+            return;
+        }
+        try {
+            if (clock.millis() / 1000 < validUntil) {
+                // Woken up just before the boundary
+                schedule(scheduled);
+            } else {
+                refresh();
+            }
+        } catch (GeneralSecurityException e) {
+            // The next read recomputes them and reports the error
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package service;
+
+import model.Credential;
+import org.apache.commons.codec.binary.Base32;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A one-time password seed of a third-party account, as an authenticator app holds it, read from and written
+ * to the {@code otpauth://} URIs of the Key URI format, e.g. the one {@link TOTPService#getOtpAuthUrl} produces:
+ * <pre>
+ * otpauth://totp/GitHub:someone@example.com?secret=JBSWY3DPEHPK3PXP&amp;issuer=GitHub
+ * otpauth://hotp/Bank:1234?secret=JBSWY3DPEHPK3PXP&amp;counter=7&amp;digits=8&amp;algorithm=SHA256
+ * </pre>
+ * A credential holds its seed in the custom field {@value #FIELD}, as the URI encrypted like a password,
+ * so the seed is only decrypted when codes are shown.
+ *
+ * @param type      Time-based or counter-based.
+ * @param secret    The shared secret.
+ * @param algorithm The HMAC algorithm, e.g. {@code HmacSHA1}.
+ * @param digits    The number of digits of a code.
+ * @param period    The seconds a time-based code is valid for.
+ * @param counter   The counter of the next counter-based code; 0 for time-based seeds.
+ * @param issuer    The service that issued the seed, or an empty string.
+ * @param account   The account name, or an empty string.
+ */
+public record OtpSeed(Type type, byte[] secret, String algorithm, int digits, int period, long counter,
+                      String issuer, String account) {
+
+    /** The custom field of a credential that holds its encrypted seed. */
+    public static final String FIELD = "otpauth";
+
+    static final int DEFAULT_DIGITS = 6;
+    static final int DEFAULT_PERIOD = 30;
+    private static final String SCHEME = "otpauth://";
+    private static final int MAX_PERIOD = 3600;
+    private static final Map<String, String> ALGORITHMS = Map.of(
+            "SHA1", "HmacSHA1", "SHA256", "HmacSHA256", "SHA512", "HmacSHA512");
+
+    /**
+     * The kinds of one-time passwords.
+     */
+    public enum Type {
+        /** Time-based, RFC 6238: a new code every period. */
+        TOTP,
+        /** Counter-based, RFC 4226: a new code every time one is used. */
+        HOTP
+    }
+
+    public OtpSeed {
+        if (secret.length == 0) {
+            throw new IllegalArgumentException("The seed has no secret.");
+        }
+        if (!ALGORITHMS.containsValue(algorithm)) {
+            throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        }
+        if (digits < 6 || digits > 8) {
+            throw new IllegalArgumentException("Codes must have 6 to 8 digits.");
+        }
+        if (period < 1 || period > MAX_PERIOD || counter < 0) {
+            throw new IllegalArgumentException("Invalid period or counter.");
+        }
+        secret = secret.clone();
+    }
+
+    /**
+     * Parses an {@code otpauth://} URI. Parameters missing from it take the defaults of authenticator apps:
+     * SHA-1, 6 digits and 30 seconds.
+     *
+     * @param uri The URI, e.g. read from the QR code a service shows.
+     * @return The seed.
+     * @throws IllegalArgumentException If it is not a valid {@code otpauth://} URI.
+     */
+    public static OtpSeed parse(String uri) {
+        String text = uri.trim();
+        if (!text.regionMatches(true, 0, SCHEME, 0, SCHEME.length())) {
+            throw new IllegalArgumentException("Not an otpauth:// URI.");
+        }
+        int slash = text.indexOf('/', SCHEME.length());
+        int question = text.indexOf('?');
+        if (slash < 0 || question < slash) {
+            throw new IllegalArgumentException("The URI needs a type, a label and parameters.");
+        }
+        Type type;
+        try {
+            type = Type.valueOf(text.substring(SCHEME.length(), slash).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown one-time password type: " + text.substring(SCHEME.length(), slash));
+        }
+
+        String label = decode(text.substring(slash + 1, question));
+        int colon = label.indexOf(':');
+        String issuer = colon < 0 ? "" : label.substring(0, colon).trim();
+        String account = label.substring(colon + 1).trim();
+
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (String parameter : text.substring(question + 1).split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(parameter.substring(0, equals).toLowerCase(Locale.ROOT), decode(parameter.substring(equals + 1)));
+            }
+        }
+        String secret = parameters.getOrDefault("secret", "").replace(" ", "").replace("=", "").toUpperCase(Locale.ROOT);
+        if (!secret.matches("[A-Z2-7]+")) {
+            throw new IllegalArgumentException("The secret must be Base32.");
+        }
+        String algorithm = ALGORITHMS.get(parameters.getOrDefault("algorithm", "SHA1").toUpperCase(Locale.ROOT));
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Unsupported algorithm: " + parameters.get("algorithm"));
+        }
+        if (parameters.containsKey("issuer")) {
+            issuer = parameters.get("issuer").trim();
+        }
+        if (type == Type.HOTP && !parameters.containsKey("counter")) {
+            throw new IllegalArgumentException("A counter-based URI needs a counter.");
+        }
+        try {
+            return new OtpSeed(type, new Base32().decode(secret), algorithm,
+                    Integer.parseInt(parameters.getOrDefault("digits", Integer.toString(DEFAULT_DIGITS))),
+                    Integer.parseInt(parameters.getOrDefault("period", Integer.toString(DEFAULT_PERIOD))),
+                    type == Type.HOTP ? Long.parseLong(parameters.get("counter")) : 0, issuer, account);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in the URI: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The seed as an {@code otpauth://} URI; parameters at their defaults are left out.
+     */
+    public String toUri() {
+        StringBuilder uri = new StringBuilder(SCHEME).append(type.name().toLowerCase(Locale.ROOT)).append('/');
+        if (!issuer.isEmpty()) {
+            uri.append(encode(issuer)).append(':');
+        }
+        uri.append(encode(account)).append("?secret=")
+                .append(new Base32().encodeToString(secret).replace("=", ""));
+        if (!issuer.isEmpty()) {
+            uri.append("&issuer=").append(encode(issuer));
+        }
+        if (!algorithm.equals("HmacSHA1")) {
+            uri.append("&algorithm=").append(algorithm.substring("Hmac".length()));
+        }
+        if (digits != DEFAULT_DIGITS) {
+            uri.append("&digits=").append(digits);
+        }
+        if (type == Type.TOTP && period != DEFAULT_PERIOD) {
+            uri.append("&period=").append(period);
+        }
+        if (type == Type.HOTP) {
+            uri.append("&counter=").append(counter);
+        }
+        return uri.toString();
+    }
+
+    @Override
+    public byte[] secret() {
+        return secret.clone();
+    }
+
+    /**
+     * @return The seed of the next counter-based code, once the current one was used.
+     */
+    public OtpSeed next() {
+        return new OtpSeed(type, secret, algorithm, digits, period, counter + 1, issuer, account);
+    }
+
+    /**
+     * Reads the seed a credential holds.
+     *
+     * @param credential The credential.
+     * @return The seed, or null if the credential has none.
+     * @throws IllegalArgumentException If the stored URI is not valid.
+     * @throws Exception If it cannot be decrypted with the current key.
+     */
+    public static OtpSeed of(Credential credential) throws Exception {
+        String encrypted = credential.customFields().get(FIELD);
+        return encrypted == null ? null : parse(EncryptionService.decrypt(encrypted));
+    }
+
+    /**
+     * @param credential The credential.
+     * @param seed       Its new seed, or null to remove it.
+     * @return The credential holding the seed, encrypted with the current key.
+     * @throws Exception If it cannot be encrypted.
+     */
+    public static Credential store(Credential credential, OtpSeed seed) throws Exception {
+        Map<String, String> fields = new LinkedHashMap<>(credential.customFields());
+        if (seed == null) {
+            fields.remove(FIELD);
+        } else {
+            fields.put(FIELD, EncryptionService.encrypt(seed.toUri()));
+        }
+        return credential.withDetails(credential.url(), credential.notes(), credential.tags(), fields);
+    }
+
+    @Override
+    public String toString() {
+        // Never the secret
+        return type + " seed for " + (issuer.isEmpty() ? account : issuer + ":" + account);
+    }
+
+    private static String decode(String text) {
+        // A plus sign is literal in a URI; only %20 stands for a space
+        return URLDecoder.decode(text.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
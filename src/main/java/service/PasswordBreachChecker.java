@@ -1,12 +1,11 @@
 package service;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import utils.SecretBuffer;
+
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class PasswordBreachChecker {
 
@@ -25,35 +24,76 @@ public class PasswordBreachChecker {
             The k-anonymity model of the API ensures the full hash is never transmitted
             */
             MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
-            byte[] hashBytes = sha1.digest(password.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02X", b));
-            }
-            String sha1Hash = sb.toString();
-            String prefix = sha1Hash.substring(0, 5);
-            String suffix = sha1Hash.substring(5);
-
-            // Step 2: Query the API with the prefix
-            URI uri = new URI("https", "api.pwnedpasswords.com", "/range/" + prefix, null);
-            URL url = uri.toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith(suffix)) {
-                    String[] parts = line.split(":");
-                    return Integer.parseInt(parts[1].trim());
-                }
-            }
-            reader.close();
-            return 0; // Not found in breaches
+            return checkHash(sha1.digest(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            System.err.println("Error checking password breach: " + e.getMessage());
+            return -1;
+        }
+    }
 
+    /**
+     * Checks a password held in a {@link SecretBuffer}; it is hashed in place and never becomes a String.
+     * @param password The password to check.
+     * @return Number of times the password was found in breaches (0 = safe, -1 = error).
+     */
+    public static int checkPassword(SecretBuffer password) {
+        try {
+            return checkHash(sha1(password));
         } catch (Exception e) {
             System.err.println("Error checking password breach: " + e.getMessage());
             return -1;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks a password by its SHA-1 hash, so callers holding the password as bytes
+     * do not need to turn it into a String.
+     * @param hashBytes The SHA-1 hash of the UTF-8 encoded password.
+     * @return Number of times the password was found in breaches (0 = safe, -1 = error).
+     */
+    public static int checkHash(byte[] hashBytes) {
+        try {
+            return BreachRangeClient.shared().count(hashBytes).join();
+        } catch (CompletionException e) {
+            System.err.println("Error checking password breach: " + e.getCause().getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Checks a password without blocking, so that many passwords can be checked at once over the
+     * shared connection.
+     * @param password The password to check.
+     * @return Number of times the password was found in breaches (0 = safe); fails if the API cannot be queried.
+     */
+    public static CompletableFuture<Integer> checkPasswordAsync(String password) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return checkHashAsync(sha1.digest(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks a password by its SHA-1 hash without blocking, so that many passwords can be
+     * checked at once over the shared connection.
+     * @param hashBytes The SHA-1 hash of the UTF-8 encoded password.
+     * @return Number of times the password was found in breaches (0 = safe); fails if the API cannot be queried.
+     */
+    public static CompletableFuture<Integer> checkHashAsync(byte[] hashBytes) {
+        return BreachRangeClient.shared().count(hashBytes);
+    }
+
+    /**
+     * Hashes a password held in a {@link SecretBuffer} as the API requires.
+     * @param password The password.
+     * @return Its SHA-1 hash.
+     * @throws Exception If SHA-1 is not available.
+     */
+    static byte[] sha1(SecretBuffer password) throws Exception {
+        MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+        sha1.update(password.view());
+        return sha1.digest();
+    }
+}
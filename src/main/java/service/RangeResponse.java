@@ -0,0 +1,131 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds a hash suffix in a range response of the Pwned Passwords API without decoding it.
+ * <p>
+ * A response holds about a thousand {@code SUFFIX:COUNT} lines of ASCII, each suffix being the last 35
+ * hex characters of a SHA-1 hash. Rather than reading it into a String per line, the body is scanned as
+ * bytes: each line's suffix is compared with the target, prepared once as upper-case ASCII bytes, and
+ * the scan skips to the next line at the first differing byte. The count of the matching line is
+ * parsed in place and the scan stops there, so a lookup allocates nothing. The body can be a live
+ * response or a cached range blob, on or off the heap.
+ */
+public final class RangeResponse {
+
+    /** The number of hex characters of a SHA-1 hash that the range API sends back. */
+    public static final int SUFFIX_LENGTH = 35;
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private RangeResponse() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Prepares the suffix of a SHA-1 hash for {@link #count}: the hex characters after the first five,
+     * encoded as upper-case ASCII without going through a String.
+     *
+     * @param sha1 The 20-byte SHA-1 hash.
+     * @return The 35 suffix characters.
+     */
+    public static byte[] suffixOf(byte[] sha1) {
+        byte[] suffix = new byte[SUFFIX_LENGTH];
+        // The prefix covers two bytes and the high nibble of the third
+        suffix[0] = HEX_DIGITS[sha1[2] & 0x0F];
+        for (int i = 3, j = 1; i < sha1.length; i++, j += 2) {
+            suffix[j] = HEX_DIGITS[(sha1[i] >> 4) & 0x0F];
+            suffix[j + 1] = HEX_DIGITS[sha1[i] & 0x0F];
+        }
+        return suffix;
+    }
+
+    /**
+     * Prepares a suffix given in hex for {@link #count}.
+     *
+     * @param suffix The hex characters, in either case.
+     * @return The suffix as upper-case ASCII.
+     * @throws IllegalArgumentException If it is empty or not hexadecimal.
+     */
+    public static byte[] suffixOf(String suffix) {
+        if (suffix.isEmpty()) {
+            throw new IllegalArgumentException("Suffix must contain only hexadecimal characters.");
+        }
+        byte[] bytes = new byte[suffix.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = suffix.charAt(i);
+            if (c >= 'a' && c <= 'f') {
+                c -= 'a' - 'A';
+            }
+            if (!((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F'))) {
+                throw new IllegalArgumentException("Suffix must contain only hexadecimal characters.");
+            }
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * Looks up the count of a suffix in a response body, between its position and its limit.
+     * The buffer's position is left unchanged.
+     *
+     * @param body   The response body.
+     * @param suffix The suffix as upper-case ASCII, see {@link #suffixOf}.
+     * @return The count, or 0 if the suffix is not listed (padding lines are listed with 0).
+     */
+    public static int count(ByteBuffer body, byte[] suffix) {
+        int limit = body.limit();
+        int pos = body.position();
+        while (pos < limit) {
+            int i = 0;
+            while (i < suffix.length && pos + i < limit && upper(body.get(pos + i)) == suffix[i]) {
+                i++;
+            }
+            if (i == suffix.length && pos + i < limit && body.get(pos + i) == ':') {
+                return parseCount(body, pos + i + 1, limit);
+            }
+            pos += i;
+            while (pos < limit && body.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        return 0;
+    }
+
+    /**
+     * Looks up the count of a suffix in a response body.
+     *
+     * @param body   The response body.
+     * @param suffix The suffix as upper-case ASCII, see {@link #suffixOf}.
+     * @return The count, or 0 if the suffix is not listed.
+     */
+    public static int count(byte[] body, byte[] suffix) {
+        return count(ByteBuffer.wrap(body), suffix);
+    }
+
+    private static int parseCount(ByteBuffer body, int pos, int limit) {
+        while (pos < limit && body.get(pos) == ' ') {
+            pos++;
+        }
+        long count = 0;
+        int start = pos;
+        for (; pos < limit; pos++) {
+            int digit = body.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            count = Math.min(count * 10 + digit, Integer.MAX_VALUE);
+        }
+        if (pos == start) {
+            throw new IllegalArgumentException("Range response has a line without a count.");
+        }
+        return (int) count;
+    }
+
+    private static byte upper(byte b) {
+        return b >= 'a' && b <= 'f' ? (byte) (b - ('a' - 'A')) : b;
+    }
+}
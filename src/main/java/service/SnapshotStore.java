@@ -0,0 +1,430 @@
+package service;
+
+import utils.MerkleTree;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Keeps several generations of the vault as incremental, deduplicated snapshots.
+ * <p>
+ * Every encrypted record is stored once as an object named by its hash, the same hash that is its
+ * leaf in the vault's Merkle tree ({@link VaultIntegrity}). A snapshot is a small manifest listing
+ * the hashes of its records in order, plus the vault's integrity header:
+ * <pre>
+ * backups/objects/3f/3fa4…   one encrypted record line
+ * backups/snapshots/0000000012.snap
+ * </pre>
+ * Unchanged records keep their ciphertext across saves, so a snapshot only writes the objects of
+ * records that changed since the previous one, plus its manifest. Old generations are pruned by count
+ * and age in the background; objects no longer listed by any manifest are deleted afterwards. The latest
+ * generation is never pruned.
+ * <p>
+ * Manifests and objects are written to a temporary file and moved into place, so a crash leaves at
+ * worst an unreferenced object behind, which the next prune removes.
+ */
+public class SnapshotStore {
+
+    /**
+     * How many generations to keep.
+     *
+     * @param maxGenerations The number of generations to keep at most.
+     * @param maxAge         Generations older than this are pruned, except the latest one.
+     */
+    public record Retention(int maxGenerations, Duration maxAge) {
+        public Retention {
+            if (maxGenerations < 1) {
+                throw new IllegalArgumentException("At least one generation must be kept.");
+            }
+        }
+    }
+
+    /**
+     * A stored generation of the vault.
+     *
+     * @param generation  The generation number, increasing with every snapshot.
+     * @param createdAt   When it was taken.
+     * @param recordCount The number of records in it.
+     */
+    public record Snapshot(long generation, Instant createdAt, int recordCount) {
+    }
+
+    private static final String MANIFEST_PREFIX = "#snapshot1 ";
+    private static final String MANIFEST_SUFFIX = ".snap";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path objects;
+    private final Path snapshots;
+    private final Retention retention;
+    private final ExecutorService background =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("snapshot-prune").factory());
+
+    // Objects listed by the latest manifest, known to exist without asking the file system
+    private Set<String> latestObjects;
+
+    /**
+     * Creates a store in a directory; nothing is written until the first snapshot.
+     *
+     * @param directory The directory holding objects and manifests.
+     * @param retention How many generations to keep.
+     */
+    public SnapshotStore(Path directory, Retention retention) {
+        this.objects = directory.resolve("objects");
+        this.snapshots = directory.resolve("snapshots");
+        this.retention = retention;
+    }
+
+    /**
+     * Record lines of a vault by position, read only when the store does not hold them yet.
+     */
+    @FunctionalInterface
+    public interface RecordSource {
+        /**
+         * @param index The position of the record.
+         * @return The encrypted record line.
+         * @throws IOException If the line cannot be read.
+         */
+        String line(int index) throws IOException;
+    }
+
+    /**
+     * Stores a new generation of the vault.
+     *
+     * @param header  The integrity header of the vault, or null if it has none.
+     * @param records The encrypted record lines, in order.
+     * @param now     The creation time to record.
+     * @return The new generation number.
+     * @throws IOException If the snapshot cannot be written; earlier generations are unaffected.
+     */
+    public synchronized long snapshot(String header, List<String> records, Instant now) throws IOException {
+        List<byte[]> leaves = new ArrayList<>(records.size());
+        for (String record : records) {
+            leaves.add(VaultIntegrity.leafHash(record));
+        }
+        return snapshot(header, leaves, records::get, now);
+    }
+
+    /**
+     * Stores a new generation of the vault from the leaf hashes of its records, reading only the lines of
+     * records that no earlier generation holds, e.g. when most records stay in files that were not rewritten.
+     *
+     * @param header  The integrity header of the vault, or null if it has none.
+     * @param leaves  The leaf hashes of the encrypted record lines, in order.
+     * @param records The record lines, by the same positions.
+     * @param now     The creation time to record.
+     * @return The new generation number.
+     * @throws IOException If the snapshot cannot be written or a line cannot be read; earlier generations are unaffected.
+     */
+    public synchronized long snapshot(String header, List<byte[]> leaves, RecordSource records, Instant now) throws IOException {
+        Files.createDirectories(objects);
+        Files.createDirectories(snapshots);
+        Set<String> known = latestObjects();
+        Set<String> listed = new HashSet<>(leaves.size() * 2);
+
+        long generation = latestGeneration() + 1;
+        Path manifest = manifestPath(generation);
+        Path temp = temporary(manifest);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.US_ASCII)) {
+            writer.write(MANIFEST_PREFIX + now);
+            writer.newLine();
+            if (header != null) {
+                writer.write(header);
+                writer.newLine();
+            }
+            for (int i = 0; i < leaves.size(); i++) {
+                String id = HEX.formatHex(leaves.get(i));
+                if (listed.add(id) && !known.contains(id)) {
+                    writeObject(id, records.line(i));
+                }
+                writer.write(id);
+                writer.newLine();
+            }
+        }
+        move(temp, manifest);
+        latestObjects = listed;
+        return generation;
+    }
+
+    /**
+     * Lists the stored generations, oldest first.
+     *
+     * @return The generations.
+     * @throws IOException If a manifest cannot be read.
+     */
+    public synchronized List<Snapshot> list() throws IOException {
+        List<Snapshot> result = new ArrayList<>();
+        for (long generation : generations()) {
+            Manifest manifest = readManifest(generation);
+            result.add(new Snapshot(generation, manifest.createdAt, manifest.objectIds.size()));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if no generation is stored, without reading any manifest.
+     * @throws IOException If the store cannot be listed.
+     */
+    public synchronized boolean isEmpty() throws IOException {
+        return generations().isEmpty();
+    }
+
+    /**
+     * Builds the Merkle tree of a generation from its manifest alone, without reading any record,
+     * e.g. to diff it against the vault or another generation.
+     *
+     * @param generation The generation.
+     * @return The tree over its records.
+     * @throws IOException If the generation does not exist or cannot be read.
+     */
+    public synchronized MerkleTree tree(long generation) throws IOException {
+        List<byte[]> leaves = new ArrayList<>();
+        for (String id : readManifest(generation).objectIds) {
+            leaves.add(HEX.parseHex(id));
+        }
+        return MerkleTree.fromLeafHashes(leaves);
+    }
+
+    /**
+     * Returns the integrity header stored with a generation.
+     *
+     * @param generation The generation.
+     * @return The header line, or null if the vault had none.
+     * @throws IOException If the generation does not exist or cannot be read.
+     */
+    public synchronized String header(long generation) throws IOException {
+        return readManifest(generation).header;
+    }
+
+    /**
+     * Writes a generation back as a vault file, streaming one record at a time.
+     * Every record is checked against its hash. The target is only replaced once it is complete.
+     *
+     * @param generation The generation to restore.
+     * @param target     The vault file to write.
+     * @return The number of records restored.
+     * @throws IOException If the generation is missing, damaged or cannot be written.
+     */
+    public synchronized int restore(long generation, Path target) throws IOException {
+        Path manifest = manifestPath(generation);
+        if (!Files.exists(manifest)) {
+            throw new NoSuchFileException(manifest.toString(), null, "No such generation: " + generation);
+        }
+        Path temp = temporary(target);
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.US_ASCII);
+             BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.US_ASCII)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!VaultIntegrity.isHeader(line)) {
+                    line = readObject(line);
+                    count++;
+                }
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        move(temp, target);
+        return count;
+    }
+
+    /**
+     * Deletes generations beyond the retention limits, then the objects no longer listed by any
+     * remaining generation.
+     *
+     * @param now The time ages are measured against.
+     * @return The number of generations deleted.
+     * @throws IOException If the store cannot be read or a file cannot be deleted.
+     */
+    public synchronized int prune(Instant now) throws IOException {
+        List<Long> generations = generations();
+        int deleted = 0;
+        // Never the latest generation
+        for (int i = 0; i < generations.size() - 1; i++) {
+            long generation = generations.get(i);
+            boolean tooMany = generations.size() - i > retention.maxGenerations();
+            boolean tooOld = retention.maxAge() != null
+                    && readManifest(generation).createdAt.isBefore(now.minus(retention.maxAge()));
+            if (tooMany || tooOld) {
+                Files.deleteIfExists(manifestPath(generation));
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            collectGarbage();
+        }
+        return deleted;
+    }
+
+    /**
+     * Runs {@link #prune(Instant)} on a background virtual thread, so saving does not wait for it.
+     *
+     * @return A future completing when the prune has finished.
+     */
+    public Future<?> pruneInBackground() {
+        return background.submit(() -> {
+            try {
+                prune(Instant.now());
+            } catch (IOException e) {
+                System.err.println("Could not prune old backups: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Deletes every generation and object, e.g. to purge records encrypted under an old master password.
+     *
+     * @throws IOException If a file cannot be deleted.
+     */
+    public synchronized void deleteAll() throws IOException {
+        for (Path directory : List.of(snapshots, objects)) {
+            if (Files.exists(directory)) {
+                try (Stream<Path> paths = Files.walk(directory)) {
+                    for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        }
+        latestObjects = null;
+    }
+
+    private void collectGarbage() throws IOException {
+        Set<String> live = new HashSet<>();
+        for (long generation : generations()) {
+            live.addAll(readManifest(generation).objectIds);
+        }
+        if (!Files.exists(objects)) {
+            return;
+        }
+        try (DirectoryStream<Path> fanOut = Files.newDirectoryStream(objects)) {
+            for (Path bucket : fanOut) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(bucket)) {
+                    for (Path file : files) {
+                        if (!live.contains(file.getFileName().toString())) {
+                            Files.deleteIfExists(file);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<String> latestObjects() throws IOException {
+        if (latestObjects == null) {
+            long latest = latestGeneration();
+            latestObjects = latest == 0 ? new HashSet<>() : new HashSet<>(readManifest(latest).objectIds);
+        }
+        return latestObjects;
+    }
+
+    private long latestGeneration() throws IOException {
+        List<Long> generations = generations();
+        return generations.isEmpty() ? 0 : generations.getLast();
+    }
+
+    private List<Long> generations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        if (!Files.exists(snapshots)) {
+            return generations;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshots, "*" + MANIFEST_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(0, name.length() - MANIFEST_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a manifest of this store
+                }
+            }
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    private Manifest readManifest(long generation) throws IOException {
+        List<String> lines = Files.readAllLines(manifestPath(generation), StandardCharsets.US_ASCII);
+        if (lines.isEmpty() || !lines.getFirst().startsWith(MANIFEST_PREFIX)) {
+            throw new IOException("Backup generation " + generation + " is damaged.");
+        }
+        Instant createdAt = Instant.parse(lines.getFirst().substring(MANIFEST_PREFIX.length()));
+        String header = null;
+        List<String> ids = new ArrayList<>(lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            if (VaultIntegrity.isHeader(line)) {
+                header = line;
+            } else {
+                ids.add(line);
+            }
+        }
+        return new Manifest(createdAt, header, ids);
+    }
+
+    private void writeObject(String id, String record) throws IOException {
+        Path path = objectPath(id);
+        if (Files.exists(path)) {
+            return;
+        }
+        Files.createDirectories(path.getParent());
+        Path temp = temporary(path);
+        Files.writeString(temp, record, StandardCharsets.US_ASCII);
+        move(temp, path);
+    }
+
+    private String readObject(String id) throws IOException {
+        String record = Files.readString(objectPath(id), StandardCharsets.US_ASCII);
+        if (!HEX.formatHex(VaultIntegrity.leafHash(record)).equals(id)) {
+            throw new IOException("Backup record " + id + " is damaged.");
+        }
+        return record;
+    }
+
+    private Path objectPath(String id) {
+        if (id.length() != 2 * MerkleTree.HASH_LENGTH) {
+            throw new IllegalArgumentException("Invalid object id: " + id);
+        }
+        return objects.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    private Path manifestPath(long generation) {
+        return snapshots.resolve(String.format("%010d", generation) + MANIFEST_SUFFIX);
+    }
+
+    private static Path temporary(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private record Manifest(Instant createdAt, String header, List<String> objectIds) {
+    }
+}
@@ -0,0 +1,83 @@
+package service;
+
+import model.Credential;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Scanner;
+
+/**
+ * A scripted run through the startup paths of the application, for recording the classes they load
+ * into a class data sharing (AppCDS) archive. The {@code cds} build profile runs it with
+ * {@code -XX:ArchiveClassesAtExit}; launching with {@code -XX:SharedArchiveFile} then maps those
+ * classes from the archive instead of loading and verifying them from the jar on every start.
+ * <p>
+ * It works on a throwaway vault in the current directory: it creates the vault, unlocks it and
+ * saves a few credentials from the menu as a person would, then unlocks it again and lists it in
+ * both formats as a script would, and removes the vault again. Nothing goes over the network, and the clipboard, which would
+ * pull in AWT, is left out as it is only initialized when a password is copied.
+ */
+public class StartupTraining {
+
+    private static final String PASSWORD = "startup-training-password";
+
+    /**
+     * Runs the training.
+     *
+     * @param args Ignored.
+     * @throws Exception If a step fails, which leaves the archive incomplete.
+     */
+    public static void main(String[] args) throws Exception {
+        if (Files.exists(Paths.get(AuthService.PASSWORD_FILE)) || Files.exists(CredentialStorage.FILE_PATH)) {
+            throw new IllegalStateException("Refusing to train in a directory that holds a vault.");
+        }
+        PrintStream standardOutput = System.out;
+        InputStream standardInput = System.in;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            // A BCrypt hash without a key-check value, so that both ways of verifying the password run
+            Files.writeString(Paths.get(AuthService.PASSWORD_FILE), BCrypt.hashpw(PASSWORD, BCrypt.gensalt()));
+            String totpSecret = TOTPService.loadOrCreateSecret();
+
+            unlock(totpSecret);
+            List<Credential> credentials = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                credentials.add(new Credential("service-" + i, "user-" + i, EncryptionService.encrypt("password-" + i)));
+            }
+            System.setIn(new ByteArrayInputStream("13\n".getBytes(StandardCharsets.UTF_8)));
+            new CredentialManager(credentials).showMenu();
+            EncryptionService.clearSessionKeyAndSalt();
+
+            unlock(totpSecret);
+            credentials = CredentialStorage.loadCredentials();
+            for (CredentialListWriter.Format format : CredentialListWriter.Format.values()) {
+                ListCommand.parse(List.of("--format", format.name().toLowerCase(Locale.ROOT)))
+                        .run(credentials, new CredentialListWriter(Writer.nullWriter(), format));
+            }
+        } finally {
+            System.setIn(standardInput);
+            System.setOut(standardOutput);
+            EncryptionService.clearSessionKeyAndSalt();
+            // Remove the vault, so that the next build can train in the same directory
+            Files.deleteIfExists(Paths.get(AuthService.PASSWORD_FILE));
+            Files.deleteIfExists(CredentialStorage.FILE_PATH);
+            EncryptionService.deleteKeyCheck();
+            CredentialStorage.SNAPSHOTS.deleteAll();
+        }
+    }
+
+    private static void unlock(String totpSecret) throws Exception {
+        String input = PASSWORD + "\n" + TOTPService.generateCode(totpSecret) + "\n";
+        new AuthService(new Scanner(input));
+    }
+}
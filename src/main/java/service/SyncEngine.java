@@ -0,0 +1,533 @@
+package service;
+
+import utils.HybridClock;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Synchronizes the vault between replicas, e.g. on several machines, exchanging only changed records.
+ * <p>
+ * Every record has a version: a {@link HybridClock} timestamp and the replica that wrote it. Each
+ * replica also numbers the versions it stores with a local sequence, and remembers how far it has
+ * received every other replica's sequence. A sync sends the versions the other side has not received
+ * yet, so its cost grows with the number of changes rather than the size of the vault. Deleted records
+ * are kept as tombstones so that deletions propagate too.
+ * <p>
+ * When both sides hold different versions of a record, the later timestamp wins, with the replica id
+ * breaking ties, so every replica settles on the same version whatever order changes arrive in. If the
+ * losing version had not been seen by the other side when it sent its own, the edit was concurrent:
+ * the conflict is appended to a log together with the discarded encrypted record, so that it can be
+ * recovered.
+ * <p>
+ * Records travel as the encrypted lines of the vault, so replicas must share the master password, and
+ * every message is authenticated with a key derived from the vault key. How messages travel is up to a
+ * {@link Transport}, see {@link DirectorySyncTransport} and {@link TcpSyncTransport}.
+ */
+public class SyncEngine {
+
+    /** Where a replica keeps its sync state. */
+    public static final Path STATE_PATH = Paths.get("sync_state.dat");
+    /** Where a replica logs conflicting edits. */
+    public static final Path CONFLICT_LOG_PATH = Paths.get("sync_conflicts.log");
+
+    private static final String STATE_PREFIX = "#sync1 ";
+    private static final String CHANGESET_PREFIX = "#changes1 ";
+    private static final String MAC_PREFIX = "#mac ";
+    private static final String DELETED = "-";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_LABEL = "SecurePasswordManager sync v1".getBytes(StandardCharsets.UTF_8);
+    private static final HexFormat HEX = HexFormat.of();
+    // The longest message line accepted: a change carrying a record well above the vault's limits
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    // The most changes and peers a message may list, so a peer cannot make a replica buffer without bound
+    private static final int MAX_CHANGES = 100_000;
+    private static final int MAX_PEERS = 1024;
+
+    /**
+     * One version of a record.
+     *
+     * @param id        The record id.
+     * @param timestamp When it was written, by the hybrid clock of its origin.
+     * @param origin    The replica that wrote it.
+     * @param record    The encrypted vault line, or null if the record was deleted.
+     */
+    public record Change(UUID id, long timestamp, UUID origin, String record) {
+        /**
+         * @return true if this version is a deletion.
+         */
+        public boolean deleted() {
+            return record == null;
+        }
+    }
+
+    /**
+     * The changes one replica sends to another.
+     *
+     * @param sender  The sending replica.
+     * @param upTo    The sender's sequence number the changes are complete up to.
+     * @param seen    How far the sender has received each other replica's sequence.
+     * @param changes The versions the receiver has not received yet.
+     */
+    public record Changeset(UUID sender, long upTo, Map<UUID, Long> seen, List<Change> changes) {
+        public Changeset {
+            seen = Map.copyOf(seen);
+            changes = List.copyOf(changes);
+        }
+    }
+
+    /**
+     * Two concurrent versions of a record, resolved in favour of one.
+     *
+     * @param id        The record id.
+     * @param kept      The winning version.
+     * @param discarded The losing version.
+     */
+    public record Conflict(UUID id, Change kept, Change discarded) {
+    }
+
+    /**
+     * The outcome of a sync, for this replica.
+     *
+     * @param sent      The number of versions sent.
+     * @param received  The number of versions received.
+     * @param updated   The records to add or replace in the vault, by id, as encrypted lines.
+     * @param deleted   The ids of records to remove from the vault.
+     * @param conflicts The concurrent edits that were resolved.
+     */
+    public record Result(int sent, int received, Map<UUID, String> updated, Set<UUID> deleted, List<Conflict> conflicts) {
+    }
+
+    /**
+     * Carries changesets between this replica and others.
+     */
+    public interface Transport {
+        /**
+         * Sends this replica's changes and returns those of the other replicas, using
+         * {@link SyncEngine#hello()}, {@link SyncEngine#changesSince(long, UUID)},
+         * {@link SyncEngine#write(Changeset, Writer)} and {@link SyncEngine#read(BufferedReader)}.
+         *
+         * @param local This replica.
+         * @return The changesets received, in the order they should be applied.
+         * @throws IOException If the exchange fails.
+         */
+        List<Changeset> exchange(SyncEngine local) throws IOException;
+    }
+
+    // hash is the leaf hash of the encrypted line, or null for a tombstone
+    private record Entry(long timestamp, UUID origin, long seq, String hash) {
+    }
+
+    private final Path statePath;
+    private final Path conflictLog;
+    private final SecretKeySpec macKey;
+    private final UUID replicaId;
+    private final HybridClock clock;
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final Map<UUID, Long> received = new HashMap<>();
+    private Map<UUID, String> current = new HashMap<>();
+    private long seq;
+    private int sent;
+
+    private SyncEngine(Path statePath, Path conflictLog, SecretKey key, UUID replicaId, HybridClock clock) throws Exception {
+        this.statePath = statePath;
+        this.conflictLog = conflictLog;
+        this.replicaId = replicaId;
+        this.clock = clock;
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key.getEncoded(), HMAC_ALGORITHM));
+        this.macKey = new SecretKeySpec(mac.doFinal(KEY_LABEL), HMAC_ALGORITHM);
+    }
+
+    /**
+     * Opens the sync state of this replica, or starts a new replica if there is none.
+     *
+     * @param statePath   The state file.
+     * @param conflictLog The file conflicts are appended to.
+     * @param key         The vault key, from which messages are authenticated.
+     * @return The engine.
+     * @throws IOException If the state file is damaged.
+     * @throws Exception If the message key cannot be derived.
+     */
+    public static SyncEngine open(Path statePath, Path conflictLog, SecretKey key) throws Exception {
+        return open(statePath, conflictLog, key, new HybridClock(0));
+    }
+
+    static SyncEngine open(Path statePath, Path conflictLog, SecretKey key, HybridClock clock) throws Exception {
+        if (!Files.exists(statePath)) {
+            return new SyncEngine(statePath, conflictLog, key, UUID.randomUUID(), clock);
+        }
+        List<String> lines = Files.readAllLines(statePath, StandardCharsets.US_ASCII);
+        try {
+            if (lines.isEmpty() || !lines.getFirst().startsWith(STATE_PREFIX)) {
+                throw new IllegalArgumentException("missing header");
+            }
+            String[] header = lines.getFirst().substring(STATE_PREFIX.length()).split(" ");
+            clock.update(Long.parseLong(header[1]));
+            SyncEngine engine = new SyncEngine(statePath, conflictLog, key, UUID.fromString(header[0]), clock);
+            engine.seq = Long.parseLong(header[2]);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(" ");
+                switch (fields[0]) {
+                    case "peer" -> engine.received.put(UUID.fromString(fields[1]), Long.parseLong(fields[2]));
+                    case "entry" -> engine.entries.put(UUID.fromString(fields[1]), new Entry(Long.parseLong(fields[2]),
+                            UUID.fromString(fields[3]), Long.parseLong(fields[4]), DELETED.equals(fields[5]) ? null : fields[5]));
+                    default -> throw new IllegalArgumentException("unexpected line " + fields[0]);
+                }
+            }
+            return engine;
+        } catch (RuntimeException e) {
+            throw new IOException("Sync state is damaged: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The id of this replica.
+     */
+    public UUID replicaId() {
+        return replicaId;
+    }
+
+    /**
+     * @return How far this replica has received each other replica's sequence.
+     */
+    public synchronized Map<UUID, Long> receivedUpTo() {
+        return Map.copyOf(received);
+    }
+
+    /**
+     * Compares the vault with the versions known for it, and gives every record added, modified or
+     * removed since the last sync a new version. Unchanged records keep their encrypted line across
+     * saves, so comparing leaf hashes is enough.
+     *
+     * @param records The encrypted lines of the vault, by record id.
+     * @return The number of new versions.
+     */
+    public synchronized int recordLocal(Map<UUID, String> records) {
+        current = new HashMap<>(records);
+        int changed = 0;
+        for (Map.Entry<UUID, String> record : records.entrySet()) {
+            String hash = hash(record.getValue());
+            Entry entry = entries.get(record.getKey());
+            if (entry == null || !hash.equals(entry.hash())) {
+                entries.put(record.getKey(), new Entry(clock.now(), replicaId, ++seq, hash));
+                changed++;
+            }
+        }
+        for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().hash() != null && !records.containsKey(entry.getKey())) {
+                entry.setValue(new Entry(clock.now(), replicaId, ++seq, null));
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return A changeset without changes, announcing this replica and how far it has received others.
+     */
+    public synchronized Changeset hello() {
+        return new Changeset(replicaId, seq, received, List.of());
+    }
+
+    /**
+     * Collects the versions this replica stored after a sequence number, in sequence order.
+     *
+     * @param after         The sequence number the receiver has already received up to.
+     * @param excludeOrigin A replica whose own versions are left out, typically the receiver; may be null.
+     * @return The changeset.
+     */
+    public synchronized Changeset changesSince(long after, UUID excludeOrigin) {
+        List<Map.Entry<UUID, Entry>> newer = new ArrayList<>();
+        for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().seq() > after && !entry.getValue().origin().equals(excludeOrigin)) {
+                newer.add(entry);
+            }
+        }
+        newer.sort(Comparator.comparingLong(entry -> entry.getValue().seq()));
+        List<Change> changes = new ArrayList<>(newer.size());
+        for (Map.Entry<UUID, Entry> entry : newer) {
+            changes.add(toChange(entry.getKey(), entry.getValue()));
+        }
+        sent += changes.size();
+        return new Changeset(replicaId, seq, received, changes);
+    }
+
+    /**
+     * Records the vault's local changes, exchanges changes over a transport and applies those received
+     * to the sync state in memory. Nothing is saved: the caller applies the result to the vault, saves
+     * the vault and only then calls {@link #commit(Result)}. If the vault cannot be updated, the engine
+     * must be discarded without committing and opened again, so that the changes are received again by
+     * the next sync instead of being taken for local deletions.
+     *
+     * @param records   The encrypted lines of the vault, by record id.
+     * @param transport The transport to the other replicas.
+     * @return What changed for this replica.
+     * @throws IOException If the exchange fails or a message is not authentic; nothing is applied then.
+     */
+    public synchronized Result sync(Map<UUID, String> records, Transport transport) throws IOException {
+        recordLocal(records);
+        sent = 0;
+        List<Changeset> incoming = transport.exchange(this);
+
+        Map<UUID, String> updated = new LinkedHashMap<>();
+        Set<UUID> deleted = new HashSet<>();
+        List<Conflict> conflicts = new ArrayList<>();
+        int count = 0;
+        for (Changeset changeset : incoming) {
+            count += changeset.changes().size();
+            apply(changeset, updated, deleted, conflicts);
+        }
+        return new Result(sent, count, updated, deleted, conflicts);
+    }
+
+    /**
+     * Saves the sync state after a sync whose result the vault now holds, and logs its conflicts.
+     *
+     * @param result The result of the last {@link #sync(Map, Transport)}, saved into the vault.
+     * @throws IOException If the state or the log cannot be written.
+     */
+    public synchronized void commit(Result result) throws IOException {
+        save();
+        logConflicts(result.conflicts());
+    }
+
+    private void apply(Changeset changeset, Map<UUID, String> updated, Set<UUID> deleted, List<Conflict> conflicts) {
+        if (changeset.sender().equals(replicaId)) {
+            return;
+        }
+        long seenOfMine = changeset.seen().getOrDefault(replicaId, 0L);
+        for (Change change : changeset.changes()) {
+            clock.update(change.timestamp());
+            Entry entry = entries.get(change.id());
+            if (entry != null && entry.timestamp() == change.timestamp() && entry.origin().equals(change.origin())) {
+                continue;
+            }
+            String hash = change.deleted() ? null : hash(change.record());
+            boolean wins = entry == null || compare(change.timestamp(), change.origin(), entry) > 0;
+
+            // The sender had not received our version: both sides edited the record independently
+            if (entry != null && entry.seq() > seenOfMine && !Objects.equals(entry.hash(), hash)) {
+                Change local = toChange(change.id(), entry);
+                conflicts.add(wins ? new Conflict(change.id(), change, local) : new Conflict(change.id(), local, change));
+            }
+            if (!wins) {
+                continue;
+            }
+            entries.put(change.id(), new Entry(change.timestamp(), change.origin(), ++seq, hash));
+            if (change.deleted()) {
+                current.remove(change.id());
+                updated.remove(change.id());
+                deleted.add(change.id());
+            } else {
+                current.put(change.id(), change.record());
+                updated.put(change.id(), change.record());
+                deleted.remove(change.id());
+            }
+        }
+        received.merge(changeset.sender(), changeset.upTo(), Math::max);
+    }
+
+    /**
+     * Writes a changeset as text lines followed by their HMAC.
+     *
+     * @param changeset The changeset.
+     * @param writer    Where to write it.
+     * @throws IOException If it cannot be written.
+     * @throws IllegalArgumentException If a record is empty or contains whitespace.
+     */
+    public void write(Changeset changeset, Writer writer) throws IOException {
+        StringBuilder body = new StringBuilder();
+        body.append(CHANGESET_PREFIX).append(changeset.sender()).append(' ').append(changeset.upTo()).append('\n');
+        for (Map.Entry<UUID, Long> peer : changeset.seen().entrySet()) {
+            body.append("seen ").append(peer.getKey()).append(' ').append(peer.getValue()).append('\n');
+        }
+        for (Change change : changeset.changes()) {
+            if (!change.deleted() && (change.record().isEmpty() || change.record().chars().anyMatch(c -> c <= ' '))) {
+                throw new IllegalArgumentException("Record of " + change.id() + " is not a single encrypted line.");
+            }
+            body.append("change ").append(change.id()).append(' ').append(change.timestamp()).append(' ')
+                    .append(change.origin()).append(' ').append(change.deleted() ? DELETED : change.record()).append('\n');
+        }
+        writer.write(body.toString());
+        writer.write(MAC_PREFIX + Base64.getEncoder().encodeToString(mac(body)) + "\n");
+        writer.flush();
+    }
+
+    /**
+     * Reads a changeset written by {@link #write} and checks its HMAC.
+     *
+     * @param reader Where to read it from.
+     * Lines longer than {@value #MAX_LINE_LENGTH} characters are rejected as soon as they pass that length,
+     * as are messages listing more than {@value #MAX_CHANGES} changes or {@value #MAX_PEERS} peers, so a
+     * peer cannot make the replica buffer an unbounded message.
+     *
+     * @return The changeset.
+     * @throws IOException If it cannot be read, is malformed, or was not written with the same vault key.
+     */
+    public Changeset read(BufferedReader reader) throws IOException {
+        StringBuilder body = new StringBuilder();
+        UUID sender = null;
+        long upTo = 0;
+        Map<UUID, Long> seen = new HashMap<>();
+        List<Change> changes = new ArrayList<>();
+        try {
+            String line;
+            while ((line = readLine(reader)) != null && !line.startsWith(MAC_PREFIX)) {
+                body.append(line).append('\n');
+                String[] fields = line.split(" ");
+                if (sender == null) {
+                    if (!line.startsWith(CHANGESET_PREFIX) || fields.length != 3) {
+                        throw new IllegalArgumentException("missing header");
+                    }
+                    sender = UUID.fromString(fields[1]);
+                    upTo = Long.parseLong(fields[2]);
+                } else if (fields[0].equals("seen") && fields.length == 3) {
+                    if (seen.size() >= MAX_PEERS) {
+                        throw new IllegalArgumentException("too many peers");
+                    }
+                    seen.put(UUID.fromString(fields[1]), Long.parseLong(fields[2]));
+                } else if (fields[0].equals("change") && fields.length == 5) {
+                    if (changes.size() >= MAX_CHANGES) {
+                        throw new IllegalArgumentException("too many changes");
+                    }
+                    changes.add(new Change(UUID.fromString(fields[1]), Long.parseLong(fields[2]),
+                            UUID.fromString(fields[3]), DELETED.equals(fields[4]) ? null : fields[4]));
+                } else {
+                    throw new IllegalArgumentException("unexpected line");
+                }
+            }
+            if (line == null || sender == null) {
+                throw new IllegalArgumentException("truncated");
+            }
+            if (!MessageDigest.isEqual(mac(body), Base64.getDecoder().decode(line.substring(MAC_PREFIX.length())))) {
+                throw new IOException("Sync message is not authentic: it was altered or made with another master password.");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Sync message is malformed: " + e.getMessage(), e);
+        }
+        return new Changeset(sender, upTo, seen, changes);
+    }
+
+    // Reads a line ended by \n or \r\n, failing once it passes MAX_LINE_LENGTH rather than buffering it whole
+    private static String readLine(BufferedReader reader) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != '\n') {
+            if (c < 0) {
+                return line.isEmpty() ? null : line.toString();
+            }
+            if (line.length() > MAX_LINE_LENGTH) {
+                throw new IllegalArgumentException("line too long");
+            }
+            line.append((char) c);
+        }
+        int last = line.length() - 1;
+        if (last >= 0 && line.charAt(last) == '\r') {
+            line.setLength(last);
+        }
+        if (line.length() > MAX_LINE_LENGTH) {
+            throw new IllegalArgumentException("line too long");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Saves the sync state, replacing the previous one atomically.
+     *
+     * @throws IOException If it cannot be written.
+     */
+    public synchronized void save() throws IOException {
+        Path temp = statePath.resolveSibling(statePath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.US_ASCII)) {
+            writer.write(STATE_PREFIX + replicaId + " " + clock.last() + " " + seq);
+            writer.newLine();
+            for (Map.Entry<UUID, Long> peer : received.entrySet()) {
+                writer.write("peer " + peer.getKey() + " " + peer.getValue());
+                writer.newLine();
+            }
+            for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+                Entry e = entry.getValue();
+                writer.write("entry " + entry.getKey() + " " + e.timestamp() + " " + e.origin() + " " + e.seq() + " "
+                        + (e.hash() == null ? DELETED : e.hash()));
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, statePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, statePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void logConflicts(List<Conflict> conflicts) throws IOException {
+        if (conflicts.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(conflictLog, StandardCharsets.US_ASCII,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            String now = Instant.now().toString();
+            for (Conflict conflict : conflicts) {
+                Change kept = conflict.kept();
+                Change discarded = conflict.discarded();
+                writer.write(now + " " + conflict.id() + " kept " + kept.origin() + "@" + kept.timestamp()
+                        + " discarded " + discarded.origin() + "@" + discarded.timestamp() + " "
+                        + (discarded.deleted() ? DELETED : discarded.record()));
+                writer.newLine();
+            }
+        }
+    }
+
+    private Change toChange(UUID id, Entry entry) {
+        String record = entry.hash() == null ? null : current.get(id);
+        if (entry.hash() != null && record == null) {
+            throw new IllegalStateException("No record for version of " + id + "; record local changes first.");
+        }
+        return new Change(id, entry.timestamp(), entry.origin(), record);
+    }
+
+    private static int compare(long timestamp, UUID origin, Entry entry) {
+        int byTime = Long.compare(timestamp, entry.timestamp());
+        return byTime != 0 ? byTime : origin.compareTo(entry.origin());
+    }
+
+    private static String hash(String record) {
+        return HEX.formatHex(VaultIntegrity.leafHash(record));
+    }
+
+    private byte[] mac(CharSequence body) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(macKey);
+            return mac.doFinal(body.toString().getBytes(StandardCharsets.US_ASCII));
+        } catch (Exception e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
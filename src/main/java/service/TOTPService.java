@@ -4,6 +4,7 @@ import org.apache.commons.codec.binary.Base32;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.Base64;
@@ -11,12 +12,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class TOTPService {
 	private static final long TIME_STEP_SECONDS = 30;
 	private static final int CODE_DIGITS = 6;
 	private static final String HMAC_ALGORITHM = "HmacSHA1";
 	private static final String SECRET_FILE = "totp_secret.dat"; // Alterado para .dat
+	private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
 
 	/**
 	 * Generates a new Base64-encoded secret key (internal use).
@@ -81,16 +87,54 @@ public class TOTPService {
 	    return false;
 	}
 
+	/**
+	 * Generates the code for the current time step, as an authenticator app would show it.
+	 */
+	static String generateCode(String base64Secret) throws Exception {
+		return generateCodeAtTime(base64Secret, Instant.now().getEpochSecond() / TIME_STEP_SECONDS);
+	}
+
 	private static String generateCodeAtTime(String base64Secret, long timeWindow) throws Exception {
 		byte[] key = Base64.getDecoder().decode(base64Secret);
+		Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+		mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+		return code(mac, timeWindow, CODE_DIGITS);
+	}
+
+	/**
+	 * Generates the current codes of many seeds in one pass, e.g. for every credential that holds one.
+	 * One {@link Mac} per algorithm is created and re-keyed for each seed, instead of one per code.
+	 * Time-based codes are those of the period containing the given time; counter-based codes are those
+	 * of the seed's counter, which the caller advances once a code is used, see {@link OtpSeed#next()}.
+	 *
+	 * @param seeds       The seeds.
+	 * @param epochSecond The time, in seconds since the epoch.
+	 * @return The codes, in the order of the seeds.
+	 * @throws GeneralSecurityException If an algorithm is not available.
+	 */
+	public static List<String> generateCodes(List<OtpSeed> seeds, long epochSecond) throws GeneralSecurityException {
+		Map<String, Mac> macs = new HashMap<>();
+		List<String> codes = new ArrayList<>(seeds.size());
+		for (OtpSeed seed : seeds) {
+			Mac mac = macs.get(seed.algorithm());
+			if (mac == null) {
+				mac = Mac.getInstance(seed.algorithm());
+				macs.put(seed.algorithm(), mac);
+			}
+			mac.init(new SecretKeySpec(seed.secret(), seed.algorithm()));
+			long counter = seed.type() == OtpSeed.Type.TOTP ? Math.floorDiv(epochSecond, seed.period()) : seed.counter();
+			codes.add(code(mac, counter, seed.digits()));
+		}
+		return codes;
+	}
+
+	// Dynamic truncation of RFC 4226: the HMAC of the big-endian counter, cut to the given number of digits
+	private static String code(Mac mac, long counter, int digits) {
 		byte[] data = new byte[8];
 		for (int i = 7; i >= 0; i--) {
-			data[i] = (byte) (timeWindow & 0xFF);
-			timeWindow >>= 8;
+			data[i] = (byte) (counter & 0xFF);
+			counter >>= 8;
 		}
-
-		Mac mac = Mac.getInstance(HMAC_ALGORITHM);
-		mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
 		byte[] hmac = mac.doFinal(data);
 
 		int offset = hmac[hmac.length - 1] & 0xF;
@@ -99,8 +143,9 @@ public class TOTPService {
 				| ((hmac[offset + 2] & 0xFF) << 8)
 				| (hmac[offset + 3] & 0xFF);
 
-		int otp = binary % (int) Math.pow(10, CODE_DIGITS);
-		return String.format("%0" + CODE_DIGITS + "d", otp);
+		int otp = binary % POWERS_OF_TEN[digits];
+		String code = Integer.toString(otp);
+		return "0".repeat(digits - code.length()) + code;
 	}
 
 	/**
@@ -0,0 +1,290 @@
+package service;
+
+import model.Credential;
+import utils.CompressedBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Indexes credentials by tag so that tag filters do not scan the whole vault.
+ * <p>
+ * Each credential gets an ordinal when it is added, and each tag maps to a {@link CompressedBitmap}
+ * of the ordinals carrying it. Filters are answered with bitmap AND, OR and ANDNOT, so their cost
+ * depends on the number of chunks touched rather than the number of credentials. Folders are
+ * expressed as tags, e.g. {@code folder:work}. Tags match case-insensitively.
+ * <p>
+ * Filter syntax, from lowest to highest precedence:
+ * <ul>
+ *   <li>{@code a OR b}</li>
+ *   <li>{@code a AND b}, or just {@code a b}; {@code a NOT b} means a and not b</li>
+ *   <li>{@code NOT a}, {@code (…)}, a tag, or a {@code "quoted tag"} containing spaces or operator words</li>
+ * </ul>
+ * An empty filter matches every credential.
+ */
+public final class TagIndex {
+    private final List<Credential> byOrdinal = new ArrayList<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final Map<String, CompressedBitmap> bitmaps = new HashMap<>();
+    private final CompressedBitmap live = new CompressedBitmap();
+
+    /**
+     * Creates an index over the given credentials.
+     *
+     * @param credentials The credentials to index.
+     */
+    public TagIndex(Collection<Credential> credentials) {
+        credentials.forEach(this::add);
+    }
+
+    /**
+     * Adds a credential, or replaces the indexed version of a credential with the same id.
+     *
+     * @param credential The credential.
+     */
+    public void add(Credential credential) {
+        Integer existing = ordinals.get(credential.id());
+        int ordinal;
+        if (existing != null) {
+            ordinal = existing;
+            unindexTags(byOrdinal.get(ordinal), ordinal);
+            byOrdinal.set(ordinal, credential);
+        } else {
+            ordinal = byOrdinal.size();
+            byOrdinal.add(credential);
+            ordinals.put(credential.id(), ordinal);
+            live.add(ordinal);
+        }
+        for (String tag : credential.tags()) {
+            bitmaps.computeIfAbsent(normalize(tag), t -> new CompressedBitmap()).add(ordinal);
+        }
+    }
+
+    /**
+     * Removes a credential by id. Does nothing if it is not indexed.
+     *
+     * @param credential The credential.
+     */
+    public void remove(Credential credential) {
+        Integer ordinal = ordinals.remove(credential.id());
+        if (ordinal == null) {
+            return;
+        }
+        unindexTags(byOrdinal.get(ordinal), ordinal);
+        byOrdinal.set(ordinal, null);
+        live.remove(ordinal);
+    }
+
+    /**
+     * Rebuilds the index from scratch, e.g. after the vault was reloaded.
+     * Ordinals of removed credentials are reclaimed.
+     *
+     * @param credentials The credentials to index.
+     */
+    public void rebuild(Collection<Credential> credentials) {
+        byOrdinal.clear();
+        ordinals.clear();
+        bitmaps.clear();
+        live.clear();
+        credentials.forEach(this::add);
+    }
+
+    /**
+     * @return The number of indexed credentials.
+     */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /**
+     * Evaluates a filter to the ordinals of the matching credentials.
+     *
+     * @param filter The filter expression.
+     * @return A new bitmap of matching ordinals.
+     * @throws IllegalArgumentException If the filter is malformed.
+     */
+    public CompressedBitmap query(String filter) {
+        return evaluate(filter).copy();
+    }
+
+    /**
+     * Returns the credentials matching a filter, in the order they were added.
+     *
+     * @param filter The filter expression.
+     * @return The matching credentials.
+     * @throws IllegalArgumentException If the filter is malformed.
+     */
+    public List<Credential> filter(String filter) {
+        CompressedBitmap matches = evaluate(filter);
+        List<Credential> result = new ArrayList<>(matches.cardinality());
+        matches.forEach(ordinal -> result.add(byOrdinal.get(ordinal)));
+        return result;
+    }
+
+    /**
+     * Compiles a filter into a membership test, for walking credentials in another order.
+     * The filter is evaluated once; each test is a hash lookup and a bitmap probe.
+     *
+     * @param filter The filter expression; blank matches everything.
+     * @return A predicate matching the credentials selected by the filter.
+     * @throws IllegalArgumentException If the filter is malformed.
+     */
+    public Predicate<Credential> matcher(String filter) {
+        if (filter == null || filter.isBlank()) {
+            return credential -> true;
+        }
+        CompressedBitmap matches = evaluate(filter).copy();
+        return credential -> {
+            Integer ordinal = ordinals.get(credential.id());
+            return ordinal != null && matches.contains(ordinal);
+        };
+    }
+
+    /**
+     * Evaluates a filter. The result may be one of the index's own bitmaps and must not be modified.
+     */
+    private CompressedBitmap evaluate(String filter) {
+        Parser parser = new Parser(filter);
+        if (parser.atEnd()) {
+            return live;
+        }
+        CompressedBitmap result = parser.parseOr();
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("Invalid filter: unexpected '" + parser.peek() + "'.");
+        }
+        return result;
+    }
+
+    private void unindexTags(Credential credential, int ordinal) {
+        for (String tag : credential.tags()) {
+            String key = normalize(tag);
+            CompressedBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null) {
+                bitmap.remove(ordinal);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(key);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String tag) {
+        return tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Recursive-descent parser that evaluates the filter while it reads it.
+     */
+    private final class Parser {
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Boolean> quoted = new ArrayList<>();
+        private int position;
+
+        Parser(String filter) {
+            tokenize(filter == null ? "" : filter);
+        }
+
+        boolean atEnd() {
+            return position == tokens.size();
+        }
+
+        String peek() {
+            return tokens.get(position);
+        }
+
+        CompressedBitmap parseOr() {
+            CompressedBitmap result = parseAnd();
+            while (isOperator("OR")) {
+                position++;
+                result = result.or(parseAnd());
+            }
+            return result;
+        }
+
+        CompressedBitmap parseAnd() {
+            CompressedBitmap result = parseUnary();
+            while (!atEnd() && !isOperator("OR") && !isToken(")")) {
+                if (isOperator("AND")) {
+                    position++;
+                    result = result.and(parseUnary());
+                } else if (isOperator("NOT")) {
+                    position++;
+                    result = result.andNot(parseUnary());
+                } else {
+                    result = result.and(parseUnary());
+                }
+            }
+            return result;
+        }
+
+        CompressedBitmap parseUnary() {
+            if (atEnd()) {
+                throw new IllegalArgumentException("Invalid filter: unexpected end of expression.");
+            }
+            if (isOperator("NOT")) {
+                position++;
+                return live.andNot(parseUnary());
+            }
+            if (isOperator("AND") || isOperator("OR") || isToken(")")) {
+                throw new IllegalArgumentException("Invalid filter: unexpected '" + peek() + "'.");
+            }
+            if (isToken("(")) {
+                position++;
+                CompressedBitmap inner = parseOr();
+                if (!isToken(")")) {
+                    throw new IllegalArgumentException("Invalid filter: missing ')'.");
+                }
+                position++;
+                return inner;
+            }
+            CompressedBitmap bitmap = bitmaps.get(normalize(tokens.get(position++)));
+            return bitmap == null ? new CompressedBitmap() : bitmap;
+        }
+
+        private boolean isOperator(String operator) {
+            return !atEnd() && !quoted.get(position) && peek().equalsIgnoreCase(operator);
+        }
+
+        private boolean isToken(String token) {
+            return !atEnd() && !quoted.get(position) && peek().equals(token);
+        }
+
+        private void tokenize(String filter) {
+            int i = 0;
+            while (i < filter.length()) {
+                char c = filter.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    add(String.valueOf(c), false);
+                    i++;
+                } else if (c == '"') {
+                    int end = filter.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Invalid filter: unterminated quote.");
+                    }
+                    add(filter.substring(i + 1, end), true);
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < filter.length() && !Character.isWhitespace(filter.charAt(i))
+                            && "()\"".indexOf(filter.charAt(i)) < 0) {
+                        i++;
+                    }
+                    add(filter.substring(start, i), false);
+                }
+            }
+        }
+
+        private void add(String token, boolean isQuoted) {
+            tokens.add(token);
+            quoted.add(isQuoted);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Syncs two replicas directly over a TCP connection, one listening and one connecting.
+ * <p>
+ * The exchange takes three messages, so that each side sends only what the other lacks:
+ * <ol>
+ *   <li>the connecting side says how far it has received every replica's changes;</li>
+ *   <li>the listening side answers with the changes the other lacks, and how far it has received others;</li>
+ *   <li>the connecting side sends the changes the listening side lacks.</li>
+ * </ol>
+ * Messages are authenticated but not encrypted beyond the records themselves, which are; record ids
+ * and timestamps are visible on the wire, so this is meant for a trusted local network.
+ */
+public final class TcpSyncTransport implements SyncEngine.Transport {
+
+    /** How long to wait for the other side, in milliseconds. */
+    static final int TIMEOUT_MILLIS = 30_000;
+
+    private final InetSocketAddress remote;
+    private final ServerSocket server;
+
+    private TcpSyncTransport(InetSocketAddress remote, ServerSocket server) {
+        this.remote = remote;
+        this.server = server;
+    }
+
+    /**
+     * Creates a transport that connects to a listening replica.
+     *
+     * @param host The host of the other replica.
+     * @param port Its port.
+     * @return The transport.
+     */
+    public static TcpSyncTransport connect(String host, int port) {
+        return new TcpSyncTransport(new InetSocketAddress(host, port), null);
+    }
+
+    /**
+     * Creates a transport that waits for a replica to connect.
+     *
+     * @param server The socket to accept the connection on; it stays open.
+     * @return The transport.
+     */
+    public static TcpSyncTransport accept(ServerSocket server) {
+        return new TcpSyncTransport(null, server);
+    }
+
+    @Override
+    public List<SyncEngine.Changeset> exchange(SyncEngine local) throws IOException {
+        try (Socket socket = open()) {
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+
+            SyncEngine.Changeset theirs;
+            if (server == null) {
+                local.write(local.hello(), writer);
+                theirs = local.read(reader);
+                local.write(changesFor(local, theirs), writer);
+            } else {
+                SyncEngine.Changeset hello = local.read(reader);
+                local.write(changesFor(local, hello), writer);
+                theirs = local.read(reader);
+            }
+            return List.of(theirs);
+        }
+    }
+
+    private Socket open() throws IOException {
+        if (server != null) {
+            server.setSoTimeout(TIMEOUT_MILLIS);
+            return server.accept();
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(remote, TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    private static SyncEngine.Changeset changesFor(SyncEngine local, SyncEngine.Changeset peer) {
+        return local.changesSince(peer.seen().getOrDefault(local.replicaId(), 0L), peer.sender());
+    }
+}
@@ -0,0 +1,186 @@
+package service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of the vault operations worth tracing on real hosts: unlocking, key derivation,
+ * batches of record encryption, loading and saving the vault, and queries to the breach API.
+ * <p>
+ * Events are created and committed around each operation. When no recording enables them, creating one is
+ * optimized away and committing it does nothing, so they cost next to nothing in normal use. Fields that are
+ * expensive to compute, such as the size of the vault files, are only filled in when
+ * {@link Event#shouldCommit()} says the event will be recorded. The bundled {@code vault.jfc} profile enables
+ * them all; see {@link utils.FlightRecording}.
+ * No event holds a password, a key, a record or a hash prefix sent to the breach API.
+ */
+final class VaultEvents {
+
+    /** The category all events of the application are listed under. */
+    static final String CATEGORY = "Secure Password Manager";
+
+    private VaultEvents() {
+        // Holder of the event classes, should not be instantiated
+    }
+
+    /**
+     * The password phase of an unlock attempt: deriving the key and checking it, or BCrypt for older vaults.
+     */
+    @Name("spm.PasswordCheck")
+    @Label("Password Check")
+    @Category({CATEGORY, "Unlock"})
+    @Description("Derives the key from a master password attempt and verifies it")
+    @StackTrace(false)
+    static final class PasswordCheck extends Event {
+        @Label("Attempt")
+        int attempt;
+
+        @Label("BCrypt")
+        @Description("Whether the password was checked with BCrypt because the vault has no key-check value yet")
+        boolean bcrypt;
+
+        @Label("Matched")
+        boolean matched;
+    }
+
+    /**
+     * The second-factor phase of an unlock attempt.
+     */
+    @Name("spm.TotpCheck")
+    @Label("TOTP Check")
+    @Category({CATEGORY, "Unlock"})
+    @Description("Validates the time-based code of an unlock attempt")
+    @StackTrace(false)
+    static final class TotpCheck extends Event {
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    /**
+     * One derivation of a key from a password.
+     */
+    @Name("spm.KeyDerivation")
+    @Label("Key Derivation")
+    @Category({CATEGORY, "Encryption"})
+    @Description("Derives an encryption key from a password and the persistent salt")
+    @StackTrace(false)
+    static final class KeyDerivation extends Event {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Iterations")
+        int iterations;
+    }
+
+    /**
+     * A batch of encryptions or decryptions done together, such as the changed records of a save.
+     */
+    @Name("spm.CryptoBatch")
+    @Label("Crypto Batch")
+    @Category({CATEGORY, "Encryption"})
+    @Description("Encrypts or decrypts a batch of vault records")
+    @StackTrace(false)
+    static final class CryptoBatch extends Event {
+        @Label("Operation")
+        @Description("encrypt or decrypt")
+        String operation;
+
+        @Label("Ciphertexts")
+        @Description("The number of ciphertexts encrypted or decrypted")
+        int ciphertexts;
+
+        @Label("Records")
+        @Description("The number of records they hold")
+        int records;
+
+        @Label("Plaintext Size")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * Loading the vault, from its file or from its shards.
+     */
+    @Name("spm.VaultLoad")
+    @Label("Vault Load")
+    @Category({CATEGORY, "Vault"})
+    @Description("Loads and decrypts the credentials of the vault")
+    @StackTrace(false)
+    static final class VaultLoad extends Event {
+        @Label("Credentials")
+        int credentials;
+
+        @Label("Files")
+        @Description("The number of vault files read, 1 unless the vault is split into shards")
+        int files;
+
+        @Label("Size")
+        @Description("The size of the vault files")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * Saving the vault, into its file or into the shards that changed.
+     */
+    @Name("spm.VaultSave")
+    @Label("Vault Save")
+    @Category({CATEGORY, "Vault"})
+    @Description("Encrypts the changed credentials and writes the vault")
+    @StackTrace(false)
+    static final class VaultSave extends Event {
+        @Label("Credentials")
+        int credentials;
+
+        @Label("Encrypted")
+        @Description("The number of credentials encrypted because they changed")
+        int encrypted;
+
+        @Label("Files Written")
+        int files;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+    }
+
+    /**
+     * One request to the range API of Have I Been Pwned; retries are separate events.
+     */
+    @Name("spm.BreachRequest")
+    @Label("Breach API Request")
+    @Category({CATEGORY, "Network"})
+    @Description("Fetches one range of the Pwned Passwords API")
+    @StackTrace(false)
+    static final class BreachRequest extends Event {
+        @Label("Attempt")
+        int attempt;
+
+        @Label("Status")
+        @Description("The HTTP status, or 0 if there was no response")
+        int status;
+
+        @Label("Cache Status")
+        @Description("Whether the API's CDN answered from its cache (CF-Cache-Status), if it said so")
+        String cacheStatus;
+
+        @Label("Circuit Open")
+        @Description("Whether the request was refused without being sent because the API kept failing")
+        boolean circuitOpen;
+
+        @Label("Response Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Error")
+        String error;
+    }
+}
@@ -0,0 +1,199 @@
+package service;
+
+import model.Credential;
+import utils.PasswordStrength;
+import utils.SecretBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyzes the health of the vault: passwords reused across credentials, weak passwords,
+ * old passwords and, optionally, passwords found in known breaches.
+ * <p>
+ * Each credential is handled by one independent step that decrypts its password into a
+ * {@link SecretBuffer}, derives everything the report needs from it and wipes it before returning:
+ * <ul>
+ *   <li>a fingerprint keyed with a random per-session key ({@link EncryptionService#sessionFingerprint}),
+ *       so duplicates are found by grouping fingerprints in a hash map instead of comparing pairs;</li>
+ *   <li>an entropy estimate from {@link PasswordStrength};</li>
+ *   <li>if requested, the breach count looked up by SHA-1 hash.</li>
+ * </ul>
+ * The steps run as a parallel stream, so the report is O(n) and spread across all cores.
+ */
+public class VaultHealthService {
+
+    /** Passwords not changed for this long are reported as old by default. */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofDays(365);
+
+    /**
+     * The findings for one credential.
+     *
+     * @param credential  The credential.
+     * @param entropyBits The estimated entropy of its password.
+     * @param rating      The strength rating of its password.
+     * @param reuseCount  How many credentials, including this one, share the password.
+     * @param age         Time since the last modification, or null if unknown.
+     * @param breachCount Times found in breaches; 0 if not found or not checked, -1 if the check failed.
+     */
+    public record Entry(Credential credential, double entropyBits, PasswordStrength.Rating rating,
+                        int reuseCount, Duration age, int breachCount) {
+        /** @return true if the password is used by another credential too. */
+        public boolean reused() {
+            return reuseCount > 1;
+        }
+
+        /** @return true if the password is rated weak or very weak. */
+        public boolean weak() {
+            return rating.compareTo(PasswordStrength.Rating.WEAK) <= 0;
+        }
+
+        /** @return true if the password was found in a breach. */
+        public boolean breached() {
+            return breachCount > 0;
+        }
+    }
+
+    /**
+     * The health report of a vault.
+     *
+     * @param entries      One entry per analyzed credential, in vault order.
+     * @param reuseGroups  Credentials sharing a password, largest group first.
+     * @param maxAge       The age above which a password is reported as old.
+     * @param breachChecked Whether breach counts were looked up.
+     * @param failed       Credentials whose password could not be decrypted.
+     */
+    public record Report(List<Entry> entries, List<List<Credential>> reuseGroups, Duration maxAge,
+                         boolean breachChecked, List<Credential> failed) {
+        /** @return The entries with weak passwords, weakest first. */
+        public List<Entry> weak() {
+            return entries.stream().filter(Entry::weak).sorted(Comparator.comparingDouble(Entry::entropyBits)).toList();
+        }
+
+        /** @return The entries whose password is older than {@link #maxAge()}, oldest first. */
+        public List<Entry> old() {
+            return entries.stream().filter(e -> e.age() != null && e.age().compareTo(maxAge) > 0)
+                    .sorted(Comparator.comparing(Entry::age).reversed()).toList();
+        }
+
+        /** @return The entries whose age is unknown, e.g. migrated from the original format. */
+        public List<Entry> ageUnknown() {
+            return entries.stream().filter(e -> e.age() == null).toList();
+        }
+
+        /** @return The entries found in breaches, most often breached first. */
+        public List<Entry> breached() {
+            return entries.stream().filter(Entry::breached)
+                    .sorted(Comparator.comparingInt(Entry::breachCount).reversed()).toList();
+        }
+    }
+
+    /**
+     * Checks one password by its SHA-1 hash, as {@link PasswordBreachChecker#checkHash(byte[])} does.
+     */
+    @FunctionalInterface
+    public interface BreachLookup {
+        int breachCount(byte[] sha1);
+    }
+
+    private VaultHealthService() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Analyzes the credentials with the session key, without breach checks.
+     *
+     * @param credentials The credentials to analyze.
+     * @param maxAge      The age above which a password is reported as old.
+     * @return The report.
+     */
+    public static Report analyze(List<Credential> credentials, Duration maxAge) {
+        return analyze(credentials, maxAge, null, Instant.now());
+    }
+
+    /**
+     * Analyzes the credentials with the session key.
+     *
+     * @param credentials  The credentials to analyze.
+     * @param maxAge       The age above which a password is reported as old.
+     * @param breachLookup Looks up breach counts, or null to skip breach checks.
+     * @param now          The time ages are measured against.
+     * @return The report.
+     * @throws IllegalStateException If no session is open.
+     */
+    public static Report analyze(List<Credential> credentials, Duration maxAge, BreachLookup breachLookup,
+                                 Instant now) {
+        EncryptionService.getSessionSecretKey();
+        List<Finding> findings = credentials.parallelStream()
+                .map(credential -> inspect(credential, breachLookup, now))
+                .toList();
+
+        Map<ByteBuffer, List<Credential>> byFingerprint = new HashMap<>();
+        for (Finding finding : findings) {
+            if (finding.fingerprint != null) {
+                byFingerprint.computeIfAbsent(finding.fingerprint, f -> new ArrayList<>(1)).add(finding.credential);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(findings.size());
+        List<Credential> failed = new ArrayList<>();
+        for (Finding finding : findings) {
+            if (finding.fingerprint == null) {
+                failed.add(finding.credential);
+                continue;
+            }
+            entries.add(new Entry(finding.credential, finding.entropyBits, PasswordStrength.rate(finding.entropyBits),
+                    byFingerprint.get(finding.fingerprint).size(), finding.age, finding.breachCount));
+        }
+
+        List<List<Credential>> reuseGroups = byFingerprint.values().stream()
+                .filter(group -> group.size() > 1)
+                .sorted(Comparator.comparingInt((List<Credential> group) -> group.size()).reversed())
+                .map(List::copyOf)
+                .toList();
+        return new Report(entries, reuseGroups, maxAge, breachLookup != null, failed);
+    }
+
+    /**
+     * The per-credential step. The decrypted password exists only inside this method.
+     */
+    private static Finding inspect(Credential credential, BreachLookup breachLookup, Instant now) {
+        Duration age = credential.modifiedAt().equals(Instant.EPOCH)
+                ? null
+                : Duration.between(credential.modifiedAt(), now);
+        char[] chars = null;
+        try (SecretBuffer password = EncryptionService.decryptSecret(CredentialStorage.encryptedPassword(credential))) {
+            chars = password.toChars();
+
+            ByteBuffer fingerprint = ByteBuffer.wrap(EncryptionService.sessionFingerprint(password));
+            double entropyBits = PasswordStrength.estimateEntropy(CharBuffer.wrap(chars));
+            int breachCount = 0;
+            if (breachLookup != null) {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                sha1.update(password.view());
+                breachCount = breachLookup.breachCount(sha1.digest());
+            }
+            return new Finding(credential, fingerprint, entropyBits, age, breachCount);
+        } catch (Exception e) {
+            // Undecryptable or not valid UTF-8: reported as failed
+            return new Finding(credential, null, 0, age, 0);
+        } finally {
+            if (chars != null) {
+                Arrays.fill(chars, '\0');
+            }
+        }
+    }
+
+    private record Finding(Credential credential, ByteBuffer fingerprint, double entropyBits, Duration age,
+                           int breachCount) {
+    }
+}
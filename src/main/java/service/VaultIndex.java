@@ -0,0 +1,289 @@
+package service;
+
+import utils.MerkleTree;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the vault in one authenticated envelope, so that opening the vault costs one
+ * decryption rather than one per record.
+ * <p>
+ * The index is the second line of the vault, right after the integrity header of {@link VaultIntegrity}:
+ * <pre>
+ * #merkle1 0000000042 &lt;Base64 HMAC-SHA256&gt;
+ * #index1 &lt;encrypted index&gt;
+ * &lt;record line&gt;
+ * ...
+ * </pre>
+ * For each record line, in order, the index holds its length, its leaf hash in the Merkle tree of the
+ * header and the credential's metadata: the record without its encrypted password. The password lives
+ * only in the record line, which the index addresses by offset and length, and is read from there with
+ * a positional read when it is used, see {@link Reader}; each line is checked against its leaf hash when
+ * it is read. Opening the vault reads the header and the index, and checks that the file ends where the
+ * index says the last record does, without reading the record lines. The record lines stay self-contained,
+ * so backups, sync and re-keying keep working on them as before.
+ * <p>
+ * The index is rewritten on every save. A vault without one, e.g. one written before it existed,
+ * restored from a backup or re-keyed, or one with an index of an earlier version, is read record by
+ * record and gets one on the next save.
+ */
+final class VaultIndex {
+
+    static final String PREFIX = "#index1 ";
+    // Version 1 held the whole record plaintext; such an index is not used and is replaced on the next save
+    private static final byte VERSION = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Where a record line is in a vault file.
+     *
+     * @param file     The vault file, or one shard of it, see {@link VaultShards}.
+     * @param offset   The offset of the line in the file.
+     * @param length   The length of the line in bytes, without the line break.
+     * @param leafHash The leaf hash of the line.
+     */
+    record Location(Path file, long offset, int length, byte[] leafHash) {
+    }
+
+    /**
+     * One record, as read from the index.
+     *
+     * @param location The record line.
+     * @param metadata The record plaintext without the encrypted password.
+     */
+    record Entry(Location location, byte[] metadata) {
+    }
+
+    private VaultIndex() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * @param line A line of the vault file.
+     * @return true if it is an index rather than a record.
+     */
+    static boolean isIndex(String line) {
+        return line.startsWith(PREFIX);
+    }
+
+    /**
+     * Formats the index line for a vault whose record lines are written after it, each followed by {@code \n}.
+     *
+     * @param metadata The plaintexts of the records without their encrypted passwords, in order.
+     * @param lines    The encrypted record lines, in the same order.
+     * @param key      The vault key.
+     * @return The index line.
+     * @throws Exception If the index cannot be encrypted.
+     */
+    static String format(List<byte[]> metadata, List<String> lines, SecretKey key) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeInt(metadata.size());
+        for (int i = 0; i < metadata.size(); i++) {
+            String line = lines.get(i);
+            out.writeInt(line.length());
+            out.write(VaultIntegrity.leafHash(line));
+            out.writeInt(metadata.get(i).length);
+            out.write(metadata.get(i));
+        }
+        VaultEvents.CryptoBatch event = new VaultEvents.CryptoBatch();
+        event.begin();
+        String index = PREFIX + EncryptionService.encryptBytes(bytes.toByteArray(), key);
+        event.operation = "encrypt";
+        event.ciphertexts = 1;
+        event.records = metadata.size();
+        event.bytes = bytes.size();
+        event.commit();
+        return index;
+    }
+
+    /**
+     * Opens the index of a vault: decrypts it, checks it against the header, and checks that the record
+     * lines it addresses end where the file does. The record lines themselves are not read.
+     *
+     * @param vault The vault file.
+     * @param key   The vault key.
+     * @return The records, or null if the vault has no usable index and must be read record by record.
+     * @throws IOException If the header or the size of the file do not match the index.
+     * @throws Exception   If the header cannot be checked.
+     */
+    static List<Entry> open(Path vault, SecretKey key) throws Exception {
+        try (FileChannel channel = FileChannel.open(vault, StandardOpenOption.READ)) {
+            byte[] headerLine = readLine(channel);
+            byte[] indexLine = headerLine == null ? null : readLine(channel);
+            if (indexLine == null) {
+                return null;
+            }
+            String headerText = new String(headerLine, StandardCharsets.US_ASCII);
+            String indexText = new String(indexLine, StandardCharsets.US_ASCII);
+            if (!VaultIntegrity.isHeader(headerText) || !isIndex(indexText)) {
+                return null;
+            }
+            VaultIntegrity.Header header = VaultIntegrity.parseHeader(headerText);
+
+            List<Entry> entries;
+            try {
+                VaultEvents.CryptoBatch event = new VaultEvents.CryptoBatch();
+                event.begin();
+                String envelope = indexText.substring(PREFIX.length());
+                byte[] index = EncryptionService.decryptBytes(envelope, key);
+                // The index is encrypted on every save with the suite chosen then; keep it rather than choosing again
+                CipherSuite.adopt(CipherSuite.of(envelope));
+                entries = parse(vault, index, headerLine.length + 1L + indexLine.length + 1L);
+                event.operation = "decrypt";
+                event.ciphertexts = 1;
+                event.records = entries.size();
+                event.bytes = index.length;
+                event.commit();
+            } catch (GeneralSecurityException | IllegalArgumentException | BufferUnderflowException e) {
+                // Under another key, damaged or of an unknown version: reading the records decides
+                return null;
+            }
+            List<byte[]> leaves = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                leaves.add(entry.location().leafHash());
+            }
+            VaultIntegrity.verify(header, MerkleTree.fromLeafHashes(leaves), key);
+            long end = headerLine.length + 1L + indexLine.length + 1L;
+            if (!entries.isEmpty()) {
+                Location last = entries.getLast().location();
+                end = last.offset() + last.length() + 1L;
+            }
+            if (channel.size() != end) {
+                throw new IOException("Vault integrity check failed: record lines do not match the vault index.");
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Reads record lines back from the vault files with positional reads, checking each against its leaf hash.
+     *
+     * @param locations The lines to read.
+     * @return The lines, in the same order.
+     * @throws IOException If a file cannot be read or has changed since the index was opened.
+     */
+    static List<String> readLines(List<Location> locations) throws IOException {
+        List<String> lines = new ArrayList<>(locations.size());
+        try (Reader reader = new Reader()) {
+            for (Location location : locations) {
+                lines.add(reader.read(location));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Reads record lines one at a time, keeping each file it reads from open until it is closed.
+     */
+    static final class Reader implements Closeable {
+        private final Map<Path, FileChannel> channels = new HashMap<>();
+
+        /**
+         * @param location The line to read.
+         * @return The line.
+         * @throws IOException If the file cannot be read, or the line does not match its leaf hash because the
+         *                     file changed since the index was opened or was tampered with.
+         */
+        String read(Location location) throws IOException {
+            FileChannel channel = channels.get(location.file());
+            if (channel == null) {
+                channel = FileChannel.open(location.file(), StandardOpenOption.READ);
+                channels.put(location.file(), channel);
+            }
+            ByteBuffer line = ByteBuffer.allocate(location.length());
+            while (line.hasRemaining()) {
+                if (channel.read(line, location.offset() + line.position()) < 0) {
+                    throw new IOException("The vault file changed since it was opened.");
+                }
+            }
+            line.flip();
+            if (!MessageDigest.isEqual(location.leafHash(), MerkleTree.hashLeaf(line.duplicate()))) {
+                throw new IOException("Vault integrity check failed: a record line does not match the vault index.");
+            }
+            return StandardCharsets.US_ASCII.decode(line).toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (FileChannel channel : channels.values()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            channels.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static List<Entry> parse(Path vault, byte[] index, long recordsStart) {
+        ByteBuffer in = ByteBuffer.wrap(index);
+        if (in.get() != VERSION) {
+            throw new IllegalArgumentException("Unsupported vault index version.");
+        }
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Invalid record count in vault index.");
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        long offset = recordsStart;
+        for (int i = 0; i < count; i++) {
+            int length = in.getInt();
+            byte[] leafHash = new byte[MerkleTree.HASH_LENGTH];
+            in.get(leafHash);
+            int metadataLength = in.getInt();
+            if (length < 0 || metadataLength < 0 || metadataLength > in.remaining()) {
+                throw new IllegalArgumentException("Invalid length in vault index.");
+            }
+            byte[] metadata = new byte[metadataLength];
+            in.get(metadata);
+            entries.add(new Entry(new Location(vault, offset, length, leafHash), metadata));
+            offset += length + 1L;
+        }
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes in vault index.");
+        }
+        return entries;
+    }
+
+    // Reads from the channel's position up to the next \n and moves past it, or returns null if there is none
+    private static byte[] readLine(FileChannel channel) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(VaultIntegrity.HEADER_LENGTH);
+        ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
+        long start = channel.position();
+        while (channel.read(chunk) >= 0) {
+            for (int i = 0; i < chunk.position(); i++) {
+                if (chunk.get(i) == '\n') {
+                    line.write(chunk.array(), 0, i);
+                    channel.position(start + line.size() + 1);
+                    return line.toByteArray();
+                }
+            }
+            line.write(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+package service;
+
+import utils.MerkleTree;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Authenticates the vault as a whole with a Merkle tree over its encrypted records.
+ * <p>
+ * Each record is already protected by its own authentication tag, but that does not reveal a record that was
+ * dropped, duplicated or moved. The first line of the vault is therefore a header holding the record
+ * count and an HMAC of the Merkle root over the record lines, keyed from the vault key:
+ * <pre>
+ * #merkle1 0000000042 &lt;Base64 HMAC-SHA256&gt;
+ * </pre>
+ * Leaves are the encrypted lines themselves, so the tree can be rebuilt, and two vault versions
+ * diffed, without decrypting anything. The header has a fixed length so that it can be written
+ * after the records have been streamed, see {@link VaultRekeyService}.
+ */
+public final class VaultIntegrity {
+
+    static final String HEADER_PREFIX = "#merkle1 ";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_LABEL = "SecurePasswordManager vault integrity v1".getBytes(StandardCharsets.UTF_8);
+    private static final int COUNT_DIGITS = 10;
+    /** The length of a header line, without the line separator. */
+    static final int HEADER_LENGTH = HEADER_PREFIX.length() + COUNT_DIGITS + 1 + 44;
+
+    /**
+     * A parsed vault header.
+     *
+     * @param recordCount The number of records the vault holds.
+     * @param tag         The HMAC of the record count and the Merkle root.
+     */
+    record Header(int recordCount, byte[] tag) {
+    }
+
+    private VaultIntegrity() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * @param line A line of the vault file.
+     * @return true if it is a header rather than a record.
+     */
+    static boolean isHeader(String line) {
+        return line.startsWith(HEADER_PREFIX);
+    }
+
+    /**
+     * Parses a header line.
+     *
+     * @param line The line.
+     * @return The header.
+     * @throws IOException If the header is malformed.
+     */
+    static Header parseHeader(String line) throws IOException {
+        try {
+            if (line.length() != HEADER_LENGTH || line.charAt(HEADER_PREFIX.length() + COUNT_DIGITS) != ' ') {
+                throw new IllegalArgumentException("unexpected length");
+            }
+            int count = Integer.parseInt(line, HEADER_PREFIX.length(), HEADER_PREFIX.length() + COUNT_DIGITS, 10);
+            byte[] tag = Base64.getDecoder().decode(line.substring(HEADER_PREFIX.length() + COUNT_DIGITS + 1));
+            return new Header(count, tag);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Vault integrity header is malformed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Formats the header authenticating a tree of records.
+     *
+     * @param tree The tree over the record lines.
+     * @param key  The vault key.
+     * @return The header line, {@link #HEADER_LENGTH} characters long.
+     * @throws Exception If the HMAC cannot be computed.
+     */
+    static String formatHeader(MerkleTree tree, SecretKey key) throws Exception {
+        String count = Integer.toString(tree.size());
+        return HEADER_PREFIX + "0".repeat(COUNT_DIGITS - count.length()) + count + " "
+                + Base64.getEncoder().encodeToString(tag(tree, key));
+    }
+
+    /**
+     * Checks that the records match a header.
+     *
+     * @param header The header read from the vault.
+     * @param tree   The tree over the record lines read after it.
+     * @param key    The vault key.
+     * @throws IOException If records were added, removed, reordered or modified, or the key is wrong.
+     * @throws Exception   If the HMAC cannot be computed.
+     */
+    static void verify(Header header, MerkleTree tree, SecretKey key) throws Exception {
+        if (header.recordCount() != tree.size() || !MessageDigest.isEqual(header.tag(), tag(tree, key))) {
+            throw new IOException("Vault integrity check failed: records were added, removed, reordered or modified"
+                    + " (expected " + header.recordCount() + " record(s), found " + tree.size() + ").");
+        }
+    }
+
+    /**
+     * Hashes one encrypted record line as a leaf of the vault tree.
+     *
+     * @param line The record line.
+     * @return The leaf hash.
+     */
+    static byte[] leafHash(String line) {
+        return MerkleTree.hashLeaf(line.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Builds the tree over the records of a vault file, without decrypting them.
+     *
+     * @param vault The vault file.
+     * @return The tree; empty if the file does not exist.
+     * @throws IOException If the file cannot be read.
+     */
+    public static MerkleTree readTree(Path vault) throws IOException {
+        List<byte[]> leaves = new ArrayList<>();
+        if (Files.exists(vault)) {
+            try (BufferedReader reader = Files.newBufferedReader(vault)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank() && !isHeader(line) && !VaultIndex.isIndex(line)) {
+                        leaves.add(leafHash(line));
+                    }
+                }
+            }
+        }
+        return MerkleTree.fromLeafHashes(leaves);
+    }
+
+    /**
+     * Finds the records that differ between two versions of a vault, e.g. the vault and its backup,
+     * without decrypting either. Only subtrees whose hashes differ are compared.
+     *
+     * @param older The older version.
+     * @param newer The newer version.
+     * @return The positions of records that were changed, added or removed, in ascending order.
+     * @throws IOException If a file cannot be read.
+     */
+    public static List<Integer> diff(Path older, Path newer) throws IOException {
+        return readTree(older).diff(readTree(newer));
+    }
+
+    private static byte[] tag(MerkleTree tree, SecretKey key) throws Exception {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key.getEncoded(), HMAC_ALGORITHM));
+        byte[] integrityKey = mac.doFinal(KEY_LABEL);
+
+        mac.init(new SecretKeySpec(integrityKey, HMAC_ALGORITHM));
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, tree.size()));
+        return mac.doFinal(tree.root());
+    }
+}
@@ -0,0 +1,288 @@
+package service;
+
+import model.Credential;
+import utils.MerkleTree;
+import utils.SecretBuffer;
+
+import javax.crypto.SecretKey;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes the master password and rotates the encryption salt without loading the vault into memory.
+ * <p>
+ * Records are streamed from the vault in fixed-size chunks; each chunk is decrypted with the old key
+ * and re-encrypted with the new key in parallel, then appended to a temporary vault. The new vault,
+ * password hash, salt, key-check value and attachment store key are all staged next to the live files
+ * and swapped in only after a journal marks the transaction as committed:
+ * <ul>
+ *   <li>Interrupted before the commit: the staged files are deleted and the old vault stays in use.</li>
+ *   <li>Interrupted after the commit: the remaining staged files are moved into place on next start.</li>
+ * </ul>
+ * A vault split into shards ({@link VaultShards}) has each shard re-encrypted into a new file and its manifest staged.
+ * Call {@link #recoverInterruptedRekey()} before authenticating to finish or roll back a re-key.
+ */
+public class VaultRekeyService {
+
+    static final String STAGED_SUFFIX = ".rekey";
+    static final Path JOURNAL_PATH = Paths.get("rekey.journal");
+    private static final String COMMITTED = "COMMITTED";
+    private static final int CHUNK_SIZE = 256;
+
+    private VaultRekeyService() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Re-encrypts the vault under a new master password and a fresh salt.
+     * The session is switched to the new key once the swap has completed.
+     *
+     * @param newPassword The new master password.
+     * @return The number of records re-encrypted.
+     * @throws Exception If a record cannot be decrypted with the current key or a file cannot be written.
+     *                   Nothing is changed on disk in that case.
+     */
+    public static int rekey(String newPassword) throws Exception {
+        try (SecretBuffer password = SecretBuffer.of(newPassword)) {
+            return rekey(password);
+        }
+    }
+
+    /**
+     * Re-encrypts the vault under a new master password held in a {@link SecretBuffer}, as {@link #rekey(String)} does.
+     *
+     * @param newPassword The new master password; it is not closed.
+     * @return The number of records re-encrypted.
+     * @throws Exception If a record cannot be decrypted with the current key or a file cannot be written.
+     *                   Nothing is changed on disk in that case.
+     */
+    public static int rekey(SecretBuffer newPassword) throws Exception {
+        SecretKey oldKey = EncryptionService.getSessionSecretKey();
+        String newSalt = EncryptionService.generateSalt();
+        SecretKey newKey = EncryptionService.getSecretKey(newPassword, newSalt);
+
+        List<Path> targets = stagedTargets();
+
+        int records;
+        try {
+            if (VaultShards.isManifest(CredentialStorage.FILE_PATH)) {
+                records = reencryptShards(CredentialStorage.FILE_PATH, oldKey, newKey);
+            } else {
+                records = reencryptVault(CredentialStorage.FILE_PATH, staged(CredentialStorage.FILE_PATH), oldKey, newKey);
+            }
+            writeDurably(staged(Paths.get(AuthService.PASSWORD_FILE)), AuthService.bcryptHash(newPassword));
+            writeDurably(staged(Paths.get(EncryptionService.SALT_FILE)), newSalt);
+            writeDurably(staged(Paths.get(EncryptionService.KEY_CHECK_FILE)), EncryptionService.computeKeyCheck(newKey));
+            String attachmentKey = CredentialStorage.ATTACHMENTS.rewrapKey(oldKey, newKey);
+            if (attachmentKey != null) {
+                writeDurably(staged(CredentialStorage.ATTACHMENTS.keyFile()), attachmentKey);
+            }
+        } catch (Exception e) {
+            rollBack(targets);
+            throw e;
+        }
+
+        // Commit point: from here on the new files win, even after a crash
+        Path journalTemp = Paths.get(JOURNAL_PATH + ".tmp");
+        writeDurably(journalTemp, COMMITTED);
+        move(journalTemp, JOURNAL_PATH);
+
+        rollForward(targets);
+        EncryptionService.openSession(newPassword, newKey);
+        return records;
+    }
+
+    /**
+     * Completes or rolls back a re-key that was interrupted, e.g. by a crash or power loss.
+     *
+     * @return true if an interrupted re-key was found and recovered.
+     * @throws IOException If a staged file cannot be moved or deleted.
+     */
+    public static boolean recoverInterruptedRekey() throws IOException {
+        List<Path> targets = stagedTargets();
+
+        if (Files.exists(JOURNAL_PATH) && COMMITTED.equals(Files.readString(JOURNAL_PATH).trim())) {
+            rollForward(targets);
+            return true;
+        }
+
+        boolean staged = false;
+        for (Path target : targets) {
+            staged |= Files.exists(staged(target));
+        }
+        rollBack(targets);
+        Files.deleteIfExists(Paths.get(JOURNAL_PATH + ".tmp"));
+        return staged;
+    }
+
+    /**
+     * Streams every record of a vault through decrypt-with-old and encrypt-with-new.
+     * Only one chunk of records is held in memory at a time. The old records are checked against
+     * the integrity header of the source, and the target gets a new header under the new key; as the
+     * header has a fixed length, a placeholder is written first and overwritten once all records are in.
+     */
+    static int reencryptVault(Path source, Path target, SecretKey oldKey, SecretKey newKey) throws Exception {
+        VaultIntegrity.Header oldHeader = null;
+        List<byte[]> oldLeaves = new ArrayList<>();
+        List<byte[]> newLeaves = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            writer.write(" ".repeat(VaultIntegrity.HEADER_LENGTH));
+            writer.newLine();
+            if (Files.exists(source)) {
+                try (BufferedReader reader = Files.newBufferedReader(source)) {
+                    List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank() || VaultIndex.isIndex(line)) {
+                            // The re-keyed vault is written without an index and gets one on the next save
+                            continue;
+                        }
+                        if (VaultIntegrity.isHeader(line) && oldHeader == null && oldLeaves.isEmpty()) {
+                            oldHeader = VaultIntegrity.parseHeader(line);
+                            continue;
+                        }
+                        chunk.add(line);
+                        oldLeaves.add(VaultIntegrity.leafHash(line));
+                        if (chunk.size() == CHUNK_SIZE) {
+                            writeChunk(writer, chunk, oldKey, newKey, newLeaves);
+                            chunk.clear();
+                        }
+                    }
+                    writeChunk(writer, chunk, oldKey, newKey, newLeaves);
+                }
+            }
+            if (oldHeader != null) {
+                VaultIntegrity.verify(oldHeader, MerkleTree.fromLeafHashes(oldLeaves), oldKey);
+            }
+            writer.flush();
+            String header = VaultIntegrity.formatHeader(MerkleTree.fromLeafHashes(newLeaves), newKey);
+            channel.write(ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)), 0);
+            channel.force(true);
+        }
+        return newLeaves.size();
+    }
+
+    /**
+     * Re-encrypts every shard of a sharded vault into a new shard file, and stages a manifest naming them
+     * under the new key. The old shard files stay as they are until the staged manifest is moved into place;
+     * whichever set of files the vault file then does not name is deleted, see {@link VaultShards#sweep}.
+     */
+    static int reencryptShards(Path vault, SecretKey oldKey, SecretKey newKey) throws Exception {
+        Path directory = VaultShards.directory(vault);
+        List<VaultShards.Shard> shards = new ArrayList<>();
+        int records = 0;
+        for (VaultShards.Shard shard : VaultShards.read(vault, oldKey)) {
+            Path source = directory.resolve(shard.file());
+            VaultShards.checkHeader(source, shard);
+            String file = VaultShards.newFileName(shards.size());
+            records += reencryptVault(source, directory.resolve(file), oldKey, newKey);
+            try (BufferedReader reader = Files.newBufferedReader(directory.resolve(file), StandardCharsets.US_ASCII)) {
+                shards.add(new VaultShards.Shard(file, reader.readLine()));
+            }
+        }
+        writeDurably(staged(vault), VaultShards.format(shards, newKey));
+        return records;
+    }
+
+    private static void writeChunk(BufferedWriter writer, List<String> chunk, SecretKey oldKey, SecretKey newKey,
+                                   List<byte[]> newLeaves) throws Exception {
+        List<String> reencrypted;
+        try {
+            reencrypted = chunk.parallelStream()
+                    .map(line -> reencryptRecord(line, oldKey, newKey))
+                    .toList();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        for (String line : reencrypted) {
+            writer.write(line);
+            writer.newLine();
+            newLeaves.add(VaultIntegrity.leafHash(line));
+        }
+    }
+
+    private static String reencryptRecord(String line, SecretKey oldKey, SecretKey newKey) {
+        try {
+            Credential credential = CredentialStorage.parseRecord(EncryptionService.decryptBytes(line, oldKey));
+            if (credential == null) {
+                throw new IllegalArgumentException("Invalid record format in vault.");
+            }
+            Credential moved;
+            try (SecretBuffer password = EncryptionService.decryptSecret(credential.encryptedPassword(), oldKey)) {
+                moved = credential.withEncryptedPassword(EncryptionService.encryptSecret(password, newKey));
+            }
+            return EncryptionService.encryptBytes(CredentialStorage.formatRecord(moved), newKey);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The live files a re-key replaces, in the order they are swapped in.
+     */
+    private static List<Path> stagedTargets() {
+        return List.of(
+                CredentialStorage.FILE_PATH,
+                Paths.get(AuthService.PASSWORD_FILE),
+                Paths.get(EncryptionService.SALT_FILE),
+                Paths.get(EncryptionService.KEY_CHECK_FILE),
+                CredentialStorage.ATTACHMENTS.keyFile()
+        );
+    }
+
+    private static void rollForward(List<Path> targets) throws IOException {
+        for (Path target : targets) {
+            Path staged = staged(target);
+            if (Files.exists(staged)) {
+                move(staged, target);
+            }
+        }
+        VaultShards.sweep(CredentialStorage.FILE_PATH);
+        Files.deleteIfExists(JOURNAL_PATH);
+    }
+
+    private static void rollBack(List<Path> targets) throws IOException {
+        for (Path target : targets) {
+            Files.deleteIfExists(staged(target));
+        }
+        VaultShards.sweep(CredentialStorage.FILE_PATH);
+    }
+
+    private static Path staged(Path target) {
+        return Paths.get(target + STAGED_SUFFIX);
+    }
+
+    private static void writeDurably(Path path, String content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(StandardCharsets.UTF_8.encode(content));
+            channel.force(true);
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package service;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The layout of a vault split into shards, so that a save only rewrites the shards whose records changed
+ * and the shards of a large vault are opened in parallel.
+ * <p>
+ * Every credential belongs to one shard, chosen by the hash of its id. Each shard is a vault file of its own,
+ * with an integrity header ({@link VaultIntegrity}), an index ({@link VaultIndex}) and its records, kept in a
+ * directory next to the vault. The vault file itself then holds a manifest instead of records:
+ * <pre>
+ * #shards1 0004 &lt;Base64 HMAC-SHA256&gt;
+ * 00-5f1c9e0a.dat #merkle1 0000010523 &lt;Base64 HMAC-SHA256&gt;
+ * 01-a2d47b3e.dat #merkle1 0000010388 &lt;Base64 HMAC-SHA256&gt;
+ * ...
+ * </pre>
+ * The manifest names the file of each shard together with its header, and its first line authenticates
+ * all of them under a key derived from the vault key. A shard file is only accepted if it starts with the
+ * header the manifest names, so shards cannot be dropped, swapped or replaced by an older version one by one.
+ * <p>
+ * Shard files are never overwritten: a changed shard is written to a new file, the manifest is moved into place
+ * over the vault file, and files it no longer names are deleted afterwards, see {@link #sweep}.
+ * A crash at any point leaves either the old or the new manifest, with every file it names.
+ */
+final class VaultShards {
+
+    static final String PREFIX = "#shards1 ";
+    /** The largest number of shards a vault can be split into. */
+    static final int MAX_SHARDS = 256;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte[] KEY_LABEL = "SecurePasswordManager vault shards v1".getBytes(StandardCharsets.UTF_8);
+    private static final int COUNT_DIGITS = 4;
+    private static final String FILE_SUFFIX = ".dat";
+    private static final HexFormat HEX = HexFormat.of();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * One shard, as named by the manifest.
+     *
+     * @param file   The name of the shard file in the shard directory.
+     * @param header The integrity header the shard file starts with.
+     */
+    record Shard(String file, String header) {
+    }
+
+    private VaultShards() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * @param vault The vault file.
+     * @return true if it holds a shard manifest rather than records.
+     * @throws IOException If it cannot be read.
+     */
+    static boolean isManifest(Path vault) throws IOException {
+        String first = firstLine(vault);
+        return first != null && first.startsWith(PREFIX);
+    }
+
+    /**
+     * @param id    The id of a credential.
+     * @param count The number of shards.
+     * @return The shard the credential belongs to.
+     */
+    static int shardOf(UUID id, int count) {
+        // Random ids are uniform in every bit; mixing both halves also spreads ids derived from names
+        long bits = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        return (int) Long.remainderUnsigned(bits ^ (bits >>> 32), count);
+    }
+
+    /**
+     * @param vault The vault file.
+     * @return The directory holding its shard files.
+     */
+    static Path directory(Path vault) {
+        return Paths.get(vault + ".shards");
+    }
+
+    /**
+     * @param shard The number of a shard.
+     * @return A new file name for it, unlike any file written before.
+     */
+    static String newFileName(int shard) {
+        byte[] suffix = new byte[4];
+        RANDOM.nextBytes(suffix);
+        return String.format("%02x-%s%s", shard, HEX.formatHex(suffix), FILE_SUFFIX);
+    }
+
+    /**
+     * Formats the manifest of a sharded vault.
+     *
+     * @param shards The shards, in order.
+     * @param key    The vault key.
+     * @return The manifest, one line per shard after the first.
+     * @throws Exception If the HMAC cannot be computed.
+     */
+    static String format(List<Shard> shards, SecretKey key) throws Exception {
+        String count = Integer.toString(shards.size());
+        StringBuilder manifest = new StringBuilder(PREFIX).append("0".repeat(COUNT_DIGITS - count.length())).append(count)
+                .append(' ').append(Base64.getEncoder().encodeToString(tag(shards, key))).append('\n');
+        for (Shard shard : shards) {
+            manifest.append(shard.file()).append(' ').append(shard.header()).append('\n');
+        }
+        return manifest.toString();
+    }
+
+    /**
+     * Reads the manifest of a sharded vault and checks it against its tag.
+     *
+     * @param vault The vault file.
+     * @param key   The vault key.
+     * @return The shards, in order.
+     * @throws IOException If the manifest is malformed or was modified, or the key is wrong.
+     * @throws Exception   If the HMAC cannot be computed.
+     */
+    static List<Shard> read(Path vault, SecretKey key) throws Exception {
+        List<String> lines = Files.readAllLines(vault, StandardCharsets.US_ASCII);
+        byte[] tag;
+        List<Shard> shards;
+        try {
+            String first = lines.getFirst();
+            int count = Integer.parseInt(first, PREFIX.length(), PREFIX.length() + COUNT_DIGITS, 10);
+            tag = Base64.getDecoder().decode(first.substring(PREFIX.length() + COUNT_DIGITS + 1));
+            shards = parse(lines);
+            if (shards.size() != count) {
+                throw new IllegalArgumentException("expected " + count + " shard(s), found " + shards.size());
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Vault shard manifest is malformed: " + e.getMessage(), e);
+        }
+        if (!MessageDigest.isEqual(tag, tag(shards, key))) {
+            throw new IOException("Vault integrity check failed: the shard manifest was modified.");
+        }
+        return shards;
+    }
+
+    /**
+     * Checks that a shard file is the one the manifest names, by its header.
+     *
+     * @param file  The shard file.
+     * @param shard The shard as named by the manifest.
+     * @throws IOException If the file is missing or starts with another header.
+     */
+    static void checkHeader(Path file, Shard shard) throws IOException {
+        String header;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            header = reader.readLine();
+        }
+        if (!shard.header().equals(header)) {
+            throw new IOException("Vault integrity check failed: shard " + shard.file()
+                    + " is not the one the manifest names.");
+        }
+    }
+
+    /**
+     * Replaces the vault file with a manifest. The shard files it names must already be written.
+     *
+     * @param vault    The vault file.
+     * @param manifest The manifest, see {@link #format}.
+     * @throws IOException If it cannot be written; the previous vault file is then unchanged.
+     */
+    static void write(Path vault, String manifest) throws IOException {
+        Path temp = Paths.get(vault + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = StandardCharsets.US_ASCII.encode(manifest);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, vault, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, vault, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the shard files the vault file does not name, e.g. shards replaced by a save or left by an
+     * interrupted one. If the vault is a single file, starting with an integrity header, the whole shard
+     * directory is deleted. If the vault file is missing, starts with anything else or is a manifest that
+     * does not parse, nothing is deleted: the manifest is not authenticated here, so this also runs before
+     * the vault is unlocked, and a damaged vault file must not cost the shards it may have named.
+     *
+     * @param vault The vault file.
+     * @throws IOException If the directory cannot be listed or a file cannot be deleted.
+     */
+    static void sweep(Path vault) throws IOException {
+        Path directory = directory(vault);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        String first = firstLine(vault);
+        boolean sharded = first != null && first.startsWith(PREFIX);
+        if (!sharded && (first == null || !VaultIntegrity.isHeader(first))) {
+            return;
+        }
+        Set<String> named = new HashSet<>();
+        if (sharded) {
+            List<String> lines = Files.readAllLines(vault, StandardCharsets.US_ASCII);
+            try {
+                int count = Integer.parseInt(first, PREFIX.length(), PREFIX.length() + COUNT_DIGITS, 10);
+                for (Shard shard : parse(lines)) {
+                    named.add(shard.file());
+                }
+                if (named.size() != count) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                return;
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (!named.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (!sharded) {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static String firstLine(Path vault) throws IOException {
+        if (!Files.exists(vault)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(vault, StandardCharsets.US_ASCII)) {
+            return reader.readLine();
+        }
+    }
+
+    private static List<Shard> parse(List<String> lines) {
+        List<Shard> shards = new ArrayList<>(lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            int space = line.indexOf(' ');
+            String file = space < 0 ? "" : line.substring(0, space);
+            // Names are generated by newFileName; anything else could point outside the shard directory
+            if (!file.endsWith(FILE_SUFFIX) || !file.chars().allMatch(c -> c == '-' || c == '.' || Character.isLetterOrDigit(c))) {
+                throw new IllegalArgumentException("invalid shard line");
+            }
+            shards.add(new Shard(file, line.substring(space + 1)));
+        }
+        return shards;
+    }
+
+    private static byte[] tag(List<Shard> shards, SecretKey key) throws Exception {
+        Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key.getEncoded(), HMAC_ALGORITHM));
+        byte[] manifestKey = mac.doFinal(KEY_LABEL);
+
+        mac.init(new SecretKeySpec(manifestKey, HMAC_ALGORITHM));
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, shards.size()));
+        for (Shard shard : shards) {
+            mac.update((shard.file() + ' ' + shard.header() + '\n').getBytes(StandardCharsets.US_ASCII));
+        }
+        return mac.doFinal();
+    }
+}
@@ -0,0 +1,69 @@
+package utils;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An opt-in JDK Flight Recorder recording of a run, to diagnose slow unlocks, saves or breach checks
+ * on the hosts where they happen.
+ * <p>
+ * Run with {@code --record <file>} before any command to record the whole run into that file, which is
+ * written when the JVM exits. The recording uses the JDK's {@code default} profile, for garbage collection,
+ * threads, file and socket I/O, with the bundled {@value #PROFILE} profile on top of it, which enables the
+ * application's own events (category {@code Secure Password Manager}). Without the option no recording
+ * runs, and the application's events cost next to nothing.
+ */
+public final class FlightRecording {
+
+    /** The program argument that starts a recording; the file to write follows it. */
+    public static final String OPTION = "--record";
+    /** The bundled settings of the application's events. */
+    public static final String PROFILE = "/vault.jfc";
+
+    private FlightRecording() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Starts a recording that is written to a file when the JVM exits.
+     *
+     * @param destination The file to write, usually ending in {@code .jfr}.
+     * @return The running recording.
+     * @throws IOException    If the profile cannot be read or the file cannot be written.
+     * @throws ParseException If the bundled profile is not valid.
+     */
+    public static Recording start(Path destination) throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        settings.putAll(profile().getSettings());
+        Recording recording = new Recording(settings);
+        recording.setName("Secure Password Manager");
+        recording.setToDisk(true);
+        recording.setDestination(destination);
+        recording.setDumpOnExit(true);
+        recording.start();
+        return recording;
+    }
+
+    /**
+     * @return The bundled settings of the application's events.
+     * @throws IOException    If they cannot be read.
+     * @throws ParseException If they are not valid.
+     */
+    public static Configuration profile() throws IOException, ParseException {
+        try (InputStream in = FlightRecording.class.getResourceAsStream(PROFILE)) {
+            if (in == null) {
+                throw new IOException("Bundled recording profile not found.");
+            }
+            return Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+}
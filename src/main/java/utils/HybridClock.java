@@ -0,0 +1,92 @@
+package utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A hybrid logical clock: timestamps that follow the wall clock, but never go backwards and always
+ * order an event after every event it has seen, even across machines whose clocks disagree.
+ * <p>
+ * A timestamp is packed into a {@code long}: the upper 48 bits hold milliseconds since the epoch,
+ * the lower 16 bits a counter that orders events within the same millisecond, or events stamped
+ * while the wall clock lags behind a timestamp received from elsewhere. Timestamps therefore compare
+ * as plain longs, and stay close to real time for display. Instances are not thread-safe.
+ */
+public final class HybridClock {
+
+    private static final int COUNTER_BITS = 16;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+
+    private final LongSupplier wallClock;
+    private long last;
+
+    /**
+     * Creates a clock over the system clock.
+     *
+     * @param last The latest timestamp issued or seen before, e.g. as persisted; 0 if none.
+     */
+    public HybridClock(long last) {
+        this(System::currentTimeMillis, last);
+    }
+
+    /**
+     * Creates a clock over a given wall clock.
+     *
+     * @param wallClock The wall clock, in milliseconds since the epoch.
+     * @param last      The latest timestamp issued or seen before; 0 if none.
+     */
+    public HybridClock(LongSupplier wallClock, long last) {
+        this.wallClock = wallClock;
+        this.last = last;
+    }
+
+    /**
+     * Issues a timestamp for a local event, later than every timestamp issued or seen so far.
+     *
+     * @return The timestamp.
+     */
+    public long now() {
+        long wall = wallClock.getAsLong() << COUNTER_BITS;
+        last = wall > last ? wall : increment(last);
+        return last;
+    }
+
+    /**
+     * Takes a timestamp received from another replica into account, so that the next local
+     * timestamp orders after it.
+     *
+     * @param remote The received timestamp.
+     * @return The clock's latest timestamp afterwards.
+     */
+    public long update(long remote) {
+        last = Math.max(last, remote);
+        return last;
+    }
+
+    /**
+     * @return The latest timestamp issued or seen.
+     */
+    public long last() {
+        return last;
+    }
+
+    /**
+     * @param timestamp A timestamp of this clock.
+     * @return Its wall-clock part, in milliseconds since the epoch.
+     */
+    public static long millis(long timestamp) {
+        return timestamp >>> COUNTER_BITS;
+    }
+
+    /**
+     * @param timestamp A timestamp of this clock.
+     * @return Its counter part.
+     */
+    public static int counter(long timestamp) {
+        return (int) (timestamp & COUNTER_MASK);
+    }
+
+    private static long increment(long timestamp) {
+        // A full counter carries into the milliseconds, running slightly ahead of the wall clock
+        return timestamp + 1;
+    }
+}
@@ -1,6 +1,20 @@
 package utils;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 public class InputSanitizer {
+    /** The input is valid. */
+    public static final int VALID = 0;
+    /** The input is null. */
+    public static final int NULL_INPUT = 1;
+    /** The trimmed input is empty or longer than the maximum length. */
+    public static final int INVALID_LENGTH = 2;
+    /** The input contains a character that is not a digit in numeric mode. */
+    public static final int NOT_NUMERIC = 3;
+    /** The input contains a character the policy does not allow. */
+    public static final int UNSAFE_CHARACTER = 4;
+
     /**
      * Private constructor to prevent instantiation.
      */
@@ -18,25 +32,110 @@ public class InputSanitizer {
      * @throws IllegalArgumentException If input is null, invalid, or unsafe.
      */
     public static String sanitize(String input, int maxLength, boolean numericOnly) throws IllegalArgumentException {
+        return sanitize(input, maxLength, numericOnly ? CharPolicy.NUMERIC : CharPolicy.SAFE_TEXT);
+    }
+
+    /**
+     * Sanitizes user-provided input against a character policy.
+     * The input is trimmed and checked in a single pass; no copy is made unless it has
+     * leading or trailing whitespace.
+     *
+     * @param input     The raw user input.
+     * @param maxLength The maximum allowed length of the trimmed input.
+     * @param policy    The characters allowed in the input.
+     * @return Sanitized and safe user input.
+     * @throws IllegalArgumentException If input is null, invalid, or unsafe.
+     */
+    public static String sanitize(String input, int maxLength, CharPolicy policy) throws IllegalArgumentException {
+        int status = validate(input, maxLength, policy);
+        if (status != VALID) {
+            throw new IllegalArgumentException(describe(status));
+        }
+        return input.trim();
+    }
+
+    /**
+     * Sanitizes a secret, such as a password read from the console, without turning it into a String.
+     * The trimmed input is encoded straight into a {@link SecretBuffer}, and the input array is zeroed
+     * whether or not it is valid.
+     *
+     * @param input     The raw secret; zeroed when this returns.
+     * @param maxLength The maximum allowed length of the trimmed input.
+     * @param policy    The characters allowed in the input.
+     * @return The sanitized secret, to be closed by the caller.
+     * @throws IllegalArgumentException If input is null, invalid, or unsafe.
+     */
+    public static SecretBuffer sanitizeSecret(char[] input, int maxLength, CharPolicy policy) throws IllegalArgumentException {
+        if (input == null) {
+            throw new IllegalArgumentException(describe(NULL_INPUT));
+        }
+        try {
+            CharBuffer chars = CharBuffer.wrap(input);
+            int status = validate(chars, maxLength, policy);
+            if (status != VALID) {
+                throw new IllegalArgumentException(describe(status));
+            }
+            int start = 0;
+            int end = input.length;
+            while (input[start] <= ' ') {
+                start++;
+            }
+            while (input[end - 1] <= ' ') {
+                end--;
+            }
+            return SecretBuffer.of(CharBuffer.wrap(input, start, end - start));
+        } finally {
+            Arrays.fill(input, '\0');
+        }
+    }
+
+    /**
+     * Validates input without allocating, for hot paths that only need a verdict.
+     * Leading and trailing whitespace is ignored, as {@link #sanitize} trims it.
+     *
+     * @param input     The raw input.
+     * @param maxLength The maximum allowed length of the trimmed input.
+     * @param policy    The characters allowed in the input.
+     * @return {@link #VALID} or one of the other status codes of this class.
+     */
+    public static int validate(CharSequence input, int maxLength, CharPolicy policy) {
         if (input == null) {
-            throw new IllegalArgumentException("Input cannot be null.");
+            return NULL_INPUT;
         }
-        input = input.trim();
-        if (input.isEmpty() || input.length() > maxLength) {
-            throw new IllegalArgumentException("Input is invalid or exceeds allowed length.");
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') {
+            start++;
         }
-        if (numericOnly && !input.matches("\\d+")) {
-            throw new IllegalArgumentException("Input must contain only numeric characters.");
+        while (end > start && input.charAt(end - 1) <= ' ') {
+            end--;
         }
-        if (!numericOnly && input.indexOf(';') >= 0 || 
-                    input.indexOf('\'') >= 0 ||
-                    input.indexOf('"') >= 0 ||
-                    input.indexOf('<') >= 0 ||
-                    input.indexOf('>') >= 0 ||
-                    input.indexOf(',') >= 0) {
-            throw new IllegalArgumentException("Input contains unsafe characters.");
+        if (start == end || end - start > maxLength) {
+            return INVALID_LENGTH;
         }
-        return input;
+        for (int i = start; i < end; i++) {
+            if (!policy.allows(input.charAt(i))) {
+                return policy.rejectStatus;
+            }
+        }
+        return VALID;
+    }
+
+    /**
+     * Returns the error message for a status code returned by {@link #validate}.
+     *
+     * @param status The status code.
+     * @return A message suitable for the user.
+     */
+    public static String describe(int status) {
+        return switch (status) {
+            case VALID -> "Input is valid.";
+            case NULL_INPUT -> "Input cannot be null.";
+            case INVALID_LENGTH -> "Input is invalid or exceeds allowed length.";
+            case NOT_NUMERIC -> "Input must contain only numeric characters.";
+            case UNSAFE_CHARACTER -> "Input contains unsafe characters.";
+            default -> "Input is invalid.";
+        };
     }
 
     /**
@@ -55,4 +154,105 @@ public class InputSanitizer {
                    .replace("\"", "&quot;")
                    .replace("'", "&#39;");
     }
-}
\ No newline at end of file
+
+    /**
+     * The set of characters allowed in an input, stored as a 128-bit lookup table for ASCII
+     * and a single flag for everything beyond it.
+     */
+    public static final class CharPolicy {
+        /** Anything except {@code ; ' " < > ,}. */
+        public static final CharPolicy SAFE_TEXT = allExcept(";'\"<>,");
+        /** ASCII digits only. */
+        public static final CharPolicy NUMERIC = only("0123456789", NOT_NUMERIC);
+        /** Anything except ASCII control characters, for names that may contain commas or quotes. */
+        public static final CharPolicy PRINTABLE = allExcept(controlCharacters(""));
+        /** Like {@link #PRINTABLE}, but also allows tabs and line breaks, for notes. */
+        public static final CharPolicy MULTILINE = allExcept(controlCharacters("\t\n\r"));
+
+        private final long low;
+        private final long high;
+        private final boolean nonAscii;
+        private final int rejectStatus;
+
+        private CharPolicy(long low, long high, boolean nonAscii, int rejectStatus) {
+            this.low = low;
+            this.high = high;
+            this.nonAscii = nonAscii;
+            this.rejectStatus = rejectStatus;
+        }
+
+        /**
+         * Creates a policy that allows every character except the given ASCII characters.
+         *
+         * @param forbidden The forbidden characters.
+         * @return The policy.
+         */
+        public static CharPolicy allExcept(String forbidden) {
+            long low = -1L;
+            long high = -1L;
+            for (int i = 0; i < forbidden.length(); i++) {
+                char c = forbidden.charAt(i);
+                if (c >= 128) {
+                    throw new IllegalArgumentException("Only ASCII characters can be forbidden.");
+                }
+                if (c < 64) {
+                    low &= ~(1L << c);
+                } else {
+                    high &= ~(1L << (c - 64));
+                }
+            }
+            return new CharPolicy(low, high, true, UNSAFE_CHARACTER);
+        }
+
+        /**
+         * Creates a policy that allows only the given ASCII characters.
+         *
+         * @param allowed The allowed characters.
+         * @return The policy.
+         */
+        public static CharPolicy only(String allowed) {
+            return only(allowed, UNSAFE_CHARACTER);
+        }
+
+        private static CharPolicy only(String allowed, int rejectStatus) {
+            long low = 0L;
+            long high = 0L;
+            for (int i = 0; i < allowed.length(); i++) {
+                char c = allowed.charAt(i);
+                if (c >= 128) {
+                    throw new IllegalArgumentException("Only ASCII characters can be allowed.");
+                }
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+            return new CharPolicy(low, high, false, rejectStatus);
+        }
+
+        private static String controlCharacters(String except) {
+            StringBuilder controls = new StringBuilder(33);
+            for (char c = 0; c < 32; c++) {
+                if (except.indexOf(c) < 0) {
+                    controls.append(c);
+                }
+            }
+            return controls.append((char) 127).toString();
+        }
+
+        /**
+         * Checks a single character against the lookup table.
+         *
+         * @param c The character.
+         * @return true if the policy allows it.
+         */
+        public boolean allows(char c) {
+            if (c >= 128) {
+                return nonAscii;
+            }
+            // Long shifts only use the low six bits of the distance, so c selects its bit in either word
+            return (((c < 64 ? low : high) >>> c) & 1L) != 0;
+        }
+    }
+}
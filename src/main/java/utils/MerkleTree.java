@@ -0,0 +1,248 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A binary Merkle tree over a list of leaves, using SHA-256.
+ * <p>
+ * The root commits to every leaf and its position, so any change, removal, insertion or reordering
+ * of leaves changes it. Leaves and inner nodes are hashed with different prefixes, so a leaf can never
+ * be passed off as a subtree. When a level has an odd number of nodes, the last one is carried up
+ * unchanged. This allows:
+ * <ul>
+ *   <li>proving that one leaf is part of the tree with {@link #proof(int)} and {@link #verify},
+ *       using O(log n) hashes instead of all leaves;</li>
+ *   <li>finding the leaves that differ between two trees with {@link #diff(MerkleTree)}, which only
+ *       descends into subtrees whose hashes differ.</li>
+ * </ul>
+ */
+public final class MerkleTree {
+
+    /** The length of every hash in the tree, in bytes. */
+    public static final int HASH_LENGTH = 32;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final byte[] EMPTY_ROOT = sha256().digest("empty Merkle tree".getBytes(StandardCharsets.US_ASCII));
+
+    // levels.get(0) holds the leaf hashes, the last level holds only the root
+    private final List<byte[][]> levels;
+
+    private MerkleTree(List<byte[][]> levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Builds a tree over raw leaves.
+     *
+     * @param leaves The leaf contents, in order.
+     * @return The tree.
+     */
+    public static MerkleTree of(List<byte[]> leaves) {
+        MessageDigest digest = sha256();
+        List<byte[]> hashes = new ArrayList<>(leaves.size());
+        for (byte[] leaf : leaves) {
+            hashes.add(hashLeaf(digest, leaf));
+        }
+        return fromLeafHashes(hashes);
+    }
+
+    /**
+     * Builds a tree over leaves hashed with {@link #hashLeaf(byte[])}, e.g. while streaming them.
+     *
+     * @param leafHashes The leaf hashes, in order.
+     * @return The tree.
+     */
+    public static MerkleTree fromLeafHashes(List<byte[]> leafHashes) {
+        MessageDigest digest = sha256();
+        List<byte[][]> levels = new ArrayList<>();
+        byte[][] level = leafHashes.toArray(new byte[0][]);
+        levels.add(level);
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                parent[i] = 2 * i + 1 < level.length
+                        ? hashNode(digest, level[2 * i], level[2 * i + 1])
+                        : level[2 * i];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+        return new MerkleTree(levels);
+    }
+
+    /**
+     * Hashes the content of one leaf.
+     *
+     * @param leaf The leaf content.
+     * @return The leaf hash.
+     */
+    public static byte[] hashLeaf(byte[] leaf) {
+        return hashLeaf(sha256(), leaf);
+    }
+
+    /**
+     * Hashes the content of one leaf held in a buffer, e.g. a slice of a mapped file, without copying it.
+     *
+     * @param leaf The leaf content, between the buffer's position and limit; the buffer is consumed.
+     * @return The leaf hash.
+     */
+    public static byte[] hashLeaf(ByteBuffer leaf) {
+        MessageDigest digest = sha256();
+        digest.update(LEAF_PREFIX);
+        digest.update(leaf);
+        return digest.digest();
+    }
+
+    /**
+     * @return The number of leaves.
+     */
+    public int size() {
+        return levels.getFirst().length;
+    }
+
+    /**
+     * @return The root hash; a fixed value for an empty tree.
+     */
+    public byte[] root() {
+        return size() == 0 ? EMPTY_ROOT.clone() : levels.getLast()[0].clone();
+    }
+
+    /**
+     * @param index The leaf position.
+     * @return The hash of that leaf.
+     */
+    public byte[] leafHash(int index) {
+        return levels.getFirst()[index].clone();
+    }
+
+    /**
+     * Returns the sibling hashes needed to recompute the root from one leaf, bottom up.
+     *
+     * @param index The leaf position.
+     * @return The proof; it has at most ceil(log2(size)) hashes.
+     * @throws IndexOutOfBoundsException If there is no such leaf.
+     */
+    public List<byte[]> proof(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("No leaf " + index + " in a tree of " + size());
+        }
+        List<byte[]> proof = new ArrayList<>();
+        int position = index;
+        for (int l = 0; l < levels.size() - 1; l++) {
+            byte[][] level = levels.get(l);
+            int sibling = position ^ 1;
+            if (sibling < level.length) {
+                proof.add(level[sibling].clone());
+            }
+            position /= 2;
+        }
+        return proof;
+    }
+
+    /**
+     * Checks that a leaf is at a position of a tree with the given root, without the other leaves.
+     *
+     * @param leafHash The hash of the leaf.
+     * @param index    Its position.
+     * @param size     The number of leaves in the tree.
+     * @param proof    The proof returned by {@link #proof(int)}.
+     * @param root     The trusted root hash.
+     * @return true if the proof is valid.
+     */
+    public static boolean verify(byte[] leafHash, int index, int size, List<byte[]> proof, byte[] root) {
+        if (index < 0 || index >= size) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        byte[] hash = leafHash;
+        int position = index;
+        int width = size;
+        int used = 0;
+        while (width > 1) {
+            if ((position & 1) == 1) {
+                if (used == proof.size()) {
+                    return false;
+                }
+                hash = hashNode(digest, proof.get(used++), hash);
+            } else if (position + 1 < width) {
+                if (used == proof.size()) {
+                    return false;
+                }
+                hash = hashNode(digest, hash, proof.get(used++));
+            }
+            position /= 2;
+            width = (width + 1) / 2;
+        }
+        return used == proof.size() && MessageDigest.isEqual(hash, root);
+    }
+
+    /**
+     * Finds the positions whose leaves differ between this tree and another one, including
+     * positions that exist in only one of them. Subtrees with equal hashes are skipped, so the
+     * cost grows with the number of differences rather than the number of leaves.
+     *
+     * @param other The other tree.
+     * @return The differing positions, in ascending order.
+     */
+    public List<Integer> diff(MerkleTree other) {
+        List<Integer> changed = new ArrayList<>();
+        int top = Math.max(levels.size(), other.levels.size()) - 1;
+        diff(other, top, 0, changed);
+        return changed;
+    }
+
+    private void diff(MerkleTree other, int level, int index, List<Integer> changed) {
+        byte[] mine = node(level, index);
+        byte[] theirs = other.node(level, index);
+        if (mine == null && theirs == null) {
+            return;
+        }
+        if (mine != null && theirs != null && Arrays.equals(mine, theirs)) {
+            return;
+        }
+        if (level == 0) {
+            changed.add(index);
+            return;
+        }
+        diff(other, level - 1, 2 * index, changed);
+        diff(other, level - 1, 2 * index + 1, changed);
+    }
+
+    /**
+     * Returns the node covering leaves {@code [index * 2^level, (index + 1) * 2^level)}, or null if there is none.
+     * Above the root, the root is carried up like any last node of a level.
+     */
+    private byte[] node(int level, int index) {
+        if (level < levels.size()) {
+            byte[][] nodes = levels.get(level);
+            return index < nodes.length ? nodes[index] : null;
+        }
+        return index == 0 && size() > 0 ? levels.getLast()[0] : null;
+    }
+
+    private static byte[] hashLeaf(MessageDigest digest, byte[] leaf) {
+        digest.update(LEAF_PREFIX);
+        return digest.digest(leaf);
+    }
+
+    private static byte[] hashNode(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
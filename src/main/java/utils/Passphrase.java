@@ -0,0 +1,15 @@
+package utils;
+
+/**
+ * A generated passphrase together with an estimate of its strength.
+ *
+ * @param value       the passphrase
+ * @param entropyBits the entropy of the generation process, in bits
+ */
+public record Passphrase(String value, double entropyBits) {
+
+    @Override
+    public String toString() {
+        return String.format("Passphrase (%.1f bits of entropy)", entropyBits);
+    }
+}
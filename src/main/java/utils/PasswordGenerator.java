@@ -1,14 +1,44 @@
 package utils;
 
 import service.PasswordBreachChecker;
+
+import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
 
 public class PasswordGenerator {
     private static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
     private static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
     private static final String NUMBERS = "0123456789";
     private static final String SYMBOLS = "!@#$%&*()-_=+[]{}";
-    private static final SecureRandom random = new SecureRandom();
+    private static final char[][] CLASSES = {
+            UPPERCASE.toCharArray(), LOWERCASE.toCharArray(), NUMBERS.toCharArray(), SYMBOLS.toCharArray()
+    };
+    // Character pool and selected classes for every combination of the four flags, indexed by bit mask
+    private static final char[][] POOLS = new char[1 << CLASSES.length][];
+    private static final char[][][] SELECTED_CLASSES = new char[1 << CLASSES.length][][];
+    private static final int BATCH_CHUNK = 1024;
+    private static final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+
+    static {
+        for (int mask = 0; mask < POOLS.length; mask++) {
+            StringBuilder pool = new StringBuilder();
+            SELECTED_CLASSES[mask] = new char[Integer.bitCount(mask)][];
+            int selected = 0;
+            for (int c = 0; c < CLASSES.length; c++) {
+                if ((mask & (1 << c)) != 0) {
+                    pool.append(CLASSES[c]);
+                    SELECTED_CLASSES[mask][selected++] = CLASSES[c];
+                }
+            }
+            POOLS[mask] = pool.toString().toCharArray();
+        }
+    }
 
     /**
      * Generates a strong password based on user preferences.
@@ -22,32 +52,238 @@ public class PasswordGenerator {
      */
     public static String generate(int length, boolean includeUppercase, boolean includeLowercase,
                                 boolean includeNumbers, boolean includeSymbols) {
-        String characterPool = buildCharacterPool(includeUppercase, includeLowercase, includeNumbers, includeSymbols);
-        validateInput(length, characterPool);
-        return generateSecurePassword(length, characterPool);
+        int mask = classMask(includeUppercase, includeLowercase, includeNumbers, includeSymbols);
+        validateInput(length, mask);
+        return generateSecurePassword(length, mask, new ByteSampler(random.get()));
+    }
+
+    /**
+     * Generates many passwords in one call, e.g. for provisioning service accounts.
+     * Pools are precomputed, random bytes are drawn in bulk and mapped with rejection sampling so
+     * every character is unbiased, and each password contains at least one character of every
+     * selected class when it is long enough to do so. Chunks of the batch are generated in parallel.
+     * With breach checks, the whole batch is looked up at once over the shared connection, and only
+     * the passwords that were found are replaced and looked up again.
+     *
+     * @param count            The number of passwords to generate.
+     * @param length           The length of each password.
+     * @param includeUppercase Whether to include uppercase letters.
+     * @param includeLowercase Whether to include lowercase letters.
+     * @param includeNumbers   Whether to include numeric digits.
+     * @param includeSymbols   Whether to include special characters.
+     * @param checkBreaches    Whether to check every password against known breaches and replace
+     *                         the ones that were found. Skip this for throughput.
+     * @return The generated passwords.
+     */
+    public static List<String> generateBatch(int count, int length, boolean includeUppercase,
+                                             boolean includeLowercase, boolean includeNumbers,
+                                             boolean includeSymbols, boolean checkBreaches) {
+        int mask = classMask(includeUppercase, includeLowercase, includeNumbers, includeSymbols);
+        validateInput(length, mask);
+        if (count < 0) {
+            throw new IllegalArgumentException("Invalid parameters for password generation.");
+        }
+
+        String[] passwords = new String[count];
+        int chunks = (count + BATCH_CHUNK - 1) / BATCH_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            ByteSampler sampler = new ByteSampler(random.get());
+            int end = Math.min(count, (chunk + 1) * BATCH_CHUNK);
+            for (int i = chunk * BATCH_CHUNK; i < end; i++) {
+                passwords[i] = generateRandomPassword(length, mask, sampler);
+            }
+        });
+        if (checkBreaches) {
+            replaceBreached(passwords, length, mask);
+        }
+        return Arrays.asList(passwords);
     }
 
-    private static String buildCharacterPool(boolean includeUppercase, boolean includeLowercase,
-                                           boolean includeNumbers, boolean includeSymbols) {
-        StringBuilder characterPool = new StringBuilder();
-        if (includeUppercase) characterPool.append(UPPERCASE);
-        if (includeLowercase) characterPool.append(LOWERCASE);
-        if (includeNumbers) characterPool.append(NUMBERS);
-        if (includeSymbols) characterPool.append(SYMBOLS);
-        return characterPool.toString();
+    // Looks up every pending password concurrently and replaces the breached ones until none is left
+    private static void replaceBreached(String[] passwords, int length, int mask) {
+        ByteSampler sampler = new ByteSampler(random.get());
+        List<Integer> pending = IntStream.range(0, passwords.length).boxed().toList();
+        while (!pending.isEmpty()) {
+            List<CompletableFuture<Integer>> counts = new ArrayList<>(pending.size());
+            for (int i : pending) {
+                counts.add(PasswordBreachChecker.checkPasswordAsync(passwords[i]));
+            }
+            CompletableFuture.allOf(counts.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+
+            List<Integer> breached = new ArrayList<>();
+            for (int j = 0; j < pending.size(); j++) {
+                int breachCount;
+                try {
+                    breachCount = counts.get(j).join();
+                } catch (CompletionException e) {
+                    // Like a single check, a failed lookup keeps the password
+                    System.err.println("Error checking password breach: " + e.getCause().getMessage());
+                    continue;
+                }
+                if (breachCount > 0) {
+                    System.out.printf("Generated password found in %d breach(es). Regenerating a safer password...%n", breachCount);
+                    int i = pending.get(j);
+                    passwords[i] = generateRandomPassword(length, mask, sampler);
+                    breached.add(i);
+                }
+            }
+            pending = breached;
+        }
     }
 
-    private static void validateInput(int length, String characterPool) {
-        if (characterPool.isEmpty() || length <= 0) {
+    /**
+     * Generates a password that satisfies a site policy.
+     * The password is drawn uniformly from all passwords the policy accepts in a single pass,
+     * and is checked against known breaches like {@link #generate(int, boolean, boolean, boolean, boolean)}.
+     *
+     * @param policy The policy to satisfy.
+     * @return A randomly generated password as a String.
+     */
+    public static String generate(PasswordPolicy policy) {
+        ByteSampler sampler = new ByteSampler(random.get());
+        String password;
+        int breachCount;
+        do {
+            password = generateRandomPassword(policy, sampler);
+            breachCount = PasswordBreachChecker.checkPassword(password);
+            if (breachCount > 0) {
+                System.out.printf("Generated password found in %d breach(es). Regenerating a safer password...%n", breachCount);
+            }
+        } while (breachCount > 0);
+        return password;
+    }
+
+    static String generateRandomPassword(PasswordPolicy policy, ByteSampler sampler) {
+        PasswordPolicy.Outcome outcome = policy.sample(sampler);
+        int length = outcome.length();
+
+        // Classes at constrained positions are fixed by the outcome, the rest are shuffled into place
+        int[] classAt = new int[length];
+        Arrays.fill(classAt, -1);
+        for (int rule = 0; rule < outcome.positions().length; rule++) {
+            classAt[outcome.positions()[rule]] = outcome.positionClasses()[rule];
+        }
+        int[] labels = new int[length - outcome.positions().length];
+        int next = 0;
+        for (int cls = 0; cls < outcome.freeCounts().length; cls++) {
+            for (int i = 0; i < outcome.freeCounts()[cls]; i++) {
+                labels[next++] = cls;
+            }
+        }
+        for (int i = labels.length - 1; i > 0; i--) {
+            int j = sampler.nextBelow(i + 1);
+            int tmp = labels[i];
+            labels[i] = labels[j];
+            labels[j] = tmp;
+        }
+        next = 0;
+        for (int position = 0; position < length; position++) {
+            if (classAt[position] < 0) {
+                classAt[position] = labels[next++];
+            }
+        }
+
+        char[][] alphabets = policy.alphabets();
+        char[][] remaining = policy.noRepeats() ? new char[alphabets.length][] : alphabets;
+        int[] used = new int[alphabets.length];
+        char[] password = new char[length];
+        for (int position = 0; position < length; position++) {
+            int cls = classAt[position];
+            if (!policy.noRepeats()) {
+                password[position] = alphabets[cls][sampler.nextBelow(alphabets[cls].length)];
+                continue;
+            }
+            // Partial Fisher-Yates: draw without replacement from a private copy of the alphabet
+            if (remaining[cls] == null) {
+                remaining[cls] = alphabets[cls].clone();
+            }
+            char[] pool = remaining[cls];
+            int j = used[cls] + sampler.nextBelow(pool.length - used[cls]);
+            char picked = pool[j];
+            pool[j] = pool[used[cls]];
+            pool[used[cls]++] = picked;
+            password[position] = picked;
+        }
+        return new String(password);
+    }
+
+    /**
+     * How words of a passphrase are capitalized.
+     */
+    public enum Capitalization {
+        /** All words in lowercase. */
+        NONE,
+        /** The first letter of every word in uppercase. */
+        FIRST_LETTER,
+        /** The first letter of each word is uppercased at random, adding one bit of entropy per word. */
+        RANDOM
+    }
+
+    /**
+     * Generates a diceware-style passphrase from the bundled EFF large word list.
+     *
+     * @param wordCount      The number of words.
+     * @param separator      The text placed between words.
+     * @param capitalization How words are capitalized.
+     * @return The passphrase together with its entropy estimate.
+     */
+    public static Passphrase generatePassphrase(int wordCount, String separator, Capitalization capitalization) {
+        return generatePassphrase(WordList.getDefault(), wordCount, separator, capitalization);
+    }
+
+    /**
+     * Generates a diceware-style passphrase from a word list.
+     *
+     * @param words          The word list to draw from.
+     * @param wordCount      The number of words.
+     * @param separator      The text placed between words.
+     * @param capitalization How words are capitalized.
+     * @return The passphrase together with its entropy estimate.
+     */
+    public static Passphrase generatePassphrase(WordList words, int wordCount, String separator,
+                                                Capitalization capitalization) {
+        if (wordCount <= 0 || separator == null || capitalization == null) {
+            throw new IllegalArgumentException("Invalid parameters for passphrase generation.");
+        }
+
+        ByteSampler sampler = new ByteSampler(random.get());
+        StringBuilder passphrase = new StringBuilder(wordCount * 8);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                passphrase.append(separator);
+            }
+            String word = words.get(sampler.nextBelow(words.size()));
+            boolean upper = capitalization == Capitalization.FIRST_LETTER
+                    || (capitalization == Capitalization.RANDOM && sampler.nextBelow(2) == 1);
+            passphrase.append(upper ? Character.toUpperCase(word.charAt(0)) : word.charAt(0))
+                    .append(word, 1, word.length());
+        }
+
+        double bitsPerWord = words.bitsPerWord() + (capitalization == Capitalization.RANDOM ? 1 : 0);
+        return new Passphrase(passphrase.toString(), wordCount * bitsPerWord);
+    }
+
+    private static int classMask(boolean includeUppercase, boolean includeLowercase,
+                                 boolean includeNumbers, boolean includeSymbols) {
+        int mask = 0;
+        if (includeUppercase) mask |= 1;
+        if (includeLowercase) mask |= 1 << 1;
+        if (includeNumbers) mask |= 1 << 2;
+        if (includeSymbols) mask |= 1 << 3;
+        return mask;
+    }
+
+    private static void validateInput(int length, int mask) {
+        if (mask == 0 || length <= 0) {
             throw new IllegalArgumentException("Invalid parameters for password generation.");
         }
     }
 
-    private static String generateSecurePassword(int length, String characterPool) {
+    private static String generateSecurePassword(int length, int mask, ByteSampler sampler) {
         String password;
         int breachCount;
         do {
-            password = generateRandomPassword(length, characterPool);
+            password = generateRandomPassword(length, mask, sampler);
             breachCount = PasswordBreachChecker.checkPassword(password);
             if (breachCount > 0) {
                 System.out.printf("Generated password found in %d breach(es). Regenerating a safer password...%n", breachCount);
@@ -56,12 +292,95 @@ public class PasswordGenerator {
         return password;
     }
 
-    private static String generateRandomPassword(int length, String characterPool) {
-        StringBuilder passwordBuilder = new StringBuilder(length);
-        for (int i = 0; i < length; i++) {
-            int index = random.nextInt(characterPool.length());
-            passwordBuilder.append(characterPool.charAt(index));
+    private static String generateRandomPassword(int length, int mask, ByteSampler sampler) {
+        char[] pool = POOLS[mask];
+        char[][] selected = SELECTED_CLASSES[mask];
+        char[] password = new char[length];
+
+        // Seed one character of each selected class, fill the rest from the whole pool, then shuffle
+        int guaranteed = length >= selected.length ? selected.length : 0;
+        for (int i = 0; i < guaranteed; i++) {
+            password[i] = selected[i][sampler.nextBelow(selected[i].length)];
+        }
+        for (int i = guaranteed; i < length; i++) {
+            password[i] = pool[sampler.nextBelow(pool.length)];
+        }
+        if (guaranteed > 0) {
+            for (int i = length - 1; i > 0; i--) {
+                int j = sampler.nextBelow(i + 1);
+                char tmp = password[i];
+                password[i] = password[j];
+                password[j] = tmp;
+            }
+        }
+        return new String(password);
+    }
+
+    /**
+     * Draws random bytes from a SecureRandom in bulk and turns them into unbiased
+     * bounded integers with rejection sampling.
+     */
+    static final class ByteSampler {
+        private final SecureRandom source;
+        private final byte[] buffer = new byte[4096];
+        private int position = buffer.length;
+
+        ByteSampler(SecureRandom source) {
+            this.source = source;
+        }
+
+        /**
+         * Returns a uniformly distributed integer in [0, bound).
+         */
+        int nextBelow(int bound) {
+            if (bound <= 0) {
+                throw new IllegalArgumentException("Bound must be positive.");
+            }
+            if (bound <= 256) {
+                int limit = 256 - (256 % bound);
+                int value;
+                do {
+                    value = nextByte();
+                } while (value >= limit);
+                return value % bound;
+            }
+            if (bound <= 65536) {
+                int limit = 65536 - (65536 % bound);
+                int value;
+                do {
+                    value = (nextByte() << 8) | nextByte();
+                } while (value >= limit);
+                return value % bound;
+            }
+            return source.nextInt(bound);
+        }
+
+        /**
+         * Returns a uniformly distributed integer in [0, bound) for arbitrarily large bounds.
+         */
+        BigInteger nextBelow(BigInteger bound) {
+            if (bound.signum() <= 0) {
+                throw new IllegalArgumentException("Bound must be positive.");
+            }
+            int bits = bound.bitLength();
+            byte[] bytes = new byte[(bits + 7) / 8];
+            BigInteger value;
+            do {
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) nextByte();
+                }
+                bytes[0] &= (byte) (0xFF >>> (bytes.length * 8 - bits));
+                value = new BigInteger(1, bytes);
+            } while (value.compareTo(bound) >= 0);
+            return value;
+        }
+
+        private int nextByte() {
+            if (position == buffer.length) {
+                source.nextBytes(buffer);
+                position = 0;
+            }
+            return buffer[position++] & 0xFF;
         }
-        return passwordBuilder.toString();
     }
-}
\ No newline at end of file
+}
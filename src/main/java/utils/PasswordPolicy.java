@@ -0,0 +1,434 @@
+package utils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes which passwords a site accepts, e.g. "12 to 16 characters, exactly 2 symbols from
+ * {@code !#$}, no repeated characters, must start with a letter".
+ * <p>
+ * Building a policy counts exactly how many passwords satisfy it by dynamic programming over the
+ * classes: for each number of unconstrained characters and each set of constrained positions, the
+ * number of ways the classes added so far can fill them. The table grows with the maximum length
+ * times the number of classes, never with the number of ways to split a length between classes.
+ * {@link PasswordGenerator#generate(PasswordPolicy)} draws a length and then walks the table back
+ * class by class, drawing each class's share conditionally on the ones left, and fills the result
+ * in a single pass. Every valid password is equally likely, nothing is generated and rejected,
+ * and the cost of a generation does not depend on how restrictive the policy is.
+ */
+public final class PasswordPolicy {
+    /** The longest password a policy may allow. */
+    public static final int MAX_LENGTH = 256;
+    /** The most position rules a policy may have; the table doubles with each one. */
+    public static final int MAX_POSITION_RULES = 4;
+
+    private static final String LOOK_ALIKES = "0O1lI|`'\"";
+
+    private final int minLength;
+    private final int maxLength;
+    private final boolean noRepeats;
+    private final String[] classNames;
+    private final char[][] alphabets;
+    private final int[] min;
+    private final int[] max;
+    private final int[] positions;
+    /** Per class, the bit set of position rules that allow it. */
+    private final int[] allowedRules;
+    /** ways[i][free][rules]: arrangements of the first i classes over that many free characters and rules. */
+    private final BigInteger[][][] ways;
+    private final BigInteger[][] binomials;
+    private final BigInteger[][] choices;
+    private final BigInteger[] byLength;
+    private final BigInteger total;
+
+    private PasswordPolicy(Builder builder) {
+        this.minLength = builder.minLength;
+        this.maxLength = builder.maxLength;
+        this.noRepeats = builder.noRepeats;
+
+        List<String> names = new ArrayList<>(builder.classes.keySet());
+        this.classNames = names.toArray(new String[0]);
+        this.alphabets = new char[names.size()][];
+        this.min = new int[names.size()];
+        this.max = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            ClassSpec spec = builder.classes.get(names.get(i));
+            alphabets[i] = builder.excludeLookAlikes ? withoutLookAlikes(spec.alphabet) : spec.alphabet;
+            min[i] = spec.min;
+            max[i] = spec.max;
+        }
+
+        this.positions = new int[builder.positionRules.size()];
+        this.allowedRules = new int[names.size()];
+        int rule = 0;
+        for (Map.Entry<Integer, String[]> entry : builder.positionRules.entrySet()) {
+            positions[rule] = entry.getKey();
+            for (String name : entry.getValue()) {
+                int index = names.indexOf(name);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Unknown character class in position rule: " + name);
+                }
+                allowedRules[index] |= 1 << rule;
+            }
+            rule++;
+        }
+
+        int rules = positions.length;
+        int maxFree = Math.max(0, maxLength - rules);
+        this.binomials = binomials(maxFree);
+        this.choices = new BigInteger[alphabets.length][];
+        for (int i = 0; i < alphabets.length; i++) {
+            choices[i] = new BigInteger[maxFree + rules + 1];
+            for (int count = 0; count < choices[i].length; count++) {
+                choices[i][count] = characterChoices(alphabets[i].length, count);
+            }
+        }
+
+        this.ways = new BigInteger[alphabets.length + 1][maxFree + 1][1 << rules];
+        for (BigInteger[] row : ways[0]) {
+            Arrays.fill(row, BigInteger.ZERO);
+        }
+        ways[0][0][0] = BigInteger.ONE;
+        for (int i = 0; i < alphabets.length; i++) {
+            for (int free = 0; free <= maxFree; free++) {
+                for (int filled = 0; filled < 1 << rules; filled++) {
+                    ways[i + 1][free][filled] = extend(i, free, filled, null, null);
+                }
+            }
+        }
+
+        this.byLength = new BigInteger[maxLength + 1];
+        BigInteger sum = BigInteger.ZERO;
+        for (int length = minLength; length <= maxLength; length++) {
+            byLength[length] = resolve(length) == null
+                    ? BigInteger.ZERO
+                    : ways[alphabets.length][length - rules][(1 << rules) - 1];
+            sum = sum.add(byLength[length]);
+        }
+        this.total = sum;
+        if (total.signum() == 0) {
+            throw new IllegalArgumentException("No password satisfies this policy.");
+        }
+    }
+
+    /**
+     * @return A builder for a new policy.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The exact number of distinct passwords that satisfy this policy.
+     */
+    public BigInteger combinations() {
+        return total;
+    }
+
+    /**
+     * Returns the exact entropy of passwords generated under this policy.
+     * Generation is uniform over all valid passwords, so this is log2 of their number.
+     *
+     * @return The entropy in bits.
+     */
+    public double entropyBits() {
+        int shift = Math.max(0, total.bitLength() - 63);
+        return shift + Math.log(total.shiftRight(shift).doubleValue()) / Math.log(2);
+    }
+
+    boolean noRepeats() {
+        return noRepeats;
+    }
+
+    char[][] alphabets() {
+        return alphabets;
+    }
+
+    /**
+     * Draws the shape of a uniformly random password: its length, how many unconstrained characters
+     * come from each class, and which class fills each constrained position.
+     */
+    Outcome sample(PasswordGenerator.ByteSampler sampler) {
+        BigInteger draw = sampler.nextBelow(total);
+        int length = minLength;
+        while (draw.compareTo(byLength[length]) >= 0) {
+            draw = draw.subtract(byLength[length]);
+            length++;
+        }
+
+        int rules = positions.length;
+        int free = length - rules;
+        int filled = (1 << rules) - 1;
+        int[] freeCounts = new int[alphabets.length];
+        int[] positionClasses = new int[rules];
+        for (int i = alphabets.length - 1; i >= 0; i--) {
+            // Draw this class's share in proportion to the ways the classes before it can fill the rest
+            int[] share = new int[2];
+            extend(i, free, filled, sampler.nextBelow(ways[i + 1][free][filled]), share);
+            freeCounts[i] = share[0];
+            for (int r = 0; r < rules; r++) {
+                if ((share[1] & 1 << r) != 0) {
+                    positionClasses[r] = i;
+                }
+            }
+            free -= share[0];
+            filled &= ~share[1];
+        }
+        return new Outcome(length, freeCounts, resolve(length), positionClasses);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PasswordPolicy[length=%d..%d, classes=%s, noRepeats=%s, entropy=%.1f bits]",
+                minLength, maxLength, Arrays.toString(classNames), noRepeats, entropyBits());
+    }
+
+    /**
+     * Sums, over every share class {@code i} can take of {@code free} characters and the rules in
+     * {@code filled}, the ways the classes before it fill the rest. With a draw below that sum, stops
+     * at the share the draw falls into and stores its free characters and rules in {@code share}.
+     */
+    private BigInteger extend(int i, int free, int filled, BigInteger draw, int[] share) {
+        BigInteger sum = BigInteger.ZERO;
+        int candidates = filled & allowedRules[i];
+        // Every subset of the candidate rules, from the full set down to the empty one
+        for (int taken = candidates; ; taken = (taken - 1) & candidates) {
+            int rest = filled & ~taken;
+            int constrained = Integer.bitCount(taken);
+            for (int count = Math.max(0, min[i] - constrained); count <= free && count + constrained <= max[i]; count++) {
+                BigInteger before = ways[i][free - count][rest];
+                if (before.signum() == 0) {
+                    continue;
+                }
+                BigInteger weight = before.multiply(binomials[free][count]).multiply(choices[i][count + constrained]);
+                sum = sum.add(weight);
+                if (draw != null && draw.compareTo(sum) < 0) {
+                    share[0] = count;
+                    share[1] = taken;
+                    return sum;
+                }
+            }
+            if (taken == 0) {
+                return sum;
+            }
+        }
+    }
+
+    /**
+     * Resolves the position rules for a length.
+     *
+     * @return The constrained positions, or null if a rule falls outside a password of this length.
+     */
+    private int[] resolve(int length) {
+        int[] resolved = new int[positions.length];
+        for (int rule = 0; rule < positions.length; rule++) {
+            resolved[rule] = positions[rule] >= 0 ? positions[rule] : length + positions[rule];
+            if (resolved[rule] < 0 || resolved[rule] >= length) {
+                return null;
+            }
+            for (int other = 0; other < rule; other++) {
+                if (resolved[other] == resolved[rule]) {
+                    throw new IllegalArgumentException("Two rules constrain position " + resolved[rule] + ".");
+                }
+            }
+        }
+        return resolved;
+    }
+
+    private BigInteger characterChoices(int alphabetSize, int count) {
+        if (!noRepeats) {
+            return BigInteger.valueOf(alphabetSize).pow(count);
+        }
+        if (count > alphabetSize) {
+            return BigInteger.ZERO;
+        }
+        BigInteger choices = BigInteger.ONE;
+        for (int i = 0; i < count; i++) {
+            choices = choices.multiply(BigInteger.valueOf(alphabetSize - i));
+        }
+        return choices;
+    }
+
+    private static BigInteger[][] binomials(int n) {
+        BigInteger[][] table = new BigInteger[n + 1][];
+        for (int row = 0; row <= n; row++) {
+            table[row] = new BigInteger[row + 1];
+            table[row][0] = BigInteger.ONE;
+            table[row][row] = BigInteger.ONE;
+            for (int k = 1; k < row; k++) {
+                table[row][k] = table[row - 1][k - 1].add(table[row - 1][k]);
+            }
+        }
+        return table;
+    }
+
+    private static char[] withoutLookAlikes(char[] alphabet) {
+        StringBuilder kept = new StringBuilder(alphabet.length);
+        for (char c : alphabet) {
+            if (LOOK_ALIKES.indexOf(c) < 0) {
+                kept.append(c);
+            }
+        }
+        return kept.toString().toCharArray();
+    }
+
+    /**
+     * One drawn outcome: a length, how many unconstrained characters come from each class,
+     * and which class fills each constrained position.
+     */
+    record Outcome(int length, int[] freeCounts, int[] positions, int[] positionClasses) {
+    }
+
+    private record ClassSpec(char[] alphabet, int min, int max) {
+    }
+
+    /**
+     * Builds a {@link PasswordPolicy}. Classes keep the order in which they are added.
+     */
+    public static final class Builder {
+        private int minLength = 12;
+        private int maxLength = 12;
+        private boolean noRepeats;
+        private boolean excludeLookAlikes;
+        private final Map<String, ClassSpec> classes = new LinkedHashMap<>();
+        private final Map<Integer, String[]> positionRules = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets a fixed password length.
+         */
+        public Builder length(int length) {
+            return length(length, length);
+        }
+
+        /**
+         * Sets the allowed password length range, inclusive, up to {@value PasswordPolicy#MAX_LENGTH}.
+         */
+        public Builder length(int min, int max) {
+            if (min <= 0 || max < min || max > MAX_LENGTH) {
+                throw new IllegalArgumentException("Invalid length range.");
+            }
+            this.minLength = min;
+            this.maxLength = max;
+            return this;
+        }
+
+        /**
+         * Adds a character class with a custom alphabet.
+         *
+         * @param name     The class name, used by position rules.
+         * @param alphabet The characters of the class.
+         * @param min      The minimum number of characters from this class.
+         * @param max      The maximum number of characters from this class.
+         */
+        public Builder characterClass(String name, String alphabet, int min, int max) {
+            char[] distinct = alphabet.chars().distinct().collect(StringBuilder::new,
+                    StringBuilder::appendCodePoint, StringBuilder::append).toString().toCharArray();
+            if (distinct.length == 0 || min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid character class: " + name);
+            }
+            classes.put(name, new ClassSpec(distinct, min, max));
+            return this;
+        }
+
+        /**
+         * Adds the uppercase letters as class {@code "upper"}.
+         */
+        public Builder uppercase(int min, int max) {
+            return characterClass("upper", "ABCDEFGHIJKLMNOPQRSTUVWXYZ", min, max);
+        }
+
+        /**
+         * Adds the lowercase letters as class {@code "lower"}.
+         */
+        public Builder lowercase(int min, int max) {
+            return characterClass("lower", "abcdefghijklmnopqrstuvwxyz", min, max);
+        }
+
+        /**
+         * Adds the digits as class {@code "digit"}.
+         */
+        public Builder digits(int min, int max) {
+            return characterClass("digit", "0123456789", min, max);
+        }
+
+        /**
+         * Adds the default symbols as class {@code "symbol"}.
+         */
+        public Builder symbols(int min, int max) {
+            return symbols("!@#$%&*()-_=+[]{}", min, max);
+        }
+
+        /**
+         * Adds a subset of symbols as class {@code "symbol"}.
+         */
+        public Builder symbols(String subset, int min, int max) {
+            return characterClass("symbol", subset, min, max);
+        }
+
+        /**
+         * Forbids using the same character twice anywhere in the password.
+         */
+        public Builder noRepeats() {
+            this.noRepeats = true;
+            return this;
+        }
+
+        /**
+         * Removes characters that are easily confused, such as {@code 0/O} and {@code 1/l/I}.
+         */
+        public Builder excludeLookAlikes() {
+            this.excludeLookAlikes = true;
+            return this;
+        }
+
+        /**
+         * Requires the character at a position to come from one of the given classes.
+         * A policy may have up to {@value PasswordPolicy#MAX_POSITION_RULES} such rules.
+         *
+         * @param position   The position; negative values count from the end, -1 is the last character.
+         * @param classNames The allowed classes.
+         */
+        public Builder requireAt(int position, String... classNames) {
+            if (classNames.length == 0) {
+                throw new IllegalArgumentException("A position rule needs at least one class.");
+            }
+            positionRules.put(position, classNames.clone());
+            return this;
+        }
+
+        /**
+         * Builds the policy and precomputes its counting table.
+         *
+         * @throws IllegalArgumentException If the policy has no classes, two classes share a character,
+         *                                  it has too many position rules or no password satisfies it.
+         */
+        public PasswordPolicy build() {
+            if (classes.isEmpty()) {
+                throw new IllegalArgumentException("A policy needs at least one character class.");
+            }
+            if (positionRules.size() > MAX_POSITION_RULES) {
+                throw new IllegalArgumentException("A policy may have at most " + MAX_POSITION_RULES + " position rules.");
+            }
+            // A character in two classes would be counted, and drawn, once for each of them
+            Map<Character, String> owners = new HashMap<>();
+            for (Map.Entry<String, ClassSpec> entry : classes.entrySet()) {
+                for (char c : entry.getValue().alphabet) {
+                    String owner = owners.putIfAbsent(c, entry.getKey());
+                    if (owner != null) {
+                        throw new IllegalArgumentException("Character classes " + owner + " and "
+                                + entry.getKey() + " share the character '" + c + "'.");
+                    }
+                }
+            }
+            return new PasswordPolicy(this);
+        }
+    }
+}
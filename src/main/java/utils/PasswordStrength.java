@@ -0,0 +1,169 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Estimates how hard a password is to guess, without any network access.
+ * <p>
+ * The estimate charges each character log2 of the alphabet the password draws from (lowercase,
+ * uppercase, digits, symbols, other), but only one or two bits for a character that repeats or
+ * continues a sequence of its predecessor ({@code aaa}, {@code abc}, {@code 321}). A run of letters
+ * that is a word of the default diceware list costs the bits of one drawn word instead of its
+ * letters, so passphrases are scored by their words rather than their length.
+ * It is a conservative heuristic, not a proof of strength.
+ */
+public final class PasswordStrength {
+
+    /**
+     * Coarse ratings of an entropy estimate.
+     */
+    public enum Rating {
+        /** Under 28 bits: guessable online. */
+        VERY_WEAK,
+        /** Under 40 bits. */
+        WEAK,
+        /** Under 60 bits. */
+        FAIR,
+        /** Under 80 bits. */
+        STRONG,
+        /** 80 bits or more. */
+        VERY_STRONG
+    }
+
+    private static final int LOWER = 26;
+    private static final int UPPER = 26;
+    private static final int DIGITS = 10;
+    private static final int SYMBOLS = 33;
+    private static final int OTHER = 100;
+
+    private PasswordStrength() {
+        // Utility class, should not be instantiated
+    }
+
+    /**
+     * Estimates the entropy of a password.
+     *
+     * @param password The password; it is read in place and never copied.
+     * @return The estimated entropy in bits.
+     */
+    public static double estimateEntropy(CharSequence password) {
+        int length = password.length();
+        if (length == 0) {
+            return 0;
+        }
+        int pool = 0;
+        boolean lower = false, upper = false, digit = false, symbol = false, other = false;
+        for (int i = 0; i < length; i++) {
+            char c = password.charAt(i);
+            if (c >= 'a' && c <= 'z') lower = true;
+            else if (c >= 'A' && c <= 'Z') upper = true;
+            else if (c >= '0' && c <= '9') digit = true;
+            else if (c < 128) symbol = true;
+            else other = true;
+        }
+        if (lower) pool += LOWER;
+        if (upper) pool += UPPER;
+        if (digit) pool += DIGITS;
+        if (symbol) pool += SYMBOLS;
+        if (other) pool += OTHER;
+        double perCharacter = log2(pool);
+
+        double bits = 0;
+        int i = 0;
+        while (i < length) {
+            int wordEnd = letterRunEnd(password, i);
+            if (wordEnd - i >= 3 && Dictionary.contains(password, i, wordEnd)) {
+                bits += Dictionary.BITS_PER_WORD + (Character.isUpperCase(password.charAt(i)) ? 1 : 0);
+                i = wordEnd;
+                continue;
+            }
+            char c = password.charAt(i);
+            if (i > 0 && c == password.charAt(i - 1)) {
+                bits += 1;
+            } else if (i > 0 && Math.abs(c - password.charAt(i - 1)) == 1) {
+                bits += 2;
+            } else {
+                bits += perCharacter;
+            }
+            i++;
+        }
+        return bits;
+    }
+
+    /**
+     * Rates an entropy estimate.
+     *
+     * @param bits The estimated entropy in bits.
+     * @return The rating.
+     */
+    public static Rating rate(double bits) {
+        if (bits < 28) return Rating.VERY_WEAK;
+        if (bits < 40) return Rating.WEAK;
+        if (bits < 60) return Rating.FAIR;
+        if (bits < 80) return Rating.STRONG;
+        return Rating.VERY_STRONG;
+    }
+
+    private static int letterRunEnd(CharSequence password, int start) {
+        int end = start;
+        while (end < password.length() && Character.isLetter(password.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static double log2(int value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    /**
+     * The default word list, sorted for binary search, loaded on first use.
+     */
+    private static final class Dictionary {
+        private static final String[] WORDS = load();
+        private static final double BITS_PER_WORD = WordList.getDefault().bitsPerWord();
+
+        private static String[] load() {
+            WordList list = WordList.getDefault();
+            String[] words = new String[list.size()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = list.get(i).toLowerCase(Locale.ROOT);
+            }
+            Arrays.sort(words);
+            return words;
+        }
+
+        /**
+         * Checks whether a region of the password, lowercased, is a word.
+         * The region is compared in place so the password is never copied.
+         */
+        static boolean contains(CharSequence password, int start, int end) {
+            int low = 0;
+            int high = WORDS.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(WORDS[mid], password, start, end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int compare(String word, CharSequence password, int start, int end) {
+            int length = Math.min(word.length(), end - start);
+            for (int i = 0; i < length; i++) {
+                int diff = word.charAt(i) - Character.toLowerCase(password.charAt(start + i));
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return word.length() - (end - start);
+        }
+    }
+}
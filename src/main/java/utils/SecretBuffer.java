@@ -0,0 +1,248 @@
+package utils;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Holds a secret, such as a password, as UTF-8 bytes in off-heap memory that is wiped on close.
+ * <p>
+ * A {@code String} cannot be cleared and is copied by every call it passes through, so a password
+ * held as one stays in the heap until the garbage collector reuses that memory. A secret buffer lives
+ * in a direct buffer outside the heap, is never copied by the garbage collector, and is zeroed by
+ * {@link #close()}; use it in try-with-resources. If a buffer is never closed, it is wiped when it
+ * becomes unreachable.
+ * <p>
+ * Secrets flow through the application without becoming Strings: {@link InputSanitizer#sanitizeSecret}
+ * takes console input as a {@code char[]}, the encryption service encrypts from and decrypts into
+ * secret buffers, and consumers read them through {@link #view()} or short-lived arrays they wipe.
+ * Instances are not thread-safe.
+ */
+public final class SecretBuffer implements AutoCloseable {
+
+    /**
+     * Writes the content of a new secret buffer, e.g. a cipher decrypting into it.
+     */
+    @FunctionalInterface
+    public interface Filler {
+        /**
+         * @param target The memory to write to, from position 0; the final position is the length.
+         * @throws Exception If producing the content fails.
+         */
+        void fill(ByteBuffer target) throws Exception;
+    }
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ByteBuffer memory;
+    private final Cleaner.Cleanable cleanable;
+    private int length;
+    private boolean closed;
+
+    private SecretBuffer(int capacity) {
+        this.memory = ByteBuffer.allocateDirect(capacity);
+        this.cleanable = CLEANER.register(this, new Wiper(memory));
+    }
+
+    /**
+     * Creates a secret buffer from characters and zeroes the array.
+     *
+     * @param chars The secret characters; zeroed when this returns, even on failure.
+     * @return The secret as UTF-8.
+     * @throws IllegalArgumentException If the characters are not valid UTF-16, e.g. a lone surrogate.
+     */
+    public static SecretBuffer of(char[] chars) {
+        try {
+            return of(CharBuffer.wrap(chars));
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Creates a secret buffer from a character sequence, which is read in place and not modified.
+     *
+     * @param chars The secret characters.
+     * @return The secret as UTF-8.
+     * @throws IllegalArgumentException If the characters are not valid UTF-16, e.g. a lone surrogate.
+     */
+    public static SecretBuffer of(CharSequence chars) {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        SecretBuffer secret = new SecretBuffer((int) (chars.length() * encoder.maxBytesPerChar()));
+        CharBuffer in = chars instanceof CharBuffer buffer ? buffer.duplicate() : CharBuffer.wrap(chars);
+        CoderResult result = encoder.encode(in, secret.memory, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(secret.memory);
+        }
+        if (!result.isUnderflow()) {
+            secret.close();
+            throw new IllegalArgumentException("Secret is not valid text.");
+        }
+        secret.length = secret.memory.position();
+        return secret;
+    }
+
+    /**
+     * Creates a secret buffer from bytes and zeroes the array.
+     *
+     * @param bytes The secret bytes; zeroed when this returns.
+     * @return The secret.
+     */
+    public static SecretBuffer of(byte[] bytes) {
+        SecretBuffer secret = new SecretBuffer(bytes.length);
+        secret.memory.put(bytes);
+        secret.length = bytes.length;
+        Arrays.fill(bytes, (byte) 0);
+        return secret;
+    }
+
+    /**
+     * Creates a secret buffer whose content is written directly into its memory.
+     *
+     * @param capacity The maximum length of the content.
+     * @param filler   Writes the content.
+     * @return The secret.
+     * @throws Exception If the filler fails; the partially written memory is wiped.
+     */
+    public static SecretBuffer fill(int capacity, Filler filler) throws Exception {
+        SecretBuffer secret = new SecretBuffer(capacity);
+        try {
+            ByteBuffer target = secret.memory.duplicate().clear();
+            filler.fill(target);
+            secret.length = target.position();
+            return secret;
+        } catch (Exception e) {
+            secret.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The length of the secret in bytes.
+     * @throws IllegalStateException If the buffer is closed.
+     */
+    public int length() {
+        checkOpen();
+        return length;
+    }
+
+    /**
+     * Returns a read-only view of the secret, e.g. for a cipher, digest or MAC that accepts buffers.
+     * The view shares the off-heap memory and reads zeros once the buffer is closed.
+     *
+     * @return A new read-only view positioned at the start of the secret.
+     * @throws IllegalStateException If the buffer is closed.
+     */
+    public ByteBuffer view() {
+        checkOpen();
+        return memory.asReadOnlyBuffer().limit(length).position(0);
+    }
+
+    /**
+     * Copies the secret into a heap array for an API that only accepts arrays.
+     * The caller must zero the array as soon as it is no longer needed.
+     *
+     * @return The secret bytes.
+     * @throws IllegalStateException If the buffer is closed.
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[length()];
+        memory.get(0, bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes the secret into a heap array of characters, without an intermediate String.
+     * The caller must zero the array as soon as it is no longer needed.
+     *
+     * @return The secret characters.
+     * @throws IllegalStateException If the buffer is closed.
+     * @throws CharacterCodingException If the secret is not valid UTF-8.
+     */
+    public char[] toChars() throws CharacterCodingException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        // UTF-8 never decodes to more chars than it has bytes
+        char[] chars = new char[length()];
+        CharBuffer out = CharBuffer.wrap(chars);
+        CoderResult result = decoder.decode(view(), out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        if (!result.isUnderflow()) {
+            Arrays.fill(chars, '\0');
+            result.throwException();
+        }
+        if (out.position() == chars.length) {
+            return chars;
+        }
+        char[] exact = Arrays.copyOf(chars, out.position());
+        Arrays.fill(chars, '\0');
+        return exact;
+    }
+
+    /**
+     * Compares two secrets in time that depends only on their lengths.
+     *
+     * @param other The other secret.
+     * @return true if both hold the same bytes.
+     * @throws IllegalStateException If either buffer is closed.
+     */
+    public boolean contentEquals(SecretBuffer other) {
+        if (length() != other.length()) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < length; i++) {
+            difference |= memory.get(i) ^ other.memory.get(i);
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Zeroes the secret. Further use of this buffer throws {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        length = 0;
+        cleanable.clean();
+    }
+
+    /**
+     * @return A placeholder that never includes the secret.
+     */
+    @Override
+    public String toString() {
+        return "SecretBuffer[redacted]";
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Secret buffer is closed.");
+        }
+    }
+
+    /**
+     * Zeroes the memory on close, or when the buffer becomes unreachable without being closed.
+     * It must not refer to the secret buffer itself, or the buffer would never become unreachable.
+     */
+    private record Wiper(ByteBuffer memory) implements Runnable {
+        @Override
+        public void run() {
+            for (int i = 0; i < memory.capacity(); i++) {
+                memory.put(i, (byte) 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An opt-in report of how long the application takes to start: the time from JVM start to each
+ * phase marked along the way, such as the first prompt or the first line of batch output.
+ * <p>
+ * Run with {@code -Dstartup.timing=true} to print the report to standard error when the JVM exits,
+ * or with {@code -Dstartup.timing.log=<file>} to also append it to a file as one tab-separated line
+ * per run, so that startup times can be tracked across builds and launch modes. When neither is set,
+ * {@link #mark} does nothing and the management classes the report relies on are never loaded.
+ */
+public final class StartupTimer {
+
+    /** The system property that enables the report on standard error. */
+    public static final String PROPERTY = "startup.timing";
+    /** The system property naming a file to append the report to. */
+    public static final String LOG_PROPERTY = "startup.timing.log";
+
+    private static final StartupTimer GLOBAL =
+            Boolean.getBoolean(PROPERTY) || System.getProperty(LOG_PROPERTY) != null ? new StartupTimer() : null;
+
+    static {
+        if (GLOBAL != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(GLOBAL::report, "startup-timing"));
+        }
+    }
+
+    // Phase name to System.nanoTime() when it was first reached, in the order reached
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    StartupTimer() {
+    }
+
+    /**
+     * Records that a startup phase has been reached, if the report is enabled.
+     * Only the first time a phase is reached counts.
+     *
+     * @param phase The phase, a single word such as {@code prompt}.
+     */
+    public static void mark(String phase) {
+        if (GLOBAL != null) {
+            GLOBAL.record(phase, System.nanoTime());
+        }
+    }
+
+    synchronized void record(String phase, long nanos) {
+        marks.putIfAbsent(phase, nanos);
+    }
+
+    private void report() {
+        // Relate System.nanoTime() to JVM start only now, so that loading the management classes
+        // does not show up in the phases being measured
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        long jvmStartNanos = System.nanoTime() - runtime.getUptime() * 1_000_000L;
+        long classesLoaded = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+
+        System.err.print(format(jvmStartNanos, classesLoaded));
+        String log = System.getProperty(LOG_PROPERTY);
+        if (log != null) {
+            try {
+                Files.writeString(Path.of(log), logLine(Instant.ofEpochMilli(runtime.getStartTime()), jvmStartNanos, classesLoaded),
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Failed to append startup timing: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Formats the report for people.
+     *
+     * @param jvmStartNanos The JVM start, on the scale of {@link System#nanoTime()}.
+     * @param classesLoaded The number of classes loaded so far.
+     * @return The report, one line per phase.
+     */
+    synchronized String format(long jvmStartNanos, long classesLoaded) {
+        StringBuilder report = new StringBuilder("Startup timing (ms since JVM start):").append(System.lineSeparator());
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            report.append(String.format("  %-10s %6d%n", mark.getKey(), millisSince(jvmStartNanos, mark.getValue())));
+        }
+        report.append(String.format("  %d classes loaded%n", classesLoaded));
+        return report.toString();
+    }
+
+    /**
+     * Formats the report for tracking: the JVM start, then {@code phase=millis} for each phase
+     * and the number of classes loaded, separated by tabs.
+     *
+     * @param jvmStart      The JVM start.
+     * @param jvmStartNanos The JVM start, on the scale of {@link System#nanoTime()}.
+     * @param classesLoaded The number of classes loaded so far.
+     * @return The line, with its line break.
+     */
+    synchronized String logLine(Instant jvmStart, long jvmStartNanos, long classesLoaded) {
+        StringBuilder line = new StringBuilder(jvmStart.toString());
+        for (Map.Entry<String, Long> mark : marks.entrySet()) {
+            line.append('\t').append(mark.getKey()).append('=').append(millisSince(jvmStartNanos, mark.getValue()));
+        }
+        return line.append("\tclasses=").append(classesLoaded).append('\n').toString();
+    }
+
+    private static long millisSince(long startNanos, long nanos) {
+        return (nanos - startNanos) / 1_000_000L;
+    }
+}
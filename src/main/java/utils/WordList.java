@@ -0,0 +1,198 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A read-only word list stored in a packed binary resource.
+ * <p>
+ * Layout (big-endian): magic {@code "SPWL"}, version, word count {@code n}, {@code n + 1} offsets into
+ * the data area, then the ASCII bytes of all words back to back. Looking up a word is two offset reads
+ * and a copy, so opening the list never parses text. When the resource is a plain file it is
+ * memory-mapped; inside a JAR it is read into a single heap buffer.
+ * <p>
+ * Words are lowercase ASCII letters only, so a passphrase joined with any other separator splits back
+ * into its words.
+ */
+public final class WordList {
+    private static final int MAGIC = 0x5350574C; // "SPWL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final String DEFAULT_RESOURCE = "/wordlist.bin";
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int dataStart;
+
+    private WordList(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a packed word list.");
+        }
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        this.dataStart = HEADER_BYTES + (size + 1) * Integer.BYTES;
+        if (size <= 0 || buffer.limit() < dataStart + buffer.getInt(HEADER_BYTES + size * Integer.BYTES)) {
+            throw new IllegalArgumentException("Packed word list is truncated.");
+        }
+    }
+
+    /**
+     * Returns the bundled EFF large word list, loaded on first use. It holds 7772 words: the four
+     * hyphenated words of the original list are left out.
+     *
+     * @return The default word list.
+     */
+    public static WordList getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Opens a packed word list from a file by memory-mapping it.
+     *
+     * @param path The packed word list.
+     * @return The word list.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public static WordList open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new WordList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Packs words into the binary layout read by this class.
+     *
+     * @param words The words, lowercase ASCII letters only.
+     * @param out   The stream to write the packed list to.
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If a word is empty or holds anything but lowercase ASCII letters.
+     */
+    public static void pack(List<String> words, OutputStream out) throws IOException {
+        byte[][] encoded = new byte[words.size()][];
+        int dataLength = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            if (!isWord(words.get(i))) {
+                throw new IllegalArgumentException("Not a lowercase word: " + words.get(i));
+            }
+            encoded[i] = words.get(i).getBytes(StandardCharsets.US_ASCII);
+            dataLength += encoded[i].length;
+        }
+
+        ByteBuffer packed = ByteBuffer.allocate(HEADER_BYTES + (encoded.length + 1) * Integer.BYTES + dataLength);
+        packed.putInt(MAGIC).putInt(VERSION).putInt(encoded.length);
+        int offset = 0;
+        for (byte[] word : encoded) {
+            packed.putInt(offset);
+            offset += word.length;
+        }
+        packed.putInt(offset);
+        for (byte[] word : encoded) {
+            packed.put(word);
+        }
+        out.write(packed.array());
+    }
+
+    /**
+     * @return The number of words in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the word at an index.
+     *
+     * @param index The index, between 0 and {@link #size()} - 1.
+     * @return The word.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int start = buffer.getInt(HEADER_BYTES + index * Integer.BYTES);
+        int end = buffer.getInt(HEADER_BYTES + (index + 1) * Integer.BYTES);
+        byte[] word = new byte[end - start];
+        buffer.get(dataStart + start, word);
+        return new String(word, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return The entropy in bits contributed by one uniformly chosen word.
+     */
+    public double bitsPerWord() {
+        return Math.log(size) / Math.log(2);
+    }
+
+    /**
+     * @param word A candidate word.
+     * @return true if it is made of lowercase ASCII letters only.
+     */
+    static boolean isWord(String word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs a plain text word list, one word per line, into a binary resource.
+     * Words holding anything but lowercase letters, such as the hyphenated words of the EFF list, are left out.
+     *
+     * @param args The input text file and the output file.
+     * @throws IOException If reading or writing fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: WordList <words.txt> <wordlist.bin>");
+            return;
+        }
+        List<String> words = Files.readAllLines(Paths.get(args[0])).stream()
+                .map(String::trim)
+                .filter(WordList::isWord)
+                .toList();
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            pack(words, out);
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final WordList INSTANCE = loadDefault();
+
+        private static WordList loadDefault() {
+            URL resource = WordList.class.getResource(DEFAULT_RESOURCE);
+            if (resource == null) {
+                throw new IllegalStateException("Bundled word list not found.");
+            }
+            try {
+                if ("file".equals(resource.getProtocol())) {
+                    return open(Paths.get(resource.toURI()));
+                }
+                try (InputStream in = resource.openStream()) {
+                    return new WordList(ByteBuffer.wrap(in.readAllBytes()));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load word list: " + e.getMessage(), e);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException("Invalid word list location: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -3,6 +3,11 @@ package model;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -67,4 +72,43 @@ class CredentialTest {
 
         assertEquals(credential1.hashCode(), credential2.hashCode());
     }
-}
\ No newline at end of file
+
+    /**
+     * Ensures credentials in the original three-field form get a stable id derived from
+     * the service name and username, and unknown timestamps.
+     */
+    @Test
+    @DisplayName("Should derive a stable id for three-field credentials")
+    void testLegacyCredentialId() {
+        Credential credential = new Credential("Gmail", "user@example.com", "encryptedPass123");
+        Credential other = new Credential("Gmail", "other@example.com", "encryptedPass123");
+
+        assertEquals(credential.id(), new Credential("Gmail", "user@example.com", "x").id());
+        assertNotEquals(credential.id(), other.id());
+        assertEquals(Instant.EPOCH, credential.createdAt());
+        assertEquals("", credential.url());
+        assertTrue(credential.tags().isEmpty());
+    }
+
+    /**
+     * Ensures new credentials get a random id, timestamps, and immutable copies of their details.
+     */
+    @Test
+    @DisplayName("Should create credentials with ids, timestamps and details")
+    void testCreate() {
+        List<String> tags = new ArrayList<>(List.of("work"));
+        Credential credential = Credential.create("Git, Inc.", "dev", "enc", "https://git.example",
+                "note", tags, Map.of("PIN", "1234"));
+        tags.add("changed");
+
+        assertNotEquals(credential.id(), Credential.create("Git, Inc.", "dev", "enc").id());
+        assertEquals(credential.createdAt(), credential.modifiedAt());
+        assertEquals(List.of("work"), credential.tags());
+        assertEquals("1234", credential.customFields().get("PIN"));
+        assertThrows(UnsupportedOperationException.class, () -> credential.tags().add("x"));
+
+        Credential rekeyed = credential.withEncryptedPassword("other");
+        assertEquals(credential.id(), rekeyed.id());
+        assertEquals(credential.modifiedAt(), rekeyed.modifiedAt());
+    }
+}
@@ -0,0 +1,174 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link AttachmentStore} class, with 16-byte chunks so that small files span many chunks.
+ */
+@DisplayName("AttachmentStore Unit Tests")
+class AttachmentStoreTest {
+
+    private static final int CHUNK_SIZE = 16;
+
+    @TempDir
+    Path directory;
+
+    private AttachmentStore store;
+    private SecretKey key;
+    private byte[] content;
+    private Path file;
+
+    /**
+     * Opens a session and writes a file of 100 random bytes before each test.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        key = EncryptionService.getSessionSecretKey();
+        store = new AttachmentStore(directory.resolve("attachments"), CHUNK_SIZE);
+        content = new byte[100];
+        new Random(7).nextBytes(content);
+        file = directory.resolve("id_ed25519");
+        Files.write(file, content);
+    }
+
+    /**
+     * Clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that an attached file is exported as it was, and that ranges within a chunk,
+     * across chunks and past the end are read back.
+     */
+    @Test
+    @DisplayName("Should read back whole files and ranges")
+    void testExportAndRanges() throws Exception {
+        String id = store.put(file, key);
+        assertEquals(100, store.length(id));
+        // Header, then 7 chunks of nonce and tag around the 100 bytes
+        assertEquals(21 + 7 * 28 + 100, Files.size(objectFile(id)));
+
+        Path exported = directory.resolve("exported");
+        assertEquals(100, store.export(id, exported, key));
+        assertArrayEquals(content, Files.readAllBytes(exported));
+
+        assertArrayEquals(Arrays.copyOfRange(content, 3, 9), store.read(id, 3, 6, key));
+        assertArrayEquals(Arrays.copyOfRange(content, 10, 70), store.read(id, 10, 60, key));
+        assertArrayEquals(Arrays.copyOfRange(content, 96, 100), store.read(id, 96, 50, key));
+        assertArrayEquals(new byte[0], store.read(id, 200, 10, key));
+
+        Files.write(file, new byte[0]);
+        String empty = store.put(file, key);
+        assertEquals(0, store.export(empty, exported, key));
+        assertEquals(0, Files.size(exported));
+    }
+
+    /**
+     * Test to verify that the same content is stored once under one id, whatever the file is called,
+     * and that the id depends on the store key rather than on the content alone.
+     */
+    @Test
+    @DisplayName("Should store the same content once")
+    void testDeduplication() throws Exception {
+        String id = store.put(file, key);
+        Path copy = directory.resolve("copy");
+        Files.copy(file, copy);
+        assertEquals(id, store.put(copy, key));
+        try (Stream<Path> files = Files.walk(directory.resolve("attachments"))) {
+            assertEquals(1, files.filter(path -> path.toString().endsWith(".att")).count());
+        }
+
+        content[0]++;
+        Files.write(copy, content);
+        assertNotEquals(id, store.put(copy, key));
+
+        AttachmentStore other = new AttachmentStore(directory.resolve("other"), CHUNK_SIZE);
+        assertNotEquals(id, other.put(file, key));
+    }
+
+    /**
+     * Test to verify that modified, swapped and truncated chunks are detected.
+     */
+    @Test
+    @DisplayName("Should detect tampered chunks")
+    void testTamperingIsDetected() throws Exception {
+        String id = store.put(file, key);
+        Path object = objectFile(id);
+        byte[] stored = Files.readAllBytes(object);
+        int chunk = CHUNK_SIZE + 28;
+
+        byte[] modified = stored.clone();
+        modified[21 + chunk + 20]++;
+        Files.write(object, modified);
+        assertThrows(IOException.class, () -> store.read(id, CHUNK_SIZE, 1, key));
+        assertArrayEquals(Arrays.copyOfRange(content, 0, CHUNK_SIZE), store.read(id, 0, CHUNK_SIZE, key));
+
+        byte[] swapped = stored.clone();
+        System.arraycopy(stored, 21, swapped, 21 + chunk, chunk);
+        System.arraycopy(stored, 21 + chunk, swapped, 21, chunk);
+        Files.write(object, swapped);
+        assertThrows(IOException.class, () -> store.export(id, directory.resolve("exported"), key));
+
+        Files.write(object, Arrays.copyOf(stored, stored.length - 1));
+        assertThrows(IOException.class, () -> store.length(id));
+    }
+
+    /**
+     * Test to verify that after the store key is re-wrapped for a new vault key, attachments are read
+     * with the new key only.
+     */
+    @Test
+    @DisplayName("Should move the store key to a new vault key")
+    void testRewrapKey() throws Exception {
+        String id = store.put(file, key);
+        SecretKey newKey = EncryptionService.getSecretKey("newMasterPassword", "newSalt");
+        Files.writeString(store.keyFile(), store.rewrapKey(key, newKey));
+
+        AttachmentStore reopened = new AttachmentStore(directory.resolve("attachments"), CHUNK_SIZE);
+        assertArrayEquals(content, reopened.read(id, 0, 100, newKey));
+        assertThrows(Exception.class, () -> reopened.read(id, 0, 100, key));
+    }
+
+    /**
+     * Test to verify that attachments are found in a credential's custom fields.
+     */
+    @Test
+    @DisplayName("Should list the attachments of a credential")
+    void testAttachmentsOfCredential() throws Exception {
+        String id = store.put(file, key);
+        Credential credential = Credential.create("server", "root", "enc", "", "", List.of(),
+                Map.of("PIN", "1234", AttachmentStore.FIELD_PREFIX + "id_ed25519", id));
+        assertEquals(Map.of("id_ed25519", id), AttachmentStore.attachments(credential));
+        assertNotNull(store.read(AttachmentStore.attachments(credential).get("id_ed25519"), 0, 1, key));
+        assertThrows(IllegalArgumentException.class, () -> store.length("../credentials"));
+    }
+
+    private Path objectFile(String id) {
+        return directory.resolve("attachments").resolve(id.substring(0, 2)).resolve(id + ".att");
+    }
+}
@@ -0,0 +1,211 @@
+package service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link BreachRangeClient} class, against a local stub of the range API.
+ */
+@DisplayName("BreachRangeClient Unit Tests")
+class BreachRangeClientTest {
+
+    private static final BreachRangeClient.Settings FAST = new BreachRangeClient.Settings(
+            Duration.ofSeconds(2), 3, Duration.ofMillis(10), Duration.ofMillis(50), 4, Duration.ofSeconds(30));
+
+    private HttpServer server;
+    private URI baseUri;
+    // Status codes to answer with, in order; 200 with the range body once empty
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> paddingHeaders = new CopyOnWriteArrayList<>();
+    // Retry-After sent with every failure, if set
+    private volatile String retryAfter;
+
+    /**
+     * Starts a stub range API on a free loopback port before each test.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/range/", this::handle);
+        server.start();
+        baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/range/");
+    }
+
+    /**
+     * Stops the stub after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Test to verify that a listed suffix is counted, an unlisted or padding one is not,
+     * and that padding is requested.
+     */
+    @Test
+    @DisplayName("Should count listed suffixes and request padding")
+    void testCount() throws Exception {
+        BreachRangeClient client = new BreachRangeClient(baseUri, FAST);
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest("password".getBytes(StandardCharsets.UTF_8));
+
+        // SHA-1 of "password" is 5BAA61E4C9B93F3F0682250B6CF8331B7EE68FD8
+        assertEquals(42, client.count(sha1).join());
+        assertEquals(0, client.count("5BAA6", "0000000000000000000000000000000000F").join());
+        assertEquals(0, client.count("5baa6", "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF").join());
+        assertEquals(List.of("/range/5BAA6", "/range/5BAA6", "/range/5BAA6"), requests);
+        assertEquals(List.of("true", "true", "true"), paddingHeaders);
+
+        CompletionException invalid = assertThrows(CompletionException.class, () -> client.count("XYZ", "00").join());
+        assertInstanceOf(IllegalArgumentException.class, invalid.getCause());
+    }
+
+    /**
+     * Test to verify that server errors and rate limiting are retried, and client errors are not.
+     */
+    @Test
+    @DisplayName("Should retry transient failures only")
+    void testRetries() {
+        BreachRangeClient client = new BreachRangeClient(baseUri, FAST);
+        statuses.addAll(List.of(503, 429));
+        assertEquals(42, client.count("5BAA6", "1E4C9B93F3F0682250B6CF8331B7EE68FD8").join());
+        assertEquals(3, requests.size());
+
+        statuses.addAll(List.of(500, 500, 500));
+        assertThrows(CompletionException.class, () -> client.count("5BAA6", "00").join());
+        assertEquals(6, requests.size());
+
+        statuses.add(400);
+        assertThrows(CompletionException.class, () -> client.count("5BAA6", "00").join());
+        assertEquals(7, requests.size());
+    }
+
+    /**
+     * Test to verify that a Retry-After in seconds or as an HTTP date is read, that one that cannot be read
+     * is ignored, and that a query fails without retrying early when the API asks to wait too long.
+     */
+    @Test
+    @DisplayName("Should honour Retry-After")
+    void testRetryAfter() {
+        Instant now = Instant.parse("2026-10-19T12:00:00Z");
+        assertEquals(Optional.of(3000L), BreachRangeClient.retryAfterMillis(headers("3"), now));
+        assertEquals(Optional.of(30_000L), BreachRangeClient.retryAfterMillis(headers("Mon, 19 Oct 2026 12:00:30 GMT"), now));
+        assertEquals(Optional.of(0L), BreachRangeClient.retryAfterMillis(headers("Mon, 19 Oct 2026 11:00:00 GMT"), now));
+        assertEquals(Optional.empty(), BreachRangeClient.retryAfterMillis(headers("soon"), now));
+        assertEquals(Optional.empty(), BreachRangeClient.retryAfterMillis(HttpHeaders.of(Map.of(), (name, value) -> true), now));
+
+        BreachRangeClient client = new BreachRangeClient(baseUri, FAST);
+        retryAfter = "soon";
+        statuses.add(503);
+        assertEquals(42, client.count("5BAA6", "1E4C9B93F3F0682250B6CF8331B7EE68FD8").join());
+        assertEquals(2, requests.size());
+
+        retryAfter = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(1));
+        statuses.add(429);
+        assertEquals(42, client.count("5BAA6", "1E4C9B93F3F0682250B6CF8331B7EE68FD8").join());
+        assertEquals(4, requests.size());
+
+        retryAfter = "120";
+        statuses.add(429);
+        CompletionException tooLong = assertThrows(CompletionException.class, () -> client.count("5BAA6", "00").join());
+        assertInstanceOf(IOException.class, tooLong.getCause());
+        assertEquals(5, requests.size());
+        assertFalse(client.circuitBreaker().isOpen());
+    }
+
+    /**
+     * Test to verify that the circuit opens after repeated failures, refuses queries without contacting
+     * the API, and closes again after a successful trial.
+     */
+    @Test
+    @DisplayName("Should fail fast while the circuit is open")
+    void testCircuitBreaker() {
+        AtomicLong nanos = new AtomicLong();
+        BreachRangeClient.CircuitBreaker breaker = new BreachRangeClient.CircuitBreaker(4, Duration.ofSeconds(30), nanos::get);
+        BreachRangeClient client = new BreachRangeClient(baseUri, FAST, breaker);
+
+        for (int i = 0; i < 6; i++) {
+            statuses.add(503);
+        }
+        assertThrows(CompletionException.class, () -> client.count("5BAA6", "00").join());
+        CompletionException open = assertThrows(CompletionException.class, () -> client.count("5BAA6", "00").join());
+        assertTrue(breaker.isOpen());
+        assertInstanceOf(BreachRangeClient.CircuitOpenException.class, open.getCause());
+        assertEquals(4, requests.size());
+
+        statuses.clear();
+        nanos.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertEquals(42, client.count("5BAA6", "1E4C9B93F3F0682250B6CF8331B7EE68FD8").join());
+        assertFalse(breaker.isOpen());
+    }
+
+    /**
+     * Test to verify that concurrent queries all complete over the shared client.
+     */
+    @Test
+    @DisplayName("Should run concurrent queries")
+    void testConcurrentQueries() {
+        BreachRangeClient client = new BreachRangeClient(baseUri, FAST);
+        List<CompletableFuture<Integer>> counts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            counts.add(client.count("5BAA6", "1E4C9B93F3F0682250B6CF8331B7EE68FD8"));
+        }
+        for (CompletableFuture<Integer> count : counts) {
+            assertEquals(42, count.join());
+        }
+        assertEquals(20, requests.size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestURI().getPath());
+        paddingHeaders.add(String.valueOf(exchange.getRequestHeaders().getFirst("Add-Padding")));
+        Integer status = statuses.poll();
+        if (status != null && retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", retryAfter);
+        }
+        byte[] body = status == null
+                ? "1E4C9B93F3F0682250B6CF8331B7EE68FD8:42\r\n0000000000000000000000000000000000F:0\r\n".getBytes(StandardCharsets.US_ASCII)
+                : new byte[0];
+        exchange.sendResponseHeaders(status == null ? 200 : status, body.length == 0 ? -1 : body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static HttpHeaders headers(String retryAfter) {
+        return HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true);
+    }
+}
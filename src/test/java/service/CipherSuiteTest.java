@@ -0,0 +1,132 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link CipherSuite} enum, through {@link EncryptionService}.
+ */
+@DisplayName("CipherSuite Unit Tests")
+class CipherSuiteTest {
+
+    private static final byte[] PLAINTEXT = "SensitiveData123!".getBytes(StandardCharsets.UTF_8);
+
+    private SecretKey key;
+
+    /**
+     * Opens a session before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        key = EncryptionService.getSessionSecretKey();
+    }
+
+    /**
+     * Deletes the vault files and clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(CredentialStorage.FILE_PATH);
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that each suite's envelopes are recognized by their prefix and decrypt, with AES-GCM
+     * envelopes unprefixed as before, and that a modified envelope is rejected whatever its suite.
+     */
+    @Test
+    @DisplayName("Should decrypt envelopes of every suite")
+    void testEnvelopesOfEverySuite() throws Exception {
+        String aes = EncryptionService.encryptBytes(PLAINTEXT, key, CipherSuite.AES_GCM);
+        String chacha = EncryptionService.encryptBytes(PLAINTEXT, key, CipherSuite.CHACHA20_POLY1305);
+        assertFalse(aes.contains(":"));
+        assertTrue(chacha.startsWith("2:"));
+
+        for (CipherSuite suite : CipherSuite.values()) {
+            String envelope = EncryptionService.encryptBytes(PLAINTEXT, key, suite);
+            assertEquals(suite, CipherSuite.of(envelope));
+            assertArrayEquals(PLAINTEXT, EncryptionService.decryptBytes(envelope, key));
+
+            int at = envelope.length() - 5;
+            String modified = envelope.substring(0, at) + (envelope.charAt(at) == 'A' ? 'B' : 'A') + envelope.substring(at + 1);
+            assertThrows(BadPaddingException.class, () -> EncryptionService.decryptBytes(modified, key));
+        }
+        assertThrows(BadPaddingException.class, () -> EncryptionService.decryptBytes("9:" + aes, key));
+    }
+
+    /**
+     * Test to verify that a vault holding passwords of both suites is saved and loaded,
+     * and that the vault is readable whatever suite its records were written with.
+     */
+    @Test
+    @DisplayName("Should read a vault that mixes suites")
+    void testMixedVault() throws Exception {
+        List<Credential> credentials = List.of(
+                Credential.create("aes", "user", EncryptionService.encryptBytes("first".getBytes(StandardCharsets.UTF_8), key, CipherSuite.AES_GCM)),
+                Credential.create("chacha", "user", EncryptionService.encryptBytes("second".getBytes(StandardCharsets.UTF_8), key, CipherSuite.CHACHA20_POLY1305)));
+        CredentialStorage.saveCredentials(credentials);
+
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        assertEquals(credentials, VaultIndexTest.withPasswords(loaded));
+        assertEquals("first", EncryptionService.decrypt(CredentialStorage.encryptedPassword(loaded.get(0))));
+        assertEquals("second", EncryptionService.decrypt(CredentialStorage.encryptedPassword(loaded.get(1))));
+    }
+
+    /**
+     * Test to verify that suites are named as on the command line, that the benchmark picks one,
+     * and that AES-GCM is preferred wherever it runs on AES instructions.
+     */
+    @Test
+    @DisplayName("Should find suites by name and pick a preferred one")
+    void testSelection() {
+        assertEquals(CipherSuite.CHACHA20_POLY1305, CipherSuite.forId(" ChaCha20-Poly1305 "));
+        assertEquals(CipherSuite.AES_GCM, CipherSuite.forId("aes-gcm"));
+        assertThrows(IllegalArgumentException.class, () -> CipherSuite.forId("des"));
+        assertNotNull(CipherSuite.fastest());
+        assertNotNull(CipherSuite.preferred());
+        if (System.getProperty(CipherSuite.PROPERTY) == null && CipherSuite.hasAesIntrinsics()) {
+            assertEquals(CipherSuite.AES_GCM, CipherSuite.preferred());
+        }
+    }
+
+    /**
+     * Test to verify that the suite recorded by the vault index is chosen without probing the JVM,
+     * and that the index of a saved vault records the suite in use.
+     */
+    @Test
+    @DisplayName("Should adopt the suite recorded by the vault index")
+    void testRecordedSuite() throws Exception {
+        if (System.getProperty(CipherSuite.PROPERTY) == null) {
+            for (CipherSuite suite : CipherSuite.values()) {
+                assertEquals(suite, CipherSuite.select(suite));
+            }
+        }
+
+        CipherSuite preferred = CipherSuite.preferred();
+        CredentialStorage.saveCredentials(List.of(Credential.create("service", "user", EncryptionService.encrypt("pass"))));
+        String index = Files.readAllLines(CredentialStorage.FILE_PATH).get(1);
+        assertEquals(preferred, CipherSuite.of(index.substring(VaultIndex.PREFIX.length())));
+
+        assertEquals(1, CredentialStorage.loadCredentials().size());
+        assertEquals(preferred, CipherSuite.adopt(CipherSuite.values()[1 - preferred.ordinal()]));
+        assertEquals(preferred, CipherSuite.preferred());
+    }
+}
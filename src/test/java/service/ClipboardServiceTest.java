@@ -0,0 +1,111 @@
+package service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import utils.SecretBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link ClipboardService} class, using the in-memory and OSC 52 backends.
+ */
+@DisplayName("ClipboardService Unit Tests")
+class ClipboardServiceTest {
+
+    /**
+     * Test to verify that a copied secret is cleared after the timeout.
+     */
+    @Test
+    @DisplayName("Should clear the clipboard after the timeout")
+    void testAutoClear() throws Exception {
+        InMemoryClipboard backend = new InMemoryClipboard();
+        try (ClipboardService clipboard = new ClipboardService(backend, Duration.ofMillis(50));
+             SecretBuffer secret = SecretBuffer.of("s3cret")) {
+            clipboard.copy(secret);
+            assertEquals("s3cret", backend.read());
+            awaitContents(backend, "");
+        }
+    }
+
+    /**
+     * Test to verify that text copied by the user since is not cleared.
+     */
+    @Test
+    @DisplayName("Should leave changed contents alone")
+    void testChangedContents() throws Exception {
+        InMemoryClipboard backend = new InMemoryClipboard();
+        try (ClipboardService clipboard = new ClipboardService(backend, Duration.ofMinutes(1));
+             SecretBuffer secret = SecretBuffer.of("s3cret")) {
+            clipboard.copy(secret);
+            backend.set("something else");
+            assertFalse(clipboard.clearNow());
+            assertEquals("something else", backend.read());
+        }
+        assertEquals("something else", backend.read());
+    }
+
+    /**
+     * Test to verify that a second copy replaces the first and closing clears it at once.
+     */
+    @Test
+    @DisplayName("Should clear the latest copy on close")
+    void testCloseClearsLatestCopy() throws Exception {
+        InMemoryClipboard backend = new InMemoryClipboard();
+        ClipboardService clipboard = new ClipboardService(backend, Duration.ofMinutes(1));
+        try (SecretBuffer first = SecretBuffer.of("first"); SecretBuffer second = SecretBuffer.of("second")) {
+            clipboard.copy(first);
+            clipboard.copy(second);
+            assertEquals("second", backend.read());
+        }
+        clipboard.close();
+        assertEquals("", backend.read());
+        try (SecretBuffer secret = SecretBuffer.of("late")) {
+            assertThrows(IllegalStateException.class, () -> clipboard.copy(secret));
+        }
+    }
+
+    /**
+     * Test to verify the OSC 52 escape sequences written to the terminal.
+     */
+    @Test
+    @DisplayName("Should write and clear through OSC 52")
+    void testOsc52Backend() throws Exception {
+        ByteArrayOutputStream terminal = new ByteArrayOutputStream();
+        ClipboardService.Osc52Backend backend = new ClipboardService.Osc52Backend(new PrintStream(terminal));
+        try (ClipboardService clipboard = new ClipboardService(backend, Duration.ofMinutes(1));
+             SecretBuffer secret = SecretBuffer.of("pw")) {
+            clipboard.copy(secret);
+            assertEquals("\u001b]52;c;cHc=\u0007", terminal.toString(StandardCharsets.US_ASCII));
+
+            terminal.reset();
+            assertTrue(clipboard.clearNow(), "An unreadable clipboard is cleared if nothing was copied since");
+            assertEquals("\u001b]52;c;\u0007", terminal.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Test to verify that the timeout must be positive.
+     */
+    @Test
+    @DisplayName("Should reject a non-positive timeout")
+    void testInvalidTimeout() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ClipboardService(new InMemoryClipboard(), Duration.ZERO));
+    }
+
+    private static void awaitContents(InMemoryClipboard backend, String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!expected.equals(backend.read()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, backend.read());
+    }
+}
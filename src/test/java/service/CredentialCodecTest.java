@@ -0,0 +1,120 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the CredentialCodec class.
+ * These tests validate the binary record format and its error handling.
+ */
+@DisplayName("CredentialCodec Unit Tests")
+class CredentialCodecTest {
+
+    /**
+     * Tests that every field, including non-ASCII text and separators, survives a round trip.
+     */
+    @Test
+    @DisplayName("Should round-trip every credential field")
+    void testRoundTrip() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("PIN", "1234");
+        fields.put("Security question", "Première école, \"Lycée\"");
+        Credential credential = new Credential(UUID.randomUUID(), "Café, Ltd.", "user\nname", "enc==",
+                "https://example.com/?a=1,2", "notes\twith\ttabs", List.of("work", "données"), fields,
+                Instant.ofEpochMilli(1_700_000_000_123L), Instant.ofEpochMilli(1_700_000_999_000L));
+
+        byte[] record = CredentialCodec.encode(credential);
+        Credential decoded = CredentialCodec.decode(record);
+
+        assertTrue(CredentialCodec.isBinary(record));
+        assertEquals(credential, decoded);
+        assertEquals(List.copyOf(fields.keySet()), List.copyOf(decoded.customFields().keySet()));
+    }
+
+    /**
+     * Tests that a minimal credential encodes compactly: marker, version, id, two timestamps
+     * and single-byte lengths.
+     */
+    @Test
+    @DisplayName("Should encode a minimal credential compactly")
+    void testCompactEncoding() {
+        Credential credential = new Credential("s", "u", "p");
+
+        // 2 header + 16 id + 2 timestamps + 5 strings of length 1 or 0 + 2 counts
+        assertEquals(2 + 16 + 2 + (2 + 2 + 2 + 1 + 1) + 2, CredentialCodec.encode(credential).length);
+    }
+
+    /**
+     * Tests that records in the original text format are not mistaken for binary records.
+     */
+    @Test
+    @DisplayName("Should distinguish text records from binary records")
+    void testIsBinary() {
+        assertFalse(CredentialCodec.isBinary("service,user,pass".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(CredentialCodec.isBinary(new byte[0]));
+    }
+
+    /**
+     * Tests that truncated, padded or unknown-version records are rejected.
+     */
+    @Test
+    @DisplayName("Should reject malformed records")
+    void testMalformedRecords() {
+        byte[] record = CredentialCodec.encode(Credential.create("service", "user", "enc"));
+
+        for (int length = 0; length < record.length; length++) {
+            byte[] truncated = Arrays.copyOf(record, length);
+            assertThrows(IllegalArgumentException.class, () -> CredentialCodec.decode(truncated));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> CredentialCodec.decode(Arrays.copyOf(record, record.length + 1)));
+
+        byte[] futureVersion = record.clone();
+        futureVersion[1] = 99;
+        assertThrows(IllegalArgumentException.class, () -> CredentialCodec.decode(futureVersion));
+    }
+
+    /**
+     * Tests that a record with long notes is compressed and round-trips, that a short one is stored
+     * as before, and that a compressed record that is truncated, padded or announces the wrong length
+     * is rejected.
+     */
+    @Test
+    @DisplayName("Should compress large records only")
+    void testCompression() {
+        String notes = "Recovery codes are in the safe. Ask the team lead before rotating the key.\n".repeat(20);
+        Credential large = Credential.create("service", "user", "enc", "", notes, List.of("prod"), Map.of());
+        byte[] plain = CredentialCodec.encode(large, Integer.MAX_VALUE);
+        byte[] record = CredentialCodec.encode(large);
+
+        assertEquals(CredentialCodec.DEFLATED, record[1]);
+        assertTrue(record.length < plain.length / 4);
+        assertEquals(large, CredentialCodec.decode(record));
+        assertEquals(large, CredentialCodec.decode(plain));
+        assertEquals(CredentialCodec.VERSION, CredentialCodec.encode(Credential.create("service", "user", "enc"))[1]);
+
+        for (int length = 2; length < record.length; length++) {
+            byte[] truncated = Arrays.copyOf(record, length);
+            assertThrows(IllegalArgumentException.class, () -> CredentialCodec.decode(truncated));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> CredentialCodec.decode(Arrays.copyOf(record, record.length + 1)));
+        byte[] wrongLength = record.clone();
+        wrongLength[2]++;
+        assertThrows(IllegalArgumentException.class, () -> CredentialCodec.decode(wrongLength));
+    }
+}
@@ -0,0 +1,116 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import service.CredentialListing.Page;
+import service.CredentialListing.SortOrder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link CredentialListing} class.
+ * These tests validate sorting, cursor paging, filtering and incremental updates.
+ */
+@DisplayName("CredentialListing Unit Tests")
+class CredentialListingTest {
+
+    private static final List<Credential> CREDENTIALS = List.of(
+            credential("github", "zoe", 3),
+            credential("AWS", "bob", 1),
+            credential("bank", "alice", 2),
+            credential("aws", "carol", 5));
+
+    /**
+     * Test to verify each sort order, including case-insensitive names and newest-first times.
+     */
+    @Test
+    @DisplayName("Should sort by service, username and modification time")
+    void testSortOrders() {
+        CredentialListing listing = new CredentialListing(CREDENTIALS);
+
+        assertEquals(List.of("bob", "carol", "alice", "zoe"), usernames(listing, SortOrder.SERVICE));
+        assertEquals(List.of("alice", "bob", "carol", "zoe"), usernames(listing, SortOrder.USERNAME));
+        assertEquals(List.of("carol", "zoe", "alice", "bob"), usernames(listing, SortOrder.MODIFIED));
+    }
+
+    /**
+     * Test to verify that following cursors visits every credential exactly once.
+     */
+    @Test
+    @DisplayName("Should page through the listing with cursors")
+    void testCursorPaging() {
+        List<Credential> many = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            many.add(credential(String.format("service%03d", i), "user", i));
+        }
+        CredentialListing listing = new CredentialListing(many);
+
+        List<Credential> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Page page = listing.page(SortOrder.SERVICE, cursor, 10, c -> true);
+            seen.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(10, pages);
+        assertEquals(many, seen);
+    }
+
+    /**
+     * Test to verify that filters apply while paging and that no cursor is returned after the last match.
+     */
+    @Test
+    @DisplayName("Should apply filters and end on the last match")
+    void testFilteredPaging() {
+        CredentialListing listing = new CredentialListing(CREDENTIALS);
+
+        Page first = listing.page(SortOrder.SERVICE, null, 1, c -> c.serviceName().equalsIgnoreCase("aws"));
+        Page second = listing.page(SortOrder.SERVICE, first.nextCursor(), 1,
+                c -> c.serviceName().equalsIgnoreCase("aws"));
+
+        assertEquals("bob", first.items().getFirst().username());
+        assertEquals("carol", second.items().getFirst().username());
+        assertNull(second.nextCursor());
+    }
+
+    /**
+     * Test to verify incremental updates and cursor validation.
+     */
+    @Test
+    @DisplayName("Should update incrementally and reject unknown cursors")
+    void testUpdatesAndCursors() {
+        CredentialListing listing = new CredentialListing(CREDENTIALS);
+        Credential alice = CREDENTIALS.get(2);
+
+        listing.remove(alice);
+        listing.add(CREDENTIALS.get(0).withDetails("https://github.com", "", List.of(), Map.of()));
+
+        assertEquals(3, listing.size());
+        assertEquals("zoe", usernames(listing, SortOrder.MODIFIED).getFirst());
+        assertThrows(IllegalArgumentException.class,
+                () -> listing.page(SortOrder.SERVICE, alice.id().toString(), 10, c -> true));
+        assertThrows(IllegalArgumentException.class, () -> listing.page(SortOrder.SERVICE, "nope", 10, c -> true));
+        assertThrows(IllegalArgumentException.class, () -> listing.page(SortOrder.SERVICE, null, 0, c -> true));
+    }
+
+    private static List<String> usernames(CredentialListing listing, SortOrder order) {
+        return listing.page(order, null, 100, c -> true).items().stream().map(Credential::username).toList();
+    }
+
+    private static Credential credential(String service, String username, long modifiedSeconds) {
+        return new Credential(UUID.randomUUID(), service, username, "enc", "", "", List.of(), Map.of(),
+                Instant.EPOCH, Instant.ofEpochSecond(modifiedSeconds));
+    }
+}
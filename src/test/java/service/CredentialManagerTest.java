@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -95,4 +96,22 @@ class CredentialManagerTest {
         assertNotNull(newManager, "CredentialManager should be initialized.");
         assertEquals(1, testList.size(), "Provided list should contain one credential.");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test to verify that listing with a filter returns only credentials whose tags match,
+     * and that credentials added after construction are indexed.
+     */
+    @Test
+    @DisplayName("Should list credentials matching a tag filter")
+    void testListCredentialsWithFilter() {
+        Credential prod = Credential.create("AWS", "admin", "enc", "", "", List.of("prod", "aws"), Map.of());
+        Credential old = Credential.create("AWS old", "admin", "enc", "", "", List.of("prod", "aws", "deprecated"), Map.of());
+        credentials.add(prod);
+        credentials.add(old);
+
+        CredentialManager manager = new CredentialManager(credentials);
+
+        assertEquals(List.of(prod), manager.listCredentials("prod AND aws NOT deprecated"));
+        assertTrue(manager.listCredentials("(prod").isEmpty(), "Invalid filters should match nothing");
+    }
+}
@@ -11,8 +11,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -24,7 +26,6 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 class CredentialStorageTest {
 
     private static final Path TEST_FILE_PATH = Paths.get("credentials.dat");
-    private static final Path BACKUP_FILE_PATH = Paths.get("credentials_backup.dat");
 
     /**
      * Sets a session key and salt before each test to enable encryption/decryption.
@@ -52,7 +53,7 @@ class CredentialStorageTest {
         assertEquals(2, loadedCredentials.size());
         assertEquals("service1", loadedCredentials.getFirst().serviceName());
         assertEquals("user1", loadedCredentials.getFirst().username());
-        assertEquals("pass1", EncryptionService.decrypt(loadedCredentials.getFirst().encryptedPassword()));
+        assertEquals("pass1", EncryptionService.decrypt(CredentialStorage.encryptedPassword(loadedCredentials.getFirst())));
     }
 
     /**
@@ -69,13 +70,86 @@ class CredentialStorageTest {
         assertTrue(loadedCredentials.isEmpty(), "Returned list should be empty when file is missing");
     }
 
+    /**
+     * Tests that structured fields, including commas and quotes that the original
+     * text format could not store, survive a save and load.
+     */
+    @Test
+    @DisplayName("Should preserve ids, timestamps and structured fields")
+    void testStructuredFieldsRoundTrip() throws Exception {
+        Credential credential = Credential.create("Acme, Inc.", "\"bob\"", EncryptionService.encrypt("pass"),
+                "https://acme.example/login", "line one\nline two", List.of("work", "finance"),
+                Map.of("Recovery code", "a,b;c"));
+
+        CredentialStorage.saveCredentials(List.of(credential));
+
+        assertEquals(List.of(credential), VaultIndexTest.withPasswords(CredentialStorage.loadCredentials()));
+    }
+
+    /**
+     * Tests that records in the original text format are read and upgraded on the next save,
+     * and that repeated service/username pairs still get distinct ids.
+     */
+    @Test
+    @DisplayName("Should migrate records from the original text format")
+    void testLegacyRecordsAreMigrated() throws Exception {
+        String password = EncryptionService.encrypt("pass1");
+        Files.write(TEST_FILE_PATH, List.of(
+                EncryptionService.encrypt("service1,user1," + password),
+                EncryptionService.encrypt("service1,user1," + password)));
+
+        List<Credential> migrated = CredentialStorage.loadCredentials();
+        assertEquals(2, migrated.size());
+        assertEquals("service1", migrated.getFirst().serviceName());
+        assertEquals("pass1", EncryptionService.decrypt(migrated.getFirst().encryptedPassword()));
+        assertNotEquals(migrated.get(0).id(), migrated.get(1).id());
+
+        CredentialStorage.saveCredentials(migrated);
+        List<String> lines = Files.readAllLines(TEST_FILE_PATH);
+        assertTrue(VaultIntegrity.isHeader(lines.getFirst()));
+        assertTrue(VaultIndex.isIndex(lines.get(1)));
+        for (String line : lines.subList(2, lines.size())) {
+            assertTrue(CredentialCodec.isBinary(EncryptionService.decryptBytes(line)));
+        }
+        assertEquals(migrated, VaultIndexTest.withPasswords(CredentialStorage.loadCredentials()));
+    }
+
+    /**
+     * Tests that the index of a saved vault holds no password, and that a loaded credential
+     * reads its password from its record line only when asked for it.
+     */
+    @Test
+    @DisplayName("Should keep passwords out of the index and read them on demand")
+    void testPasswordsAreReadOnDemand() throws Exception {
+        Credential credential = Credential.create("service1", "user1", EncryptionService.encrypt("pass1"));
+        CredentialStorage.saveCredentials(List.of(credential));
+
+        VaultIndex.Entry entry = VaultIndex.open(TEST_FILE_PATH, EncryptionService.getSessionSecretKey()).getFirst();
+        assertEquals("", CredentialStorage.parseMetadata(entry.metadata()).encryptedPassword());
+
+        Credential loaded = CredentialStorage.loadCredentials().getFirst();
+        assertEquals("", loaded.encryptedPassword());
+        assertEquals("pass1", EncryptionService.decrypt(CredentialStorage.encryptedPassword(loaded)));
+    }
+
+    /**
+     * Tests that control characters are rejected in names when saving.
+     */
+    @Test
+    @DisplayName("Should skip credentials with control characters in names")
+    void testControlCharactersAreRejected() throws Exception {
+        CredentialStorage.saveCredentials(List.of(new Credential("bad\u0000name", "user", "enc")));
+
+        assertTrue(CredentialStorage.loadCredentials().isEmpty());
+    }
+
     /**
      * Deletes any leftover files and clears the encryption session after each test.
      */
     @AfterEach
     void tearDown() throws Exception {
         Files.deleteIfExists(TEST_FILE_PATH);
-        Files.deleteIfExists(BACKUP_FILE_PATH);
+        CredentialStorage.SNAPSHOTS.deleteAll();
         EncryptionService.clearSessionKeyAndSalt();
     }
 }
\ No newline at end of file
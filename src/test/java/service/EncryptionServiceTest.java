@@ -1,10 +1,14 @@
 package service;
 
+import utils.SecretBuffer;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit tests for the EncryptionService utility.
@@ -87,4 +91,97 @@ class EncryptionServiceTest {
         assertEquals(salt1, salt2);
         assertEquals(24, salt1.length()); // 16 bytes base64 = 24 chars
     }
-}
\ No newline at end of file
+
+    /**
+     * Verifies that the key-check value accepts the key it was computed from
+     * and rejects a key derived from a different password.
+     *
+     * @throws Exception if an error occurs during key derivation
+     */
+    @Test
+    @DisplayName("Should match key-check value only for the same derived key")
+    void testKeyCheckMatchesDerivedKey() throws Exception {
+        String salt = "keyCheckSalt";
+        var key = EncryptionService.getSecretKey("masterPass", salt);
+        String keyCheck = EncryptionService.computeKeyCheck(key);
+
+        assertTrue(EncryptionService.matchesKeyCheck(key, keyCheck));
+        assertFalse(EncryptionService.matchesKeyCheck(EncryptionService.getSecretKey("otherPass", salt), keyCheck));
+        assertFalse(EncryptionService.matchesKeyCheck(key, "not base64!"));
+    }
+
+    /**
+     * Verifies that re-authentication inside a session uses the cached verifier
+     * and stops working once the session is cleared.
+     */
+    @Test
+    @DisplayName("Should verify the session password against the cached verifier")
+    void testVerifySessionPassword() {
+        EncryptionService.setSessionKeyAndSalt("masterPass", "uniqueSalt!");
+
+        assertTrue(EncryptionService.verifySessionPassword("masterPass"));
+        assertFalse(EncryptionService.verifySessionPassword("masterPass2"));
+        assertFalse(EncryptionService.verifySessionPassword(null));
+
+        EncryptionService.clearSessionKeyAndSalt();
+        assertFalse(EncryptionService.verifySessionPassword("masterPass"));
+    }
+
+    /**
+     * Verifies that secrets encrypt and decrypt through off-heap buffers and interoperate
+     * with the String and byte based methods.
+     *
+     * @throws Exception if an error occurs during encryption/decryption
+     */
+    @Test
+    @DisplayName("Should encrypt and decrypt secret buffers")
+    void testSecretBufferRoundTrip() throws Exception {
+        EncryptionService.setSessionKeyAndSalt("masterPass", "uniqueSalt!");
+        try (SecretBuffer secret = SecretBuffer.of("Sensitive Däta!")) {
+            String encrypted = EncryptionService.encryptSecret(secret);
+            assertEquals("Sensitive Däta!", new String(EncryptionService.decryptBytes(encrypted), java.nio.charset.StandardCharsets.UTF_8));
+            try (SecretBuffer decrypted = EncryptionService.decryptSecret(EncryptionService.encrypt("Sensitive Däta!"))) {
+                assertTrue(decrypted.contentEquals(secret));
+            }
+            assertThrows(javax.crypto.BadPaddingException.class, () -> EncryptionService.decryptSecret("AAAA"));
+        } finally {
+            EncryptionService.clearSessionKeyAndSalt();
+        }
+    }
+
+    /**
+     * Verifies session re-authentication and fingerprints with passwords held in secret buffers.
+     */
+    @Test
+    @DisplayName("Should verify and fingerprint secret buffers")
+    void testSecretBufferVerification() {
+        EncryptionService.setSessionKeyAndSalt("masterPass", "uniqueSalt!");
+        try (SecretBuffer right = SecretBuffer.of("masterPass"); SecretBuffer wrong = SecretBuffer.of("masterPass2")) {
+            assertTrue(EncryptionService.verifySessionSecret(right));
+            assertFalse(EncryptionService.verifySessionSecret(wrong));
+            assertArrayEquals(EncryptionService.sessionFingerprint("masterPass".getBytes()),
+                    EncryptionService.sessionFingerprint(right));
+        } finally {
+            EncryptionService.clearSessionKeyAndSalt();
+        }
+    }
+
+    /**
+     * Verifies that a master password held in a secret buffer derives the same key as the String it holds,
+     * and opens a session that recognizes it.
+     */
+    @Test
+    @DisplayName("Should derive keys and open sessions from secret buffers")
+    void testSecretBufferSession() throws Exception {
+        try (SecretBuffer password = SecretBuffer.of("masterPäss")) {
+            javax.crypto.SecretKey key = EncryptionService.getSecretKey(password, "uniqueSalt!");
+            assertArrayEquals(EncryptionService.getSecretKey("masterPäss", "uniqueSalt!").getEncoded(), key.getEncoded());
+            EncryptionService.openSession(password, key);
+            assertTrue(EncryptionService.verifySessionPassword("masterPäss"));
+            assertTrue(EncryptionService.verifySessionSecret(password));
+            assertFalse(EncryptionService.verifySessionPassword("masterPass"));
+        } finally {
+            EncryptionService.clearSessionKeyAndSalt();
+        }
+    }
+}
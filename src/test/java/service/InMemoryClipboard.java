@@ -0,0 +1,43 @@
+package service;
+
+import utils.SecretBuffer;
+
+import java.util.Arrays;
+
+/**
+ * A clipboard held in memory, standing in for the system clipboard in tests.
+ */
+final class InMemoryClipboard implements ClipboardService.Backend {
+    private volatile String contents = "";
+
+    @Override
+    public String name() {
+        return "in-memory clipboard";
+    }
+
+    @Override
+    public void write(SecretBuffer secret) throws Exception {
+        char[] chars = secret.toChars();
+        contents = new String(chars);
+        Arrays.fill(chars, '\0');
+    }
+
+    @Override
+    public String read() {
+        return contents;
+    }
+
+    @Override
+    public void clear() {
+        contents = "";
+    }
+
+    /**
+     * Replaces the contents, as if the user copied something else.
+     *
+     * @param text The new contents.
+     */
+    void set(String text) {
+        contents = text;
+    }
+}
@@ -0,0 +1,94 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import service.CredentialListWriter.Format;
+import service.CredentialListing.SortOrder;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link ListCommand} record and the {@link CredentialListWriter} it writes with.
+ */
+@DisplayName("ListCommand Unit Tests")
+class ListCommandTest {
+
+    private static final List<Credential> CREDENTIALS = List.of(
+            Credential.create("Acme \"Cloud\"", "ops\\admin", "secret-ciphertext", "https://acme.example",
+                    "private notes", List.of("prod", "aws"), Map.of()),
+            Credential.create("Bank", "me", "enc", "", "", List.of("personal"), Map.of()),
+            Credential.create("Cloud", "dev", "enc", "", "", List.of("prod"), Map.of()));
+
+    /**
+     * Test to verify option parsing, defaults and validation.
+     */
+    @Test
+    @DisplayName("Should parse options and reject invalid ones")
+    void testParse() {
+        ListCommand defaults = ListCommand.parse(List.of());
+        assertEquals(new ListCommand(Format.TEXT, SortOrder.SERVICE, ListCommand.DEFAULT_PAGE_SIZE, null, null),
+                defaults);
+
+        ListCommand command = ListCommand.parse(List.of("--format", "JSON", "--sort", "modified",
+                "--page-size", "5", "--cursor", "abc", "--filter", "prod NOT aws"));
+        assertEquals(new ListCommand(Format.JSON, SortOrder.MODIFIED, 5, "abc", "prod NOT aws"), command);
+
+        for (List<String> invalid : List.of(List.of("--format"), List.of("--format", "xml"),
+                List.of("--sort", "size"), List.of("--page-size", "0"), List.of("--page-size", "ten"),
+                List.of("--verbose", "yes"))) {
+            assertThrows(IllegalArgumentException.class, () -> ListCommand.parse(invalid), invalid.toString());
+        }
+    }
+
+    /**
+     * Test to verify escaped JSON output, the next-page cursor, and that secrets are never written.
+     */
+    @Test
+    @DisplayName("Should stream JSON pages without secrets")
+    void testJsonOutput() throws Exception {
+        StringWriter out = new StringWriter();
+        new ListCommand(Format.JSON, SortOrder.SERVICE, 1, null, "prod")
+                .run(CREDENTIALS, new CredentialListWriter(out, Format.JSON));
+
+        String json = out.toString();
+        String expectedStart = "{\"items\":[{\"id\":\"" + CREDENTIALS.getFirst().id()
+                + "\",\"service\":\"Acme \\\"Cloud\\\"\",\"username\":\"ops\\\\admin\","
+                + "\"url\":\"https://acme.example\",\"tags\":[\"prod\",\"aws\"],";
+        assertTrue(json.startsWith(expectedStart), json);
+        assertTrue(json.endsWith("],\"nextCursor\":\"" + CREDENTIALS.getFirst().id() + "\"}\n"), json);
+        assertFalse(json.contains("secret-ciphertext"));
+        assertFalse(json.contains("private notes"));
+
+        StringWriter last = new StringWriter();
+        new ListCommand(Format.JSON, SortOrder.SERVICE, 1, CREDENTIALS.getFirst().id().toString(), "prod")
+                .run(CREDENTIALS, new CredentialListWriter(last, Format.JSON));
+        assertTrue(last.toString().contains("\"service\":\"Cloud\""));
+        assertTrue(last.toString().endsWith("\"nextCursor\":null}\n"));
+    }
+
+    /**
+     * Test to verify text output lines and the next-page hint.
+     */
+    @Test
+    @DisplayName("Should write text pages with a next-page hint")
+    void testTextOutput() throws Exception {
+        StringWriter out = new StringWriter();
+        new ListCommand(Format.TEXT, SortOrder.SERVICE, 2, null, null)
+                .run(CREDENTIALS, new CredentialListWriter(out, Format.TEXT));
+
+        List<String> lines = out.toString().lines().toList();
+        assertEquals(3, lines.size());
+        assertEquals("- Service: Acme \"Cloud\" | Username: ops\\admin | URL: https://acme.example | Tags: prod, aws",
+                lines.get(0));
+        assertEquals("- Service: Bank | Username: me | Tags: personal", lines.get(1));
+        assertEquals("More results: --cursor " + CREDENTIALS.get(1).id(), lines.get(2));
+    }
+}
@@ -0,0 +1,113 @@
+package service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for the {@link OtpCodeCache} class, on a clock the tests move.
+ */
+@DisplayName("OtpCodeCache Unit Tests")
+class OtpCodeCacheTest {
+
+    private static final UUID GITHUB = UUID.randomUUID();
+    private static final UUID BANK = UUID.randomUUID();
+    private static final UUID SLOW = UUID.randomUUID();
+
+    private final MovableClock clock = new MovableClock(Instant.ofEpochSecond(1_000_000_005));
+    private OtpCodeCache cache;
+
+    /**
+     * Stops the scheduler after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Test to verify that codes are those of the current period, that they are kept within it,
+     * and that they are recomputed after its boundary; counter-based seeds are left out.
+     */
+    @Test
+    @DisplayName("Should keep codes until the end of their period")
+    void testCodesPerPeriod() throws Exception {
+        Map<UUID, OtpSeed> seeds = new LinkedHashMap<>();
+        seeds.put(GITHUB, OtpSeed.parse("otpauth://totp/GitHub:someone?secret=JBSWY3DPEHPK3PXP"));
+        seeds.put(BANK, OtpSeed.parse("otpauth://hotp/Bank:1234?secret=JBSWY3DPEHPK3PXP&counter=3"));
+        seeds.put(SLOW, OtpSeed.parse("otpauth://totp/Slow:someone?secret=KRSXG5CTMVRXEZLU&period=90"));
+        cache = new OtpCodeCache(seeds, clock);
+
+        Map<UUID, OtpCodeCache.Code> codes = cache.codes();
+        assertEquals(List.of(GITHUB, SLOW), List.copyOf(codes.keySet()));
+        assertEquals(TOTPService.generateCodes(List.of(seeds.get(GITHUB), seeds.get(SLOW)), 1_000_000_005),
+                List.of(codes.get(GITHUB).code(), codes.get(SLOW).code()));
+        assertEquals(1_000_000_020, codes.get(GITHUB).validUntil());
+        assertEquals(1_000_000_080, codes.get(SLOW).validUntil());
+
+        clock.set(Instant.ofEpochSecond(1_000_000_019));
+        assertSame(codes, cache.codes());
+
+        clock.set(Instant.ofEpochSecond(1_000_000_020));
+        Map<UUID, OtpCodeCache.Code> next = cache.codes();
+        assertNotEquals(codes.get(GITHUB), next.get(GITHUB));
+        assertEquals(1_000_000_050, next.get(GITHUB).validUntil());
+        assertEquals(codes.get(SLOW), next.get(SLOW));
+    }
+
+    /**
+     * Test to verify that a cache without time-based seeds is empty and never expires.
+     */
+    @Test
+    @DisplayName("Should be empty without time-based seeds")
+    void testNoTimeBasedSeeds() throws Exception {
+        cache = new OtpCodeCache(Map.of(BANK, OtpSeed.parse("otpauth://hotp/Bank:1234?secret=JBSWY3DPEHPK3PXP&counter=3")), clock);
+        Map<UUID, OtpCodeCache.Code> codes = cache.codes();
+        assertFalse(codes.containsKey(BANK));
+        clock.set(Instant.ofEpochSecond(2_000_000_000));
+        assertSame(codes, cache.codes());
+    }
+
+    private static final class MovableClock extends Clock {
+        private volatile Instant now;
+
+        MovableClock(Instant now) {
+            this.now = now;
+        }
+
+        void set(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
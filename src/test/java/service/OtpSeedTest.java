@@ -0,0 +1,118 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link OtpSeed} record.
+ */
+@DisplayName("OtpSeed Unit Tests")
+class OtpSeedTest {
+
+    /**
+     * Opens a session before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+    }
+
+    /**
+     * Clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that the URI of the vault's own login seed is read with the defaults of authenticator apps.
+     */
+    @Test
+    @DisplayName("Should read the URI of the login seed")
+    void testParseLoginUri() {
+        String base64Secret = TOTPService.generateSecret();
+        OtpSeed seed = OtpSeed.parse(TOTPService.getOtpAuthUrl(base64Secret, "someone@example.com", "SecurePasswordManager"));
+        assertEquals(OtpSeed.Type.TOTP, seed.type());
+        assertArrayEquals(Base64.getDecoder().decode(base64Secret), seed.secret());
+        assertEquals("HmacSHA1", seed.algorithm());
+        assertEquals(6, seed.digits());
+        assertEquals(30, seed.period());
+        assertEquals("SecurePasswordManager", seed.issuer());
+        assertEquals("someone@example.com", seed.account());
+    }
+
+    /**
+     * Test to verify that parameters, encoded labels and counters survive formatting and parsing,
+     * and that a plus sign stays a plus sign.
+     */
+    @Test
+    @DisplayName("Should format and parse every parameter")
+    void testRoundTrip() {
+        OtpSeed seed = OtpSeed.parse("otpauth://hotp/ACME%20Co:john+test@example.com?secret=jbswy3dpehpk3pxp"
+                + "&issuer=ACME%20Co&algorithm=SHA256&digits=8&counter=41");
+        assertEquals(OtpSeed.Type.HOTP, seed.type());
+        assertEquals("ACME Co", seed.issuer());
+        assertEquals("john+test@example.com", seed.account());
+        assertEquals("HmacSHA256", seed.algorithm());
+        assertEquals(8, seed.digits());
+        assertEquals(41, seed.counter());
+
+        OtpSeed parsed = OtpSeed.parse(seed.next().toUri());
+        assertEquals(42, parsed.counter());
+        assertEquals(seed.account(), parsed.account());
+        assertEquals(seed.issuer(), parsed.issuer());
+        assertArrayEquals(seed.secret(), parsed.secret());
+
+        OtpSeed timeBased = OtpSeed.parse("otpauth://totp/alice?secret=JBSWY3DPEHPK3PXP&period=60");
+        assertEquals("otpauth://totp/alice?secret=JBSWY3DPEHPK3PXP&period=60", timeBased.toUri());
+        assertEquals("", timeBased.issuer());
+    }
+
+    /**
+     * Test to verify that malformed URIs are rejected.
+     */
+    @Test
+    @DisplayName("Should reject malformed URIs")
+    void testRejectsMalformedUris() {
+        for (String uri : List.of("https://example.com/?secret=JBSWY3DP", "otpauth://totp/alice",
+                "otpauth://motp/alice?secret=JBSWY3DP", "otpauth://totp/alice?secret=not-base32!",
+                "otpauth://totp/alice?secret=JBSWY3DP&digits=4", "otpauth://totp/alice?secret=JBSWY3DP&algorithm=MD5",
+                "otpauth://hotp/alice?secret=JBSWY3DP", "otpauth://totp/alice?secret=JBSWY3DP&period=x")) {
+            assertThrows(IllegalArgumentException.class, () -> OtpSeed.parse(uri), uri);
+        }
+    }
+
+    /**
+     * Test to verify that a seed is stored encrypted in a custom field of its credential and read back.
+     */
+    @Test
+    @DisplayName("Should store a seed encrypted in its credential")
+    void testStoreInCredential() throws Exception {
+        Credential credential = Credential.create("github", "someone", EncryptionService.encrypt("pass"), "", "",
+                List.of(), Map.of("PIN", "1234"));
+        assertNull(OtpSeed.of(credential));
+
+        OtpSeed seed = OtpSeed.parse("otpauth://totp/GitHub:someone?secret=JBSWY3DPEHPK3PXP&issuer=GitHub");
+        Credential stored = OtpSeed.store(credential, seed);
+        assertFalse(stored.customFields().get(OtpSeed.FIELD).contains("JBSWY3DPEHPK3PXP"));
+        assertEquals("1234", stored.customFields().get("PIN"));
+        assertEquals(seed.toUri(), OtpSeed.of(stored).toUri());
+        assertFalse(seed.toString().contains("JBSWY3DPEHPK3PXP"));
+
+        assertNull(OtpSeed.of(OtpSeed.store(stored, null)));
+    }
+}
@@ -0,0 +1,76 @@
+package service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link RangeResponse} class.
+ */
+@DisplayName("RangeResponse Unit Tests")
+class RangeResponseTest {
+
+    private static final String BODY = "0018A45C4D1DEF81644B54AB7F969B88D65:1\r\n"
+            + "1E4C9B93F3F0682250B6CF8331B7EE68FD8:10434004\r\n"
+            + "1e4c9b93f3f0682250b6cf8331b7ee68fd9:7\r\n"
+            + "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF:0";
+
+    /**
+     * Test to verify that the suffix of a hash is encoded like the API lists it.
+     */
+    @Test
+    @DisplayName("Should encode the suffix of a hash as upper-case hex")
+    void testSuffixOfHash() throws Exception {
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest("password".getBytes(StandardCharsets.UTF_8));
+        String hex = HexFormat.of().withUpperCase().formatHex(sha1);
+
+        assertArrayEquals(hex.substring(5).getBytes(StandardCharsets.US_ASCII), RangeResponse.suffixOf(sha1));
+        assertArrayEquals(RangeResponse.suffixOf(sha1), RangeResponse.suffixOf(hex.substring(5).toLowerCase()));
+        assertThrows(IllegalArgumentException.class, () -> RangeResponse.suffixOf("12G4"));
+        assertThrows(IllegalArgumentException.class, () -> RangeResponse.suffixOf(""));
+    }
+
+    /**
+     * Test to verify that counts are found in either case, that near misses and padding count 0,
+     * and that the last line needs no line break.
+     */
+    @Test
+    @DisplayName("Should find the count of a suffix")
+    void testCount() {
+        byte[] body = BODY.getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(10434004, RangeResponse.count(body, RangeResponse.suffixOf("1E4C9B93F3F0682250B6CF8331B7EE68FD8")));
+        assertEquals(7, RangeResponse.count(body, RangeResponse.suffixOf("1E4C9B93F3F0682250B6CF8331B7EE68FD9")));
+        assertEquals(0, RangeResponse.count(body, RangeResponse.suffixOf("1E4C9B93F3F0682250B6CF8331B7EE68FDA")));
+        assertEquals(0, RangeResponse.count(body, RangeResponse.suffixOf("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF")));
+        assertEquals(0, RangeResponse.count(body, RangeResponse.suffixOf("1E4C9B")));
+        assertEquals(0, RangeResponse.count(new byte[0], RangeResponse.suffixOf("00")));
+    }
+
+    /**
+     * Test to verify that a direct buffer slice is scanned between its position and limit, and left unchanged.
+     */
+    @Test
+    @DisplayName("Should scan buffers between position and limit")
+    void testCountInBuffer() {
+        byte[] bytes = BODY.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 10);
+        direct.position(10);
+        direct.put(bytes);
+        direct.position(10);
+        int secondLine = BODY.indexOf('\n') + 1;
+        direct.limit(10 + secondLine);
+
+        assertEquals(1, RangeResponse.count(direct, RangeResponse.suffixOf("0018A45C4D1DEF81644B54AB7F969B88D65")));
+        assertEquals(0, RangeResponse.count(direct, RangeResponse.suffixOf("1E4C9B93F3F0682250B6CF8331B7EE68FD8")));
+        assertEquals(10, direct.position());
+    }
+}
@@ -0,0 +1,141 @@
+package service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link SnapshotStore} class.
+ */
+@DisplayName("SnapshotStore Unit Tests")
+class SnapshotStoreTest {
+
+    private static final Instant NOW = Instant.parse("2025-06-01T12:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private SnapshotStore store;
+
+    /**
+     * Creates a store keeping three generations of at most 30 days before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        store = new SnapshotStore(directory, new SnapshotStore.Retention(3, Duration.ofDays(30)));
+    }
+
+    /**
+     * Test to verify that a generation is restored line for line, header included.
+     */
+    @Test
+    @DisplayName("Should restore a generation exactly")
+    void testSnapshotAndRestore() throws Exception {
+        String header = VaultIntegrity.HEADER_PREFIX + "0000000002 " + "A".repeat(44);
+        long generation = store.snapshot(header, List.of("record-a", "record-b"), NOW);
+
+        Path target = directory.resolve("restored.dat");
+        assertEquals(2, store.restore(generation, target));
+        assertEquals(List.of(header, "record-a", "record-b"), Files.readAllLines(target));
+        assertEquals(header, store.header(generation));
+        assertEquals(List.of(new SnapshotStore.Snapshot(1, NOW, 2)), store.list());
+    }
+
+    /**
+     * Test to verify that unchanged records are stored once across generations, so each
+     * generation only adds the records that changed.
+     */
+    @Test
+    @DisplayName("Should store unchanged records only once")
+    void testRecordsAreDeduplicated() throws Exception {
+        store.snapshot(null, List.of("a", "b", "c"), NOW);
+        store.snapshot(null, List.of("a", "b", "c", "d"), NOW);
+        long latest = store.snapshot(null, List.of("a", "x", "c", "d", "d"), NOW);
+
+        assertEquals(5, countObjects());
+        assertEquals(List.of(1, 3, 4), store.tree(1).diff(store.tree(latest)));
+        assertEquals(3, store.restore(1, directory.resolve("first.dat")));
+        assertEquals(List.of("a", "b", "c"), Files.readAllLines(directory.resolve("first.dat")));
+    }
+
+    /**
+     * Test to verify that generations beyond the count or age limits are pruned with the records
+     * only they referenced, while the latest generation is always kept.
+     */
+    @Test
+    @DisplayName("Should prune old generations and unreferenced records")
+    void testPrune() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            store.snapshot(null, List.of("shared", "record" + i), NOW.minus(Duration.ofDays(5 - i)));
+        }
+        assertEquals(2, store.prune(NOW));
+        assertEquals(List.of(3L, 4L, 5L), store.list().stream().map(SnapshotStore.Snapshot::generation).toList());
+        assertEquals(4, countObjects());
+
+        assertEquals(2, store.prune(NOW.plus(Duration.ofDays(60))));
+        assertEquals(List.of(5L), store.list().stream().map(SnapshotStore.Snapshot::generation).toList());
+        assertEquals(2, countObjects());
+        assertEquals(6, store.snapshot(null, List.of("shared"), NOW));
+    }
+
+    /**
+     * Test to verify that a damaged record is detected on restore and the target is left untouched.
+     */
+    @Test
+    @DisplayName("Should refuse to restore damaged records")
+    void testDamagedRecordIsRejected() throws Exception {
+        long generation = store.snapshot(null, List.of("intact", "damaged"), NOW);
+        try (Stream<Path> files = Files.walk(directory.resolve("objects"))) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                if (Files.readString(file).equals("damaged")) {
+                    Files.writeString(file, "tampered");
+                }
+            }
+        }
+        Path target = directory.resolve("vault.dat");
+        Files.writeString(target, "current");
+
+        assertThrows(IOException.class, () -> store.restore(generation, target));
+        assertEquals("current", Files.readString(target));
+        assertThrows(NoSuchFileException.class, () -> store.restore(42, target));
+    }
+
+    /**
+     * Test to verify that deleting all generations leaves an empty store that numbers from the start.
+     */
+    @Test
+    @DisplayName("Should delete all generations")
+    void testDeleteAll() throws Exception {
+        store.snapshot(null, List.of("a"), NOW);
+        store.deleteAll();
+
+        assertEquals(List.of(), store.list());
+        assertEquals(0, countObjects());
+        assertEquals(1, store.snapshot(null, List.of("a"), NOW));
+        assertNull(store.header(1));
+    }
+
+    private long countObjects() throws IOException {
+        Path objects = directory.resolve("objects");
+        if (!Files.exists(objects)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(objects)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
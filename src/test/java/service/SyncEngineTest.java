@@ -0,0 +1,230 @@
+package service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.HybridClock;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SyncEngine} class, syncing replicas through a {@link DirectorySyncTransport}.
+ * Records are opaque to the engine, so plain strings stand in for encrypted lines.
+ */
+@DisplayName("SyncEngine Unit Tests")
+class SyncEngineTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+    private static final UUID X = UUID.randomUUID();
+    private static final UUID Y = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test to verify that additions, edits and deletions reach the other replica.
+     */
+    @Test
+    @DisplayName("Should propagate added, edited and deleted records")
+    void testChangesPropagate() throws Exception {
+        SyncEngine a = open("a", 0);
+        SyncEngine b = open("b", 0);
+        DirectorySyncTransport shared = new DirectorySyncTransport(directory.resolve("shared"));
+
+        Map<UUID, String> vaultA = new HashMap<>(Map.of(X, "x1", Y, "y1"));
+        Map<UUID, String> vaultB = new HashMap<>();
+        assertEquals(2, a.sync(vaultA, shared).sent());
+        apply(b, b.sync(vaultB, shared), vaultB);
+        assertEquals(vaultA, vaultB);
+
+        vaultB.put(Y, "y2");
+        vaultB.remove(X);
+        b.sync(vaultB, shared);
+        SyncEngine.Result result = a.sync(vaultA, shared);
+        assertEquals(Map.of(Y, "y2"), result.updated());
+        assertEquals(Set.of(X), result.deleted());
+        assertEquals(List.of(), result.conflicts());
+        apply(a, result, vaultA);
+        assertEquals(vaultB, vaultA);
+    }
+
+    /**
+     * Test to verify that a sync only sends the records changed since the previous one.
+     */
+    @Test
+    @DisplayName("Should send only changed records")
+    void testSendsOnlyChanges() throws Exception {
+        SyncEngine a = open("a", 0);
+        DirectorySyncTransport shared = new DirectorySyncTransport(directory.resolve("shared"));
+        Map<UUID, String> vault = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            vault.put(UUID.randomUUID(), "record" + i);
+        }
+        assertEquals(100, a.sync(vault, shared).sent());
+        assertEquals(0, a.sync(vault, shared).sent());
+
+        vault.put(vault.keySet().iterator().next(), "edited");
+        assertEquals(1, a.sync(vault, shared).sent());
+    }
+
+    /**
+     * Test to verify that a record edited on both replicas converges to the later edit on both,
+     * and that both replicas log the discarded edit.
+     */
+    @Test
+    @DisplayName("Should resolve concurrent edits by the latest write and log them")
+    void testConcurrentEditsConverge() throws Exception {
+        SyncEngine a = open("a", 1_000);
+        SyncEngine b = open("b", 2_000);
+        DirectorySyncTransport shared = new DirectorySyncTransport(directory.resolve("shared"));
+        Map<UUID, String> vaultA = new HashMap<>(Map.of(X, "original"));
+        Map<UUID, String> vaultB = new HashMap<>();
+        a.sync(vaultA, shared);
+        apply(b, b.sync(vaultB, shared), vaultB);
+
+        vaultA.put(X, "edited-on-a");
+        vaultB.put(X, "edited-on-b");
+        a.sync(vaultA, shared);
+        SyncEngine.Result atB = b.sync(vaultB, shared);
+        SyncEngine.Result atA = a.sync(vaultA, shared);
+        apply(a, atA, vaultA);
+
+        assertEquals(Map.of(), atB.updated());
+        assertEquals(Map.of(X, "edited-on-b"), vaultA);
+        for (SyncEngine.Result result : List.of(atA, atB)) {
+            assertEquals(1, result.conflicts().size());
+            assertEquals("edited-on-b", result.conflicts().getFirst().kept().record());
+            assertEquals("edited-on-a", result.conflicts().getFirst().discarded().record());
+        }
+        assertTrue(Files.readString(directory.resolve("a.log")).contains("edited-on-a"));
+    }
+
+    /**
+     * Test to verify that the state survives reopening, so unchanged records are not sent again.
+     */
+    @Test
+    @DisplayName("Should keep its state across restarts")
+    void testStateIsPersisted() throws Exception {
+        SyncEngine a = open("a", 0);
+        Map<UUID, String> vault = Map.of(X, "x1", Y, "y1");
+        a.commit(a.sync(vault, new DirectorySyncTransport(directory.resolve("shared"))));
+
+        SyncEngine reopened = open("a", 0);
+        assertEquals(a.replicaId(), reopened.replicaId());
+        assertEquals(0, reopened.recordLocal(vault));
+        assertEquals(1, reopened.recordLocal(Map.of(X, "x1")));
+    }
+
+    /**
+     * Test to verify that when the vault cannot take the received changes, nothing is saved: the
+     * reopened replica receives them again instead of sending them back as deletions.
+     */
+    @Test
+    @DisplayName("Should receive changes again when applying them to the vault fails")
+    void testFailedApplyIsNotCommitted() throws Exception {
+        SyncEngine a = open("a", 0);
+        DirectorySyncTransport shared = new DirectorySyncTransport(directory.resolve("shared"));
+        Map<UUID, String> vaultA = new HashMap<>(Map.of(X, "x1"));
+        a.commit(a.sync(vaultA, shared));
+
+        // The vault rejects the changes after the exchange, so the engine is dropped without committing
+        Map<UUID, String> vaultB = new HashMap<>();
+        SyncEngine dropped = open("b", 0);
+        SyncEngine.Result failed = dropped.sync(vaultB, shared);
+        assertEquals(Map.of(X, "x1"), failed.updated());
+        assertThrows(UnsupportedOperationException.class,
+                () -> apply(dropped, failed, Collections.unmodifiableMap(vaultB)));
+
+        SyncEngine b = open("b", 0);
+        SyncEngine.Result retried = b.sync(vaultB, shared);
+        assertEquals(Map.of(X, "x1"), retried.updated());
+        assertEquals(0, retried.sent());
+        apply(b, retried, vaultB);
+
+        SyncEngine.Result atA = a.sync(vaultA, shared);
+        assertEquals(Set.of(), atA.deleted());
+        apply(a, atA, vaultA);
+        assertEquals(Map.of(X, "x1"), vaultA);
+        assertEquals(vaultA, vaultB);
+    }
+
+    /**
+     * Test to verify that altered messages and messages under another vault key are rejected.
+     */
+    @Test
+    @DisplayName("Should reject altered or foreign messages")
+    void testRejectsUnauthenticMessages() throws Exception {
+        Path shared = directory.resolve("shared");
+        open("a", 0).sync(Map.of(X, "x1"), new DirectorySyncTransport(shared));
+        SyncEngine foreign = SyncEngine.open(directory.resolve("c.state"), directory.resolve("c.log"),
+                new SecretKeySpec(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES"));
+        assertThrows(IOException.class, () -> foreign.sync(Map.of(), new DirectorySyncTransport(shared)));
+
+        try (Stream<Path> files = Files.walk(shared)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.writeString(file, Files.readString(file).replace("x1", "x2"));
+            }
+        }
+        SyncEngine b = open("b", 0);
+        assertThrows(IOException.class, () -> b.sync(Map.of(), new DirectorySyncTransport(shared)));
+    }
+
+    /**
+     * Test to verify that an endless line and a message listing too many peers are rejected without
+     * buffering the whole message.
+     */
+    @Test
+    @DisplayName("Should reject oversized messages while reading them")
+    void testRejectsOversizedMessages() throws Exception {
+        SyncEngine engine = open("a", 0);
+        Reader endless = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                Arrays.fill(buffer, offset, offset + length, 'a');
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertThrows(IOException.class, () -> engine.read(new BufferedReader(endless)));
+
+        StringBuilder message = new StringBuilder("#changes1 " + UUID.randomUUID() + " 1\n");
+        for (int i = 0; i <= 1024; i++) {
+            message.append("seen ").append(UUID.randomUUID()).append(" 1\n");
+        }
+        IOException tooMany = assertThrows(IOException.class, () -> engine.read(new BufferedReader(new StringReader(message.toString()))));
+        assertTrue(tooMany.getMessage().contains("too many peers"), tooMany.getMessage());
+    }
+
+    private SyncEngine open(String name, long millis) throws Exception {
+        HybridClock clock = millis == 0 ? new HybridClock(0) : new HybridClock(() -> millis, 0);
+        return SyncEngine.open(directory.resolve(name + ".state"), directory.resolve(name + ".log"), KEY, clock);
+    }
+
+    static void apply(SyncEngine engine, SyncEngine.Result result, Map<UUID, String> vault) throws IOException {
+        vault.putAll(result.updated());
+        vault.keySet().removeAll(result.deleted());
+        engine.commit(result);
+    }
+}
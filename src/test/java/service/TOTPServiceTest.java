@@ -7,7 +7,10 @@ import org.junit.jupiter.api.Nested;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Unit tests for the {@link TOTPService} class.
@@ -113,6 +116,57 @@ public class TOTPServiceTest {
         }
     }
 
+    /**
+     * Nested test class for generating the codes of many seeds at once.
+     */
+    @Nested
+    @DisplayName("Batch Code Generation Tests")
+    class BatchTests {
+
+        private static final byte[] SHA1_SECRET = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SHA256_SECRET = "12345678901234567890123456789012".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] SHA512_SECRET =
+                "1234567890123456789012345678901234567890123456789012345678901234".getBytes(StandardCharsets.US_ASCII);
+
+        /**
+         * Tests the time-based test vectors of RFC 6238 for every algorithm, generated in one batch.
+         */
+        @Test
+        @DisplayName("Should match the RFC 6238 test vectors")
+        void testTimeBasedVectors() throws Exception {
+            List<OtpSeed> seeds = List.of(
+                    new OtpSeed(OtpSeed.Type.TOTP, SHA1_SECRET, "HmacSHA1", 8, 30, 0, "", "rfc"),
+                    new OtpSeed(OtpSeed.Type.TOTP, SHA256_SECRET, "HmacSHA256", 8, 30, 0, "", "rfc"),
+                    new OtpSeed(OtpSeed.Type.TOTP, SHA512_SECRET, "HmacSHA512", 8, 30, 0, "", "rfc"));
+            assertEquals(List.of("94287082", "46119246", "90693936"), TOTPService.generateCodes(seeds, 59));
+            assertEquals(List.of("65353130", "77737706", "47863826"), TOTPService.generateCodes(seeds, 20000000000L));
+        }
+
+        /**
+         * Tests the counter-based test vectors of RFC 4226, and that the batch mixes both kinds of seeds.
+         */
+        @Test
+        @DisplayName("Should match the RFC 4226 test vectors")
+        void testCounterBasedVectors() throws Exception {
+            OtpSeed seed = new OtpSeed(OtpSeed.Type.HOTP, SHA1_SECRET, "HmacSHA1", 6, 30, 0, "", "rfc");
+            List<OtpSeed> seeds = List.of(seed, seed.next(), seed.next().next(),
+                    new OtpSeed(OtpSeed.Type.TOTP, SHA1_SECRET, "HmacSHA1", 8, 30, 0, "", "rfc"));
+            assertEquals(List.of("755224", "287082", "359152", "94287082"), TOTPService.generateCodes(seeds, 59));
+        }
+
+        /**
+         * Tests that the seed in the URI given to an authenticator app gives the codes the vault login accepts.
+         */
+        @Test
+        @DisplayName("Should give the login code for the login seed")
+        void testLoginSeed() throws Exception {
+            String base64Secret = TOTPService.generateSecret();
+            OtpSeed seed = OtpSeed.parse(TOTPService.getOtpAuthUrl(base64Secret, TEST_ACCOUNT, TEST_ISSUER));
+            String code = TOTPService.generateCodes(List.of(seed), Instant.now().getEpochSecond()).getFirst();
+            assertTrue(TOTPService.validateCode(base64Secret, code));
+        }
+    }
+
     /**
      * Tests the fallback method that either loads an existing secret or generates a new one.
      */
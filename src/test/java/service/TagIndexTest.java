@@ -0,0 +1,99 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link TagIndex} class.
+ * These tests validate the filter syntax and incremental index updates.
+ */
+@DisplayName("TagIndex Unit Tests")
+class TagIndexTest {
+
+    private Credential awsProd;
+    private Credential awsStaging;
+    private Credential gcpProd;
+    private Credential legacy;
+    private TagIndex index;
+
+    /**
+     * Indexes a small set of tagged credentials before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        awsProd = tagged("aws-prod", "prod", "AWS");
+        awsStaging = tagged("aws-staging", "staging", "aws");
+        gcpProd = tagged("gcp-prod", "prod", "gcp", "folder:work");
+        legacy = tagged("old-aws", "prod", "aws", "deprecated");
+        index = new TagIndex(List.of(awsProd, awsStaging, gcpProd, legacy));
+    }
+
+    /**
+     * Test to verify AND, implicit AND, binary NOT and case-insensitive tags.
+     */
+    @Test
+    @DisplayName("Should combine tags with AND and NOT")
+    void testAndNot() {
+        assertEquals(List.of(awsProd), index.filter("prod AND aws NOT deprecated"));
+        assertEquals(List.of(awsProd, legacy), index.filter("PROD aws"));
+        assertEquals(List.of(awsProd, legacy), index.filter("prod and aws"));
+    }
+
+    /**
+     * Test to verify OR, unary NOT, parentheses and quoted tags.
+     */
+    @Test
+    @DisplayName("Should support OR, unary NOT, grouping and quoted tags")
+    void testOrGroupingAndQuotes() {
+        assertEquals(List.of(awsStaging, gcpProd), index.filter("staging OR gcp"));
+        assertEquals(List.of(awsStaging), index.filter("NOT prod"));
+        assertEquals(List.of(awsProd, gcpProd), index.filter("(aws OR gcp) AND NOT (staging OR deprecated)"));
+        assertEquals(List.of(gcpProd), index.filter("\"folder:work\""));
+        assertTrue(index.filter("unknown").isEmpty());
+        assertEquals(4, index.filter("  ").size());
+    }
+
+    /**
+     * Test to verify that malformed filters are rejected.
+     */
+    @Test
+    @DisplayName("Should reject malformed filters")
+    void testMalformedFilters() {
+        for (String filter : List.of("prod AND", "(prod", "prod)", "OR aws", "\"open")) {
+            assertThrows(IllegalArgumentException.class, () -> index.filter(filter), filter);
+        }
+    }
+
+    /**
+     * Test to verify that adds, removes, updates and rebuilds keep the index current.
+     */
+    @Test
+    @DisplayName("Should update the index incrementally")
+    void testIncrementalUpdates() {
+        index.remove(legacy);
+        assertEquals(List.of(awsProd), index.filter("prod aws"));
+
+        Credential retagged = awsStaging.withDetails("", "", List.of("prod", "aws"), Map.of());
+        index.add(retagged);
+        assertEquals(List.of(awsProd, retagged), index.filter("prod aws"));
+        assertTrue(index.filter("staging").isEmpty());
+        assertEquals(3, index.size());
+
+        index.rebuild(List.of(gcpProd));
+        assertEquals(List.of(gcpProd), index.filter("prod"));
+        assertEquals(1, index.query("").cardinality());
+    }
+
+    private static Credential tagged(String service, String... tags) {
+        return Credential.create(service, "user", "enc", "", "", List.of(tags), Map.of());
+    }
+}
@@ -0,0 +1,72 @@
+package service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the {@link TcpSyncTransport} class, syncing two replicas over the loopback interface.
+ */
+@DisplayName("TcpSyncTransport Unit Tests")
+class TcpSyncTransportTest {
+
+    private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Test to verify that both replicas receive each other's changes in one exchange, and that a
+     * second exchange without edits sends nothing.
+     */
+    @Test
+    @DisplayName("Should exchange changes in both directions")
+    void testExchange() throws Exception {
+        SyncEngine listening = SyncEngine.open(directory.resolve("a.state"), directory.resolve("a.log"), KEY);
+        SyncEngine connecting = SyncEngine.open(directory.resolve("b.state"), directory.resolve("b.log"), KEY);
+        UUID shared = UUID.randomUUID();
+        Map<UUID, String> vaultA = new HashMap<>(Map.of(shared, "shared", UUID.randomUUID(), "only-on-a"));
+        Map<UUID, String> vaultB = new HashMap<>(Map.of(UUID.randomUUID(), "only-on-b"));
+
+        SyncEngine.Result[] results = sync(listening, vaultA, connecting, vaultB);
+        SyncEngineTest.apply(listening, results[0], vaultA);
+        SyncEngineTest.apply(connecting, results[1], vaultB);
+        assertEquals(3, vaultA.size());
+        assertEquals(vaultA, vaultB);
+
+        results = sync(listening, vaultA, connecting, vaultB);
+        assertEquals(0, results[0].sent() + results[1].sent());
+    }
+
+    private static SyncEngine.Result[] sync(SyncEngine listening, Map<UUID, String> vaultA,
+                                            SyncEngine connecting, Map<UUID, String> vaultB) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<SyncEngine.Result> accepted = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return listening.sync(vaultA, TcpSyncTransport.accept(server));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            SyncEngine.Result connected = connecting.sync(vaultB,
+                    TcpSyncTransport.connect("localhost", server.getLocalPort()));
+            return new SyncEngine.Result[]{accepted.get(10, TimeUnit.SECONDS), connected};
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package service;
+
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.FlightRecording;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for the {@link VaultEvents} of the application, recorded with the bundled profile
+ * of {@link FlightRecording} and read back from the recording file.
+ */
+@DisplayName("VaultEvents Unit Tests")
+class VaultEventsTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Deletes the vault and clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(CredentialStorage.FILE_PATH);
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that the bundled profile enables every event of the application on top of the
+     * JDK's default settings.
+     */
+    @Test
+    @DisplayName("Should enable every event in the bundled profile")
+    void testProfileEnablesEveryEvent() throws Exception {
+        Map<String, String> settings = FlightRecording.profile().getSettings();
+        for (Class<?> event : VaultEvents.class.getDeclaredClasses()) {
+            @SuppressWarnings("unchecked")
+            EventType type = EventType.getEventType((Class<? extends jdk.jfr.Event>) event);
+            assertEquals(VaultEvents.CATEGORY, type.getCategoryNames().getFirst(), type.getName());
+            assertEquals("true", settings.get(type.getName() + "#enabled"), type.getName());
+        }
+        assertEquals(7, VaultEvents.class.getDeclaredClasses().length);
+    }
+
+    /**
+     * Test to verify that deriving the key, saving and loading the vault are recorded with their
+     * counts and sizes, and that a save encrypts only the credentials that changed.
+     */
+    @Test
+    @DisplayName("Should record key derivation, saves and loads")
+    void testVaultEvents() throws Exception {
+        Path file = directory.resolve("vault.jfr");
+        List<Credential> credentials = new ArrayList<>();
+        try (Recording recording = FlightRecording.start(file)) {
+            EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+            for (int i = 0; i < 5; i++) {
+                credentials.add(Credential.create("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+            }
+            CredentialStorage.saveCredentials(credentials);
+            List<Credential> loaded = CredentialStorage.loadCredentials();
+            loaded.set(2, loaded.get(2).withDetails("https://example.com", "", List.of(), Map.of()));
+            CredentialStorage.saveCredentials(loaded);
+            recording.stop();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        RecordedEvent derivation = only(events, "spm.KeyDerivation");
+        assertEquals("PBKDF2WithHmacSHA256", derivation.getString("algorithm"));
+        assertEquals(65536, derivation.getInt("iterations"));
+
+        List<RecordedEvent> saves = named(events, "spm.VaultSave");
+        assertEquals(2, saves.size());
+        assertEquals(List.of(5, 1), List.of(saves.get(0).getInt("encrypted"), saves.get(1).getInt("encrypted")));
+        for (RecordedEvent save : saves) {
+            assertEquals(5, save.getInt("credentials"));
+            assertEquals(1, save.getInt("files"));
+        }
+        assertEquals(Files.size(CredentialStorage.FILE_PATH), saves.get(1).getLong("bytes"));
+
+        RecordedEvent load = only(events, "spm.VaultLoad");
+        assertEquals(5, load.getInt("credentials"));
+        assertEquals(1, load.getInt("files"));
+        assertEquals(saves.get(0).getLong("bytes"), load.getLong("bytes"));
+
+        // Per save, the changed records and then the index; per load, the index
+        List<String> batches = new ArrayList<>();
+        for (RecordedEvent batch : named(events, "spm.CryptoBatch")) {
+            batches.add(batch.getString("operation") + " " + batch.getInt("ciphertexts") + "/" + batch.getInt("records"));
+        }
+        assertEquals(List.of("encrypt 5/5", "encrypt 1/5", "decrypt 1/5", "encrypt 1/1", "encrypt 1/5"), batches);
+    }
+
+    /**
+     * Test to verify that every attempt of a breach query is recorded with its status, response size
+     * and the cache status of the API's CDN, and that no event holds the hash prefix.
+     */
+    @Test
+    @DisplayName("Should record breach API requests and their cache status")
+    void testBreachRequestEvents() throws Exception {
+        byte[] body = "2DC183F740EE76F27B78EB39C8AD972A757:3\r\n".getBytes(StandardCharsets.US_ASCII);
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/range/", exchange -> {
+            if (requests.getAndIncrement() == 0) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.getResponseHeaders().add("CF-Cache-Status", "HIT");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        Path file = directory.resolve("breach.jfr");
+        try (Recording recording = FlightRecording.start(file)) {
+            BreachRangeClient client = new BreachRangeClient(
+                    URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/range/"),
+                    new BreachRangeClient.Settings(Duration.ofSeconds(2), 3, Duration.ofMillis(10),
+                            Duration.ofMillis(50), 4, Duration.ofSeconds(30)));
+            assertEquals(3, client.count("21BD1", "2DC183F740EE76F27B78EB39C8AD972A757").join());
+            recording.stop();
+        } finally {
+            server.stop(0);
+        }
+
+        List<RecordedEvent> attempts = named(RecordingFile.readAllEvents(file), "spm.BreachRequest");
+        assertEquals(2, attempts.size());
+        assertEquals(1, attempts.get(0).getInt("attempt"));
+        assertEquals(503, attempts.get(0).getInt("status"));
+        assertNull(attempts.get(0).getString("cacheStatus"));
+        assertEquals(2, attempts.get(1).getInt("attempt"));
+        assertEquals(200, attempts.get(1).getInt("status"));
+        assertEquals("HIT", attempts.get(1).getString("cacheStatus"));
+        assertEquals(body.length, attempts.get(1).getLong("bytes"));
+        assertFalse(attempts.get(1).getBoolean("circuitOpen"));
+        assertFalse(attempts.get(1).toString().contains("21BD1"));
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted(Comparator.comparing(RecordedEvent::getStartTime))
+                .toList();
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = named(events, name);
+        assertEquals(1, matching.size(), name);
+        return matching.getFirst();
+    }
+}
@@ -0,0 +1,116 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link VaultHealthService} class.
+ */
+@DisplayName("VaultHealthService Unit Tests")
+class VaultHealthServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    /**
+     * Opens an encryption session before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+    }
+
+    /**
+     * Clears the encryption session after each test.
+     */
+    @AfterEach
+    void tearDown() {
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify reuse groups, weak and old passwords, and unknown ages.
+     */
+    @Test
+    @DisplayName("Should find reused, weak and old passwords")
+    void testReport() throws Exception {
+        Credential mail = credential("mail", "Tr0ub4dor&3-xQ9#", 10);
+        Credential bank = credential("bank", "Tr0ub4dor&3-xQ9#", 400);
+        Credential forum = credential("forum", "password1", 30);
+        Credential legacy = new Credential("legacy", "me", EncryptionService.encrypt("hunter2hunter2"));
+
+        VaultHealthService.Report report = VaultHealthService.analyze(List.of(mail, bank, forum, legacy),
+                Duration.ofDays(365), null, NOW);
+
+        assertEquals(List.of(List.of(mail, bank)), report.reuseGroups());
+        assertEquals(2, report.entries().get(0).reuseCount());
+        assertFalse(report.entries().get(2).reused());
+        assertEquals(Set.of(forum, legacy), Set.copyOf(report.weak().stream().map(VaultHealthService.Entry::credential).toList()));
+        assertEquals(List.of(bank), report.old().stream().map(VaultHealthService.Entry::credential).toList());
+        assertEquals(List.of(legacy), report.ageUnknown().stream().map(VaultHealthService.Entry::credential).toList());
+        assertFalse(report.breachChecked());
+        assertTrue(report.failed().isEmpty());
+    }
+
+    /**
+     * Test to verify that breach lookups receive SHA-1 hashes and their counts are reported.
+     */
+    @Test
+    @DisplayName("Should combine breach lookups by hash")
+    void testBreachLookup() throws Exception {
+        Credential reused = credential("forum", "password1", 1);
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        VaultHealthService.Report report = VaultHealthService.analyze(List.of(reused, credential("x", "k#8Lq!2vNz@4", 1)),
+                Duration.ofDays(365), sha1 -> {
+                    seen.add(java.util.HexFormat.of().formatHex(sha1));
+                    return sha1[0] == (byte) 0xE3 ? 42 : 0;
+                }, NOW);
+
+        // SHA-1("password1") = e38ad214943daad1d64c102faec29de4afe9da3d
+        assertTrue(seen.contains("e38ad214943daad1d64c102faec29de4afe9da3d"));
+        assertEquals(List.of(reused), report.breached().stream().map(VaultHealthService.Entry::credential).toList());
+        assertEquals(42, report.breached().getFirst().breachCount());
+    }
+
+    /**
+     * Test to verify that undecryptable entries are reported as failed, and a session is required.
+     */
+    @Test
+    @DisplayName("Should report failures and require a session")
+    void testFailures() throws Exception {
+        List<Credential> credentials = new ArrayList<>();
+        credentials.add(new Credential("broken", "me", "not-a-ciphertext"));
+        credentials.add(credential("ok", "k#8Lq!2vNz@4", 1));
+
+        VaultHealthService.Report report = VaultHealthService.analyze(credentials, Duration.ofDays(365), null, NOW);
+        assertEquals(List.of(credentials.getFirst()), report.failed());
+        assertEquals(1, report.entries().size());
+
+        EncryptionService.clearSessionKeyAndSalt();
+        assertThrows(IllegalStateException.class,
+                () -> VaultHealthService.analyze(credentials, Duration.ofDays(365)));
+    }
+
+    private static Credential credential(String service, String password, int ageDays) throws Exception {
+        Instant modified = NOW.minus(Duration.ofDays(ageDays));
+        return new Credential(UUID.randomUUID(), service, "user", EncryptionService.encrypt(password), "", "",
+                List.of(), Map.of(), modified, modified);
+    }
+}
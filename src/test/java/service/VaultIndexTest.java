@@ -0,0 +1,162 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link VaultIndex} class, through saving and loading the vault.
+ */
+@DisplayName("VaultIndex Unit Tests")
+class VaultIndexTest {
+
+    private static final Path VAULT = CredentialStorage.FILE_PATH;
+
+    private List<Credential> credentials;
+
+    /**
+     * Opens a session and saves a vault of five credentials before each test.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        credentials = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            credentials.add(Credential.create("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.saveCredentials(credentials);
+    }
+
+    /**
+     * Deletes the vault files and clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(VAULT);
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that the index holds the metadata of every record with the place of its line, and
+     * that the lines read back from those places are the record lines of the file.
+     */
+    @Test
+    @DisplayName("Should index every record line")
+    void testIndexMatchesRecordLines() throws Exception {
+        List<VaultIndex.Entry> entries = VaultIndex.open(VAULT, EncryptionService.getSessionSecretKey());
+        assertNotNull(entries);
+        assertEquals(credentials.size(), entries.size());
+
+        List<VaultIndex.Location> locations = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            assertArrayEquals(CredentialStorage.formatMetadata(credentials.get(i)), entries.get(i).metadata());
+            locations.add(entries.get(i).location());
+        }
+        List<String> lines = Files.readAllLines(VAULT);
+        assertEquals(lines.subList(2, lines.size()), VaultIndex.readLines(locations));
+        assertEquals(credentials, withPasswords(CredentialStorage.loadCredentials()));
+    }
+
+    /**
+     * Test to verify that a record line is checked against the index when its password is read, and that
+     * lines added after the last indexed record are detected when the vault is opened.
+     */
+    @Test
+    @DisplayName("Should detect records that no longer match the index")
+    void testTamperedRecordsAreDetected() throws Exception {
+        List<String> lines = Files.readAllLines(VAULT);
+
+        List<String> swapped = new ArrayList<>(lines);
+        Collections.swap(swapped, 2, 3);
+        assertPasswordRejected(swapped, 0);
+
+        List<String> modified = new ArrayList<>(lines);
+        modified.set(4, lines.get(4).substring(1) + "A");
+        assertPasswordRejected(modified, 2);
+
+        List<String> appended = new ArrayList<>(lines);
+        appended.add(lines.get(2));
+        Files.write(VAULT, appended);
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+    }
+
+    /**
+     * Test to verify that a vault whose index cannot be decrypted is read record by record instead,
+     * and gets a new index on the next save.
+     */
+    @Test
+    @DisplayName("Should fall back to the records when the index is damaged")
+    void testDamagedIndexFallsBack() throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(VAULT));
+        lines.set(1, VaultIndex.PREFIX + "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=");
+        Files.write(VAULT, lines);
+        assertNull(VaultIndex.open(VAULT, EncryptionService.getSessionSecretKey()));
+
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        assertEquals(credentials, loaded);
+
+        CredentialStorage.saveCredentials(loaded);
+        assertNotNull(VaultIndex.open(VAULT, EncryptionService.getSessionSecretKey()));
+        assertEquals(lines.subList(2, lines.size()), Files.readAllLines(VAULT).subList(2, lines.size()));
+    }
+
+    /**
+     * Test to verify that unchanged records of a vault opened through its index keep their lines on the
+     * next save, and that lines are not read back from a file that changed in the meantime.
+     */
+    @Test
+    @DisplayName("Should copy unchanged record lines from the opened vault")
+    void testUnchangedLinesAreCopied() throws Exception {
+        List<String> before = Files.readAllLines(VAULT);
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        loaded.set(1, loaded.get(1).withDetails("https://example.com", "", List.of("web"), Map.of()));
+        CredentialStorage.saveCredentials(loaded);
+
+        List<String> after = Files.readAllLines(VAULT);
+        assertEquals(before.get(2), after.get(2));
+        assertNotEquals(before.get(3), after.get(3));
+        assertEquals(before.subList(4, before.size()), after.subList(4, after.size()));
+        assertEquals(withPasswords(loaded), withPasswords(CredentialStorage.loadCredentials()));
+
+        List<String> replaced = new ArrayList<>(after);
+        replaced.set(2, after.get(3));
+        Files.write(VAULT, replaced);
+        assertThrows(IOException.class, CredentialStorage::savedRecords);
+    }
+
+    private static void assertPasswordRejected(List<String> lines, int tampered) throws Exception {
+        Files.write(VAULT, lines);
+        Credential credential = CredentialStorage.loadCredentials().get(tampered);
+        assertThrows(IOException.class, () -> CredentialStorage.encryptedPassword(credential));
+    }
+
+    /**
+     * @param credentials Loaded credentials, which may hold no password.
+     * @return The credentials with the passwords read from their record lines.
+     */
+    static List<Credential> withPasswords(List<Credential> credentials) throws Exception {
+        List<Credential> read = new ArrayList<>();
+        for (Credential credential : credentials) {
+            read.add(credential.withEncryptedPassword(CredentialStorage.encryptedPassword(credential)));
+        }
+        return read;
+    }
+}
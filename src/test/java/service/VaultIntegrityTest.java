@@ -0,0 +1,130 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link VaultIntegrity} class, through saving and loading the vault.
+ */
+@DisplayName("VaultIntegrity Unit Tests")
+class VaultIntegrityTest {
+
+    private static final Path VAULT = CredentialStorage.FILE_PATH;
+
+    private List<Credential> credentials;
+
+    /**
+     * Opens a session and saves a vault of five credentials before each test.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        credentials = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            credentials.add(Credential.create("service" + i, "user", EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.saveCredentials(credentials);
+    }
+
+    /**
+     * Deletes the vault files and clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(VAULT);
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that a dropped, reordered or duplicated record is detected although every
+     * remaining record still decrypts.
+     */
+    @Test
+    @DisplayName("Should detect dropped, reordered and duplicated records")
+    void testTamperingIsDetected() throws Exception {
+        List<String> lines = Files.readAllLines(VAULT);
+        assertTrue(VaultIntegrity.isHeader(lines.getFirst()));
+        assertEquals(credentials, VaultIndexTest.withPasswords(CredentialStorage.loadCredentials()));
+
+        List<String> dropped = new ArrayList<>(lines);
+        dropped.remove(3);
+        assertRejected(dropped);
+
+        List<String> reordered = new ArrayList<>(lines);
+        Collections.swap(reordered, 1, 2);
+        assertRejected(reordered);
+
+        List<String> duplicated = new ArrayList<>(lines);
+        duplicated.add(lines.get(2));
+        assertRejected(duplicated);
+
+        assertRejected(lines.subList(0, lines.size() - 1));
+    }
+
+    /**
+     * Test to verify that a header made under another key is rejected, and a malformed one too.
+     */
+    @Test
+    @DisplayName("Should reject headers under another key or malformed")
+    void testForeignHeaderIsRejected() throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(VAULT));
+        EncryptionService.setSessionKeyAndSalt("otherPassword", "testSalt123");
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        lines.set(0, VaultIntegrity.HEADER_PREFIX + "garbage");
+        assertRejected(lines);
+    }
+
+    /**
+     * Test to verify that stripping the header, and the index after it, from a vault of binary records
+     * is detected. Only vaults in the original text form, written before the header existed, may lack one.
+     */
+    @Test
+    @DisplayName("Should reject a vault whose header was stripped")
+    void testStrippedHeaderIsRejected() throws Exception {
+        List<String> lines = Files.readAllLines(VAULT);
+        assertTrue(VaultIndex.isIndex(lines.get(1)));
+        assertRejected(lines.subList(2, lines.size()));
+        assertRejected(lines.subList(3, lines.size()));
+    }
+
+    /**
+     * Test to verify that the vault and its previous generation are diffed record by record, since
+     * unchanged records keep their ciphertext across saves.
+     */
+    @Test
+    @DisplayName("Should diff the vault against its previous generation without decrypting")
+    void testDiffAgainstBackup() throws Exception {
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        loaded.set(2, loaded.get(2).withDetails("https://example.com", "", List.of("web"), java.util.Map.of()));
+        loaded.add(Credential.create("service5", "user", EncryptionService.encrypt("pass5")));
+        CredentialStorage.saveCredentials(loaded);
+
+        long latest = CredentialStorage.SNAPSHOTS.list().getLast().generation();
+        assertEquals(List.of(2, 5), CredentialStorage.SNAPSHOTS.tree(latest - 1).diff(VaultIntegrity.readTree(VAULT)));
+        assertEquals(List.of(), CredentialStorage.SNAPSHOTS.tree(latest).diff(VaultIntegrity.readTree(VAULT)));
+        assertEquals(List.of(), VaultIntegrity.diff(VAULT, VAULT));
+        assertEquals(6, VaultIntegrity.readTree(VAULT).size());
+    }
+
+    private static void assertRejected(List<String> lines) throws IOException {
+        Files.write(VAULT, lines);
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+    }
+}
@@ -0,0 +1,189 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link VaultRekeyService} class.
+ * These tests validate re-encryption of the vault under a new master password
+ * and recovery from an interrupted re-key.
+ */
+@DisplayName("VaultRekeyService Unit Tests")
+class VaultRekeyServiceTest {
+
+    private static final Path VAULT = CredentialStorage.FILE_PATH;
+    private static final Path PASSWORD = Paths.get(AuthService.PASSWORD_FILE);
+    private static final Path SALT = Paths.get(EncryptionService.SALT_FILE);
+    private static final Path KEY_CHECK = Paths.get(EncryptionService.KEY_CHECK_FILE);
+
+    /**
+     * Opens a session under the old master password before each test.
+     */
+    @BeforeEach
+    void setUp() {
+        EncryptionService.setSessionKeyAndSalt("oldMasterPass", "oldSalt123");
+    }
+
+    /**
+     * Tests that every record is re-encrypted with the new key and that the
+     * password hash, salt, key-check value and attachment store key are replaced together.
+     */
+    @Test
+    @DisplayName("Should re-encrypt the vault under the new master password")
+    void testRekeyReencryptsVault() throws Exception {
+        List<Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            credentials.add(new Credential("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.saveCredentials(credentials);
+        Path file = Files.createTempFile("attachment", ".txt");
+        Files.writeString(file, "-----BEGIN CERTIFICATE-----");
+        String attachment = CredentialStorage.ATTACHMENTS.put(file, EncryptionService.getSessionSecretKey());
+        Files.delete(file);
+
+        int records = VaultRekeyService.rekey("newMasterPass");
+
+        assertEquals(300, records);
+        assertTrue(BCrypt.checkpw("newMasterPass", Files.readString(PASSWORD)));
+        assertTrue(EncryptionService.verifySessionPassword("newMasterPass"));
+        assertFalse(Files.exists(VaultRekeyService.JOURNAL_PATH));
+
+        var newKey = EncryptionService.getSecretKey("newMasterPass", Files.readString(SALT));
+        assertTrue(EncryptionService.matchesKeyCheck(newKey, Files.readString(KEY_CHECK)));
+
+        EncryptionService.setSessionKeyAndSalt("newMasterPass", Files.readString(SALT));
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        assertEquals(300, loaded.size());
+        assertEquals("service299", loaded.get(299).serviceName());
+        assertEquals("pass299", EncryptionService.decrypt(loaded.get(299).encryptedPassword()));
+        assertEquals("-----BEGIN CERTIFICATE-----", new String(CredentialStorage.ATTACHMENTS.read(attachment, 0, 100,
+                EncryptionService.getSessionSecretKey()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests that every shard of a sharded vault is re-encrypted into a new file under the new key,
+     * that the old shard files are deleted, and that the vault keeps its shards.
+     */
+    @Test
+    @DisplayName("Should re-encrypt every shard of a sharded vault")
+    void testRekeyShardedVault() throws Exception {
+        List<Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            credentials.add(Credential.create("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.reshard(credentials, 3);
+        List<String> before;
+        try (Stream<Path> files = Files.list(VaultShards.directory(VAULT))) {
+            before = files.map(Path::toString).toList();
+        }
+
+        assertEquals(50, VaultRekeyService.rekey("newMasterPass"));
+
+        for (String file : before) {
+            assertFalse(Files.exists(Paths.get(file)));
+        }
+        EncryptionService.setSessionKeyAndSalt("newMasterPass", Files.readString(SALT));
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        assertEquals(3, CredentialStorage.shardCount());
+        assertEquals(50, loaded.size());
+        Credential first = loaded.stream().filter(c -> c.serviceName().equals("service0")).findFirst().orElseThrow();
+        assertEquals("pass0", EncryptionService.decrypt(first.encryptedPassword()));
+    }
+
+    /**
+     * Tests that a vault which cannot be decrypted with the current key is left untouched.
+     */
+    @Test
+    @DisplayName("Should leave the vault untouched when a record cannot be decrypted")
+    void testRekeyRollsBackOnFailure() throws Exception {
+        Files.writeString(VAULT, "bm90IGEgdmFsaWQgcmVjb3JkIGF0IGFsbA==\n");
+        Files.writeString(SALT, "oldSalt");
+
+        assertThrows(Exception.class, () -> VaultRekeyService.rekey("newMasterPass"));
+
+        assertEquals("bm90IGEgdmFsaWQgcmVjb3JkIGF0IGFsbA==\n", Files.readString(VAULT));
+        assertFalse(Files.exists(Paths.get(VAULT + VaultRekeyService.STAGED_SUFFIX)));
+        assertEquals("oldSalt", Files.readString(SALT));
+    }
+
+    /**
+     * Tests that a vault whose records no longer match its integrity header is not re-keyed,
+     * so a re-key cannot launder a tampered vault under a fresh header.
+     */
+    @Test
+    @DisplayName("Should refuse to re-key a tampered vault")
+    void testRekeyRejectsTamperedVault() throws Exception {
+        List<Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            credentials.add(new Credential("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.saveCredentials(credentials);
+        List<String> lines = new ArrayList<>(Files.readAllLines(VAULT));
+        lines.remove(2);
+        Files.write(VAULT, lines);
+        Files.writeString(SALT, "oldSalt");
+
+        assertThrows(java.io.IOException.class, () -> VaultRekeyService.rekey("newMasterPass"));
+
+        assertEquals(lines, Files.readAllLines(VAULT));
+        assertFalse(Files.exists(Paths.get(VAULT + VaultRekeyService.STAGED_SUFFIX)));
+        assertEquals("oldSalt", Files.readString(SALT));
+    }
+
+    /**
+     * Tests that staged files without a committed journal are discarded,
+     * and that a committed journal moves the staged files into place.
+     */
+    @Test
+    @DisplayName("Should roll back uncommitted and roll forward committed re-keys")
+    void testRecoverInterruptedRekey() throws Exception {
+        Path stagedSalt = Paths.get(SALT + VaultRekeyService.STAGED_SUFFIX);
+        Files.writeString(SALT, "oldSalt");
+
+        Files.writeString(stagedSalt, "newSalt");
+        assertTrue(VaultRekeyService.recoverInterruptedRekey());
+        assertFalse(Files.exists(stagedSalt));
+        assertEquals("oldSalt", Files.readString(SALT));
+
+        Files.writeString(stagedSalt, "newSalt");
+        Files.writeString(VaultRekeyService.JOURNAL_PATH, "COMMITTED");
+        assertTrue(VaultRekeyService.recoverInterruptedRekey());
+        assertEquals("newSalt", Files.readString(SALT));
+        assertFalse(Files.exists(VaultRekeyService.JOURNAL_PATH));
+
+        assertFalse(VaultRekeyService.recoverInterruptedRekey());
+    }
+
+    /**
+     * Deletes the vault files written by the tests and clears the session.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Path path : List.of(VAULT, PASSWORD, SALT, KEY_CHECK, VaultRekeyService.JOURNAL_PATH)) {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(Paths.get(path + VaultRekeyService.STAGED_SUFFIX));
+        }
+        VaultShardsTest.deleteShards();
+        CredentialStorage.loadCredentials();
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        CredentialStorage.ATTACHMENTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+}
@@ -0,0 +1,234 @@
+package service;
+
+import model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link VaultShards} class, through saving and loading a sharded vault.
+ */
+@DisplayName("VaultShards Unit Tests")
+class VaultShardsTest {
+
+    private static final Path VAULT = CredentialStorage.FILE_PATH;
+    private static final Path SHARDS = VaultShards.directory(VAULT);
+
+    private List<Credential> credentials;
+
+    /**
+     * Opens a session and saves a vault of 40 credentials in 4 shards before each test.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        EncryptionService.setSessionKeyAndSalt("testMasterPassword", "testSalt123");
+        credentials = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            credentials.add(Credential.create("service" + i, "user" + i, EncryptionService.encrypt("pass" + i)));
+        }
+        CredentialStorage.reshard(credentials, 4);
+    }
+
+    /**
+     * Deletes the vault files, resets the layout to a single file and clears the session after each test.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        Files.deleteIfExists(VAULT);
+        deleteShards();
+        CredentialStorage.loadCredentials();
+        CredentialStorage.SNAPSHOTS.deleteAll();
+        EncryptionService.clearSessionKeyAndSalt();
+    }
+
+    /**
+     * Test to verify that every credential is stored in the shard of its id, that the vault loads back
+     * from its shards, and that a save writes only the shard of the credential that changed.
+     */
+    @Test
+    @DisplayName("Should rewrite only the shards that changed")
+    void testOnlyChangedShardsAreWritten() throws Exception {
+        assertTrue(VaultShards.isManifest(VAULT));
+        Set<String> before = shardFiles();
+        assertEquals(4, before.size());
+
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        assertEquals(4, CredentialStorage.shardCount());
+        assertEquals(new HashSet<>(credentials), new HashSet<>(VaultIndexTest.withPasswords(loaded)));
+        for (int shard = 0; shard < 4; shard++) {
+            String prefix = String.format("%02x-", shard);
+            Path file = SHARDS.resolve(before.stream().filter(name -> name.startsWith(prefix)).findFirst().orElseThrow());
+            List<VaultIndex.Entry> entries = VaultIndex.open(file, EncryptionService.getSessionSecretKey());
+            for (VaultIndex.Entry entry : entries) {
+                assertEquals(shard, VaultShards.shardOf(CredentialStorage.parseMetadata(entry.metadata()).id(), 4));
+            }
+        }
+
+        CredentialStorage.saveCredentials(loaded);
+        assertEquals(before, shardFiles());
+
+        Credential changed = loaded.get(7);
+        loaded.set(7, changed.withDetails("https://example.com", "", List.of(), Map.of()));
+        CredentialStorage.saveCredentials(loaded);
+        Set<String> after = shardFiles();
+        Set<String> kept = new HashSet<>(before);
+        kept.retainAll(after);
+        assertEquals(3, kept.size());
+        assertEquals(String.format("%02x-", VaultShards.shardOf(changed.id(), 4)),
+                after.stream().filter(name -> !before.contains(name)).findFirst().orElseThrow().substring(0, 3));
+        assertEquals(new HashSet<>(VaultIndexTest.withPasswords(loaded)),
+                new HashSet<>(VaultIndexTest.withPasswords(CredentialStorage.loadCredentials())));
+    }
+
+    /**
+     * Test to verify that a modified manifest, a shard replaced by an older version of itself and a vault
+     * opened under another key are all rejected.
+     */
+    @Test
+    @DisplayName("Should detect a modified manifest or a replaced shard")
+    void testTamperingIsDetected() throws Exception {
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        Set<String> before = shardFiles();
+        Map<String, byte[]> old = new HashMap<>();
+        for (String name : before) {
+            old.put(name.substring(0, 3), Files.readAllBytes(SHARDS.resolve(name)));
+        }
+        loaded.set(0, loaded.get(0).withDetails("https://example.com", "", List.of(), Map.of()));
+        CredentialStorage.saveCredentials(loaded);
+        String rewritten = shardFiles().stream().filter(name -> !before.contains(name)).findFirst().orElseThrow();
+        byte[] current = Files.readAllBytes(SHARDS.resolve(rewritten));
+
+        Files.write(SHARDS.resolve(rewritten), old.get(rewritten.substring(0, 3)));
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+        Files.write(SHARDS.resolve(rewritten), current);
+
+        String manifest = Files.readString(VAULT);
+        Files.writeString(VAULT, manifest.replace(rewritten, rewritten.substring(0, 3) + "00000000.dat"));
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+        Files.writeString(VAULT, manifest);
+        assertEquals(40, CredentialStorage.loadCredentials().size());
+
+        EncryptionService.setSessionKeyAndSalt("otherMasterPassword", "testSalt123");
+        assertThrows(IOException.class, CredentialStorage::loadCredentials);
+    }
+
+    /**
+     * Test to verify that resharding moves records between files without re-encrypting them,
+     * and that a count of 1 joins the shards back into a single file.
+     */
+    @Test
+    @DisplayName("Should reshard without re-encrypting")
+    void testReshard() throws Exception {
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        Map<UUID, String> records = CredentialStorage.savedRecords();
+
+        CredentialStorage.reshard(loaded, 7);
+        assertEquals(7, shardFiles().size());
+        assertEquals(records, CredentialStorage.savedRecords());
+        loaded = CredentialStorage.loadCredentials();
+        assertEquals(7, CredentialStorage.shardCount());
+        assertEquals(records, CredentialStorage.savedRecords());
+
+        CredentialStorage.reshard(loaded, 1);
+        assertFalse(VaultShards.isManifest(VAULT));
+        assertFalse(Files.exists(SHARDS));
+        assertEquals(new HashSet<>(credentials), new HashSet<>(VaultIndexTest.withPasswords(CredentialStorage.loadCredentials())));
+        assertEquals(records, CredentialStorage.savedRecords());
+
+        assertThrows(IllegalArgumentException.class, () -> CredentialStorage.reshard(credentials, 0));
+        assertEquals(1, CredentialStorage.shardCount());
+    }
+
+    /**
+     * Test to verify that restoring a backup generation of a sharded vault keeps it sharded.
+     */
+    @Test
+    @DisplayName("Should restore a generation into the shards")
+    void testRestoreKeepsShards() throws Exception {
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        long generation = CredentialStorage.SNAPSHOTS.list().getLast().generation();
+        loaded.removeFirst();
+        CredentialStorage.saveCredentials(loaded);
+        assertEquals(39, CredentialStorage.loadCredentials().size());
+
+        assertEquals(40, CredentialStorage.restoreGeneration(generation));
+        assertTrue(VaultShards.isManifest(VAULT));
+        assertEquals(new HashSet<>(credentials), new HashSet<>(VaultIndexTest.withPasswords(CredentialStorage.loadCredentials())));
+        assertEquals(4, CredentialStorage.shardCount());
+    }
+
+    /**
+     * Test to verify that a failed write of the joined vault leaves the sharded vault in place, and that
+     * a vault file that is missing or not recognized does not cost the shards.
+     */
+    @Test
+    @DisplayName("Should keep the shards when joining fails or the vault file is damaged")
+    void testShardsSurviveDamagedVaultFile() throws Exception {
+        List<Credential> loaded = CredentialStorage.loadCredentials();
+        Set<String> before = shardFiles();
+        Path temp = Path.of(VAULT + ".tmp");
+        Files.createDirectories(temp.resolve("blocked"));
+        try {
+            assertThrows(IOException.class, () -> CredentialStorage.reshard(loaded, 1));
+        } finally {
+            Files.delete(temp.resolve("blocked"));
+            Files.delete(temp);
+        }
+        assertTrue(VaultShards.isManifest(VAULT));
+        assertEquals(before, shardFiles());
+        assertEquals(40, CredentialStorage.loadCredentials().size());
+
+        String manifest = Files.readString(VAULT);
+        for (String damaged : List.of("", "#shards1 00", "not a vault\n")) {
+            Files.writeString(VAULT, damaged);
+            VaultShards.sweep(VAULT);
+            assertEquals(before, shardFiles());
+        }
+        Files.delete(VAULT);
+        VaultShards.sweep(VAULT);
+        assertEquals(before, shardFiles());
+
+        Files.writeString(VAULT, manifest);
+        assertEquals(new HashSet<>(credentials), new HashSet<>(VaultIndexTest.withPasswords(CredentialStorage.loadCredentials())));
+    }
+
+    /**
+     * Deletes the shard directory of the vault and everything in it.
+     */
+    static void deleteShards() throws IOException {
+        if (!Files.isDirectory(SHARDS)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(SHARDS)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(SHARDS);
+    }
+
+    private static Set<String> shardFiles() throws IOException {
+        try (Stream<Path> files = Files.list(SHARDS)) {
+            return files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link CompressedBitmap} class.
+ * Results are compared with {@link BitSet} on sparse, dense and mixed sets so that
+ * both container kinds and the conversions between them are covered.
+ */
+@DisplayName("CompressedBitmap Unit Tests")
+class CompressedBitmapTest {
+
+    /**
+     * Test to verify adding, removing and looking up values, including across chunk boundaries.
+     */
+    @Test
+    @DisplayName("Should add, remove and find values")
+    void testAddRemoveContains() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5));
+        assertTrue(bitmap.add(70_000));
+        assertTrue(bitmap.add(1));
+
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(70_000));
+        assertFalse(bitmap.contains(6));
+        assertFalse(bitmap.contains(-1));
+        assertArrayEquals(new int[]{1, 5, 70_000}, bitmap.toArray());
+
+        assertTrue(bitmap.remove(70_000));
+        assertFalse(bitmap.remove(70_000));
+        assertEquals(2, bitmap.cardinality());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    /**
+     * Test to verify that a chunk switches to a bitmap when it grows dense and back when it shrinks.
+     */
+    @Test
+    @DisplayName("Should convert between sparse and dense chunks")
+    void testDenseConversion() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 10_000; i++) {
+            bitmap.add(i * 3);
+        }
+        assertEquals(10_000, bitmap.cardinality());
+        for (int i = 0; i < 10_000; i += 2) {
+            bitmap.remove(i * 3);
+        }
+        assertEquals(5_000, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertFalse(bitmap.contains(0));
+    }
+
+    /**
+     * Test to verify AND, OR and ANDNOT against BitSet for random sets of varying density.
+     */
+    @Test
+    @DisplayName("Should match BitSet for set operations")
+    void testSetOperations() {
+        Random random = new Random(42);
+        int[] densities = {2, 20, 200, 2000};
+        for (int a : densities) {
+            for (int b : densities) {
+                BitSet left = new BitSet();
+                BitSet right = new BitSet();
+                CompressedBitmap x = randomBitmap(random, a, left);
+                CompressedBitmap y = randomBitmap(random, b, right);
+
+                BitSet and = (BitSet) left.clone();
+                and.and(right);
+                BitSet or = (BitSet) left.clone();
+                or.or(right);
+                BitSet andNot = (BitSet) left.clone();
+                andNot.andNot(right);
+
+                assertArrayEquals(and.stream().toArray(), x.and(y).toArray());
+                assertArrayEquals(or.stream().toArray(), x.or(y).toArray());
+                assertArrayEquals(andNot.stream().toArray(), x.andNot(y).toArray());
+                assertArrayEquals(left.stream().toArray(), x.toArray(), "Operands must not change");
+            }
+        }
+    }
+
+    /**
+     * Test to verify that copies and operation results are independent of their sources.
+     */
+    @Test
+    @DisplayName("Should return independent results")
+    void testIndependentResults() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        bitmap.add(1);
+        CompressedBitmap copy = bitmap.copy();
+        CompressedBitmap union = bitmap.or(new CompressedBitmap());
+
+        bitmap.add(2);
+        bitmap.clear();
+
+        assertArrayEquals(new int[]{1}, copy.toArray());
+        assertArrayEquals(new int[]{1}, union.toArray());
+        assertTrue(bitmap.isEmpty());
+    }
+
+    private static CompressedBitmap randomBitmap(Random random, int oneIn, BitSet mirror) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 200_000; i++) {
+            if (random.nextInt(oneIn) == 0) {
+                bitmap.add(i);
+                mirror.set(i);
+            }
+        }
+        return bitmap;
+    }
+}
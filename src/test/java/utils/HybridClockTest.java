@@ -0,0 +1,59 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link HybridClock} class.
+ */
+@DisplayName("HybridClock Unit Tests")
+class HybridClockTest {
+
+    /**
+     * Test to verify that timestamps follow the wall clock and increase within the same millisecond.
+     */
+    @Test
+    @DisplayName("Should follow the wall clock and never repeat")
+    void testFollowsWallClock() {
+        AtomicLong wall = new AtomicLong(1_000);
+        HybridClock clock = new HybridClock(wall::get, 0);
+
+        long first = clock.now();
+        long second = clock.now();
+        assertEquals(1_000, HybridClock.millis(first));
+        assertEquals(0, HybridClock.counter(first));
+        assertEquals(1, HybridClock.counter(second));
+
+        wall.set(2_000);
+        long third = clock.now();
+        assertEquals(2_000, HybridClock.millis(third));
+        assertEquals(0, HybridClock.counter(third));
+    }
+
+    /**
+     * Test to verify that a clock that lags behind still orders its events after those it received,
+     * and does not go backwards when the wall clock does.
+     */
+    @Test
+    @DisplayName("Should order local events after received ones")
+    void testOrdersAfterReceived() {
+        AtomicLong wall = new AtomicLong(1_000);
+        HybridClock clock = new HybridClock(wall::get, 0);
+        HybridClock ahead = new HybridClock(() -> 5_000, 0);
+
+        long remote = ahead.now();
+        clock.update(remote);
+        long local = clock.now();
+        assertTrue(local > remote);
+        assertEquals(5_000, HybridClock.millis(local));
+
+        wall.set(500);
+        assertTrue(clock.now() > local);
+        assertTrue(new HybridClock(wall::get, local).now() > local);
+    }
+}
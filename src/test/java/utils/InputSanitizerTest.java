@@ -0,0 +1,123 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the {@link InputSanitizer} class.
+ * Validates trimming, length limits, numeric mode and character policies.
+ */
+@DisplayName("InputSanitizer Unit Tests")
+class InputSanitizerTest {
+
+    /**
+     * Test to verify that valid input is trimmed and returned without a copy when no trimming is needed.
+     */
+    @Test
+    @DisplayName("Should trim input and avoid copying clean input")
+    void testSanitizeTrims() {
+        assertEquals("Gmail", InputSanitizer.sanitize("  Gmail \t", 50, false));
+        String clean = "user@example.com";
+        assertSame(clean, InputSanitizer.sanitize(clean, 50, false));
+    }
+
+    /**
+     * Test to ensure each unsafe character is rejected in text mode.
+     *
+     * @param input input containing one unsafe character
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"a;b", "a'b", "a\"b", "a<b", "a>b", "a,b"})
+    @DisplayName("Should reject unsafe characters")
+    void testSanitizeRejectsUnsafeCharacters(String input) {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> InputSanitizer.sanitize(input, 50, false));
+        assertEquals("Input contains unsafe characters.", ex.getMessage());
+    }
+
+    /**
+     * Test to verify numeric mode accepts digits only and reports the numeric error.
+     */
+    @Test
+    @DisplayName("Should accept only digits in numeric mode")
+    void testNumericMode() {
+        assertEquals("123456", InputSanitizer.sanitize(" 123456 ", 6, true));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> InputSanitizer.sanitize("12a456", 6, true));
+        assertEquals("Input must contain only numeric characters.", ex.getMessage());
+        assertEquals(InputSanitizer.NOT_NUMERIC, InputSanitizer.validate("12;456", 6, InputSanitizer.CharPolicy.NUMERIC));
+    }
+
+    /**
+     * Test to verify the status codes returned by the allocation-free validation.
+     */
+    @Test
+    @DisplayName("Should return status codes without throwing")
+    void testValidateStatusCodes() {
+        InputSanitizer.CharPolicy policy = InputSanitizer.CharPolicy.SAFE_TEXT;
+        assertEquals(InputSanitizer.VALID, InputSanitizer.validate("ok", 2, policy));
+        assertEquals(InputSanitizer.VALID, InputSanitizer.validate("  ok  ", 2, policy));
+        assertEquals(InputSanitizer.NULL_INPUT, InputSanitizer.validate(null, 2, policy));
+        assertEquals(InputSanitizer.INVALID_LENGTH, InputSanitizer.validate("   ", 2, policy));
+        assertEquals(InputSanitizer.INVALID_LENGTH, InputSanitizer.validate("toolong", 2, policy));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("<>", 2, policy));
+        assertEquals(InputSanitizer.VALID, InputSanitizer.validate("café", 4, policy));
+    }
+
+    /**
+     * Test to verify custom character policies.
+     */
+    @Test
+    @DisplayName("Should apply custom character policies")
+    void testCustomPolicies() {
+        InputSanitizer.CharPolicy hex = InputSanitizer.CharPolicy.only("0123456789abcdefABCDEF");
+        assertEquals(InputSanitizer.VALID, InputSanitizer.validate("00aF9", 5, hex));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("00aG9", 5, hex));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("00aé9", 5, hex));
+
+        InputSanitizer.CharPolicy noPipe = InputSanitizer.CharPolicy.allExcept("|");
+        assertEquals("a,b", InputSanitizer.sanitize("a,b", 5, noPipe));
+        assertThrows(IllegalArgumentException.class, () -> InputSanitizer.sanitize("a|b", 5, noPipe));
+    }
+
+    /**
+     * Test to verify the policies for structured credential fields.
+     */
+    @Test
+    @DisplayName("Should allow punctuation but not control characters in printable fields")
+    void testPrintablePolicies() {
+        InputSanitizer.CharPolicy printable = InputSanitizer.CharPolicy.PRINTABLE;
+        assertEquals("O'Brien, \"Bob\" <bob>", InputSanitizer.sanitize("O'Brien, \"Bob\" <bob>", 50, printable));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("a\u0000b", 5, printable));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("a\nb", 5, printable));
+        assertEquals(InputSanitizer.UNSAFE_CHARACTER, InputSanitizer.validate("a\u007Fb", 5, printable));
+        assertEquals(InputSanitizer.VALID, InputSanitizer.validate("a\n\tb", 5, InputSanitizer.CharPolicy.MULTILINE));
+    }
+
+    /**
+     * Test to verify that secrets are trimmed into a buffer and the input is wiped, valid or not.
+     */
+    @Test
+    @DisplayName("Should sanitize secrets without keeping the input")
+    void testSanitizeSecret() throws Exception {
+        char[] input = "  s3cret!  ".toCharArray();
+        try (SecretBuffer secret = InputSanitizer.sanitizeSecret(input, 10, InputSanitizer.CharPolicy.SAFE_TEXT)) {
+            assertArrayEquals("s3cret!".toCharArray(), secret.toChars());
+        }
+        assertArrayEquals(new char[input.length], input);
+
+        char[] unsafe = "bad;input".toCharArray();
+        assertThrows(IllegalArgumentException.class,
+                () -> InputSanitizer.sanitizeSecret(unsafe, 20, InputSanitizer.CharPolicy.SAFE_TEXT));
+        assertArrayEquals(new char[unsafe.length], unsafe);
+        assertThrows(IllegalArgumentException.class,
+                () -> InputSanitizer.sanitizeSecret(null, 20, InputSanitizer.CharPolicy.SAFE_TEXT));
+    }
+}
@@ -0,0 +1,108 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link MerkleTree} class.
+ */
+@DisplayName("MerkleTree Unit Tests")
+class MerkleTreeTest {
+
+    /**
+     * Test to verify that the root changes when leaves are modified, reordered, dropped or duplicated.
+     */
+    @Test
+    @DisplayName("Should commit to every leaf and its position")
+    void testRootCommitsToOrder() {
+        List<byte[]> leaves = leaves(5);
+        byte[] root = MerkleTree.of(leaves).root();
+        assertArrayEquals(root, MerkleTree.of(leaves(5)).root());
+
+        List<byte[]> reordered = new ArrayList<>(leaves);
+        Collections.swap(reordered, 1, 3);
+        assertFalse(Arrays.equals(root, MerkleTree.of(reordered).root()));
+        assertFalse(Arrays.equals(root, MerkleTree.of(leaves.subList(0, 4)).root()));
+        List<byte[]> duplicated = new ArrayList<>(leaves);
+        duplicated.add(leaves.getLast());
+        assertFalse(Arrays.equals(root, MerkleTree.of(duplicated).root()));
+        assertEquals(0, MerkleTree.of(List.of()).size());
+        assertEquals(32, MerkleTree.of(List.of()).root().length);
+    }
+
+    /**
+     * Test to verify inclusion proofs for every leaf of trees of many sizes, including odd ones.
+     */
+    @Test
+    @DisplayName("Should prove and verify single leaves")
+    void testProofs() {
+        for (int size = 1; size <= 33; size++) {
+            MerkleTree tree = MerkleTree.of(leaves(size));
+            byte[] root = tree.root();
+            for (int i = 0; i < size; i++) {
+                List<byte[]> proof = tree.proof(i);
+                assertTrue(proof.size() <= 32 - Integer.numberOfLeadingZeros(size - 1) + 1);
+                assertTrue(MerkleTree.verify(tree.leafHash(i), i, size, proof, root), "leaf " + i + " of " + size);
+                if (size > 1) {
+                    assertFalse(MerkleTree.verify(tree.leafHash(i), (i + 1) % size, size, proof, root));
+                }
+                assertFalse(MerkleTree.verify(MerkleTree.hashLeaf(new byte[]{9}), i, size, proof, root));
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> MerkleTree.of(leaves(3)).proof(3));
+    }
+
+    /**
+     * Test to verify that diffs match a leaf-by-leaf comparison, also between trees of different sizes.
+     */
+    @Test
+    @DisplayName("Should diff trees by walking changed subtrees")
+    void testDiff() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            List<byte[]> before = leaves(random.nextInt(40));
+            List<byte[]> after = new ArrayList<>(before);
+            for (int change = random.nextInt(4); change > 0 && !after.isEmpty(); change--) {
+                after.set(random.nextInt(after.size()), ("changed " + change).getBytes(StandardCharsets.UTF_8));
+            }
+            int resize = random.nextInt(7) - 3;
+            if (resize < 0) {
+                after = after.subList(0, Math.max(0, after.size() + resize));
+            } else {
+                for (int i = 0; i < resize; i++) {
+                    after.add(("added " + i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < Math.max(before.size(), after.size()); i++) {
+                if (i >= before.size() || i >= after.size() || !Arrays.equals(before.get(i), after.get(i))) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, MerkleTree.of(before).diff(MerkleTree.of(after)));
+            assertEquals(expected, MerkleTree.of(after).diff(MerkleTree.of(before)));
+        }
+    }
+
+    private static List<byte[]> leaves(int count) {
+        List<byte[]> leaves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            leaves.add(("record " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        return leaves;
+    }
+}
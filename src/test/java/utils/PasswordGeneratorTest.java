@@ -6,6 +6,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -129,4 +133,111 @@ class PasswordGeneratorTest {
             assertEquals(length, password.length());
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    @DisplayName("Batch generation tests") // Group for the bulk generation API
+    class BatchTests {
+
+        /**
+         * Test to verify that a batch contains the requested number of passwords of the requested length.
+         */
+        @Test
+        @DisplayName("Should generate the requested number of passwords")
+        void testBatchSizeAndLength() {
+            List<String> passwords = PasswordGenerator.generateBatch(5000, 12, true, true, true, true, false);
+            assertEquals(5000, passwords.size());
+            passwords.forEach(password -> assertEquals(12, password.length()));
+            assertEquals(5000, new HashSet<>(passwords).size());
+        }
+
+        /**
+         * Test to verify that every password contains at least one character of each selected class,
+         * even when the length leaves room for exactly one of each.
+         */
+        @Test
+        @DisplayName("Should include every selected character class")
+        void testBatchIncludesEveryClass() {
+            for (String password : PasswordGenerator.generateBatch(2000, 4, true, true, true, true, false)) {
+                assertTrue(password.matches(".*[A-Z].*"), password);
+                assertTrue(password.matches(".*[a-z].*"), password);
+                assertTrue(password.matches(".*[0-9].*"), password);
+                assertTrue(password.matches(".*[!@#$%&*()\\-_=+\\[\\]{}].*"), password);
+            }
+        }
+
+        /**
+         * Test to ensure an exception is thrown for a negative batch size.
+         */
+        @Test
+        @DisplayName("Should throw exception for negative count")
+        void testBatchInvalidCount() {
+            assertThrows(IllegalArgumentException.class, () ->
+                PasswordGenerator.generateBatch(-1, 12, true, true, true, true, false)
+            );
+        }
+
+        /**
+         * Test to verify that the sampler only returns values inside the bound and reaches all of them.
+         */
+        @Test
+        @DisplayName("Should sample every value below the bound")
+        void testSamplerBounds() {
+            PasswordGenerator.ByteSampler sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+            int[] seen = new int[79];
+            for (int i = 0; i < 100_000; i++) {
+                seen[sampler.nextBelow(79)]++;
+            }
+            for (int count : seen) {
+                assertTrue(count > 0);
+            }
+            for (int i = 0; i < 1000; i++) {
+                int value = sampler.nextBelow(1000);
+                assertTrue(value >= 0 && value < 1000);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Passphrase generation tests") // Group for the diceware passphrase mode
+    class PassphraseTests {
+
+        /**
+         * Test to verify the word count, separator and entropy estimate of a passphrase.
+         */
+        @Test
+        @DisplayName("Should generate passphrase with requested words and entropy")
+        void testPassphraseWords() {
+            Passphrase passphrase = PasswordGenerator.generatePassphrase(6, "-", PasswordGenerator.Capitalization.NONE);
+            String[] words = passphrase.value().split("-");
+
+            assertEquals(6, words.length);
+            for (String word : words) {
+                assertTrue(word.matches("^[a-z]+$"), word);
+            }
+            assertEquals(6 * WordList.getDefault().bitsPerWord(), passphrase.entropyBits(), 1e-9);
+        }
+
+        /**
+         * Test to verify capitalization of the first letter of every word.
+         */
+        @Test
+        @DisplayName("Should capitalize every word")
+        void testPassphraseCapitalization() {
+            Passphrase passphrase = PasswordGenerator.generatePassphrase(5, " ", PasswordGenerator.Capitalization.FIRST_LETTER);
+            for (String word : passphrase.value().split(" ")) {
+                assertTrue(Character.isUpperCase(word.charAt(0)), word);
+            }
+        }
+
+        /**
+         * Test to ensure an exception is thrown for an invalid word count.
+         */
+        @Test
+        @DisplayName("Should throw exception for invalid word count")
+        void testPassphraseInvalidWordCount() {
+            assertThrows(IllegalArgumentException.class, () ->
+                PasswordGenerator.generatePassphrase(0, "-", PasswordGenerator.Capitalization.NONE)
+            );
+        }
+    }
+}
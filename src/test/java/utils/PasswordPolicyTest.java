@@ -0,0 +1,224 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link PasswordPolicy} class and policy-driven generation.
+ * Validates exact counting, constraint satisfaction and uniform sampling.
+ */
+@DisplayName("PasswordPolicy Unit Tests")
+class PasswordPolicyTest {
+
+    /**
+     * Test to verify that generated passwords satisfy every rule of a site policy.
+     */
+    @Test
+    @DisplayName("Should satisfy counts, positional rules and no-repeat constraint")
+    void testGeneratedPasswordsSatisfyPolicy() {
+        PasswordPolicy policy = PasswordPolicy.builder()
+                .length(12, 16)
+                .uppercase(1, 16)
+                .lowercase(1, 16)
+                .digits(0, 16)
+                .symbols("!#$", 2, 2)
+                .noRepeats()
+                .excludeLookAlikes()
+                .requireAt(0, "upper", "lower")
+                .build();
+        PasswordGenerator.ByteSampler sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+
+        for (int i = 0; i < 2000; i++) {
+            String password = PasswordGenerator.generateRandomPassword(policy, sampler);
+            assertTrue(password.length() >= 12 && password.length() <= 16, password);
+            assertEquals(2, password.chars().filter(c -> "!#$".indexOf(c) >= 0).count(), password);
+            assertTrue(Character.isLetter(password.charAt(0)), password);
+            assertEquals(password.length(), password.chars().distinct().count(), password);
+            assertFalse(password.matches(".*[0O1lI].*"), password);
+        }
+    }
+
+    /**
+     * Test to verify the exact count and entropy of a policy small enough to count by hand.
+     * Length 3 over {a, b} with exactly one digit from {1, 2}: 3 positions for the digit,
+     * 2 digits and 2^2 letter choices gives 24 passwords.
+     */
+    @Test
+    @DisplayName("Should count combinations and entropy exactly")
+    void testExactCombinations() {
+        PasswordPolicy policy = PasswordPolicy.builder()
+                .length(3)
+                .characterClass("letter", "ab", 0, 3)
+                .characterClass("digit", "12", 1, 1)
+                .build();
+
+        assertEquals(BigInteger.valueOf(24), policy.combinations());
+        assertEquals(Math.log(24) / Math.log(2), policy.entropyBits(), 1e-9);
+
+        PasswordPolicy startsWithLetter = PasswordPolicy.builder()
+                .length(3)
+                .characterClass("letter", "ab", 0, 3)
+                .characterClass("digit", "12", 1, 1)
+                .requireAt(0, "letter")
+                .build();
+        assertEquals(BigInteger.valueOf(16), startsWithLetter.combinations());
+    }
+
+    /**
+     * Test to verify the count of a policy with position rules and no repeats against a brute-force
+     * enumeration of every string over its characters.
+     */
+    @Test
+    @DisplayName("Should count position rules and no repeats like a brute-force enumeration")
+    void testCombinationsMatchEnumeration() {
+        PasswordPolicy policy = PasswordPolicy.builder()
+                .length(2, 5)
+                .characterClass("letter", "abc", 1, 5)
+                .characterClass("digit", "12", 0, 2)
+                .characterClass("symbol", "!#", 0, 1)
+                .noRepeats()
+                .requireAt(0, "letter", "symbol")
+                .requireAt(-1, "digit")
+                .build();
+
+        long expected = 0;
+        String characters = "abc12!#";
+        for (int length = 2; length <= 5; length++) {
+            for (long n = 0; n < Math.pow(characters.length(), length); n++) {
+                StringBuilder password = new StringBuilder();
+                long rest = n;
+                for (int i = 0; i < length; i++) {
+                    password.append(characters.charAt((int) (rest % characters.length())));
+                    rest /= characters.length();
+                }
+                String p = password.toString();
+                long letters = p.chars().filter(c -> "abc".indexOf(c) >= 0).count();
+                long digitCount = p.chars().filter(c -> "12".indexOf(c) >= 0).count();
+                long symbols = p.chars().filter(c -> "!#".indexOf(c) >= 0).count();
+                if (letters >= 1 && digitCount <= 2 && symbols <= 1
+                        && p.chars().distinct().count() == length
+                        && "12".indexOf(p.charAt(0)) < 0
+                        && "12".indexOf(p.charAt(length - 1)) >= 0) {
+                    expected++;
+                }
+            }
+        }
+        assertEquals(BigInteger.valueOf(expected), policy.combinations());
+    }
+
+    /**
+     * Test to verify that a wide policy is counted without expanding every way to split a length
+     * between its classes: any of the 79 characters at any of 8 to 64 positions.
+     */
+    @Test
+    @DisplayName("Should count wide policies quickly")
+    void testWidePolicy() {
+        PasswordPolicy policy = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> PasswordPolicy.builder()
+                .length(8, 64)
+                .uppercase(0, 64)
+                .lowercase(0, 64)
+                .digits(0, 64)
+                .symbols(0, 64)
+                .build());
+
+        BigInteger expected = BigInteger.ZERO;
+        for (int length = 8; length <= 64; length++) {
+            expected = expected.add(BigInteger.valueOf(79).pow(length));
+        }
+        assertEquals(expected, policy.combinations());
+        PasswordGenerator.ByteSampler sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+        String password = PasswordGenerator.generateRandomPassword(policy, sampler);
+        assertTrue(password.length() >= 8 && password.length() <= 64, password);
+    }
+
+    /**
+     * Test to verify that every password of a small policy is generated with roughly equal frequency.
+     */
+    @Test
+    @DisplayName("Should generate every valid password uniformly")
+    void testUniformSampling() {
+        PasswordPolicy policy = PasswordPolicy.builder()
+                .length(3)
+                .characterClass("letter", "ab", 0, 3)
+                .characterClass("digit", "12", 1, 1)
+                .build();
+        PasswordGenerator.ByteSampler sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < 48_000; i++) {
+            counts.merge(PasswordGenerator.generateRandomPassword(policy, sampler), 1, Integer::sum);
+        }
+
+        assertEquals(24, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 1500 && count < 2500, counts.toString()));
+    }
+
+    /**
+     * Test to ensure policies that no password can satisfy are rejected when built.
+     */
+    @Test
+    @DisplayName("Should reject unsatisfiable policies")
+    void testUnsatisfiablePolicy() {
+        assertThrows(IllegalArgumentException.class, () -> PasswordPolicy.builder()
+                .length(11)
+                .digits(0, 11)
+                .noRepeats()
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> PasswordPolicy.builder()
+                .length(8)
+                .lowercase(0, 8)
+                .requireAt(0, "digit")
+                .build());
+    }
+
+    /**
+     * Test to ensure classes that share characters are rejected, since a shared character would be
+     * counted once per class, and that policies too large to count are rejected.
+     */
+    @Test
+    @DisplayName("Should reject overlapping classes and oversized policies")
+    void testOverlappingClasses() {
+        assertThrows(IllegalArgumentException.class, () -> PasswordPolicy.builder()
+                .length(4)
+                .characterClass("alnum", "abc0", 1, 4)
+                .digits(0, 4)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> PasswordPolicy.builder()
+                .length(4)
+                .lowercase(0, 4)
+                .requireAt(0, "lower").requireAt(1, "lower").requireAt(2, "lower")
+                .requireAt(3, "lower").requireAt(-1, "lower")
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> PasswordPolicy.builder()
+                .length(8, PasswordPolicy.MAX_LENGTH + 1));
+    }
+
+    /**
+     * Test to verify that generated passwords differ between calls.
+     */
+    @Test
+    @DisplayName("Should generate distinct passwords")
+    void testDistinctPasswords() {
+        PasswordPolicy policy = PasswordPolicy.builder().length(16).lowercase(1, 16).digits(1, 16).build();
+        PasswordGenerator.ByteSampler sampler = new PasswordGenerator.ByteSampler(new SecureRandom());
+        Set<String> passwords = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            passwords.add(PasswordGenerator.generateRandomPassword(policy, sampler));
+        }
+        assertEquals(1000, passwords.size());
+    }
+}
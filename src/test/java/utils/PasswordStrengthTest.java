@@ -0,0 +1,55 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link PasswordStrength} class.
+ */
+@DisplayName("PasswordStrength Unit Tests")
+class PasswordStrengthTest {
+
+    /**
+     * Test to verify that repeats and sequences cost far less than random characters.
+     */
+    @Test
+    @DisplayName("Should penalize repeats and sequences")
+    void testPatterns() {
+        double random = PasswordStrength.estimateEntropy("q7Zk2pXv");
+        assertTrue(PasswordStrength.estimateEntropy("aaaaaaaa") < 15);
+        assertTrue(PasswordStrength.estimateEntropy("12345678") < 20);
+        assertTrue(random > 40, "Eight mixed random characters should be about 48 bits");
+        assertEquals(0, PasswordStrength.estimateEntropy(""));
+    }
+
+    /**
+     * Test to verify that dictionary words are scored per word, not per letter.
+     */
+    @Test
+    @DisplayName("Should score diceware words as single words")
+    void testDictionaryWords() {
+        double bitsPerWord = WordList.getDefault().bitsPerWord();
+        String word = WordList.getDefault().get(100);
+        String passphrase = word + "-" + WordList.getDefault().get(2000) + "-" + WordList.getDefault().get(5000);
+
+        assertTrue(PasswordStrength.estimateEntropy(word) <= bitsPerWord + 0.01);
+        assertTrue(PasswordStrength.estimateEntropy(passphrase) < 3 * bitsPerWord + 20);
+        assertTrue(PasswordStrength.estimateEntropy(passphrase) > 3 * bitsPerWord);
+    }
+
+    /**
+     * Test to verify the rating thresholds.
+     */
+    @Test
+    @DisplayName("Should rate entropy estimates")
+    void testRatings() {
+        assertEquals(PasswordStrength.Rating.VERY_WEAK, PasswordStrength.rate(10));
+        assertEquals(PasswordStrength.Rating.WEAK, PasswordStrength.rate(30));
+        assertEquals(PasswordStrength.Rating.FAIR, PasswordStrength.rate(50));
+        assertEquals(PasswordStrength.Rating.STRONG, PasswordStrength.rate(70));
+        assertEquals(PasswordStrength.Rating.VERY_STRONG, PasswordStrength.rate(100));
+    }
+}
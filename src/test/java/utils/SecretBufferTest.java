@@ -0,0 +1,111 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link SecretBuffer} class.
+ */
+@DisplayName("SecretBuffer Unit Tests")
+class SecretBufferTest {
+
+    /**
+     * Test to verify that characters are encoded as UTF-8 and the source array is wiped.
+     */
+    @Test
+    @DisplayName("Should take characters and wipe the source array")
+    void testOfChars() throws Exception {
+        char[] source = "pässwörd".toCharArray();
+        try (SecretBuffer secret = SecretBuffer.of(source)) {
+            assertArrayEquals(new char[source.length], source);
+            assertEquals(10, secret.length());
+            assertArrayEquals("pässwörd".getBytes(StandardCharsets.UTF_8), secret.toBytes());
+            assertArrayEquals("pässwörd".toCharArray(), secret.toChars());
+        }
+    }
+
+    /**
+     * Test to verify that bytes are moved in and the source array is wiped.
+     */
+    @Test
+    @DisplayName("Should take bytes and wipe the source array")
+    void testOfBytes() {
+        byte[] source = {1, 2, 3};
+        try (SecretBuffer secret = SecretBuffer.of(source)) {
+            assertArrayEquals(new byte[3], source);
+            ByteBuffer view = secret.view();
+            assertTrue(view.isReadOnly());
+            assertEquals(3, view.remaining());
+            assertEquals(3, view.get(2));
+        }
+    }
+
+    /**
+     * Test to verify that closing wipes the memory and forbids further use.
+     */
+    @Test
+    @DisplayName("Should wipe on close")
+    void testClose() {
+        SecretBuffer secret = SecretBuffer.of("secret");
+        ByteBuffer view = secret.view();
+        secret.close();
+
+        for (int i = 0; i < view.limit(); i++) {
+            assertEquals(0, view.get(i));
+        }
+        assertThrows(IllegalStateException.class, secret::length);
+        assertThrows(IllegalStateException.class, secret::view);
+        assertThrows(IllegalStateException.class, secret::toBytes);
+        secret.close();
+    }
+
+    /**
+     * Test to verify that a filler writes the content directly and a failing filler leaves nothing behind.
+     */
+    @Test
+    @DisplayName("Should fill content in place")
+    void testFill() throws Exception {
+        try (SecretBuffer secret = SecretBuffer.fill(16, target -> target.put(new byte[]{'a', 'b'}))) {
+            assertArrayEquals(new byte[]{'a', 'b'}, secret.toBytes());
+        }
+        assertThrows(IllegalStateException.class,
+                () -> SecretBuffer.fill(4, target -> {
+                    throw new IllegalStateException("failed");
+                }));
+    }
+
+    /**
+     * Test to verify content comparison and that toString never reveals the secret.
+     */
+    @Test
+    @DisplayName("Should compare content and redact toString")
+    void testContentEqualsAndToString() {
+        try (SecretBuffer a = SecretBuffer.of("hunter2");
+             SecretBuffer b = SecretBuffer.of("hunter2");
+             SecretBuffer c = SecretBuffer.of("hunter3");
+             SecretBuffer d = SecretBuffer.of("hunter")) {
+            assertTrue(a.contentEquals(b));
+            assertFalse(a.contentEquals(c));
+            assertFalse(a.contentEquals(d));
+            assertFalse(a.toString().contains("hunter"));
+        }
+    }
+
+    /**
+     * Test to verify that characters that are not valid UTF-16 are rejected.
+     */
+    @Test
+    @DisplayName("Should reject lone surrogates")
+    void testMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> SecretBuffer.of("a\uD800b"));
+    }
+}
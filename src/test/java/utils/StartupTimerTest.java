@@ -0,0 +1,50 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the {@link StartupTimer} class.
+ */
+@DisplayName("StartupTimer Unit Tests")
+class StartupTimerTest {
+
+    private static final long START = 5_000_000_000L;
+
+    /**
+     * Test to verify that phases are reported in the order reached, relative to JVM start,
+     * and that only the first time a phase is reached counts.
+     */
+    @Test
+    @DisplayName("Should report the first time each phase is reached")
+    void testReport() {
+        StartupTimer timer = new StartupTimer();
+        timer.record("main", START + 40_000_000L);
+        timer.record("prompt", START + 95_500_000L);
+        timer.record("main", START + 300_000_000L);
+
+        String n = System.lineSeparator();
+        assertEquals("Startup timing (ms since JVM start):" + n
+                + "  main           40" + n
+                + "  prompt         95" + n
+                + "  1200 classes loaded" + n, timer.format(START, 1_200));
+    }
+
+    /**
+     * Test to verify that the tracking line holds the JVM start and one field per phase.
+     */
+    @Test
+    @DisplayName("Should format one tab-separated line per run")
+    void testLogLine() {
+        StartupTimer timer = new StartupTimer();
+        timer.record("main", START + 40_000_000L);
+        timer.record("output", START + 612_000_000L);
+
+        assertEquals("2026-01-02T03:04:05Z\tmain=40\toutput=612\tclasses=1300\n",
+                timer.logLine(Instant.parse("2026-01-02T03:04:05Z"), START, 1_300));
+    }
+}
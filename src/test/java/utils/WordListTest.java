@@ -0,0 +1,86 @@
+package utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the {@link WordList} class.
+ * Validates the bundled packed word list and the pack/open round trip.
+ */
+@DisplayName("WordList Unit Tests")
+class WordListTest {
+
+    /**
+     * Test to verify that the bundled list is the EFF large word list without its hyphenated words,
+     * so that every word is lowercase letters only.
+     */
+    @Test
+    @DisplayName("Should load the bundled EFF large word list")
+    void testDefaultWordList() {
+        WordList words = WordList.getDefault();
+        assertEquals(7772, words.size());
+        assertEquals("abacus", words.get(0));
+        assertEquals("zoom", words.get(7771));
+        assertEquals(12.924, words.bitsPerWord(), 0.001);
+        for (int i = 0; i < words.size(); i++) {
+            assertTrue(words.get(i).matches("[a-z]+"), words.get(i));
+        }
+    }
+
+    /**
+     * Test to verify that a packed list can be memory-mapped and read back.
+     *
+     * @param tempDir temporary directory for the packed file
+     */
+    @Test
+    @DisplayName("Should read back a packed word list")
+    void testPackAndOpen(@TempDir Path tempDir) throws Exception {
+        Path packed = tempDir.resolve("words.bin");
+        try (OutputStream out = Files.newOutputStream(packed)) {
+            WordList.pack(List.of("alpha", "bravo", "charlie"), out);
+        }
+
+        WordList words = WordList.open(packed);
+
+        assertEquals(3, words.size());
+        assertEquals("bravo", words.get(1));
+        assertEquals("charlie", words.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> words.get(3));
+    }
+
+    /**
+     * Test to ensure a file that is not a packed word list is rejected.
+     *
+     * @param tempDir temporary directory for the invalid file
+     */
+    @Test
+    @DisplayName("Should reject a file that is not a packed word list")
+    void testOpenInvalidFile(@TempDir Path tempDir) throws Exception {
+        Path text = tempDir.resolve("words.txt");
+        Files.writeString(text, "alpha\nbravo\ncharlie\n");
+
+        assertThrows(IllegalArgumentException.class, () -> WordList.open(text));
+    }
+
+    /**
+     * Test to ensure words that are not lowercase letters only are not packed, since a passphrase
+     * joined with a separator they contain could not be split back into its words.
+     */
+    @Test
+    @DisplayName("Should refuse to pack words with separators or capitals")
+    void testPackRejectsNonLetters() {
+        for (String word : List.of("t-shirt", "yo yo", "Alpha", "")) {
+            assertThrows(IllegalArgumentException.class, () -> WordList.pack(List.of("alpha", word), OutputStream.nullOutputStream()));
+        }
+    }
+}